@@ -1,17 +1,28 @@
 package dev.jbang.jdkdb;
 
 import dev.jbang.jdkdb.model.JdkMetadata;
+import dev.jbang.jdkdb.model.MetadataRef;
 import dev.jbang.jdkdb.scraper.DefaultDownloadManager;
+import dev.jbang.jdkdb.scraper.DefaultDownloadScorer;
+import dev.jbang.jdkdb.scraper.DownloadJournal;
 import dev.jbang.jdkdb.scraper.DownloadManager;
+import dev.jbang.jdkdb.scraper.DownloadMetrics;
+import dev.jbang.jdkdb.scraper.DownloadScorer;
 import dev.jbang.jdkdb.scraper.InterruptedProgressException;
 import dev.jbang.jdkdb.scraper.NoOpDownloadManager;
-import dev.jbang.jdkdb.util.ArchiveUtils;
+import dev.jbang.jdkdb.util.ArtifactCache;
+import dev.jbang.jdkdb.util.FileUtils;
 import dev.jbang.jdkdb.util.GitHubUtils;
+import dev.jbang.jdkdb.util.HttpUtils;
 import dev.jbang.jdkdb.util.MetadataUtils;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,6 +30,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
@@ -33,6 +51,21 @@ import picocli.CommandLine.Option;
 		mixinStandardHelpOptions = true)
 public class DownloadCommand implements Callable<Integer> {
 	private static final Logger logger = LoggerFactory.getLogger("command");
+	private static final int DEFAULT_VIRTUAL_THREAD_DOWNLOADS = 64;
+	private static final int MAX_SIZE_PROBES = 16;
+	private static final String JOURNAL_FILE = "download-journal.log";
+
+	/** The order in which the files get downloaded */
+	enum DownloadOrder {
+		/** The order in which the metadata files are found */
+		listed,
+		/** Smallest files first, completing as many files as possible in a limited time */
+		smallest_first,
+		/** Largest files first, so the slowest downloads don't end up running on their own at the end */
+		largest_first,
+		/** The files users are most likely to ask for first, see {@link DefaultDownloadScorer} */
+		value
+	}
 
 	@Option(
 			names = {"-m", "--metadata-dir"},
@@ -59,6 +92,26 @@ public class DownloadCommand implements Callable<Integer> {
 			defaultValue = "-1")
 	private int maxThreads;
 
+	@Option(
+			names = {"--hash-threads"},
+			description = "Number of threads computing checksums of files that can't be hashed while they are"
+					+ " being downloaded (default: number of processors)",
+			defaultValue = "-1")
+	private int hashThreads;
+
+	@Option(
+			names = {"--extract-threads"},
+			description = "Number of threads extracting the release info from archives that have to be"
+					+ " decompressed almost in full to get to it (dmg, pkg) (default: 2)",
+			defaultValue = "2")
+	private int extractThreads;
+
+	@Option(
+			names = {"--virtual-threads"},
+			description = "Run every download on its own virtual thread, the --threads option then limits the"
+					+ " total number of downloads in progress (default: " + DEFAULT_VIRTUAL_THREAD_DOWNLOADS + ")")
+	private boolean virtualThreads;
+
 	@Option(
 			names = {"--limit-progress"},
 			description =
@@ -95,6 +148,106 @@ public class DownloadCommand implements Callable<Integer> {
 			description = "Randomize the order of downloads instead of processing files in order")
 	private boolean randomize;
 
+	@Option(
+			names = {"--order"},
+			description = "Order in which to download the files: ${COMPLETION-CANDIDATES}. The value order"
+					+ " downloads GA, LTS, recent and popular OS/architecture builds first (default: value)",
+			defaultValue = "value")
+	private DownloadOrder order;
+
+	@Option(
+			names = {"--probe-sizes"},
+			description = "Use HEAD requests to look up the sizes of files whose size isn't known yet before ordering"
+					+ " them by size")
+	private boolean probeSizes;
+
+	@Option(
+			names = {"--max-host-downloads"},
+			description = "Maximum number of concurrent downloads per host. Each host starts with 3, which grows"
+					+ " while its throughput improves and is halved when it responds with 429/503 or slows down"
+					+ " (default: 8, 3 or less to disable)",
+			defaultValue = "8")
+	private int maxHostDownloads;
+
+	@Option(
+			names = {"--distro-weight"},
+			description = "Share of the downloads a distro gets while it has downloads waiting, relative to the"
+					+ " other distros, as distro=weight (e.g., temurin=3). Can be repeated (default: 1 per distro)",
+			paramLabel = "<distro=weight>")
+	private Map<String, Integer> distroWeights = new HashMap<>();
+
+	@Option(
+			names = {"--max-distro-downloads"},
+			description = "Maximum number of concurrent downloads of a distro, as distro=count (e.g., zulu=4)."
+					+ " Can be repeated (default: only limited per host)",
+			paramLabel = "<distro=count>")
+	private Map<String, Integer> maxDistroDownloads = new HashMap<>();
+
+	@Option(
+			names = {"--max-segments"},
+			description = "Maximum number of connections used to download a single large file, extra connections"
+					+ " are only used when no other downloads from the same host are waiting (default: 3, 1 to"
+					+ " disable)",
+			defaultValue = "3")
+	private int maxSegments;
+
+	@Option(
+			names = {"--min-throughput"},
+			description = "Minimum throughput in bytes per second (e.g., 50k for 50 KiB/s), a download that"
+					+ " stays below it during the --stall-window is aborted, retried and continues where it"
+					+ " stopped (default: none)")
+	private String minThroughput;
+
+	@Option(
+			names = {"--stall-window"},
+			description = "Number of seconds over which --min-throughput is measured (default: 60)",
+			defaultValue = "60")
+	private int stallWindow;
+
+	@Option(
+			names = {"--cache-dir"},
+			description = "Directory for a local cache of downloaded files that is shared between runs, files that"
+					+ " didn't change on the server are then not downloaded again (default: none)")
+	private Path cacheDir;
+
+	@Option(
+			names = {"--cache-max-size"},
+			description = "Maximum size of the download cache, least recently used files are removed when it grows"
+					+ " larger (e.g., 500m, 20g) (default: 10g)",
+			defaultValue = "10g")
+	private String cacheMaxSize;
+
+	@Option(
+			names = {"--stats-file"},
+			description = "Write transfer metrics per host and per distro (bytes, durations, throughput"
+					+ " percentiles and retries) as JSON to this file when done (default: none)")
+	private Path statsFile;
+
+	@Option(
+			names = {"--scratch-dir"},
+			description = "Directory for temporary files of downloads in progress"
+					+ " (default: the system's temporary directory)")
+	private Path scratchDir;
+
+	@Option(
+			names = {"--disk-budget"},
+			description = "Maximum disk space used by downloads in progress (e.g., 500m, 20g), downloads wait"
+					+ " for others to finish when it would be exceeded (default: unlimited)")
+	private String diskBudget;
+
+	@Option(
+			names = {"--journal"},
+			description = "Keep a journal of the downloads in " + JOURNAL_FILE + " next to the metadata directory,"
+					+ " a run that was interrupted is then resumed by the next run instead of scanning all"
+					+ " metadata again")
+	private boolean useJournal;
+
+	@Option(
+			names = {"--work-dir"},
+			description = "Directory to keep partial downloads in, so downloads that fail can be resumed by a"
+					+ " later run (default: none, partial downloads are discarded)")
+	private Path workDir;
+
 	@Override
 	public Integer call() throws Exception {
 		GitHubUtils.setupGitHubToken();
@@ -108,6 +261,36 @@ public class DownloadCommand implements Callable<Integer> {
 		logger.info("Checksum directory: {}", checksumDir.toAbsolutePath());
 		logger.info("");
 
+		if (scratchDir != null) {
+			System.setProperty(FileUtils.SCRATCH_DIR_PROP, scratchDir.toAbsolutePath().toString());
+			logger.info("Scratch directory: {}", scratchDir.toAbsolutePath());
+		}
+		long maxDiskUsage = -1;
+		if (diskBudget != null) {
+			maxDiskUsage = FileUtils.parseSize(diskBudget);
+			if (maxDiskUsage <= 0) {
+				logger.error(
+						"Invalid --disk-budget format: '{}'. Expected format: [number][k|m|g|t] (e.g., '20g')",
+						diskBudget);
+				return 1;
+			}
+			logger.info("Disk budget: {}", diskBudget);
+		}
+
+		ArtifactCache artifactCache = null;
+		if (cacheDir != null && !statsOnly) {
+			long maxCacheSize = FileUtils.parseSize(cacheMaxSize);
+			if (maxCacheSize < 0) {
+				logger.error(
+						"Invalid --cache-max-size format: '{}'. Expected format: [number][k|m|g|t] (e.g., '20g')",
+						cacheMaxSize);
+				return 1;
+			}
+			artifactCache = new ArtifactCache(cacheDir, maxCacheSize);
+			logger.info("Download cache: {} (max {})", cacheDir.toAbsolutePath(), cacheMaxSize);
+			logger.info("");
+		}
+
 		Path distroDir = metadataDir;
 		if (!Files.exists(distroDir) || !Files.isDirectory(distroDir)) {
 			logger.error("Error: Distro directory not found: {}", distroDir.toAbsolutePath());
@@ -132,44 +315,113 @@ public class DownloadCommand implements Callable<Integer> {
 		}
 		logger.info("");
 
+		long minBytesPerSecond = 0;
+		if (minThroughput != null) {
+			minBytesPerSecond = FileUtils.parseSize(minThroughput);
+			if (minBytesPerSecond <= 0) {
+				logger.error(
+						"Invalid --min-throughput format: '{}'. Expected bytes per second as [number][k|m|g|t]"
+								+ " (e.g., '50k')",
+						minThroughput);
+				return 1;
+			}
+			if (stallWindow < 1) {
+				logger.error("Invalid --stall-window: {}, must be at least 1 second", stallWindow);
+				return 1;
+			}
+			logger.info("Minimum throughput: {}/s over {}s", minThroughput, stallWindow);
+		}
+
+		for (Map.Entry<String, Integer> entry : distroWeights.entrySet()) {
+			if (entry.getValue() < 1) {
+				logger.error("Invalid --distro-weight for {}: {}, must be at least 1", entry.getKey(), entry.getValue());
+				return 1;
+			}
+		}
+		for (Map.Entry<String, Integer> entry : maxDistroDownloads.entrySet()) {
+			if (entry.getValue() < 1) {
+				logger.error(
+						"Invalid --max-distro-downloads for {}: {}, must be at least 1",
+						entry.getKey(),
+						entry.getValue());
+				return 1;
+			}
+		}
+
+		// Continue where an interrupted run stopped, if there is a journal for it
+		Path journalFile = metadataDir.toAbsolutePath().resolveSibling(JOURNAL_FILE);
+		DownloadJournal.Replay replay = null;
+		DownloadJournal journal = null;
+		if (useJournal && !statsOnly) {
+			replay = DownloadJournal.replay(journalFile);
+			journal = new DownloadJournal(journalFile, replay.canResume());
+		}
+
 		// Create download manager
-		var threadCount = maxThreads > 0 ? maxThreads : Runtime.getRuntime().availableProcessors();
+		var threadCount = maxThreads > 0
+				? maxThreads
+				: virtualThreads ? DEFAULT_VIRTUAL_THREAD_DOWNLOADS : Runtime.getRuntime().availableProcessors();
 		DownloadManager downloadManager = statsOnly
 				? new NoOpDownloadManager(fileTypeFilter)
-				: new DefaultDownloadManager(threadCount, metadataDir, checksumDir, 3, limitTotal, fileTypeFilter);
+				: new DefaultDownloadManager(threadCount, metadataDir, checksumDir, 3, limitTotal, fileTypeFilter)
+						.setVirtualThreads(virtualThreads)
+						.setWorkDir(workDir)
+						.setMaxSegments(maxSegments)
+						.setAdaptiveHostLimit(maxHostDownloads)
+						.setDistroWeights(distroWeights)
+						.setDistroLimits(maxDistroDownloads)
+						.setStallDetection(minBytesPerSecond, Duration.ofSeconds(stallWindow))
+						.setDiskBudget(maxDiskUsage)
+						.setJournal(journal)
+						.setHashThreads(hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors())
+						.setExtractThreads(extractThreads)
+						.setArtifactCache(artifactCache);
+		downloadManager.addDistroListener(stats -> logger.info(
+				"All downloads for {} finished: {} completed, {} failed",
+				stats.distro(),
+				stats.completed(),
+				stats.failed()));
 		downloadManager.start();
 		if (fileTypeFilter != null) {
 			logger.info("File type filter enabled: {}", fileTypeFilter);
 		}
 
-		List<JdkMetadata> metadataList = MetadataUtils.collectAllMetadata(distroDir, 2, false, true).stream()
-				// Don't try to download macOS PKG files if the only thing we need is
-				// the release info, since we won't be able to extract it on non-macOS
-				// platforms anyway!
-				.filter(m -> !"macosx".equals(m.getOs())
-						|| !MetadataUtils.MACOS_FILE_TYPES.contains(m.fileTypeEnum())
-						|| MetadataUtils.hasMissingChecksums(m)
-						|| !MetadataUtils.hasMissingReleaseInfo(m)
-						|| ArchiveUtils.isMacOS())
-				// The same goes for Windows EXE files - but in this case we always
-				// ignore missing release info since we can't extract it from them
-				// on any platform!
-				.filter(m -> !"windows".equals(m.getOs())
-						|| !"exe".equals(m.getFileType())
-						|| MetadataUtils.hasMissingChecksums(m)
-						|| !MetadataUtils.hasMissingReleaseInfo(m))
-				.collect(Collectors.toCollection(ArrayList::new));
-
-		metadataList = prioritizeMetadata(metadataList, randomize);
+		// Only keep compact references to the metadata that needs downloading, the full
+		// metadata is read again when its download starts
+		DownloadScorer scorer = order == DownloadOrder.value ? new DefaultDownloadScorer() : null;
+		List<MetadataRef> metadataList;
+		if (replay != null && replay.canResume()) {
+			logger.info(
+					"Resuming interrupted download run from {} ({} downloads left)",
+					journalFile,
+					replay.remaining().size());
+			metadataList = readJournalMetadata(distroDir, replay.remaining(), scorer);
+		} else {
+			List<MetadataRef> refs = new ArrayList<>();
+			MetadataUtils.forEachMetadata(distroDir, 2, metadata -> {
+				if (needsDownload(metadata)) {
+					refs.add(toRef(metadata, scorer));
+				}
+			});
+			metadataList = refs;
+		}
+
+		if (probeSizes && (order == DownloadOrder.smallest_first || order == DownloadOrder.largest_first)) {
+			metadataList = probeMissingSizes(metadataList);
+		}
+		metadataList = prioritizeRefs(metadataList, randomize, order);
 		if (randomize) {
 			logger.info("Randomized download order (preserving checksum-first priority)");
 		}
+		if (order != DownloadOrder.listed) {
+			logger.info("Download order: {} (preserving checksum-first priority)", order);
+		}
 
 		Map<String, Integer> distroMissingCounts = new HashMap<>();
 		Set<String> distrosAtProgressLimit = new HashSet<>();
-		for (JdkMetadata metadata : metadataList) {
+		for (MetadataRef ref : metadataList) {
 			try {
-				String distroName = metadata.getDistro();
+				String distroName = ref.distro();
 				if (!distrosToProcess.contains(distroName)) {
 					continue; // Skip distros not in the specified list
 				}
@@ -177,7 +429,7 @@ public class DownloadCommand implements Callable<Integer> {
 					continue;
 				}
 				Logger dl = LoggerFactory.getLogger("distros." + distroName);
-				downloadManager.submit(metadata, distroName, dl);
+				downloadManager.submit(ref, dl);
 				distroMissingCounts.put(distroName, distroMissingCounts.getOrDefault(distroName, 0) + 1);
 				int distroMissing = distroMissingCounts.get(distroName);
 				if (limitProgress > 0 && distroMissing >= limitProgress) {
@@ -190,6 +442,7 @@ public class DownloadCommand implements Callable<Integer> {
 							"Reached progress limit of {} items for distro {}, skipping remaining files for this distro",
 							limitProgress,
 							distroName);
+					downloadManager.finishDistro(distroName);
 					continue;
 				}
 			} catch (InterruptedProgressException e) {
@@ -197,9 +450,7 @@ public class DownloadCommand implements Callable<Integer> {
 				break;
 			} catch (Exception e) {
 				logger.error(
-						"Failed to read metadata file: {} - {}",
-						Path.of(metadata.getFilename()).getFileName(),
-						e.getMessage());
+						"Failed to read metadata file: {} - {}", ref.metadataFile().getFileName(), e.getMessage());
 			}
 		}
 
@@ -218,6 +469,22 @@ public class DownloadCommand implements Callable<Integer> {
 			Thread.currentThread().interrupt();
 			logger.error("Download manager interrupted while waiting for completion");
 			return 1;
+		} finally {
+			if (journal != null) {
+				if (!Thread.currentThread().isInterrupted()) {
+					journal.finish();
+				}
+				journal.close();
+			}
+		}
+
+		if (statsFile != null) {
+			try {
+				downloadManager.getMetrics().writeJson(statsFile);
+				logger.info("Wrote download metrics to {}", statsFile.toAbsolutePath());
+			} catch (IOException e) {
+				logger.error("Failed to write download metrics to {}: {}", statsFile, e.getMessage());
+			}
 		}
 
 		logger.info("Summary");
@@ -243,12 +510,25 @@ public class DownloadCommand implements Callable<Integer> {
 						});
 			}
 
-			int filesWithMissingChecksums = (int) metadataList.stream()
-					.filter(MetadataUtils::hasMissingChecksums)
-					.count();
-			int filesWithMissingReleaseInfo = (int) metadataList.stream()
-					.filter(m -> MetadataUtils.hasMissingReleaseInfo(m))
-					.count();
+			// Per-host transfer breakdown
+			Map<String, DownloadMetrics.Stats> hostStats = downloadManager.getMetrics().getHosts();
+			if (!hostStats.isEmpty()) {
+				logger.info("Per-Host Transfers");
+				logger.info("==================");
+				hostStats.forEach((host, stats) -> logger.info(
+						"  {}: {} files, {} MB, {} retries, {} failed, p50 {} KB/s",
+						host,
+						stats.getTransfers(),
+						stats.getBytes() / (1024 * 1024),
+						stats.getRetries(),
+						stats.getFailures(),
+						stats.throughputPercentile(50) / 1024));
+			}
+
+			int filesWithMissingChecksums = (int)
+					metadataList.stream().filter(MetadataRef::missingChecksums).count();
+			int filesWithMissingReleaseInfo = (int)
+					metadataList.stream().filter(MetadataRef::missingReleaseInfo).count();
 			logger.info("");
 			logger.info("Files with missing checksums: {}", filesWithMissingChecksums);
 			logger.info("Files with missing release info: {}", filesWithMissingReleaseInfo);
@@ -259,25 +539,155 @@ public class DownloadCommand implements Callable<Integer> {
 		return totalCompleted > 0 ? 0 : 1;
 	}
 
-	static List<JdkMetadata> prioritizeMetadata(List<JdkMetadata> metadataList, boolean randomize) {
-		List<JdkMetadata> missingChecksums = metadataList.stream()
-				.filter(MetadataUtils::hasMissingChecksums)
-				.collect(Collectors.toCollection(ArrayList::new));
-		List<JdkMetadata> missingReleaseInfoOnly = metadataList.stream()
-				.filter(m -> !MetadataUtils.hasMissingChecksums(m) && MetadataUtils.hasMissingReleaseInfo(m))
-				.collect(Collectors.toCollection(ArrayList::new));
+	/**
+	 * Read the metadata of the downloads that a journal says are left to do, skipping the ones
+	 * that are complete by now.
+	 *
+	 * @param distroDir The metadata directory
+	 * @param keys The journal keys of the remaining downloads
+	 * @param scorer The scorer for the priorities of the downloads, or null
+	 * @return References to the metadata of the remaining downloads
+	 */
+	private static List<MetadataRef> readJournalMetadata(Path distroDir, List<String> keys, DownloadScorer scorer) {
+		List<MetadataRef> metadataList = new ArrayList<>();
+		for (String key : keys) {
+			Path metadataFile = distroDir.resolve(key);
+			if (!Files.isRegularFile(metadataFile)) {
+				continue;
+			}
+			try {
+				JdkMetadata metadata = MetadataUtils.readMetadataFile(metadataFile);
+				if (needsDownload(metadata)) {
+					metadataList.add(toRef(metadata, scorer));
+				}
+			} catch (IOException e) {
+				logger.error("Failed to read metadata file: {} - {}", metadataFile, e.getMessage());
+			}
+		}
+		return metadataList;
+	}
+
+	private static MetadataRef toRef(JdkMetadata metadata, DownloadScorer scorer) {
+		return MetadataRef.of(metadata, scorer != null ? scorer.score(metadata) : 0);
+	}
+
+	/**
+	 * Check if the metadata is missing anything that can be obtained by downloading its file.
+	 *
+	 * @param metadata The metadata
+	 * @return true if the file should be downloaded
+	 */
+	static boolean needsDownload(JdkMetadata metadata) {
+		if (!MetadataUtils.hasMissingChecksums(metadata) && !MetadataUtils.hasMissingReleaseInfo(metadata)) {
+			return false;
+		}
+		// Don't try to download Windows EXE files if the only thing we need is
+		// the release info, since we can't extract it from them on any platform!
+		return !"windows".equals(metadata.getOs())
+				|| !"exe".equals(metadata.getFileType())
+				|| MetadataUtils.hasMissingChecksums(metadata);
+	}
+
+	static List<MetadataRef> prioritizeRefs(List<MetadataRef> refs, boolean randomize, DownloadOrder order) {
+		return prioritize(
+				refs, randomize, order, MetadataRef::missingChecksums, MetadataRef::size, MetadataRef::priority);
+	}
+
+	/**
+	 * Order the metadata items for downloading. Items with missing checksums always come before
+	 * items that only miss their release info, within those two groups the items are ordered
+	 * according to the given policy. Items without a known size are placed after the ones with a
+	 * known size when ordering by size, ordering by value puts items with a higher priority first.
+	 *
+	 * @param items The items to order, all of them missing checksums or release info
+	 * @param randomize Whether to shuffle the items (before applying the order)
+	 * @param order The ordering policy
+	 * @param missingChecksums Tells if an item is missing checksums
+	 * @param size Gets the file size of an item
+	 * @param priority Gets the priority of an item
+	 * @return The ordered items
+	 */
+	private static <T> List<T> prioritize(
+			List<T> items,
+			boolean randomize,
+			DownloadOrder order,
+			Predicate<T> missingChecksums,
+			ToLongFunction<T> size,
+			ToIntFunction<T> priority) {
+		List<T> checksumsFirst =
+				items.stream().filter(missingChecksums).collect(Collectors.toCollection(ArrayList::new));
+		List<T> missingReleaseInfoOnly =
+				items.stream().filter(missingChecksums.negate()).collect(Collectors.toCollection(ArrayList::new));
 
 		if (randomize) {
-			Collections.shuffle(missingChecksums);
+			Collections.shuffle(checksumsFirst);
 			Collections.shuffle(missingReleaseInfoOnly);
 		}
+		if (order == DownloadOrder.value) {
+			Comparator<T> byPriority = Comparator.comparingInt(priority).reversed();
+			checksumsFirst.sort(byPriority);
+			missingReleaseInfoOnly.sort(byPriority);
+		} else if (order != DownloadOrder.listed) {
+			Comparator<T> bySize = Comparator.comparingLong(size);
+			if (order == DownloadOrder.largest_first) {
+				bySize = bySize.reversed();
+			}
+			Comparator<T> comparator =
+					Comparator.<T, Boolean>comparing(m -> size.applyAsLong(m) <= 0).thenComparing(bySize);
+			checksumsFirst.sort(comparator);
+			missingReleaseInfoOnly.sort(comparator);
+		}
 
-		List<JdkMetadata> ordered = new ArrayList<>(metadataList.size());
-		ordered.addAll(missingChecksums);
+		List<T> ordered = new ArrayList<>(items.size());
+		ordered.addAll(checksumsFirst);
 		ordered.addAll(missingReleaseInfoOnly);
 		return ordered;
 	}
 
+	/**
+	 * Look up the sizes of the files that don't have a known size yet using HEAD requests, a number
+	 * of them at the same time. Files for which the size can't be determined are left alone.
+	 *
+	 * @param refs The items to look up the sizes for
+	 * @return The items, with the sizes that were found
+	 */
+	private List<MetadataRef> probeMissingSizes(List<MetadataRef> refs) throws InterruptedException {
+		MetadataRef[] result = refs.toArray(new MetadataRef[0]);
+		long unknown = refs.stream().filter(r -> r.size() <= 0).count();
+		if (unknown == 0) {
+			return refs;
+		}
+		logger.info("Probing sizes of {} files", unknown);
+		HttpUtils httpUtils = new HttpUtils();
+		Semaphore permits = new Semaphore(MAX_SIZE_PROBES);
+		AtomicInteger found = new AtomicInteger();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < result.length; i++) {
+				MetadataRef ref = result[i];
+				if (ref.size() > 0) {
+					continue;
+				}
+				int index = i;
+				permits.acquire();
+				executor.submit(() -> {
+					try {
+						long size = httpUtils.probe(ref.url()).size();
+						if (size > 0) {
+							result[index] = ref.withSize(size);
+							found.incrementAndGet();
+						}
+					} catch (Exception e) {
+						logger.debug("Failed to probe size of {}: {}", ref.url(), e.getMessage());
+					} finally {
+						permits.release();
+					}
+				});
+			}
+		}
+		logger.info("Found sizes for {} of {} files", found.get(), unknown);
+		return Arrays.asList(result);
+	}
+
 	/**
 	 * Process the include and exclude file type options to create a filter set.
 	 *
@@ -7,6 +7,7 @@ import dev.jbang.jdkdb.scraper.Scraper;
 import dev.jbang.jdkdb.scraper.ScraperFactory;
 import dev.jbang.jdkdb.scraper.ScraperResult;
 import dev.jbang.jdkdb.util.GitHubUtils;
+import dev.jbang.jdkdb.util.HttpUtils;
 import dev.jbang.jdkdb.util.MetadataUtils;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -116,6 +117,13 @@ public class UpdateCommand implements Callable<Integer> {
 			split = ",")
 	private List<JdkMetadata.FileType> excludeFileTypes;
 
+	@Option(
+			names = {"--hedge-delay"},
+			description = "Send a second request for a page or API response that didn't arrive within this many"
+					+ " milliseconds, and use whichever response arrives first (default: no hedged requests)",
+			defaultValue = "-1")
+	private int hedgeDelay;
+
 	@Override
 	public Integer call() throws Exception {
 		// Handle list command
@@ -140,6 +148,9 @@ public class UpdateCommand implements Callable<Integer> {
 		Set<JdkMetadata.FileType> fileTypeFilter = processFileTypeFilter(includeFileTypes, excludeFileTypes);
 
 		GitHubUtils.setupGitHubToken();
+		if (hedgeDelay > 0) {
+			System.setProperty(HttpUtils.HEDGE_DELAY_PROP, String.valueOf(hedgeDelay));
+		}
 
 		logger.info("Java Metadata Scraper - Update");
 		logger.info("==============================");
@@ -0,0 +1,72 @@
+package dev.jbang.jdkdb.model;
+
+import dev.jbang.jdkdb.util.MetadataUtils;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Compact reference to a metadata file on disk, holding only what is needed to decide about and
+ * to schedule its download. The full metadata is read from the file again when it is needed, so
+ * long work lists don't have to keep all metadata in memory.
+ *
+ * @param distro The distro the metadata belongs to
+ * @param metadataFile The metadata file
+ * @param url The download URL
+ * @param filename The name of the file to download
+ * @param fileType The file type as stored in the metadata
+ * @param size The size of the file in bytes, 0 if unknown
+ * @param priority The priority of the download, higher priorities are downloaded first
+ * @param missingChecksums Whether the metadata is missing checksums
+ * @param missingReleaseInfo Whether the metadata is missing release info
+ */
+public record MetadataRef(
+		String distro,
+		Path metadataFile,
+		String url,
+		String filename,
+		String fileType,
+		long size,
+		int priority,
+		boolean missingChecksums,
+		boolean missingReleaseInfo) {
+
+	/**
+	 * Create a reference to metadata that was read from a file, with a priority for its download.
+	 *
+	 * @param metadata The metadata, see {@link MetadataUtils#readMetadataFile(Path)}
+	 * @param priority The priority of the download, higher priorities are downloaded first
+	 * @return The reference
+	 */
+	public static MetadataRef of(JdkMetadata metadata, int priority) {
+		return new MetadataRef(
+				metadata.getDistro(),
+				metadata.metadataFile(),
+				metadata.getUrl(),
+				metadata.getFilename(),
+				metadata.getFileType(),
+				metadata.getSize(),
+				priority,
+				MetadataUtils.hasMissingChecksums(metadata),
+				MetadataUtils.hasMissingReleaseInfo(metadata));
+	}
+
+	/**
+	 * Get a copy of this reference with a different file size.
+	 *
+	 * @param size The size of the file in bytes
+	 * @return The new reference
+	 */
+	public MetadataRef withSize(long size) {
+		return new MetadataRef(
+				distro, metadataFile, url, filename, fileType, size, priority, missingChecksums, missingReleaseInfo);
+	}
+
+	/**
+	 * Read the full metadata from the file.
+	 *
+	 * @return The metadata
+	 */
+	public JdkMetadata load() throws IOException {
+		return MetadataUtils.readMetadataFile(metadataFile);
+	}
+}
@@ -0,0 +1,166 @@
+package dev.jbang.jdkdb.scraper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the number of concurrent downloads per host in a {@link HostScheduler} using additive
+ * increase, multiplicative decrease. After each full window of completed transfers (one transfer
+ * per slot) the limit of a host grows by one, as long as the total throughput of the host keeps
+ * improving. That throughput is the number of bytes of the transfers in the window divided by the
+ * wall-clock time from the start of the first of them to the end of the last, so transfers that ran
+ * at the same time aren't counted as if they each had the host to themselves. When the host
+ * responds with 429 Too Many Requests or 503 Service Unavailable, or when its response latency
+ * rises well above the lowest latency seen for it, the limit is halved.
+ */
+class AdaptiveHostLimits {
+	private static final Logger logger = LoggerFactory.getLogger(AdaptiveHostLimits.class);
+
+	// The limit is decreased at most once in this period, a burst of errors counts as one signal
+	private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+	// Latency is considered too high above this factor of the lowest latency plus the slack
+	private static final double LATENCY_FACTOR = 4;
+	private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+	// The throughput must improve by at least this factor to grow the limit once more
+	private static final double IMPROVEMENT_FACTOR = 1.05;
+
+	private final HostScheduler<?> scheduler;
+	private final int initialLimit;
+	private final int maxLimit;
+	private final ConcurrentHashMap<String, HostState> hosts = new ConcurrentHashMap<>();
+
+	/**
+	 * Create a new controller for the host limits of a scheduler.
+	 *
+	 * @param scheduler The scheduler whose limits to adjust
+	 * @param initialLimit The limit each host starts with
+	 * @param maxLimit The highest limit a host can get
+	 */
+	AdaptiveHostLimits(HostScheduler<?> scheduler, int initialLimit, int maxLimit) {
+		if (initialLimit < 1 || maxLimit < initialLimit) {
+			throw new IllegalArgumentException("Invalid limits: " + initialLimit + " - " + maxLimit);
+		}
+		this.scheduler = scheduler;
+		this.initialLimit = initialLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Record a response received from a host.
+	 *
+	 * @param host The host that sent the response
+	 * @param statusCode The HTTP status code
+	 * @param latencyNanos The time it took to receive the response headers
+	 */
+	void onResponse(String host, int statusCode, long latencyNanos) {
+		HostState state = state(host);
+		synchronized (state) {
+			if (statusCode == 429 || statusCode == 503) {
+				decrease(host, state, "HTTP " + statusCode);
+			} else if (statusCode >= 200 && statusCode < 400) {
+				if (state.minLatencyNanos == 0 || latencyNanos < state.minLatencyNanos) {
+					state.minLatencyNanos = latencyNanos;
+				} else if (latencyNanos > state.minLatencyNanos * LATENCY_FACTOR + LATENCY_SLACK_NANOS) {
+					decrease(host, state, "latency of " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + "ms");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record a completed transfer from a host.
+	 *
+	 * @param host The host that served the file
+	 * @param bytes The number of bytes transferred
+	 * @param nanos The time the transfer took in nanoseconds
+	 */
+	void onTransfer(String host, long bytes, long nanos) {
+		onTransfer(host, bytes, nanos, System.nanoTime());
+	}
+
+	/**
+	 * Record a completed transfer from a host.
+	 *
+	 * @param host The host that served the file
+	 * @param bytes The number of bytes transferred
+	 * @param nanos The time the transfer took in nanoseconds
+	 * @param endNanos The {@link System#nanoTime()} at which the transfer ended
+	 */
+	void onTransfer(String host, long bytes, long nanos, long endNanos) {
+		HostState state = state(host);
+		synchronized (state) {
+			long start = endNanos - nanos;
+			if (state.transfers == 0 || start - state.windowStart < 0) {
+				state.windowStart = start;
+			}
+			if (state.transfers == 0 || endNanos - state.windowEnd > 0) {
+				state.windowEnd = endNanos;
+			}
+			state.windowBytes += bytes;
+			if (++state.transfers < state.limit) {
+				return;
+			}
+			// A full window of transfers at the current limit
+			double total = state.windowBytes * 1e9 / Math.max(state.windowEnd - state.windowStart, 1);
+			state.transfers = 0;
+			state.windowBytes = 0;
+			if (total > state.windowThroughput * IMPROVEMENT_FACTOR && state.limit < maxLimit) {
+				state.limit++;
+				scheduler.setLimit(host, state.limit);
+				logger.debug("Increased download limit of {} to {}", host, state.limit);
+			}
+			state.windowThroughput = total;
+		}
+	}
+
+	/**
+	 * Get the current limit of a host.
+	 *
+	 * @param host The host
+	 * @return The limit
+	 */
+	int getLimit(String host) {
+		HostState state = state(host);
+		synchronized (state) {
+			return state.limit;
+		}
+	}
+
+	private void decrease(String host, HostState state, String reason) {
+		long now = System.nanoTime();
+		if (state.lastDecrease != 0 && now - state.lastDecrease < DECREASE_INTERVAL_NANOS) {
+			return;
+		}
+		state.lastDecrease = now;
+		state.transfers = 0;
+		state.windowBytes = 0;
+		state.windowThroughput = 0;
+		if (state.limit > 1) {
+			state.limit = Math.max(1, state.limit / 2);
+			scheduler.setLimit(host, state.limit);
+			logger.info("Decreased download limit of {} to {} ({})", host, state.limit, reason);
+		}
+	}
+
+	private HostState state(String host) {
+		return hosts.computeIfAbsent(host, h -> new HostState(initialLimit));
+	}
+
+	/** The adaptive limit of a single host and the measurements it is based on */
+	private static class HostState {
+		private int limit;
+		private int transfers;
+		private long windowStart;
+		private long windowEnd;
+		private long windowBytes;
+		private double windowThroughput;
+		private long minLatencyNanos;
+		private long lastDecrease;
+
+		HostState(int limit) {
+			this.limit = limit;
+		}
+	}
+}
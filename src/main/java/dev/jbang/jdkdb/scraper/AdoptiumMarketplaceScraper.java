@@ -181,7 +181,7 @@ public abstract class AdoptiumMarketplaceScraper extends BaseScraper {
 		List<String> features = new ArrayList<>(additionalFeatures);
 
 		// Create metadata using builder
-		return JdkMetadata.create()
+		JdkMetadata metadata = JdkMetadata.create()
 				.setVendor(getVendorName())
 				.setDistro(getDistroName())
 				.setReleaseType("ga")
@@ -195,6 +195,12 @@ public abstract class AdoptiumMarketplaceScraper extends BaseScraper {
 				.setFeatures(features)
 				.setUrl(url)
 				.setFilename(filename);
+		// The size is used to order the downloads
+		long size = packageNode.path("size").asLong();
+		if (size > 0) {
+			metadata.setSize(size);
+		}
+		return metadata;
 	}
 
 	/** Helper to normalize version for OpenJ9 */
@@ -1,18 +1,28 @@
 package dev.jbang.jdkdb.scraper;
 
 import dev.jbang.jdkdb.model.JdkMetadata;
+import dev.jbang.jdkdb.model.MetadataRef;
 import dev.jbang.jdkdb.util.ArchiveUtils;
+import dev.jbang.jdkdb.util.ArtifactCache;
+import dev.jbang.jdkdb.util.FileUtils;
 import dev.jbang.jdkdb.util.HashUtils;
 import dev.jbang.jdkdb.util.HttpUtils;
 import dev.jbang.jdkdb.util.MetadataUtils;
+import dev.jbang.jdkdb.util.RemoteReleaseExtractor;
+import dev.jbang.jdkdb.util.StreamingReleaseExtractor;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,9 +31,23 @@ import org.slf4j.LoggerFactory;
  * Receives JdkMetadata from scrapers, queues them, and downloads files in parallel worker threads.
  */
 public class DefaultDownloadManager implements DownloadManager {
-	private final BlockingQueue<DownloadTask> downloadQueue;
-	private final ExecutorService executorService;
+	private final HostScheduler<DownloadTask> scheduler;
+	private ExecutorService executorService;
+	private final int threadCount;
+	private boolean virtualThreads;
+	private Path workDir;
+	private int maxSegments;
+	private ArtifactCache artifactCache;
+	private AdaptiveHostLimits hostLimits;
+	private DiskBudget diskBudget;
+	private DownloadJournal journal;
+	private DownloadScorer scorer;
+	private int hashThreads = Runtime.getRuntime().availableProcessors();
+	private int extractThreads = DEFAULT_EXTRACT_THREADS;
+	private PipelineStage hashStage;
+	private PipelineStage extractStage;
 	private final HttpUtils httpUtils;
+	private final RemoteReleaseExtractor releaseExtractor;
 	private final AtomicInteger activeDownloads;
 	private final AtomicInteger completedDownloads;
 	private final AtomicInteger failedDownloads;
@@ -33,14 +57,33 @@ public class DefaultDownloadManager implements DownloadManager {
 	private volatile boolean shutdownRequested;
 	private final int maxDownloadsPerHost;
 	private final int limitTotal;
-	private final ConcurrentHashMap<String, AtomicInteger> activeDownloadsPerHost;
 	private final Set<JdkMetadata.FileType> fileTypeFilter;
 	private final ConcurrentHashMap<String, AtomicInteger> submittedPerDistro;
 	private final ConcurrentHashMap<String, AtomicInteger> completedPerDistro;
 	private final ConcurrentHashMap<String, AtomicInteger> failedPerDistro;
+	private final DownloadMetrics metrics = new DownloadMetrics();
+	// Downloads that were submitted but didn't finish yet, awaitCompletion() waits for this to reach 0
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final ReentrantLock completionLock = new ReentrantLock();
+	private final Condition allDone = completionLock.newCondition();
+	private final List<Consumer<DistroStats>> distroListeners = new CopyOnWriteArrayList<>();
+	private final Set<String> finishedDistros = ConcurrentHashMap.newKeySet();
+	private final Set<String> notifiedDistros = ConcurrentHashMap.newKeySet();
+	// Queued or running downloads by URL, used to merge downloads of the same URL
+	private final ConcurrentHashMap<String, DownloadTask> inFlight = new ConcurrentHashMap<>();
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultDownloadManager.class);
 
+	// Files are only split in segments if each segment gets at least this many bytes
+	private static final long MIN_SEGMENT_SIZE = 32L * 1024 * 1024;
+	// Disk space reserved for a download whose size isn't known
+	private static final long DEFAULT_DOWNLOAD_SIZE = 256L * 1024 * 1024;
+	// Extraction decompresses most of an archive, which takes a lot of CPU, so only a few run at the
+	// same time
+	private static final int DEFAULT_EXTRACT_THREADS = 2;
+	// The number of items that can wait for each thread of a pipeline stage
+	private static final int STAGE_QUEUE_PER_THREAD = 2;
+
 	/**
 	 * Create a new DefaultDownloadManager.
 	 *
@@ -58,9 +101,13 @@ public class DefaultDownloadManager implements DownloadManager {
 			int maxDownloadsPerHost,
 			int limitTotal,
 			Set<JdkMetadata.FileType> fileTypeFilter) {
-		this.downloadQueue = new LinkedBlockingQueue<>();
-		this.executorService = Executors.newFixedThreadPool(threadCount);
-		this.httpUtils = new HttpUtils();
+		// Tasks with a higher priority are handed out first
+		this.scheduler = new HostScheduler<>(
+				maxDownloadsPerHost,
+				Comparator.comparingInt((DownloadTask task) -> task.priority).reversed());
+		this.threadCount = threadCount;
+		this.httpUtils = new HttpUtils().setRetryListener(this::recordRetry).setResponseListener(this::recordResponse);
+		this.releaseExtractor = new RemoteReleaseExtractor(httpUtils);
 		this.activeDownloads = new AtomicInteger(0);
 		this.completedDownloads = new AtomicInteger(0);
 		this.failedDownloads = new AtomicInteger(0);
@@ -69,26 +116,254 @@ public class DefaultDownloadManager implements DownloadManager {
 		this.checksumDir = checksumDir;
 		this.shutdownRequested = false;
 		this.maxDownloadsPerHost = maxDownloadsPerHost;
+		this.maxSegments = maxDownloadsPerHost;
 		this.limitTotal = limitTotal;
-		this.activeDownloadsPerHost = new ConcurrentHashMap<>();
 		this.fileTypeFilter = fileTypeFilter;
 		this.submittedPerDistro = new ConcurrentHashMap<>();
 		this.completedPerDistro = new ConcurrentHashMap<>();
 		this.failedPerDistro = new ConcurrentHashMap<>();
 	}
 
+	/**
+	 * Run each download on its own virtual thread instead of using a fixed pool of platform
+	 * threads. The thread count passed to the constructor is then only used as the global limit
+	 * on the number of downloads in progress. Must be called before {@link #start()}.
+	 *
+	 * @param virtualThreads true to use virtual threads
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setVirtualThreads(boolean virtualThreads) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	/**
+	 * Keep the files that are being downloaded in the given directory instead of in temporary
+	 * files. Downloads that fail are left there, together with a journal, so a later run can
+	 * resume them instead of starting from scratch. Must be called before {@link #start()}.
+	 *
+	 * @param workDir The directory for partial downloads, or null to use temporary files
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setWorkDir(Path workDir) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.workDir = workDir;
+		return this;
+	}
+
+	/**
+	 * Set the maximum number of connections used to download a single large file. Extra
+	 * connections are only used when the server supports range requests and when no other
+	 * downloads for the same host are waiting, and they count against the per-host limit. Must be
+	 * called before {@link #start()}.
+	 *
+	 * @param maxSegments Maximum number of connections per file (default: the per-host limit), 1
+	 *     to always download files over a single connection
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setMaxSegments(int maxSegments) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.maxSegments = maxSegments;
+		return this;
+	}
+
+	/**
+	 * Use a local artifact cache, so files that were downloaded before (and that didn't change on
+	 * the server since then) don't have to be downloaded again. Must be called before {@link
+	 * #start()}.
+	 *
+	 * @param artifactCache The cache to use, or null to disable caching
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setArtifactCache(ArtifactCache artifactCache) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.artifactCache = artifactCache;
+		return this;
+	}
+
+	/**
+	 * Limit the disk space used by downloads in progress. Before starting a download the expected
+	 * size of the file is reserved, waiting for other downloads to finish when that would exceed the
+	 * budget. Must be called before {@link #start()}.
+	 *
+	 * @param maxBytes Maximum number of bytes used by downloads in progress, 0 or less for no limit
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setDiskBudget(long maxBytes) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.diskBudget = maxBytes > 0 ? new DiskBudget(maxBytes) : null;
+		return this;
+	}
+
+	/**
+	 * Record every download that is planned, started, completed or that failed in a journal, so
+	 * an interrupted run can be resumed. Must be called before {@link #start()}.
+	 *
+	 * @param journal The journal to write to, or null to not keep a journal
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setJournal(DownloadJournal journal) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.journal = journal;
+		return this;
+	}
+
+	/**
+	 * Score downloads that are submitted as metadata, downloads with a higher score are handed out
+	 * first. Downloads submitted as a {@link MetadataRef} use the priority of the reference instead.
+	 * Without a scorer downloads are handed out in the order they were submitted. Must be called
+	 * before {@link #start()}.
+	 *
+	 * @param scorer The scorer to use, or null to not prioritize downloads
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setScorer(DownloadScorer scorer) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.scorer = scorer;
+		return this;
+	}
+
+	/**
+	 * Set the number of threads that compute checksums of files that couldn't be hashed while
+	 * they were being downloaded (files downloaded in segments and files from the artifact cache).
+	 * Must be called before {@link #start()}.
+	 *
+	 * @param hashThreads The number of hashing threads (default: the number of processors)
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setHashThreads(int hashThreads) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.hashThreads = hashThreads;
+		return this;
+	}
+
+	/**
+	 * Set the number of threads that extract the release info from archives that have to be
+	 * decompressed almost in full to get to it, like PKG files and DMG images that hold one.
+	 * Must be called before {@link #start()}.
+	 *
+	 * @param extractThreads The number of extraction threads (default: 2)
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setExtractThreads(int extractThreads) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.extractThreads = extractThreads;
+		return this;
+	}
+
+	/**
+	 * Let the number of concurrent downloads per host adapt to how the host behaves. Each host
+	 * starts with the per-host limit passed to the constructor, which grows while the throughput
+	 * from the host keeps improving and is halved when the host responds with 429 or 503 or its
+	 * latency rises. Must be called before {@link #start()}.
+	 *
+	 * @param maxLimit The highest number of concurrent downloads a host can get, a value not above
+	 *     the per-host limit passed to the constructor disables adaptation
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setAdaptiveHostLimit(int maxLimit) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		this.hostLimits =
+				maxLimit > maxDownloadsPerHost ? new AdaptiveHostLimits(scheduler, maxDownloadsPerHost, maxLimit) : null;
+		return this;
+	}
+
+	/**
+	 * Abort downloads whose throughput stays below a minimum for a whole window, so a transfer
+	 * that crawls along doesn't hold a thread and a host slot for a long time. An aborted download
+	 * is retried and continues from where it stopped. Must be called before {@link #start()}.
+	 *
+	 * @param minBytesPerSecond The lowest acceptable throughput, 0 to disable stall detection
+	 * @param window The period over which the throughput is measured
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setStallDetection(long minBytesPerSecond, Duration window) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		httpUtils.setStallDetection(minBytesPerSecond, window);
+		return this;
+	}
+
+	/**
+	 * Set the weights of distros. Distros take turns starting downloads, a distro gets a share of
+	 * the downloads in proportion to its weight while it has downloads waiting. Distros that are
+	 * not in the map have a weight of 1. Must be called before {@link #start()}.
+	 *
+	 * @param weights The weight per distro name, each at least 1
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setDistroWeights(Map<String, Integer> weights) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		weights.forEach(scheduler::setGroupWeight);
+		return this;
+	}
+
+	/**
+	 * Set the maximum number of concurrent downloads of distros, on top of the per-host limits.
+	 * Distros that are not in the map are only limited by the hosts they download from. Must be
+	 * called before {@link #start()}.
+	 *
+	 * @param limits The maximum number of concurrent downloads per distro name, each at least 1
+	 * @return this download manager
+	 */
+	public DefaultDownloadManager setDistroLimits(Map<String, Integer> limits) {
+		if (executorService != null) {
+			throw new IllegalStateException("DownloadManager has already been started");
+		}
+		limits.forEach(scheduler::setGroupLimit);
+		return this;
+	}
+
 	/**
 	 * Start the download worker threads. Should be called once after construction.
 	 */
 	@Override
 	public void start() {
-		logger.info(
-				"Starting DownloadManager with {} threads, max {} downloads per host",
-				((ThreadPoolExecutor) executorService).getCorePoolSize(),
-				maxDownloadsPerHost);
-		int threadCount = ((ThreadPoolExecutor) executorService).getCorePoolSize();
-		for (int i = 0; i < threadCount; i++) {
-			executorService.submit(this::downloadWorker);
+		// Downloads are processed in stages: the network transfer runs on the download threads,
+		// hashing and extraction are handed off to their own pools so the download threads can
+		// start on the next file
+		hashStage = new PipelineStage("hash", hashThreads, hashThreads * STAGE_QUEUE_PER_THREAD);
+		extractStage = new PipelineStage("extract", extractThreads, extractThreads * STAGE_QUEUE_PER_THREAD);
+		if (virtualThreads) {
+			logger.info(
+					"Starting DownloadManager with virtual threads, max {} downloads, max {} downloads per host",
+					threadCount,
+					maxDownloadsPerHost);
+			executorService = Executors.newVirtualThreadPerTaskExecutor();
+			executorService.submit(this::downloadDispatcher);
+		} else {
+			logger.info(
+					"Starting DownloadManager with {} threads, max {} downloads per host",
+					threadCount,
+					maxDownloadsPerHost);
+			executorService = Executors.newFixedThreadPool(threadCount);
+			for (int i = 0; i < threadCount; i++) {
+				executorService.submit(this::downloadWorker);
+			}
 		}
 	}
 
@@ -98,33 +373,54 @@ public class DefaultDownloadManager implements DownloadManager {
 	 * @param metadata The JDK metadata containing the URL to download
 	 * @param distro The distro of the JDK
 	 * @param downloadLogger The logger for progress reporting
+	 * @return A future that completes with the result of the download
+	 */
+	@Override
+	public CompletableFuture<DownloadResult> submit(JdkMetadata metadata, String distro, Logger downloadLogger) {
+		int priority = scorer != null ? scorer.score(metadata) : 0;
+		return submit(new DownloadTask(metadata, distro, priority, downloadLogger), metadata.getFileType());
+	}
+
+	/**
+	 * Submit a reference to a metadata file for download. Only the reference is queued, the
+	 * metadata file is read (and validated) when a worker starts the download, and it is released
+	 * again once the download has finished.
+	 *
+	 * @param ref The reference to the metadata file
+	 * @param downloadLogger The logger for progress reporting
+	 * @return A future that completes with the result of the download
 	 */
 	@Override
-	public void submit(JdkMetadata metadata, String distro, Logger downloadLogger) {
+	public CompletableFuture<DownloadResult> submit(MetadataRef ref, Logger downloadLogger) {
+		return submit(new DownloadTask(ref, downloadLogger), ref.fileType());
+	}
+
+	private CompletableFuture<DownloadResult> submit(DownloadTask task, String fileType) {
 		if (shutdownRequested) {
 			throw new IllegalStateException("Cannot submit downloads after shutdown requested");
 		}
-		if (metadata.getUrl() == null || metadata.getFilename() == null) {
-			return;
+		if (task.url == null || task.filename == null) {
+			return CompletableFuture.completedFuture(null);
 		}
+		String distro = task.distro;
 		// Check file type filter
-		if (fileTypeFilter != null && metadata.getFileType() != null) {
+		if (fileTypeFilter != null && fileType != null) {
 			try {
-				if (!fileTypeFilter.contains(metadata.fileTypeEnum())) {
+				if (!fileTypeFilter.contains(JdkMetadata.FileType.valueOf(fileType.replace(".", "_")))) {
 					logger.debug(
 							"Ignoring download submission for {} [{}] - file type {} not in filter",
-							metadata.getFilename(),
+							task.filename,
 							distro,
-							metadata.getFileType());
-					return;
+							fileType);
+					return CompletableFuture.completedFuture(null);
 				}
 			} catch (IllegalArgumentException e) {
 				logger.debug(
 						"Ignoring download submission for {} [{}] - unknown file type: {}",
-						metadata.getFilename(),
+						task.filename,
 						distro,
-						metadata.getFileType());
-				return;
+						fileType);
+				return CompletableFuture.completedFuture(null);
 			}
 		}
 		// Check if we've reached the total download limit
@@ -136,20 +432,64 @@ public class DefaultDownloadManager implements DownloadManager {
 		}
 		// Track submitted downloads per distro
 		submittedPerDistro.computeIfAbsent(distro, k -> new AtomicInteger(0)).incrementAndGet();
-		try {
-			downloadQueue.put(new DownloadTask(metadata, distro, downloadLogger));
-			downloadLogger.info("Queued download for " + metadata.getFilename());
-			logger.debug("Submitted download for {} - {}", distro, metadata.getFilename());
-			logger.info(
-					"Downloads: {} queued, {} active, {} completed, {} failed",
-					downloadQueue.size(),
-					activeDownloads.get(),
-					completedDownloads.get(),
-					failedDownloads.get());
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			throw new RuntimeException("Interrupted while submitting download", e);
+		outstanding.incrementAndGet();
+		if (task.host == null) {
+			// Invalid URL, log failure and skip
+			failed(task, new IOException("Invalid URL: " + task.url));
+			return task.future;
 		}
+		journal(DownloadJournal.Event.PLANNED, task, null);
+		schedule(task);
+		return task.future;
+	}
+
+	/**
+	 * Queue a task, or merge it with a queued or running download of the same URL if there is
+	 * one.
+	 */
+	private void schedule(DownloadTask task) {
+		DownloadTask leader = inFlight.compute(task.url, (url, current) -> {
+			if (current == null) {
+				return task;
+			}
+			current.followers.add(task);
+			return current;
+		});
+		if (leader != task) {
+			task.downloadLogger.info(
+					"Merged download for " + task.filename + " with identical download for " + leader.distro);
+			logger.debug("Merged download for {} - {} with {}", task.distro, task.filename, leader.distro);
+			return;
+		}
+		// Each distro gets its own turn, so distros with a large backlog don't hold up the others
+		scheduler.put(task.distro, task.host, task);
+		task.downloadLogger.info("Queued download for " + task.filename);
+		logger.debug("Submitted download for {} - {}", task.distro, task.filename);
+		logProgress();
+	}
+
+	/**
+	 * Register a listener that gets called once all downloads of a distro have finished. It is
+	 * called on the thread that finished the last download of the distro (or that called {@link
+	 * #finishDistro(String)} or {@link #shutdown()}), so it should not block for long.
+	 *
+	 * @param listener The listener, receiving the final statistics of the distro
+	 */
+	@Override
+	public void addDistroListener(Consumer<DistroStats> listener) {
+		distroListeners.add(listener);
+	}
+
+	/**
+	 * Signal that no more downloads will be submitted for the given distro. Its listeners get
+	 * called as soon as the downloads that were submitted for it have finished.
+	 *
+	 * @param distro The distro name
+	 */
+	@Override
+	public void finishDistro(String distro) {
+		finishedDistros.add(distro);
+		checkDistroDone(distro);
 	}
 
 	/**
@@ -159,6 +499,14 @@ public class DefaultDownloadManager implements DownloadManager {
 	public void shutdown() {
 		logger.info("Shutting down DownloadManager");
 		shutdownRequested = true;
+		// Running downloads may still queue their followers, so the workers are only stopped
+		// once nothing is outstanding anymore
+		if (outstanding.get() == 0) {
+			scheduler.close();
+		}
+		for (String distro : submittedPerDistro.keySet()) {
+			finishDistro(distro);
+		}
 	}
 
 	/**
@@ -169,14 +517,23 @@ public class DefaultDownloadManager implements DownloadManager {
 	 */
 	@Override
 	public void awaitCompletion() throws InterruptedException {
-		// Wait for queue to be empty and all downloads to complete
-		while (!downloadQueue.isEmpty() || activeDownloads.get() > 0) {
-			Thread.sleep(100);
+		// Wait for all submitted downloads (including merged ones) to complete
+		completionLock.lock();
+		try {
+			while (outstanding.get() > 0) {
+				allDone.await();
+			}
+		} finally {
+			completionLock.unlock();
 		}
 
 		// Shutdown executor and wait for all threads to finish
 		executorService.shutdown();
 		executorService.awaitTermination(1, TimeUnit.HOURS);
+		hashStage.shutdown();
+		extractStage.shutdown();
+		hashStage.awaitTermination(1, TimeUnit.HOURS);
+		extractStage.awaitTermination(1, TimeUnit.HOURS);
 	}
 
 	/**
@@ -214,173 +571,619 @@ public class DefaultDownloadManager implements DownloadManager {
 	 * @return Number of queued downloads
 	 */
 	public int getQueuedCount() {
-		return downloadQueue.size();
+		return scheduler.pendingCount();
+	}
+
+	/**
+	 * Get the number of downloaded files waiting to be hashed.
+	 *
+	 * @return Number of files in the hashing queue
+	 */
+	public int getHashQueueDepth() {
+		return hashStage != null ? hashStage.queueDepth() : 0;
+	}
+
+	/**
+	 * Get the number of downloaded files waiting for their release info to be extracted.
+	 *
+	 * @return Number of files in the extraction queue
+	 */
+	public int getExtractQueueDepth() {
+		return extractStage != null ? extractStage.queueDepth() : 0;
 	}
 
 	/** Worker thread that processes downloads from the queue */
 	private void downloadWorker() {
-		while (!shutdownRequested || !downloadQueue.isEmpty()) {
-			try {
-				DownloadTask task = takeNewDownloadTask();
-				if (task != null) {
-					setupNewDownload(task);
-					logger.info(
-							"Downloads: {} queued, {} active, {} completed, {} failed",
-							downloadQueue.size(),
-							activeDownloads.get(),
-							completedDownloads.get(),
-							failedDownloads.get());
+		try {
+			DownloadTask task;
+			// Blocks until there is a task for a host with a free slot, the
+			// slot for that host has been acquired when the task is returned
+			while ((task = scheduler.take()) != null) {
+				try {
+					runDownload(task);
+				} finally {
+					scheduler.release(task.distro, task.host);
 				}
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				break;
+				logProgress();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
-	private DownloadTask takeNewDownloadTask() throws InterruptedException {
-		return downloadQueue.poll(500, TimeUnit.MILLISECONDS);
-	}
-
-	private void setupNewDownload(DownloadTask task) throws InterruptedException {
-		// Extract host from URL
-		String host = extractHost(task.metadata.getUrl());
-		if (host == null) {
-			// Invalid URL, log failure and skip
-			failedDownloads.incrementAndGet();
-			task.downloadLogger().error("Invalid URL for {}: {}", task.metadata.getFilename(), task.metadata.getUrl());
-			logger.debug("Failed download for {} [{}] - invalid URL", task.metadata.getFilename(), task.distro);
-			return;
+	/**
+	 * Dispatcher for virtual thread mode that starts a new virtual thread for each task as soon as
+	 * both a global permit and a slot for the task's host are available.
+	 */
+	private void downloadDispatcher() {
+		Semaphore permits = new Semaphore(threadCount);
+		try {
+			while (true) {
+				permits.acquire();
+				DownloadTask task = scheduler.take();
+				if (task == null) {
+					break;
+				}
+				executorService.submit(() -> {
+					try {
+						runDownload(task);
+					} finally {
+						scheduler.release(task.distro, task.host);
+						permits.release();
+					}
+					logProgress();
+				});
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
+	}
 
-		// Check if we can download from this host
-		AtomicInteger hostCount = activeDownloadsPerHost.computeIfAbsent(host, k -> new AtomicInteger(0));
-
-		if (!tryAcquireHostSlot(hostCount)) {
-			// Host limit reached, put task back at end of queue and try next one
-			downloadQueue.offer(task);
-			// Small sleep to avoid busy waiting when all hosts are at limit
-			Thread.sleep(100);
-			return;
-		}
+	private void logProgress() {
+		logger.info(
+				"Downloads: {} queued, {} active, {} completed, {} failed ({} waiting for hashing, {} waiting for"
+						+ " extraction)",
+				scheduler.pendingCount(),
+				activeDownloads.get(),
+				completedDownloads.get(),
+				failedDownloads.get(),
+				getHashQueueDepth(),
+				getExtractQueueDepth());
+	}
 
-		// Host slot acquired, proceed with download
+	/**
+	 * Run the network stage of a download and hand it off to the later stages, which call {@link
+	 * #downloadDone} once the download has been processed.
+	 */
+	private void runDownload(DownloadTask task) {
 		activeDownloads.incrementAndGet();
+		journal(DownloadJournal.Event.STARTED, task, null);
+		CompletableFuture<DownloadOutcome> outcome;
 		try {
-			processDownload(task);
-			completedDownloads.incrementAndGet();
-			completedPerDistro
-					.computeIfAbsent(task.distro, k -> new AtomicInteger(0))
-					.incrementAndGet();
-			logger.debug("Succeeded download for {} [{}]", task.metadata.getFilename(), task.distro);
+			outcome = processDownload(task);
 		} catch (Exception e) {
-			failedDownloads.incrementAndGet();
-			failedPerDistro
-					.computeIfAbsent(task.distro, k -> new AtomicInteger(0))
-					.incrementAndGet();
-			task.downloadLogger().error("Failed to download {}", task.metadata.getFilename(), e);
-			logger.debug("Failed download for {} [{}]", task.metadata.getFilename(), task.distro);
+			outcome = CompletableFuture.failedFuture(e);
+		}
+		outcome.whenComplete((result, e) -> downloadDone(task, result, e));
+	}
+
+	private void downloadDone(DownloadTask task, DownloadOutcome outcome, Throwable error) {
+		Exception failure = null;
+		try {
+			if (error != null) {
+				failure = unwrap(error);
+				failed(task, failure);
+			} else {
+				succeeded(task, outcome != null ? outcome.result() : null);
+			}
 		} finally {
 			activeDownloads.decrementAndGet();
-			// Decrement host counter
-			int newCount = hostCount.decrementAndGet();
-			// Clean up if no more active downloads for this host
-			if (newCount == 0) {
-				activeDownloadsPerHost.remove(host, hostCount);
+		}
+
+		// Give the downloads for the same URL that were merged into this one the same result
+		for (DownloadTask follower : detachFollowers(task)) {
+			if (failure != null) {
+				failed(follower, failure);
+			} else if (outcome == null) {
+				// Nothing was downloaded for the original task, so queue this one again to
+				// download it on its own, in a slot for its host like any other download
+				schedule(follower);
+			} else {
+				try {
+					saveResults(follower, outcome);
+					succeeded(follower, outcome.result());
+				} catch (Exception e) {
+					failed(follower, e);
+				}
 			}
 		}
 	}
 
-	private boolean tryAcquireHostSlot(AtomicInteger hostCount) {
-		while (true) {
-			int current = hostCount.get();
-			if (current >= maxDownloadsPerHost) {
-				return false;
+	/** Get the original exception from the exception a pipeline stage completed with */
+	private static Exception unwrap(Throwable error) {
+		while (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error instanceof Exception e ? e : new ExecutionException(error);
+	}
+
+	private void succeeded(DownloadTask task, DownloadResult result) {
+		completedDownloads.incrementAndGet();
+		completedPerDistro.computeIfAbsent(task.distro, k -> new AtomicInteger(0)).incrementAndGet();
+		logger.debug("Succeeded download for {} [{}]", task.filename, task.distro);
+		journal(DownloadJournal.Event.COMPLETED, task, null);
+		task.future.complete(result);
+		finished(task);
+	}
+
+	private void failed(DownloadTask task, Exception e) {
+		metrics.recordFailure(task.host, task.distro);
+		failedDownloads.incrementAndGet();
+		failedPerDistro.computeIfAbsent(task.distro, k -> new AtomicInteger(0)).incrementAndGet();
+		task.downloadLogger.error("Failed to download {}", task.filename, e);
+		logger.debug("Failed download for {} [{}]", task.filename, task.distro);
+		boolean permanent = task.host == null || HttpUtils.isPermanentFailure(e);
+		journal(
+				permanent ? DownloadJournal.Event.FAILED_PERMANENTLY : DownloadJournal.Event.FAILED,
+				task,
+				String.valueOf(e.getMessage()));
+		task.future.completeExceptionally(e);
+		finished(task);
+	}
+
+	private void journal(DownloadJournal.Event event, DownloadTask task, String reason) {
+		if (journal != null) {
+			journal.record(event, DownloadJournal.key(task.distro, task.metadataFile), reason);
+		}
+	}
+
+	/** Account for a task that has finished, waking up waiters and listeners when appropriate */
+	private void finished(DownloadTask task) {
+		task.release();
+		checkDistroDone(task.distro);
+		if (outstanding.decrementAndGet() == 0) {
+			if (shutdownRequested) {
+				scheduler.close();
+			}
+			completionLock.lock();
+			try {
+				allDone.signalAll();
+			} finally {
+				completionLock.unlock();
 			}
-			if (hostCount.compareAndSet(current, current + 1)) {
-				return true;
+		}
+	}
+
+	/** Call the distro listeners if the distro is finished and has no downloads left */
+	private void checkDistroDone(String distro) {
+		if (!finishedDistros.contains(distro)) {
+			return;
+		}
+		DistroStats stats = getDistroStats().getOrDefault(distro, new DistroStats(distro, 0, 0, 0));
+		if (stats.pending() == 0 && notifiedDistros.add(distro)) {
+			for (Consumer<DistroStats> listener : distroListeners) {
+				try {
+					listener.accept(stats);
+				} catch (RuntimeException e) {
+					logger.warn("Distro listener failed for {}", distro, e);
+				}
 			}
 		}
 	}
 
-	/** Process a single download task */
-	private void processDownload(DownloadTask task) throws IOException, InterruptedException {
-		JdkMetadata metadata = task.metadata;
+	/**
+	 * Stop accepting new downloads for the URL of the given task as its followers and return the
+	 * ones that were merged into it. Submissions for the URL after this start a new download.
+	 */
+	private List<DownloadTask> detachFollowers(DownloadTask task) {
+		inFlight.computeIfPresent(task.url, (url, leader) -> leader == task ? null : leader);
+		// Followers are only added inside compute() for the same key, so the list can't change anymore
+		return task.followers;
+	}
+
+	/**
+	 * Process a single download task
+	 *
+	 * @return A future for the results of the download, completing with null if nothing was
+	 *     downloaded
+	 */
+	private CompletableFuture<DownloadOutcome> processDownload(DownloadTask task)
+			throws IOException, InterruptedException {
+		JdkMetadata metadata = task.metadata();
 		String filename = metadata.getFilename();
 		String url = metadata.getUrl();
 
 		if (filename == null || url == null) {
-			return;
+			return CompletableFuture.completedFuture(null);
 		}
 
 		if (!metadata.isValid()) {
-			task.downloadLogger().warn("Skipping invalid metadata for: {}", filename);
-			return;
+			task.downloadLogger.warn("Skipping invalid metadata for: {}", filename);
+			return CompletableFuture.completedFuture(null);
 		}
 
-		Path tempFile = Files.createTempFile("jdk-metadata-", "-" + filename);
+		// When only the release info is missing we can often get it without the whole file
+		if (!MetadataUtils.hasMissingChecksums(metadata) && MetadataUtils.hasMissingReleaseInfo(metadata)) {
+			DownloadOutcome outcome = readReleaseInfoRemotely(task);
+			if (outcome != null) {
+				return CompletableFuture.completedFuture(outcome);
+			}
+		}
 
+		// The disk space stays reserved until the last stage is done with the file
+		DiskBudget.Reservation reservation = reserveDisk(task);
 		try {
-			task.downloadLogger().info("Downloading " + filename);
-			httpUtils.downloadFile(url, tempFile);
-
-			long size = Files.size(tempFile);
-
-			// Compute hashes
-			task.downloadLogger().info("Computing hashes for " + filename);
-			String md5 = HashUtils.computeHash(tempFile, "MD5");
-			String sha1 = HashUtils.computeHash(tempFile, "SHA-1");
-			String sha256 = HashUtils.computeHash(tempFile, "SHA-256");
-			String sha512 = HashUtils.computeHash(tempFile, "SHA-512");
-
-			// Save checksum files
-			Path distroChecksumDir = checksumDir.resolve(task.distro);
-			Files.createDirectories(distroChecksumDir);
-			saveChecksumFile(distroChecksumDir, filename, "md5", md5);
-			saveChecksumFile(distroChecksumDir, filename, "sha1", sha1);
-			saveChecksumFile(distroChecksumDir, filename, "sha256", sha256);
-			saveChecksumFile(distroChecksumDir, filename, "sha512", sha512);
-
-			// Update metadata with download results
-			DownloadResult result = new DownloadResult(md5, sha1, sha256, sha512, size);
-			metadata.download(result);
-
-			// Extract and parse release info from archive
-			try {
-				task.downloadLogger().info("Extracting release info from " + filename);
-				Map<String, String> releaseInfo = ArchiveUtils.extractReleaseInfo(tempFile, filename);
-				if (releaseInfo != null && !releaseInfo.isEmpty()) {
-					metadata.setReleaseInfo(releaseInfo);
-					task.downloadLogger()
-							.debug("Extracted release info with " + releaseInfo.size() + " properties from "
-									+ filename);
-				} else {
-					metadata.setReleaseInfo(Collections.emptyMap());
-					task.downloadLogger().debug("No release info found in " + filename);
+			return downloadAndProcess(task).whenComplete((outcome, e) -> {
+				if (reservation != null) {
+					reservation.close();
 				}
-			} catch (Exception e) {
-				// Don't fail the download if release extraction fails
-				task.downloadLogger().warn("Failed to extract release info from " + filename, e);
+			});
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			if (reservation != null) {
+				reservation.close();
 			}
+			throw e;
+		}
+	}
 
-			// Save metadata file
-			Path distroMetadataDir = metadataDir.resolve(task.distro);
-			Files.createDirectories(distroMetadataDir);
-			Path metadataFile = distroMetadataDir.resolve(metadata.metadataFile());
-			MetadataUtils.saveMetadataFile(metadataFile, metadata);
+	/**
+	 * Read the release info of a task's file from the server with range requests (or a truncated
+	 * stream) instead of downloading the whole file. The checksums are taken from the existing
+	 * metadata.
+	 *
+	 * @return The results, or null if the file has to be downloaded after all
+	 */
+	private DownloadOutcome readReleaseInfoRemotely(DownloadTask task) throws IOException, InterruptedException {
+		JdkMetadata metadata = task.metadata();
+		JdkMetadata.FileType fileType = ArchiveUtils.getFileType(task.filename);
+		if (!RemoteReleaseExtractor.supports(fileType)) {
+			return null;
+		}
+		long start = System.nanoTime();
+		RemoteReleaseExtractor.Result extracted;
+		try {
+			extracted = releaseExtractor.extract(task.url, fileType);
+		} catch (IOException | RuntimeException e) {
+			task.downloadLogger.debug("Could not read release info of {} remotely: {}", task.filename, e.getMessage());
+			return null;
+		}
+		if (extracted == null) {
+			return null;
+		}
+		// Partial transfers only go into the metrics, they would skew the adaptive host limits
+		metrics.recordTransfer(task.host, task.distro, extracted.bytesRead(), System.nanoTime() - start);
+		task.downloadLogger.info("Read release info of " + task.filename + " from " + extracted.bytesRead() / 1024
+				+ " KB instead of downloading it");
+
+		DownloadResult result = new DownloadResult(
+				metadata.getMd5(), metadata.getSha1(), metadata.getSha256(), metadata.getSha512(), metadata.getSize());
+		Map<String, String> releaseInfo =
+				extracted.releaseInfo() != null ? extracted.releaseInfo() : Collections.emptyMap();
+		DownloadOutcome outcome =
+				new DownloadOutcome(result, releaseInfo, HttpUtils.parseLastModified(extracted.lastModified()));
+		saveResults(task, outcome);
+		return outcome;
+	}
 
-			// Apply the original file timestamp to the metadata file
+	/**
+	 * Wait until there is room in the disk budget for downloading the file.
+	 *
+	 * @return The reservation, or null if there is no disk budget
+	 */
+	private DiskBudget.Reservation reserveDisk(DownloadTask task) throws IOException, InterruptedException {
+		if (diskBudget == null) {
+			return null;
+		}
+		long size = task.metadata().getSize();
+		if (size <= 0) {
+			HttpUtils.RemoteFile remote = probe(task, task.url);
+			size = remote != null && remote.size() > 0 ? remote.size() : DEFAULT_DOWNLOAD_SIZE;
+		}
+		if (diskBudget.wouldWait(size)) {
+			task.downloadLogger
+					.info("Waiting for disk space to download " + task.filename + " ("
+							+ size / (1024 * 1024) + " MB)");
+		}
+		return diskBudget.reserve(size);
+	}
+
+	/**
+	 * Download the file of a task, then compute its checksums and extract its release info. Files
+	 * that are downloaded as a single stream are hashed (and for TAR based archives their release
+	 * info is extracted) while they are being received. Other files are hashed on the hashing stage,
+	 * and archives that have to be decompressed almost in full are handed to the extraction stage.
+	 *
+	 * @return A future for the results of the download
+	 */
+	private CompletableFuture<DownloadOutcome> downloadAndProcess(DownloadTask task)
+			throws IOException, InterruptedException {
+		String filename = task.filename;
+		String url = task.url;
+
+		Path tempFile;
+		if (workDir != null) {
+			// Name the file after the URL so a later run finds the partial download again
+			Files.createDirectories(workDir);
+			tempFile = workDir.resolve(
+					HashUtils.computeHash(url, "SHA-256").substring(0, 16) + "-" + filename);
+		} else {
+			tempFile = FileUtils.createTempFile("jdk-metadata-", "-" + filename);
+		}
+
+		boolean handedOff = false;
+		Path pinnedFile = null;
+		try {
+			JdkMetadata.FileType fileType = ArchiveUtils.getFileType(filename);
+			CompletableFuture<DownloadSink> hashed;
+			long transferStart = System.nanoTime();
+			HttpUtils.RemoteFile remote = artifactCache != null ? probe(task, url) : null;
+			Path cachedFile = remote != null ? artifactCache.lookup(url, remote) : null;
+			pinnedFile = cachedFile;
+			Path archiveFile = cachedFile != null ? cachedFile : tempFile;
+			if (cachedFile != null) {
+				// Process the cached file exactly as if it was being downloaded
+				task.downloadLogger.info("Using cached " + filename);
+				metrics.recordCacheHit(task.host, task.distro);
+				hashed = hashStage.submit(() -> {
+					DownloadSink sink = new DownloadSink(fileType);
+					try (InputStream in = Files.newInputStream(cachedFile);
+							OutputStream out = sink) {
+						in.transferTo(out);
+					}
+					return sink;
+				});
+			} else if (downloadSegmented(task, url, tempFile, remote)) {
+				recordTransfer(task, Files.size(tempFile), System.nanoTime() - transferStart);
+				// The segments don't arrive in order, so the hashes are computed afterwards
+				hashed = hashStage.submit(
+						() -> new DownloadSink(HashUtils.computeHashes(tempFile, HashUtils.DOWNLOAD_ALGORITHMS)));
+			} else {
+				// Download the file, computing all hashes (and for TAR based archives extracting
+				// the release info) while the body is being written
+				task.downloadLogger.info("Downloading " + filename);
+				DownloadSink sink = httpUtils.downloadFile(url, tempFile, () -> new DownloadSink(fileType));
+				recordTransfer(task, sink.hasher.size(), System.nanoTime() - transferStart);
+				hashed = CompletableFuture.completedFuture(sink);
+			}
+
+			CompletableFuture<DownloadOutcome> outcome = hashed.thenCompose(sink -> {
+				if (sink.extractor != null) {
+					// Already extracted while downloading, nothing left for the extraction stage
+					try {
+						return CompletableFuture.completedFuture(
+								finishDownload(task, sink, archiveFile, cachedFile, remote, tempFile));
+					} catch (IOException e) {
+						return CompletableFuture.failedFuture(e);
+					}
+				}
+				// Archives that are expensive to extract go to the extraction stage so they can't
+				// hold up the hashing of the others
+				PipelineStage stage =
+						fileType != null && ArchiveUtils.isExpensiveToExtract(fileType) ? extractStage : hashStage;
+				return stage.submit(() -> finishDownload(task, sink, archiveFile, cachedFile, remote, tempFile));
+			});
+			handedOff = true;
+			return outcome.whenComplete((result, e) -> {
+				if (cachedFile != null) {
+					artifactCache.release(cachedFile);
+				}
+				// Partial downloads in the work directory are kept so they can be resumed later
+				if (e == null || workDir == null) {
+					try {
+						HttpUtils.deletePartialDownload(tempFile);
+					} catch (IOException ex) {
+						logger.warn("Failed to delete {}: {}", tempFile, ex.getMessage());
+					}
+				}
+			});
+		} finally {
+			if (!handedOff && pinnedFile != null) {
+				artifactCache.release(pinnedFile);
+			}
+			if (!handedOff && workDir == null) {
+				HttpUtils.deletePartialDownload(tempFile);
+			}
+		}
+	}
+
+	/**
+	 * Extract the release info of a downloaded file if that wasn't done while downloading it and
+	 * save the results.
+	 *
+	 * @param sink The sink that computed the hashes of the file
+	 * @param archiveFile The downloaded (or cached) file
+	 * @param cachedFile The file from the artifact cache, or null if the file was downloaded
+	 * @param remote The information about the file from the server, or null if not known
+	 * @param tempFile The file the download was written to
+	 * @return The results of the download
+	 */
+	private DownloadOutcome finishDownload(
+			DownloadTask task,
+			DownloadSink sink,
+			Path archiveFile,
+			Path cachedFile,
+			HttpUtils.RemoteFile remote,
+			Path tempFile)
+			throws IOException {
+		String filename = task.filename;
+		HashUtils.MultiHasher hasher = sink.hasher;
+		StreamingReleaseExtractor extractor = sink.extractor;
+
+		long size = hasher.size();
+		String md5 = hasher.hash("MD5");
+		String sha1 = hasher.hash("SHA-1");
+		String sha256 = hasher.hash("SHA-256");
+		String sha512 = hasher.hash("SHA-512");
+		DownloadResult result = new DownloadResult(md5, sha1, sha256, sha512, size);
+
+		// Extract and parse release info from archive
+		Map<String, String> releaseInfo = null;
+		try {
+			if (extractor != null) {
+				// Already extracted while downloading
+				if (extractor.failure() != null) {
+					throw extractor.failure();
+				}
+				releaseInfo = extractor.releaseInfo();
+			} else {
+				task.downloadLogger.info("Extracting release info from " + filename);
+				releaseInfo = ArchiveUtils.extractReleaseInfo(archiveFile, filename);
+			}
+			if (releaseInfo != null && !releaseInfo.isEmpty()) {
+				task.downloadLogger.debug(
+						"Extracted release info with " + releaseInfo.size() + " properties from " + filename);
+			} else {
+				releaseInfo = Collections.emptyMap();
+				task.downloadLogger.debug("No release info found in " + filename);
+			}
+		} catch (Exception e) {
+			// Don't fail the download if release extraction fails
+			task.downloadLogger.warn("Failed to extract release info from " + filename, e);
+		}
+
+		// The original file timestamp gets applied to the metadata file
+		FileTime lastModified = null;
+		try {
+			lastModified = Files.getLastModifiedTime(archiveFile);
+		} catch (IOException e) {
+			// Ignore if we can't get the timestamp
+		}
+
+		DownloadOutcome outcome = new DownloadOutcome(result, releaseInfo, lastModified);
+		saveResults(task, outcome);
+
+		// Keep the downloaded file around for later runs
+		if (cachedFile == null && remote != null) {
 			try {
-				var fileTime = Files.getLastModifiedTime(tempFile);
-				Files.setLastModifiedTime(metadataFile, fileTime);
+				artifactCache.store(task.url, remote, tempFile, sha256);
 			} catch (IOException e) {
-				// Ignore if we can't set the timestamp
+				task.downloadLogger.warn("Failed to add " + filename + " to the artifact cache", e);
 			}
+		}
+		return outcome;
+	}
 
-			// Report success
-			task.downloadLogger().info("Processed " + filename);
+	/**
+	 * Download a large file over several connections at once, if its host has slots to spare and
+	 * the server supports range requests. The extra connections count against the per-host limit
+	 * and are only taken when no other downloads for the host are waiting.
+	 *
+	 * @param remote The information about the file if it was already probed, null otherwise
+	 * @return true if the file was downloaded, false if it should be downloaded as a single stream
+	 */
+	private boolean downloadSegmented(DownloadTask task, String url, Path file, HttpUtils.RemoteFile remote)
+			throws IOException, InterruptedException {
+		if (maxSegments < 2 || (Files.exists(file) && Files.size(file) > 0)) {
+			// Not enabled, or there is a partial download that can be resumed instead
+			return false;
+		}
+		int extraSlots = 0;
+		try {
+			while (extraSlots < maxSegments - 1 && scheduler.tryAcquire(task.host)) {
+				extraSlots++;
+			}
+			if (extraSlots == 0) {
+				return false;
+			}
+			if (remote == null) {
+				remote = probe(task, url);
+			}
+			if (remote == null) {
+				return false;
+			}
+			int segments = (int) Math.min(extraSlots + 1, remote.size() / MIN_SEGMENT_SIZE);
+			if (!remote.acceptsRanges() || segments < 2) {
+				return false;
+			}
+			for (; extraSlots > segments - 1; extraSlots--) {
+				scheduler.release(task.host);
+			}
+			task.downloadLogger.info("Downloading " + task.filename + " in " + segments + " segments");
+			httpUtils.downloadFileSegmented(url, file, remote, segments);
+			return true;
 		} finally {
-			Files.deleteIfExists(tempFile);
+			for (; extraSlots > 0; extraSlots--) {
+				scheduler.release(task.host);
+			}
+		}
+	}
+
+	/** Save the checksum files and the updated metadata file for a downloaded task */
+	private void saveResults(DownloadTask task, DownloadOutcome outcome) throws IOException {
+		JdkMetadata metadata = task.metadata();
+		String filename = metadata.getFilename();
+		DownloadResult result = outcome.result();
+
+		// Save checksum files
+		Path distroChecksumDir = checksumDir.resolve(task.distro);
+		Files.createDirectories(distroChecksumDir);
+		saveChecksumFile(distroChecksumDir, filename, "md5", result.md5());
+		saveChecksumFile(distroChecksumDir, filename, "sha1", result.sha1());
+		saveChecksumFile(distroChecksumDir, filename, "sha256", result.sha256());
+		saveChecksumFile(distroChecksumDir, filename, "sha512", result.sha512());
+
+		// Update metadata with download results
+		metadata.download(result);
+		if (outcome.releaseInfo() != null) {
+			metadata.setReleaseInfo(outcome.releaseInfo());
+		}
+
+		// Save metadata file
+		Path distroMetadataDir = metadataDir.resolve(task.distro);
+		Files.createDirectories(distroMetadataDir);
+		Path metadataFile = distroMetadataDir.resolve(metadata.metadataFile());
+		MetadataUtils.saveMetadataFile(metadataFile, metadata);
+
+		// Apply the original file timestamp to the metadata file
+		if (outcome.lastModified() != null) {
+			try {
+				Files.setLastModifiedTime(metadataFile, outcome.lastModified());
+			} catch (IOException e) {
+				// Ignore if we can't set the timestamp
+			}
+		}
+
+		// Report success
+		task.downloadLogger.info("Processed " + filename);
+	}
+
+	/** Record a retried request, attributing it to the distro of the download for the URL if known */
+	private void recordRetry(String url) {
+		DownloadTask task = inFlight.get(url);
+		metrics.recordRetry(extractHost(url), task != null ? task.distro : null);
+	}
+
+	/**
+	 * Called for every HTTP response. Hosts that redirect to another host are made an alias of the
+	 * host that serves the data, so the per-host limit applies to the server doing the actual work.
+	 */
+	private void recordResponse(String url, String servedBy, int statusCode, long latencyNanos) {
+		String host = extractHost(url);
+		if (host == null || servedBy == null) {
+			return;
+		}
+		if (!host.equals(servedBy) && statusCode >= 200 && statusCode < 300 && scheduler.alias(host, servedBy)) {
+			logger.debug("Downloads from {} are served by {}", host, servedBy);
+		}
+		if (hostLimits != null) {
+			hostLimits.onResponse(scheduler.resolveHost(servedBy), statusCode, latencyNanos);
+		}
+	}
+
+	private void recordTransfer(DownloadTask task, long bytes, long nanos) {
+		metrics.recordTransfer(task.host, task.distro, bytes, nanos);
+		if (hostLimits != null) {
+			hostLimits.onTransfer(scheduler.resolveHost(task.host), bytes, nanos);
+		}
+	}
+
+	/** Get the information the server reports about a file, or null if that fails */
+	private HttpUtils.RemoteFile probe(DownloadTask task, String url) throws InterruptedException {
+		try {
+			return httpUtils.probe(url);
+		} catch (IOException e) {
+			task.downloadLogger.debug("Failed to probe " + url + ": " + e.getMessage());
+			return null;
 		}
 	}
 
@@ -397,7 +1200,7 @@ public class DefaultDownloadManager implements DownloadManager {
 	 * @param urlString The URL string
 	 * @return The host, or null if the URL is invalid
 	 */
-	private String extractHost(String urlString) {
+	private static String extractHost(String urlString) {
 		if (urlString == null) {
 			return null;
 		}
@@ -410,6 +1213,16 @@ public class DefaultDownloadManager implements DownloadManager {
 		}
 	}
 
+	/**
+	 * Get the transfer metrics of the downloads.
+	 *
+	 * @return The metrics per host and per distro
+	 */
+	@Override
+	public DownloadMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Get per-distro download statistics.
 	 *
@@ -438,6 +1251,111 @@ public class DefaultDownloadManager implements DownloadManager {
 		return stats;
 	}
 
-	/** Internal class representing a download task */
-	private record DownloadTask(JdkMetadata metadata, String distro, Logger downloadLogger) {}
+	/**
+	 * Sink for the downloaded bytes that computes all hashes and, for archive types that support
+	 * it, extracts the release info at the same time.
+	 */
+	private static class DownloadSink extends OutputStream {
+		private final HashUtils.MultiHasher hasher;
+		private final StreamingReleaseExtractor extractor;
+
+		DownloadSink(JdkMetadata.FileType fileType) throws IOException {
+			this.hasher = new HashUtils.MultiHasher(HashUtils.DOWNLOAD_ALGORITHMS);
+			this.extractor = StreamingReleaseExtractor.supports(fileType)
+					? new StreamingReleaseExtractor(fileType)
+					: null;
+		}
+
+		/** A sink for hashes that were computed after downloading the file */
+		DownloadSink(HashUtils.MultiHasher hasher) {
+			this.hasher = hasher;
+			this.extractor = null;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			hasher.write(b);
+			if (extractor != null) {
+				extractor.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			hasher.write(b, off, len);
+			if (extractor != null) {
+				extractor.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			// Fails if the extractor detected a truncated archive
+			if (extractor != null) {
+				extractor.close();
+			}
+		}
+	}
+
+	/**
+	 * Internal class representing a download task, the followers are tasks for the same URL that
+	 * were submitted while this one was queued or in progress and that will share its result. A
+	 * task submitted for a {@link MetadataRef} only keeps what is needed for scheduling while it is
+	 * queued, its metadata is read from disk when the download starts.
+	 */
+	private static final class DownloadTask {
+		private final String distro;
+		private final String host;
+		private final String url;
+		private final String filename;
+		private final Path metadataFile;
+		private final int priority;
+		private final Logger downloadLogger;
+		private final List<DownloadTask> followers = new ArrayList<>();
+		private final CompletableFuture<DownloadResult> future = new CompletableFuture<>();
+		// Set for tasks whose metadata gets read from disk when needed
+		private final Path source;
+		private JdkMetadata metadata;
+
+		DownloadTask(JdkMetadata metadata, String distro, int priority, Logger downloadLogger) {
+			this.distro = distro;
+			this.host = extractHost(metadata.getUrl());
+			this.url = metadata.getUrl();
+			this.filename = metadata.getFilename();
+			this.metadataFile = metadata.metadataFile();
+			this.priority = priority;
+			this.downloadLogger = downloadLogger;
+			this.source = null;
+			this.metadata = metadata;
+		}
+
+		DownloadTask(MetadataRef ref, Logger downloadLogger) {
+			this.distro = ref.distro();
+			this.host = extractHost(ref.url());
+			this.url = ref.url();
+			this.filename = ref.filename();
+			this.metadataFile = ref.metadataFile();
+			this.priority = ref.priority();
+			this.downloadLogger = downloadLogger;
+			this.source = ref.metadataFile();
+		}
+
+		/** Get the metadata of the task, reading it from disk if it isn't loaded */
+		synchronized JdkMetadata metadata() throws IOException {
+			if (metadata == null) {
+				metadata = MetadataUtils.readMetadataFile(source);
+			}
+			return metadata;
+		}
+
+		/** Drop the metadata of a finished task again if it can be read from disk */
+		synchronized void release() {
+			if (source != null) {
+				metadata = null;
+			}
+		}
+	}
+
+	/** The results of a download that get saved for each task that downloaded the same URL */
+	private record DownloadOutcome(DownloadResult result, Map<String, String> releaseInfo, FileTime lastModified) {}
 }
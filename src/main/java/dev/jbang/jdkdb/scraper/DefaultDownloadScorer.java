@@ -0,0 +1,52 @@
+package dev.jbang.jdkdb.scraper;
+
+import dev.jbang.jdkdb.model.JdkMetadata;
+import dev.jbang.jdkdb.util.MetadataUtils;
+import java.util.Map;
+
+/**
+ * Scores downloads by how likely users are to ask for them. In order of importance: files missing
+ * checksums before files only missing release info, GA releases before EA releases, LTS major
+ * versions, popular operating systems and architectures, and finally more recent major versions.
+ * Every criterion outweighs all less important ones combined, so for example an EA release never
+ * scores higher than a GA release.
+ */
+public class DefaultDownloadScorer implements DownloadScorer {
+	// Popularity ranks, from 0 for platforms that aren't listed up to POPULARITY_RANKS - 1
+	private static final int POPULARITY_RANKS = 3;
+	private static final Map<String, Integer> OS_POPULARITY = Map.of("linux", 2, "windows", 1, "macosx", 1);
+	private static final Map<String, Integer> ARCH_POPULARITY = Map.of("x86_64", 2, "aarch64", 1);
+	private static final int MAX_MAJOR = 999;
+
+	@Override
+	public int score(JdkMetadata metadata) {
+		int major = majorVersion(metadata.getJavaVersion());
+		// Each step makes room below the score so far for all values of the next criterion
+		int score = MetadataUtils.hasMissingChecksums(metadata) ? 1 : 0;
+		score = score * 2 + (JdkMetadata.ReleaseType.ga.name().equals(metadata.getReleaseType()) ? 1 : 0);
+		score = score * 2 + (isLts(major) ? 1 : 0);
+		score = score * POPULARITY_RANKS + OS_POPULARITY.getOrDefault(metadata.getOs(), 0);
+		score = score * POPULARITY_RANKS + ARCH_POPULARITY.getOrDefault(metadata.getArchitecture(), 0);
+		score = score * (MAX_MAJOR + 1) + Math.min(Math.max(major, 0), MAX_MAJOR);
+		return score;
+	}
+
+	/**
+	 * Check if a major version is a long term support release: 8, 11, 17 and every fourth release
+	 * after 17.
+	 *
+	 * @param major The major version
+	 * @return true for LTS releases
+	 */
+	static boolean isLts(int major) {
+		return major == 8 || major == 11 || (major >= 17 && (major - 17) % 4 == 0);
+	}
+
+	private static int majorVersion(String javaVersion) {
+		try {
+			return Integer.parseInt(MetadataUtils.extractMajorVersion(javaVersion));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package dev.jbang.jdkdb.scraper;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the total amount of disk space used by downloads that are in progress. Before starting a
+ * download a worker reserves the space it expects to need, waiting until enough of the budget is
+ * free, and it gives the space back when it's done. A single reservation that is larger than the
+ * whole budget is granted once nothing else is reserved, so it can never wait forever.
+ */
+class DiskBudget {
+	private final long capacity;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+	private long reserved;
+
+	/**
+	 * Create a new budget.
+	 *
+	 * @param capacity The total number of bytes that can be reserved at the same time
+	 */
+	DiskBudget(long capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Reserve disk space, waiting until enough of the budget is free.
+	 *
+	 * @param bytes The number of bytes to reserve
+	 * @return The reservation, which must be closed to give the space back
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	Reservation reserve(long bytes) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (reserved > 0 && reserved + bytes > capacity) {
+				released.await();
+			}
+			reserved += bytes;
+			return new Reservation(bytes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Check if a reservation of the given size would have to wait right now.
+	 *
+	 * @param bytes The number of bytes to reserve
+	 * @return true if there isn't enough free space in the budget
+	 */
+	boolean wouldWait(long bytes) {
+		lock.lock();
+		try {
+			return reserved > 0 && reserved + bytes > capacity;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of bytes that are currently reserved.
+	 *
+	 * @return Number of reserved bytes
+	 */
+	long reservedBytes() {
+		lock.lock();
+		try {
+			return reserved;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release(long bytes) {
+		lock.lock();
+		try {
+			reserved -= bytes;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Disk space reserved in the budget, closing it gives the space back */
+	class Reservation implements AutoCloseable {
+		private final long bytes;
+		private boolean closed;
+
+		private Reservation(long bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				release(bytes);
+			}
+		}
+	}
+}
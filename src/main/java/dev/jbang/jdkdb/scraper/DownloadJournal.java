@@ -0,0 +1,211 @@
+package dev.jbang.jdkdb.scraper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the downloads of a download run. Every download that is planned,
+ * started, completed or that failed gets a line in the journal, and a run that ends normally
+ * writes a final line marking the journal as finished. Each line is written to the file straight
+ * away, so the journal survives the process being killed. The file is only synced to the disk
+ * when the journal is finished or closed, syncing every line would hold up all downloads. A run
+ * that finds an unfinished journal can replay it to continue with the downloads that weren't done
+ * yet, instead of scanning all metadata again.
+ *
+ * <p>Lines have the form {@code EVENT<tab>distro/metadata-file[<tab>reason]}. A line that was
+ * only partially written when the process was killed is ignored when replaying.
+ */
+public class DownloadJournal implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(DownloadJournal.class);
+
+	/** The events recorded in the journal */
+	public enum Event {
+		/** The download was submitted */
+		PLANNED,
+		/** The download was started */
+		STARTED,
+		/** The download completed successfully */
+		COMPLETED,
+		/** The download failed but might succeed when tried again */
+		FAILED,
+		/** The download failed and is not worth retrying */
+		FAILED_PERMANENTLY,
+		/** The run ended normally, written without a key */
+		FINISHED
+	}
+
+	private final FileChannel channel;
+
+	/**
+	 * Open a journal for writing.
+	 *
+	 * @param file The journal file
+	 * @param append true to continue an existing journal, false to start a new one
+	 */
+	public DownloadJournal(Path file, boolean append) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		this.channel = append
+				? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+				: FileChannel.open(
+						file,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+		if (append && channel.size() > 0) {
+			// Make sure a line that was cut off doesn't swallow the next one
+			ByteBuffer last = ByteBuffer.allocate(1);
+			try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+				reader.read(last, reader.size() - 1);
+			}
+			if (last.get(0) != '\n') {
+				write("\n");
+			}
+		}
+	}
+
+	/**
+	 * Get the key that identifies the metadata of a download in the journal.
+	 *
+	 * @param distro The distro of the download
+	 * @param metadataFile The metadata file of the download
+	 * @return The path of the metadata file relative to the metadata directory
+	 */
+	public static String key(String distro, Path metadataFile) {
+		return distro + "/" + metadataFile.getFileName();
+	}
+
+	/**
+	 * Record an event for a download. Failing to write to the journal is logged but otherwise
+	 * ignored, as the journal is only an aid for resuming.
+	 *
+	 * @param event The event
+	 * @param key The key of the download
+	 * @param reason Extra information for failures, or null
+	 */
+	public void record(Event event, String key, String reason) {
+		StringBuilder line = new StringBuilder(event.name()).append('\t').append(key);
+		if (reason != null) {
+			line.append('\t').append(reason.replaceAll("[\\t\\r\\n]+", " "));
+		}
+		write(line.append('\n').toString());
+	}
+
+	/** Mark the journal as finished, a later run then doesn't resume from it */
+	public void finish() {
+		write(Event.FINISHED.name() + "\n");
+		sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel.isOpen()) {
+			sync();
+			channel.close();
+		}
+	}
+
+	private synchronized void sync() {
+		try {
+			channel.force(false);
+		} catch (IOException e) {
+			logger.warn("Failed to sync download journal: {}", e.getMessage());
+		}
+	}
+
+	private synchronized void write(String line) {
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to write to download journal: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Read a journal to find out where the run that wrote it stopped.
+	 *
+	 * @param file The journal file
+	 * @return The state of the downloads in the journal, empty and finished if there is no journal
+	 */
+	public static Replay replay(Path file) throws IOException {
+		Map<String, Event> downloads = new LinkedHashMap<>();
+		boolean finished = true;
+		String content;
+		try {
+			content = Files.readString(file, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			// No journal, nothing to resume
+			return new Replay(true, downloads);
+		}
+		// Only complete lines count, the last one might have been cut off
+		String[] lines = content.split("\n", -1);
+		for (int i = 0; i < lines.length - 1; i++) {
+			String[] fields = lines[i].split("\t");
+			Event event;
+			try {
+				event = Event.valueOf(fields[0]);
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+			if (event == Event.FINISHED) {
+				downloads.clear();
+				finished = true;
+			} else if (fields.length >= 2) {
+				downloads.put(fields[1], event);
+				finished = false;
+			}
+		}
+		return new Replay(finished, downloads);
+	}
+
+	/**
+	 * The state of the downloads in a journal
+	 *
+	 * @param finished Whether the run that wrote the journal ended normally
+	 * @param downloads The last event recorded for each download, in the order they were planned
+	 */
+	public record Replay(boolean finished, Map<String, Event> downloads) {
+		/**
+		 * Check if a run should continue where the run that wrote the journal stopped.
+		 *
+		 * @return true if the journal wasn't finished
+		 */
+		public boolean canResume() {
+			return !finished && !downloads.isEmpty();
+		}
+
+		/**
+		 * Get the downloads that still have to be done: the ones that were planned or started but
+		 * didn't end, and the ones that failed but might succeed when tried again.
+		 *
+		 * @return The keys of the remaining downloads
+		 */
+		public List<String> remaining() {
+			List<String> remaining = new ArrayList<>();
+			downloads.forEach((key, event) -> {
+				if (event != Event.COMPLETED && event != Event.FAILED_PERMANENTLY) {
+					remaining.add(key);
+				}
+			});
+			return remaining;
+		}
+	}
+}
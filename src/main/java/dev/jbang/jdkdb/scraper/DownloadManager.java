@@ -1,7 +1,11 @@
 package dev.jbang.jdkdb.scraper;
 
 import dev.jbang.jdkdb.model.JdkMetadata;
+import dev.jbang.jdkdb.model.MetadataRef;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 
 /**
@@ -16,8 +20,46 @@ public interface DownloadManager {
 	 * @param metadata The JDK metadata containing the URL to download
 	 * @param distro   The distro name
 	 * @param logger   The logger to use for logging download progress and errors
+	 * @return A future that completes with the result of the download once it has
+	 *         finished, with null if nothing was downloaded for the item, or
+	 *         exceptionally if the download failed
 	 */
-	void submit(JdkMetadata metadata, String distro, Logger logger);
+	CompletableFuture<DownloadResult> submit(JdkMetadata metadata, String distro, Logger logger);
+
+	/**
+	 * Submit a reference to a metadata file for download. Implementations may keep
+	 * only the reference while the download is queued and read the metadata when
+	 * the download starts. By default the metadata is read straight away.
+	 *
+	 * @param ref    The reference to the metadata file
+	 * @param logger The logger to use for logging download progress and errors
+	 * @return A future that completes with the result of the download, see
+	 *         {@link #submit(JdkMetadata, String, Logger)}
+	 */
+	default CompletableFuture<DownloadResult> submit(MetadataRef ref, Logger logger) {
+		try {
+			return submit(ref.load(), ref.distro(), logger);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Register a listener that gets called once for every distro whose downloads
+	 * have all finished. A distro is only considered done after
+	 * {@link #finishDistro(String)} or {@link #shutdown()} has been called.
+	 *
+	 * @param listener The listener, receiving the final statistics of the distro
+	 */
+	default void addDistroListener(Consumer<DistroStats> listener) {}
+
+	/**
+	 * Signal that no more downloads will be submitted for the given distro, so its
+	 * listeners can be called as soon as its downloads have finished.
+	 *
+	 * @param distro The distro name
+	 */
+	default void finishDistro(String distro) {}
 
 	/**
 	 * Start the download manager. Should be called once after construction.
@@ -26,7 +68,7 @@ public interface DownloadManager {
 
 	/**
 	 * Signal that no more downloads will be submitted. Call this after all scrapers
-	 * have finished.
+	 * have finished. This finishes all distros as well.
 	 */
 	void shutdown();
 
@@ -53,6 +95,16 @@ public interface DownloadManager {
 	 */
 	int getFailedCount();
 
+	/**
+	 * Get the transfer metrics (bytes, durations, throughput and retries per host and per
+	 * distro) of the downloads.
+	 *
+	 * @return The metrics, empty if the implementation doesn't download anything
+	 */
+	default DownloadMetrics getMetrics() {
+		return new DownloadMetrics();
+	}
+
 	/**
 	 * Get per-distro download statistics.
 	 *
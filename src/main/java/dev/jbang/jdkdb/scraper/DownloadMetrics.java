@@ -0,0 +1,240 @@
+package dev.jbang.jdkdb.scraper;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transfer metrics for downloads, broken down by host and by distro. All counters are {@link
+ * LongAdder}s so recording a download never makes the download threads contend with each other.
+ * The throughput of the individual downloads is kept in a histogram with logarithmic buckets, from
+ * which approximate percentiles are computed.
+ */
+public class DownloadMetrics {
+	private static final String UNKNOWN = "unknown";
+
+	private final Stats total = new Stats();
+	private final ConcurrentHashMap<String, Stats> hosts = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Stats> distros = new ConcurrentHashMap<>();
+
+	/**
+	 * Record a completed transfer.
+	 *
+	 * @param host The host the file was downloaded from
+	 * @param distro The distro the file belongs to
+	 * @param bytes The number of bytes transferred
+	 * @param nanos The time the transfer took in nanoseconds
+	 */
+	public void recordTransfer(String host, String distro, long bytes, long nanos) {
+		total.recordTransfer(bytes, nanos);
+		host(host).recordTransfer(bytes, nanos);
+		distro(distro).recordTransfer(bytes, nanos);
+	}
+
+	/**
+	 * Record a download that was served from the local artifact cache.
+	 *
+	 * @param host The host the file would have been downloaded from
+	 * @param distro The distro the file belongs to
+	 */
+	public void recordCacheHit(String host, String distro) {
+		total.cacheHits.increment();
+		host(host).cacheHits.increment();
+		distro(distro).cacheHits.increment();
+	}
+
+	/**
+	 * Record a failed download.
+	 *
+	 * @param host The host the file was downloaded from
+	 * @param distro The distro the file belongs to
+	 */
+	public void recordFailure(String host, String distro) {
+		total.failures.increment();
+		host(host).failures.increment();
+		distro(distro).failures.increment();
+	}
+
+	/**
+	 * Record a retried HTTP request.
+	 *
+	 * @param host The host the request was made to
+	 * @param distro The distro the file belongs to, or null if not known
+	 */
+	public void recordRetry(String host, String distro) {
+		total.retries.increment();
+		host(host).retries.increment();
+		distro(distro).retries.increment();
+	}
+
+	/**
+	 * Get the totals for all downloads.
+	 *
+	 * @return The totals
+	 */
+	public Stats getTotal() {
+		return total;
+	}
+
+	/**
+	 * Get the metrics per host.
+	 *
+	 * @return Map of host name to metrics
+	 */
+	public Map<String, Stats> getHosts() {
+		return new TreeMap<>(hosts);
+	}
+
+	/**
+	 * Get the metrics per distro.
+	 *
+	 * @return Map of distro name to metrics
+	 */
+	public Map<String, Stats> getDistros() {
+		return new TreeMap<>(distros);
+	}
+
+	/**
+	 * Write a summary of all metrics to a JSON file.
+	 *
+	 * @param file The file to write to
+	 */
+	public void writeJson(Path file) throws IOException {
+		Map<String, Object> summary = new LinkedHashMap<>();
+		summary.put("total", total.summary());
+		Map<String, Object> hostSummaries = new LinkedHashMap<>();
+		getHosts().forEach((host, stats) -> hostSummaries.put(host, stats.summary()));
+		summary.put("hosts", hostSummaries);
+		Map<String, Object> distroSummaries = new LinkedHashMap<>();
+		getDistros().forEach((distro, stats) -> distroSummaries.put(distro, stats.summary()));
+		summary.put("distros", distroSummaries);
+
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		JsonMapper.builder()
+				.enable(SerializationFeature.INDENT_OUTPUT)
+				.build()
+				.writeValue(file.toFile(), summary);
+	}
+
+	private Stats host(String host) {
+		return hosts.computeIfAbsent(host != null ? host : UNKNOWN, k -> new Stats());
+	}
+
+	private Stats distro(String distro) {
+		return distros.computeIfAbsent(distro != null ? distro : UNKNOWN, k -> new Stats());
+	}
+
+	/** The metrics for a single host or distro (or for all downloads together) */
+	public static class Stats {
+		// Throughput buckets are half powers of two bytes per second, up to 2^40 (1 TB/s)
+		private static final int BUCKETS = 81;
+
+		private final LongAdder transfers = new LongAdder();
+		private final LongAdder cacheHits = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder[] throughput = new LongAdder[BUCKETS];
+
+		Stats() {
+			for (int i = 0; i < BUCKETS; i++) {
+				throughput[i] = new LongAdder();
+			}
+		}
+
+		void recordTransfer(long bytes, long nanos) {
+			this.transfers.increment();
+			this.bytes.add(bytes);
+			this.nanos.add(nanos);
+			double bytesPerSecond = bytes * 1e9 / Math.max(nanos, 1);
+			int bucket = bytesPerSecond < 1 ? 0 : (int) (2 * Math.log(bytesPerSecond) / Math.log(2));
+			throughput[Math.min(bucket, BUCKETS - 1)].increment();
+		}
+
+		/** @return Number of files transferred */
+		public long getTransfers() {
+			return transfers.sum();
+		}
+
+		/** @return Number of downloads served from the artifact cache */
+		public long getCacheHits() {
+			return cacheHits.sum();
+		}
+
+		/** @return Number of failed downloads */
+		public long getFailures() {
+			return failures.sum();
+		}
+
+		/** @return Number of retried HTTP requests */
+		public long getRetries() {
+			return retries.sum();
+		}
+
+		/** @return Number of bytes transferred */
+		public long getBytes() {
+			return bytes.sum();
+		}
+
+		/** @return Total time spent transferring files in nanoseconds */
+		public long getNanos() {
+			return nanos.sum();
+		}
+
+		/**
+		 * Get the approximate throughput percentile of the individual transfers.
+		 *
+		 * @param percentile The percentile (between 0 and 100)
+		 * @return The throughput in bytes per second, or 0 if there were no transfers
+		 */
+		public long throughputPercentile(double percentile) {
+			long[] counts = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = throughput[i].sum();
+				count += counts[i];
+			}
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(percentile / 100 * count);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= Math.max(rank, 1)) {
+					// Report the middle of the bucket
+					return (long) Math.pow(2, (i + 0.5) / 2);
+				}
+			}
+			return (long) Math.pow(2, BUCKETS / 2.0);
+		}
+
+		Map<String, Object> summary() {
+			Map<String, Object> summary = new LinkedHashMap<>();
+			long totalBytes = getBytes();
+			long totalNanos = getNanos();
+			summary.put("transfers", getTransfers());
+			summary.put("cache_hits", getCacheHits());
+			summary.put("failures", getFailures());
+			summary.put("retries", getRetries());
+			summary.put("bytes", totalBytes);
+			summary.put("transfer_seconds", totalNanos / 1e9);
+			summary.put("bytes_per_second", totalNanos > 0 ? (long) (totalBytes * 1e9 / totalNanos) : 0);
+			summary.put("throughput_p50", throughputPercentile(50));
+			summary.put("throughput_p90", throughputPercentile(90));
+			summary.put("throughput_p99", throughputPercentile(99));
+			return summary;
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package dev.jbang.jdkdb.scraper;
+
+import dev.jbang.jdkdb.model.JdkMetadata;
+
+/** Decides how valuable a download is, more valuable downloads are handed out first */
+@FunctionalInterface
+public interface DownloadScorer {
+	/**
+	 * Score a download.
+	 *
+	 * @param metadata The metadata of the download
+	 * @return The score, downloads with a higher score are done first
+	 */
+	int score(JdkMetadata metadata);
+}
@@ -45,6 +45,10 @@ public abstract class GitHubReleaseScraper extends BaseScraper {
 		for (JsonNode asset : assets) {
 			JdkMetadata metadata = assetProcessor.process(release, asset);
 			if (metadata != null) {
+				// GitHub tells us the size, which is used to order the downloads
+				if (metadata.getSize() <= 0 && asset.path("size").asLong() > 0) {
+					metadata.setSize(asset.path("size").asLong());
+				}
 				process(metadata);
 			}
 		}
@@ -0,0 +1,561 @@
+package dev.jbang.jdkdb.scraper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Scheduler that keeps a separate queue of pending work for each host. Taking work blocks until
+ * there is an item for a host that has a free slot, and acquires that slot at the same time. Hosts
+ * are selected in round-robin order, so a queue dominated by a single host can never keep workers
+ * away from work for other hosts.
+ *
+ * <p>Work can also be put in a group, for example the distro it belongs to. Groups take turns in
+ * weighted round-robin order, so a group with a large backlog can't keep the work of other groups
+ * waiting, and a group can be given a limit on the number of its items that are active at the
+ * same time. Host slots are shared by all groups, the host limits always apply.
+ *
+ * <p>The number of slots can be changed per host at any time. A host can also be made an alias of
+ * another host, for example when it redirects all downloads to a CDN, after which its work and its
+ * slots are accounted to the host that actually serves the data.
+ *
+ * <p>Within the queue of a host, work is handed out in the order given to the scheduler, and in
+ * the order it was added for items that are equal in that order (or when no order is given).
+ *
+ * @param <T> The type of the work items
+ */
+class HostScheduler<T> {
+	// The group of work that was added without one, it has no limit
+	private static final String NO_GROUP = "";
+
+	private final int maxPerHost;
+	private final Comparator<Entry<T>> order;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	// Slot usage of the hosts that have pending or active work
+	private final Map<String, HostSlots> hosts = new HashMap<>();
+	// Slot limits of hosts that don't use the default
+	private final Map<String, Integer> limits = new HashMap<>();
+	// Hosts whose work is accounted to another host
+	private final Map<String, String> aliases = new HashMap<>();
+	// Groups that have pending or active work, in round-robin order
+	private final Map<String, Group<T>> groups = new LinkedHashMap<>();
+	// Weights and limits of groups that don't use the default
+	private final Map<String, Integer> groupWeights = new HashMap<>();
+	private final Map<String, Integer> groupLimits = new HashMap<>();
+	private long sequence;
+	private int pending;
+	private int active;
+	private boolean closed;
+
+	/**
+	 * Create a new scheduler.
+	 *
+	 * @param maxPerHost Default maximum number of items per host that can be active at the same
+	 *     time
+	 */
+	HostScheduler(int maxPerHost) {
+		this(maxPerHost, null);
+	}
+
+	/**
+	 * Create a new scheduler that hands out the work of each host in the given order.
+	 *
+	 * @param maxPerHost Default maximum number of items per host that can be active at the same
+	 *     time
+	 * @param order The order in which to hand out the work of a host, items that come first in this
+	 *     order are handed out first, null to hand out work in the order it was added
+	 */
+	HostScheduler(int maxPerHost, Comparator<? super T> order) {
+		if (maxPerHost < 1) {
+			throw new IllegalArgumentException("maxPerHost must be at least 1");
+		}
+		this.maxPerHost = maxPerHost;
+		Comparator<Entry<T>> bySequence = Comparator.comparingLong(Entry::sequence);
+		this.order = order != null
+				? Comparator.<Entry<T>, T>comparing(Entry::item, order).thenComparing(bySequence)
+				: bySequence;
+	}
+
+	/**
+	 * Add a work item to the queue of the given host, without a group.
+	 *
+	 * @param host The host the work item will connect to
+	 * @param item The work item
+	 */
+	void put(String host, T item) {
+		put(NO_GROUP, host, item);
+	}
+
+	/**
+	 * Add a work item of a group to the queue of the given host. Once the item has been taken, its
+	 * slots must be given back using {@link #release(String, String)}.
+	 *
+	 * @param group The group the work item belongs to
+	 * @param host The host the work item will connect to
+	 * @param item The work item
+	 */
+	void put(String group, String host, T item) {
+		lock.lock();
+		try {
+			if (closed) {
+				throw new IllegalStateException("Scheduler has been closed");
+			}
+			host = resolve(host);
+			Group<T> g = groups.computeIfAbsent(group, Group::new);
+			g.queue(host, order).add(new Entry<>(item, sequence++));
+			g.pending++;
+			hosts.computeIfAbsent(host, h -> new HostSlots()).pending++;
+			pending++;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Take the next work item, waiting until there is one for a host with a free slot. The slot
+	 * for the item's host is acquired and must be given back using {@link #release(String)}, or
+	 * {@link #release(String, String)} for items that were added with a group.
+	 *
+	 * @return The work item, or null if the scheduler was closed and all work has been handed out
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	T take() throws InterruptedException {
+		return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Take the next work item, waiting up to the given time until there is one for a host with a
+	 * free slot. The slot for the item's host is acquired and must be given back using {@link
+	 * #release(String)}, or {@link #release(String, String)} for items that were added with a
+	 * group.
+	 *
+	 * @param timeout Maximum time to wait
+	 * @param unit The unit of the timeout
+	 * @return The work item, or null if the time ran out or the scheduler was closed and all work
+	 *     has been handed out
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				T item = nextAvailable();
+				if (item != null) {
+					return item;
+				}
+				if (closed && pending == 0) {
+					return null;
+				}
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = changed.awaitNanos(nanos);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Try to acquire an additional slot for a host that already has active work, without waiting.
+	 * This only succeeds when no work is pending for the host, so extra slots never delay other
+	 * work items. The slot doesn't count towards the limit of any group, and must be given back
+	 * using {@link #release(String)}.
+	 *
+	 * @param host The host to acquire an extra slot for
+	 * @return true if the slot was acquired
+	 */
+	boolean tryAcquire(String host) {
+		lock.lock();
+		try {
+			host = resolve(host);
+			HostSlots slots = hosts.get(host);
+			if (slots == null || slots.active == 0 || slots.pending > 0 || slots.active >= limit(host)) {
+				return false;
+			}
+			slots.active++;
+			active++;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Give back the slot for a host that was acquired by taking a work item without a group, or by
+	 * {@link #tryAcquire(String)}.
+	 *
+	 * @param host The host of the work item that finished
+	 */
+	void release(String host) {
+		release(NO_GROUP, host);
+	}
+
+	/**
+	 * Give back the slots for a host and a group that were acquired by taking a work item.
+	 *
+	 * @param group The group of the work item that finished
+	 * @param host The host of the work item that finished
+	 */
+	void release(String group, String host) {
+		lock.lock();
+		try {
+			host = resolve(host);
+			HostSlots slots = hosts.get(host);
+			if (slots == null || slots.active == 0) {
+				throw new IllegalStateException("No active work for host " + host);
+			}
+			slots.active--;
+			active--;
+			if (slots.active == 0 && slots.pending == 0) {
+				hosts.remove(host);
+			}
+			if (!group.equals(NO_GROUP)) {
+				Group<T> g = groups.get(group);
+				if (g == null || g.active == 0) {
+					throw new IllegalStateException("No active work for group " + group);
+				}
+				g.active--;
+				if (g.active == 0 && g.pending == 0) {
+					groups.remove(group);
+				}
+			}
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Change the maximum number of items that can be active at the same time for a host. Items
+	 * that are already active are not affected when the limit is lowered, but no new ones are
+	 * handed out until the host is below its new limit.
+	 *
+	 * @param host The host (or an alias of it)
+	 * @param limit The new limit, at least 1
+	 */
+	void setLimit(String host, int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("limit must be at least 1");
+		}
+		lock.lock();
+		try {
+			limits.put(resolve(host), limit);
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the maximum number of items that can be active at the same time for a host.
+	 *
+	 * @param host The host (or an alias of it)
+	 * @return The limit of the host
+	 */
+	int getLimit(String host) {
+		lock.lock();
+		try {
+			return limit(resolve(host));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Change the weight of a group. When several groups have work that can be handed out, each of
+	 * them gets a share of the items in proportion to its weight. Groups have a weight of 1 by
+	 * default.
+	 *
+	 * @param group The group
+	 * @param weight The new weight, at least 1
+	 */
+	void setGroupWeight(String group, int weight) {
+		if (weight < 1) {
+			throw new IllegalArgumentException("weight must be at least 1");
+		}
+		lock.lock();
+		try {
+			groupWeights.put(group, weight);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Change the maximum number of items of a group that can be active at the same time. Groups
+	 * have no limit by default, only the limits of the hosts apply to them.
+	 *
+	 * @param group The group
+	 * @param limit The new limit, at least 1
+	 */
+	void setGroupLimit(String group, int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("limit must be at least 1");
+		}
+		lock.lock();
+		try {
+			groupLimits.put(group, limit);
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Account all work for a host to another host from now on. Pending and active work of the host
+	 * is moved to the target host, so items that were already handed out can still be released
+	 * using their original host. A host can only be an alias of a single other host, later calls
+	 * for the same host are ignored.
+	 *
+	 * @param host The host that should become an alias
+	 * @param target The host that the work should be accounted to
+	 * @return true if the alias was added
+	 */
+	boolean alias(String host, String target) {
+		lock.lock();
+		try {
+			target = resolve(target);
+			if (host.equals(target) || aliases.containsKey(host)) {
+				return false;
+			}
+			aliases.put(host, target);
+			// Hosts that were an alias of this host now belong to the target as well
+			for (Map.Entry<String, String> alias : aliases.entrySet()) {
+				if (alias.getValue().equals(host)) {
+					alias.setValue(target);
+				}
+			}
+			HostSlots slots = hosts.remove(host);
+			if (slots != null) {
+				HostSlots targetSlots = hosts.computeIfAbsent(target, h -> new HostSlots());
+				targetSlots.active += slots.active;
+				targetSlots.pending += slots.pending;
+				for (Group<T> group : groups.values()) {
+					group.move(host, target, order, this::nextSequence);
+				}
+			}
+			changed.signalAll();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the host that the work for a host is accounted to.
+	 *
+	 * @param host The host
+	 * @return The host itself, or the host it is an alias of
+	 */
+	String resolveHost(String host) {
+		lock.lock();
+		try {
+			return resolve(host);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Signal that no more work will be added. Waiting workers return once all work is handed out. */
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of work items that are waiting to be handed out.
+	 *
+	 * @return Number of pending work items
+	 */
+	int pendingCount() {
+		lock.lock();
+		try {
+			return pending;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of host slots that were acquired but not released yet, which is the number of
+	 * work items that were handed out plus any extra slots acquired for them.
+	 *
+	 * @return Number of acquired slots
+	 */
+	int activeCount() {
+		lock.lock();
+		try {
+			return active;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Pick the group whose turn it is using smooth weighted round-robin: every group that can hand
+	 * out work earns its weight in credit, the group with the most credit goes next and pays the
+	 * total weight of the groups that took part. Must hold the lock.
+	 */
+	private T nextAvailable() {
+		Group<T> next = null;
+		int totalWeight = 0;
+		for (Group<T> group : groups.values()) {
+			if (group.pending == 0 || group.active >= groupLimit(group.name) || !hasFreeHost(group)) {
+				continue;
+			}
+			int weight = groupWeights.getOrDefault(group.name, 1);
+			group.credit += weight;
+			totalWeight += weight;
+			if (next == null || group.credit > next.credit) {
+				next = group;
+			}
+		}
+		if (next == null) {
+			return null;
+		}
+		next.credit -= totalWeight;
+		return take(next);
+	}
+
+	/** Must hold the lock. */
+	private boolean hasFreeHost(Group<T> group) {
+		for (String host : group.hosts) {
+			if (hosts.get(host).active < limit(host)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Take the work of the next host in round-robin order that has a free slot. Must hold the lock. */
+	private T take(Group<T> group) {
+		int count = group.hosts.size();
+		for (int i = 0; i < count; i++) {
+			int index = (group.nextHost + i) % count;
+			String host = group.hosts.get(index);
+			HostSlots slots = hosts.get(host);
+			if (slots.active < limit(host)) {
+				PriorityQueue<Entry<T>> queue = group.queues.get(host);
+				T item = queue.poll().item();
+				if (queue.isEmpty()) {
+					group.removeHost(index);
+					// The host after this one has moved into its place
+					group.nextHost = group.hosts.isEmpty() ? 0 : index % group.hosts.size();
+				} else {
+					// Continue with the host after this one next time
+					group.nextHost = (index + 1) % count;
+				}
+				slots.pending--;
+				slots.active++;
+				group.pending--;
+				pending--;
+				active++;
+				if (group.name.equals(NO_GROUP)) {
+					// Work without a group isn't released with a group, so it isn't counted
+					if (group.pending == 0) {
+						groups.remove(NO_GROUP);
+					}
+				} else {
+					group.active++;
+				}
+				return item;
+			}
+		}
+		return null;
+	}
+
+	/** Must hold the lock. */
+	private long nextSequence() {
+		return sequence++;
+	}
+
+	/** Must hold the lock. */
+	private String resolve(String host) {
+		return aliases.getOrDefault(host, host);
+	}
+
+	/** Must hold the lock. */
+	private int limit(String host) {
+		return limits.getOrDefault(host, maxPerHost);
+	}
+
+	/** Must hold the lock. */
+	private int groupLimit(String group) {
+		return groupLimits.getOrDefault(group, Integer.MAX_VALUE);
+	}
+
+	/** The number of pending and active items of a single host, over all groups */
+	private static class HostSlots {
+		private int pending;
+		private int active;
+	}
+
+	/** The pending work of a group for each host, and the number of its active items */
+	private static class Group<T> {
+		private final String name;
+		private final Map<String, PriorityQueue<Entry<T>>> queues = new HashMap<>();
+		// Round-robin order of the hosts that have pending work of this group
+		private final List<String> hosts = new ArrayList<>();
+		private int nextHost;
+		private int pending;
+		private int active;
+		private long credit;
+
+		Group(String name) {
+			this.name = name;
+		}
+
+		PriorityQueue<Entry<T>> queue(String host, Comparator<Entry<T>> order) {
+			PriorityQueue<Entry<T>> queue = queues.get(host);
+			if (queue == null) {
+				queue = new PriorityQueue<>(order);
+				queues.put(host, queue);
+				hosts.add(host);
+			}
+			return queue;
+		}
+
+		/** Move the pending work of a host after the work that was already waiting for the target. */
+		void move(String host, String target, Comparator<Entry<T>> order, LongSupplier sequence) {
+			PriorityQueue<Entry<T>> queue = queues.get(host);
+			if (queue == null) {
+				return;
+			}
+			removeHost(hosts.indexOf(host));
+			PriorityQueue<Entry<T>> targetQueue = queue(target, order);
+			while (!queue.isEmpty()) {
+				targetQueue.add(new Entry<>(queue.poll().item(), sequence.getAsLong()));
+			}
+		}
+
+		void removeHost(int index) {
+			queues.remove(hosts.remove(index));
+			if (index < nextHost) {
+				nextHost--;
+			}
+			if (nextHost >= hosts.size()) {
+				nextHost = 0;
+			}
+		}
+	}
+
+	/** A pending work item, the sequence number keeps items that are equal in the order they were added */
+	private record Entry<T>(T item, long sequence) {}
+}
@@ -2,10 +2,14 @@ package dev.jbang.jdkdb.scraper;
 
 import dev.jbang.jdkdb.model.JdkMetadata;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,6 +21,8 @@ public class NoOpDownloadManager implements DownloadManager {
 	private final AtomicInteger completedDownloads = new AtomicInteger(0);
 	private final Set<JdkMetadata.FileType> fileTypeFilter;
 	private final ConcurrentHashMap<String, AtomicInteger> submittedPerDistro = new ConcurrentHashMap<>();
+	private final List<Consumer<DistroStats>> distroListeners = new CopyOnWriteArrayList<>();
+	private final Set<String> notifiedDistros = ConcurrentHashMap.newKeySet();
 
 	private static final Logger logger = LoggerFactory.getLogger(NoOpDownloadManager.class);
 
@@ -50,9 +56,10 @@ public class NoOpDownloadManager implements DownloadManager {
 	 * @param metadata The JDK metadata containing the URL to download
 	 * @param distro The distro name
 	 * @param downloadLogger The logger for progress reporting
+	 * @return An already completed future with a null result
 	 */
 	@Override
-	public void submit(JdkMetadata metadata, String distro, Logger downloadLogger) {
+	public CompletableFuture<DownloadResult> submit(JdkMetadata metadata, String distro, Logger downloadLogger) {
 		if (metadata.getUrl() != null && metadata.getFilename() != null) {
 			// Check file type filter
 			if (fileTypeFilter != null && metadata.getFileType() != null) {
@@ -63,7 +70,7 @@ public class NoOpDownloadManager implements DownloadManager {
 								metadata.getFilename(),
 								distro,
 								metadata.getFileType());
-						return;
+						return CompletableFuture.completedFuture(null);
 					}
 				} catch (IllegalArgumentException e) {
 					logger.debug(
@@ -71,7 +78,7 @@ public class NoOpDownloadManager implements DownloadManager {
 							metadata.getFilename(),
 							distro,
 							metadata.getFileType());
-					return;
+					return CompletableFuture.completedFuture(null);
 				}
 			}
 			completedDownloads.incrementAndGet();
@@ -82,14 +89,40 @@ public class NoOpDownloadManager implements DownloadManager {
 			downloadLogger.debug(
 					"Ignoring download request for: {} (no-download option specified)", metadata.getFilename());
 		}
+		return CompletableFuture.completedFuture(null);
 	}
 
 	/**
-	 * Signal that no more downloads will be submitted. This is a no-op.
+	 * Register a listener that gets called once for every finished distro.
+	 *
+	 * @param listener The listener, receiving the final statistics of the distro
+	 */
+	@Override
+	public void addDistroListener(Consumer<DistroStats> listener) {
+		distroListeners.add(listener);
+	}
+
+	/**
+	 * Signal that no more downloads will be submitted for the given distro. As nothing gets
+	 * downloaded the listeners are called right away.
+	 *
+	 * @param distro The distro name
+	 */
+	@Override
+	public void finishDistro(String distro) {
+		if (notifiedDistros.add(distro)) {
+			DistroStats stats = getDistroStats().getOrDefault(distro, new DistroStats(distro, 0, 0, 0));
+			distroListeners.forEach(listener -> listener.accept(stats));
+		}
+	}
+
+	/**
+	 * Signal that no more downloads will be submitted. This finishes all distros.
 	 */
 	@Override
 	public void shutdown() {
 		logger.info("NoOpDownloadManager shutdown");
+		submittedPerDistro.keySet().forEach(this::finishDistro);
 	}
 
 	/**
@@ -0,0 +1,125 @@
+package dev.jbang.jdkdb.scraper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stage of the download pipeline: a fixed number of threads taking work from a bounded queue.
+ * When the queue is full, submitting work blocks until there is room again, so a stage can't run
+ * too far ahead of a slower stage that comes after it. Work that a thread of the stage submits to
+ * its own stage while the queue is full is run straight away on that thread instead, as waiting
+ * for its own stage to make room could block forever.
+ */
+class PipelineStage {
+	// The stage the current thread works for, if any
+	private static final ThreadLocal<PipelineStage> CURRENT = new ThreadLocal<>();
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Create a new stage.
+	 *
+	 * @param name The name of the stage, used for its threads
+	 * @param threads The number of threads working on the stage
+	 * @param queueSize The maximum number of items waiting for a thread
+	 */
+	PipelineStage(String name, int threads, int queueSize) {
+		if (threads < 1 || queueSize < 1) {
+			throw new IllegalArgumentException("Invalid size for stage " + name + ": " + threads + "/" + queueSize);
+		}
+		this.name = name;
+		ThreadFactory factory = Thread.ofPlatform().name(name + "-", 1).daemon().factory();
+		this.executor = new ThreadPoolExecutor(
+				threads,
+				threads,
+				0,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize),
+				r -> factory.newThread(() -> {
+					CURRENT.set(this);
+					r.run();
+				}),
+				this::waitForRoom);
+	}
+
+	/**
+	 * Run work on this stage, waiting for room in the queue if it is full.
+	 *
+	 * @param work The work to run
+	 * @return A future that completes with the result of the work
+	 */
+	<T> CompletableFuture<T> submit(Callable<T> work) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		executor.execute(() -> {
+			try {
+				future.complete(work.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Get the name of the stage.
+	 *
+	 * @return The name
+	 */
+	String name() {
+		return name;
+	}
+
+	/**
+	 * Get the number of items waiting for a thread of this stage.
+	 *
+	 * @return The queue depth
+	 */
+	int queueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Get the number of items a thread of this stage is working on.
+	 *
+	 * @return The number of active items
+	 */
+	int activeCount() {
+		return executor.getActiveCount();
+	}
+
+	/** Stop the threads of this stage once the work that was submitted is done */
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Wait for the threads of this stage to stop after {@link #shutdown()}.
+	 *
+	 * @return true if the threads stopped, false if the timeout elapsed first
+	 */
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	private void waitForRoom(Runnable work, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) {
+			throw new RejectedExecutionException("Pipeline stage has been shut down");
+		}
+		if (CURRENT.get() == this) {
+			work.run();
+			return;
+		}
+		try {
+			executor.getQueue().put(work);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for room in pipeline stage", e);
+		}
+	}
+}
@@ -2,17 +2,24 @@ package dev.jbang.jdkdb.util;
 
 import dev.jbang.jdkdb.model.JdkMetadata;
 import java.io.*;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.apache.commons.compress.archivers.cpio.CpioArchiveEntry;
+import org.apache.commons.compress.archivers.cpio.CpioArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.lzma.LZMACompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +35,9 @@ public class ArchiveUtils {
 	 * Extract release info from a JDK archive. The release file should be in the root of the
 	 * archive or inside any folder in the archive.
 	 *
+	 * <p>Archives that use a part of their format that can't be read are treated like archives
+	 * without a release file, so they don't get downloaded again just to fail the same way.
+	 *
 	 * @param archiveFile The archive file (zip, tar.gz, pkg, etc.)
 	 * @param filename The filename to determine archive type
 	 * @return Map of release properties, or null if not found or parsing failed
@@ -44,26 +54,39 @@ public class ArchiveUtils {
 			logger.info("File type not supported for release extraction: {}", type);
 			return null;
 		}
-		return switch (type) {
-			case apk -> extractReleaseFromTarGz(archiveFile);
-			case deb -> extractReleaseFromDeb(archiveFile);
-			case msi -> extractReleaseFromMsi(archiveFile);
-			case pkg -> {
-				// PKG extraction only supported on macOS using pkgutil
-				if (isMacOS()) {
-					yield extractReleaseFromPkg(archiveFile);
-				} else {
-					logger.warn("PKG file format only supported on macOS - skipping: {}", filename);
+		try {
+			return switch (type) {
+				case apk -> extractReleaseFromTar(archiveFile, type);
+				case deb -> extractReleaseFromDeb(archiveFile);
+				case dmg -> extractReleaseFromDmg(archiveFile);
+				case msi -> extractReleaseFromMsi(archiveFile);
+				case pkg -> extractReleaseFromPkg(archiveFile);
+				case rpm -> extractReleaseFromRpm(archiveFile);
+				case tar_gz, tar_xz -> extractReleaseFromTar(archiveFile, type);
+				case zip -> extractReleaseFromZip(archiveFile);
+				default -> {
+					logger.info("Unsupported archive format for file: {}", filename);
 					yield null;
 				}
-			}
-			case rpm -> extractReleaseFromRpm(archiveFile);
-			case tar_gz, tar_xz -> extractReleaseFromTarGz(archiveFile);
-			case zip -> extractReleaseFromZip(archiveFile);
-			default -> {
-				logger.info("Unsupported archive format for file: {}", filename);
-				yield null;
-			}
+			};
+		} catch (UnsupportedFormatException e) {
+			logger.warn("Unable to read {} archive: {}", type, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Check if extracting the release info from an archive of the given type is expensive, because
+	 * most of the archive has to be decompressed to get to the release file instead of reading it
+	 * directly from the archive.
+	 *
+	 * @param type The type of the archive
+	 * @return true if the archive gets decompressed almost in full
+	 */
+	public static boolean isExpensiveToExtract(JdkMetadata.FileType type) {
+		return switch (type) {
+			case dmg, pkg -> true;
+			default -> false;
 		};
 	}
 
@@ -75,19 +98,40 @@ public class ArchiveUtils {
 	 */
 	private static Map<String, String> extractReleaseFromZip(Path zipFile) throws IOException {
 		try (ZipFile zip = ZipFile.builder().setPath(zipFile).get()) {
-			// Search for any file named "release" in the archive
-			// This handles various layouts including macOS packages with nested structures
-			var entries = zip.getEntries();
-			while (entries.hasMoreElements()) {
-				ZipArchiveEntry entry = entries.nextElement();
-				String name = entry.getName();
+			return extractReleaseFromZip(zip);
+		}
+	}
 
-				// Check if this is a "release" file (not a directory)
-				if (!entry.isDirectory() && (name.equals("release") || name.endsWith("/release"))) {
-					ZipArchiveEntry resolved = resolveZipEntry(zip, entry);
-					if (resolved != null) {
-						return parseReleaseProperties(zip.getInputStream(resolved));
-					}
+	/**
+	 * Extract release file from ZIP archive that is read through a channel. Only the central
+	 * directory and the release entry are read, the local file headers of the other entries are
+	 * skipped, which makes this suitable for channels where every read is expensive.
+	 *
+	 * @param channel The channel to read the ZIP archive from, it gets closed when done
+	 * @return Map of release properties or null if not found
+	 */
+	static Map<String, String> extractReleaseFromZip(SeekableByteChannel channel) throws IOException {
+		try (ZipFile zip = ZipFile.builder()
+				.setSeekableByteChannel(channel)
+				.setIgnoreLocalFileHeader(true)
+				.get()) {
+			return extractReleaseFromZip(zip);
+		}
+	}
+
+	private static Map<String, String> extractReleaseFromZip(ZipFile zip) throws IOException {
+		// Search for any file named "release" in the archive
+		// This handles various layouts including macOS packages with nested structures
+		var entries = zip.getEntries();
+		while (entries.hasMoreElements()) {
+			ZipArchiveEntry entry = entries.nextElement();
+			String name = entry.getName();
+
+			// Check if this is a "release" file (not a directory)
+			if (!entry.isDirectory() && (name.equals("release") || name.endsWith("/release"))) {
+				ZipArchiveEntry resolved = resolveZipEntry(zip, entry);
+				if (resolved != null) {
+					return parseReleaseProperties(zip.getInputStream(resolved));
 				}
 			}
 		}
@@ -124,346 +168,258 @@ public class ArchiveUtils {
 	 * Extract release file from TAR.GZ or TAR.XZ archive.
 	 *
 	 * @param tarFile The TAR.GZ or TAR.XZ file
+	 * @param type The type of the archive (apk, tar_gz or tar_xz)
 	 * @return Map of release properties or null if not found
 	 */
-	private static Map<String, String> extractReleaseFromTarGz(Path tarFile) throws IOException {
-		// Search for any file named "release" in the archive
-		// This handles various layouts including macOS packages with nested structures
-		boolean isXz = tarFile.toString().toLowerCase().endsWith(".tar.xz")
-				|| tarFile.toString().toLowerCase().endsWith(".txz");
+	private static Map<String, String> extractReleaseFromTar(Path tarFile, JdkMetadata.FileType type)
+			throws IOException {
 		try (InputStream fis = Files.newInputStream(tarFile);
-				InputStream compressedStream = isXz ? new XZCompressorInputStream(fis) : new GZIPInputStream(fis);
-				TarArchiveInputStream tis = new TarArchiveInputStream(compressedStream)) {
-
-			TarArchiveEntry entry;
-			while ((entry = tis.getNextEntry()) != null) {
-				String name = entry.getName();
-
-				// Check if this is a "release" file (not a directory)
-				if (!entry.isDirectory() && (name.equals("release") || name.endsWith("/release"))) {
-					// Found a release file - extract it
-					return parseReleaseProperties(tis);
-				}
-			}
+				InputStream compressedStream = openCompressedTar(fis, type)) {
+			return extractReleaseFromTar(compressedStream);
 		}
-
-		return null;
 	}
 
 	/**
-	 * Check if we are running on macOS.
+	 * Open the decompressing stream for a compressed TAR archive.
 	 *
-	 * @return true if running on macOS, false otherwise
+	 * @param in The raw (compressed) archive data
+	 * @param type The type of the archive (apk, tar_gz or tar_xz)
+	 * @return The stream of uncompressed TAR data
 	 */
-	public static boolean isMacOS() {
-		String osName = System.getProperty("os.name", "").toLowerCase();
-		return osName.contains("mac") || osName.contains("darwin");
+	static InputStream openCompressedTar(InputStream in, JdkMetadata.FileType type) throws IOException {
+		return switch (type) {
+			case tar_xz -> new XZCompressorInputStream(in);
+			case apk, tar_gz -> new GZIPInputStream(in);
+			default -> throw new IllegalArgumentException("Not a compressed TAR archive: " + type);
+		};
 	}
 
 	/**
-	 * Extract release file from PKG archive using pkgutil command (macOS only).
-	 * PKG files contain CPIO archives (Payload files) that need to be extracted.
+	 * Search a stream of TAR data for the release file. Reading stops as soon as the release file
+	 * has been found, the remainder of the stream is left unread.
 	 *
-	 * @param pkgFile The PKG file
+	 * @param tarStream The uncompressed TAR data
 	 * @return Map of release properties or null if not found
-	 * @throws IOException
 	 */
-	private static Map<String, String> extractReleaseFromPkg(Path pkgFile) throws IOException {
-		Path tempDir = null;
-		try {
-			// Create temporary directory for extraction
-			tempDir = Files.createTempDirectory("jdk-pkg-extract-");
-			// pkgutil requires the destination folder to NOT exist!
-			Path expandDir = tempDir.resolve("pkg-expanded");
+	static Map<String, String> extractReleaseFromTar(InputStream tarStream) throws IOException {
+		// Search for any file named "release" in the archive
+		// This handles various layouts including macOS packages with nested structures
+		// (we don't close the TAR stream because that would close the underlying stream)
+		TarArchiveInputStream tis = new TarArchiveInputStream(tarStream);
+		TarArchiveEntry entry;
+		while ((entry = tis.getNextEntry()) != null) {
+			String name = entry.getName();
+
+			// Check if this is a "release" file (not a directory or a link, which have no content)
+			if (entry.isFile()
+					&& !entry.isSymbolicLink()
+					&& !entry.isLink()
+					&& (name.equals("release") || name.endsWith("/release"))) {
+				// Found a release file - extract it
+				return parseReleaseProperties(tis);
+			}
+		}
 
-			// Step 1: Extract PKG contents using pkgutil (gets full package structure)
-			Process process = new ProcessBuilder(
-							"pkgutil",
-							"--expand-full",
-							pkgFile.toAbsolutePath().toString(),
-							expandDir.toAbsolutePath().toString())
-					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
-					.redirectError(ProcessBuilder.Redirect.DISCARD)
-					.start();
+		return null;
+	}
 
-			try {
-				boolean finished = process.waitFor(10, TimeUnit.MINUTES);
-				if (!finished) {
-					process.destroyForcibly();
-					logger.warn("pkgutil extraction timed out after 10 minutes");
-					return null;
+	/**
+	 * Extract release file from DMG disk image. The HFS+ volume in the image is searched for a
+	 * release file in its root, or in the root or the Contents/Home folder of a folder in its root
+	 * (a JDK bundle). When there is none, the installer packages in the root of the volume are read
+	 * like a PKG file. Only the parts of the image that are needed to find and read the file get
+	 * decompressed.
+	 *
+	 * <p>Images with an APFS volume, with LZFSE compressed chunks on the way to the release file or
+	 * with a compressed release file can't be read.
+	 *
+	 * @param dmgFile The DMG file
+	 * @return Map of release properties or null if not found
+	 */
+	private static Map<String, String> extractReleaseFromDmg(Path dmgFile) throws IOException {
+		try (UdifImage image = UdifImage.open(dmgFile)) {
+			for (UdifImage.Partition partition : image.partitions()) {
+				HfsPlusVolume volume = partition.size() >= 4096 ? HfsPlusVolume.open(partition::read) : null;
+				if (volume == null) {
+					continue;
 				}
-				int exitCode = process.exitValue();
-				if (exitCode != 0) {
-					logger.warn("pkgutil extraction failed with exit code: {}", exitCode);
-					return null;
+				Map<String, String> releaseInfo = extractReleaseFromHfs(volume);
+				if (releaseInfo == null) {
+					logger.warn("No release file found in DMG image");
 				}
-			} catch (InterruptedException e) {
-				process.destroyForcibly();
-				logger.info("pkgutil extraction interrupted");
-				return null;
+				return releaseInfo;
 			}
+			logger.warn("No HFS+ volume found in DMG image");
+			return null;
+		}
+	}
 
-			// Step 2: Search for release file in the expanded directory
-			Path releaseFile = findReleaseFile(expandDir);
-			if (releaseFile == null) {
-				logger.warn("No release file found in PKG archive");
-				return null;
+	private static Map<String, String> extractReleaseFromHfs(HfsPlusVolume volume) throws IOException {
+		HfsPlusVolume.Entry release = findReleaseFile(volume);
+		if (release != null) {
+			return parseReleaseProperties(new ByteArrayInputStream(volume.read(release)));
+		}
+		for (HfsPlusVolume.Entry pkg : volume.list(volume.root())) {
+			if (pkg.folder() || !pkg.name().endsWith(".pkg")) {
+				continue;
 			}
+			try (XarArchive xar = XarArchive.open(volume.open(pkg))) {
+				Map<String, String> releaseInfo = extractReleaseFromPkg(xar);
+				if (releaseInfo != null) {
+					return releaseInfo;
+				}
+			}
+		}
+		return null;
+	}
 
-			// Step 3: Parse the release file
-			try (InputStream is = Files.newInputStream(releaseFile)) {
-				return parseReleaseProperties(is);
+	/** Find the release file in the root of an HFS+ volume or in a (JDK bundle) folder in its root */
+	private static HfsPlusVolume.Entry findReleaseFile(HfsPlusVolume volume) throws IOException {
+		HfsPlusVolume.Entry release = volume.find(volume.root(), "release");
+		if (release != null && !release.folder()) {
+			return release;
+		}
+		for (HfsPlusVolume.Entry folder : volume.list(volume.root())) {
+			if (!folder.folder()) {
+				continue;
 			}
-		} finally {
-			// Clean up temporary directory
-			if (tempDir != null) {
-				FileUtils.deleteDirectory(tempDir);
+			for (String[] path : new String[][] {{"release"}, {"Contents", "Home", "release"}}) {
+				release = volume.find(folder, path);
+				if (release != null && !release.folder()) {
+					return release;
+				}
 			}
 		}
+		return null;
 	}
 
 	/**
-	 * Extract release file from RPM archive using rpm2cpio and cpio commands.
+	 * Extract release file from PKG archive. A PKG file is a xar archive with a Payload file for
+	 * every component package, which is a compressed CPIO archive. The payloads are decompressed as
+	 * a stream and their entries are read until the release file is found.
 	 *
-	 * @param rpmFile The RPM file
+	 * @param pkgFile The PKG file
 	 * @return Map of release properties or null if not found
-	 * @throws IOException
 	 */
-	private static Map<String, String> extractReleaseFromRpm(Path rpmFile) throws IOException {
-		Path tempDir = null;
-		try {
-			// Create temporary directory for extraction
-			tempDir = Files.createTempDirectory("jdk-rpm-extract-");
-
-			// Step 1: Convert RPM to CPIO and extract using cpio
-			// rpm2cpio outputs to stdout, pipe to cpio for extraction
-			ProcessBuilder pb = new ProcessBuilder(
-							"/bin/sh",
-							"-c",
-							String.format(
-									"rpm2cpio '%s' | cpio -idm 2>/dev/null",
-									rpmFile.toAbsolutePath().toString()))
-					.directory(tempDir.toFile())
-					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
-					.redirectError(ProcessBuilder.Redirect.DISCARD);
-
-			Process process = pb.start();
+	private static Map<String, String> extractReleaseFromPkg(Path pkgFile) throws IOException {
+		try (XarArchive xar = XarArchive.open(pkgFile)) {
+			Map<String, String> releaseInfo = extractReleaseFromPkg(xar);
+			if (releaseInfo != null) {
+				return releaseInfo;
+			}
+		}
+		logger.warn("No release file found in PKG archive");
+		return null;
+	}
 
-			try {
-				boolean finished = process.waitFor(10, TimeUnit.MINUTES);
-				if (!finished) {
-					process.destroyForcibly();
-					logger.warn("RPM extraction timed out after 10 minutes");
-					return null;
-				}
-				int exitCode = process.exitValue();
-				if (exitCode != 0) {
-					logger.warn("RPM extraction failed with exit code: {}", exitCode);
-					return null;
+	private static Map<String, String> extractReleaseFromPkg(XarArchive xar) throws IOException {
+		for (XarArchive.Entry entry : xar.entries()) {
+			String name = entry.path();
+			if (!name.equals("Payload") && !name.endsWith("/Payload")) {
+				continue;
+			}
+			try (InputStream payload = PkgPayload.open(xar.open(entry))) {
+				Map<String, String> releaseInfo = extractReleaseFromCpio(payload);
+				if (releaseInfo != null) {
+					return releaseInfo;
 				}
-			} catch (InterruptedException e) {
-				process.destroyForcibly();
-				logger.info("RPM extraction interrupted");
-				return null;
 			}
+		}
+		return null;
+	}
 
-			// Step 2: Search for release file in the extracted directory
-			Path releaseFile = findReleaseFile(tempDir);
-			if (releaseFile == null) {
+	/**
+	 * Extract release file from RPM archive. Only the headers are parsed, the payload is then
+	 * decompressed as a stream and its CPIO entries are read until the release file is found.
+	 *
+	 * @param rpmFile The RPM file
+	 * @return Map of release properties or null if not found
+	 * @throws IOException
+	 */
+	private static Map<String, String> extractReleaseFromRpm(Path rpmFile) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(rpmFile));
+				InputStream payload = RpmPayload.open(in)) {
+			Map<String, String> releaseInfo = extractReleaseFromCpio(payload);
+			if (releaseInfo == null) {
 				logger.warn("No release file found in RPM archive");
-				return null;
 			}
+			return releaseInfo;
+		}
+	}
 
-			// Step 3: Parse the release file
-			try (InputStream is = Files.newInputStream(releaseFile)) {
-				return parseReleaseProperties(is);
-			}
-		} finally {
-			// Clean up temporary directory
-			if (tempDir != null) {
-				FileUtils.deleteDirectory(tempDir);
+	/**
+	 * Search a stream of CPIO data for the release file. Reading stops as soon as the release file
+	 * has been found.
+	 *
+	 * @param cpioStream The uncompressed CPIO data
+	 * @return Map of release properties or null if not found
+	 */
+	static Map<String, String> extractReleaseFromCpio(InputStream cpioStream) throws IOException {
+		// (we don't close the CPIO stream because that would close the underlying stream)
+		CpioArchiveInputStream cis = new CpioArchiveInputStream(cpioStream);
+		CpioArchiveEntry entry;
+		while ((entry = cis.getNextEntry()) != null) {
+			String name = entry.getName();
+			if (entry.isRegularFile() && (name.equals("release") || name.endsWith("/release"))) {
+				return parseReleaseProperties(cis);
 			}
 		}
+		return null;
 	}
 
 	/**
-	 * Extract release file from DEB archive using ar and tar commands.
+	 * Extract release file from DEB archive. The AR archive is read as a stream up to its
+	 * data.tar.* member, whose entries are then read until the release file is found.
 	 *
 	 * @param debFile The DEB file
 	 * @return Map of release properties or null if not found
 	 * @throws IOException
 	 */
 	private static Map<String, String> extractReleaseFromDeb(Path debFile) throws IOException {
-		Path tempDir = null;
-		try {
-			// Create temporary directory for extraction
-			tempDir = Files.createTempDirectory("jdk-deb-extract-");
-
-			// Step 1: Extract DEB archive using ar
-			Process arProcess = new ProcessBuilder(
-							"ar", "x", debFile.toAbsolutePath().toString())
-					.directory(tempDir.toFile())
-					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
-					.redirectError(ProcessBuilder.Redirect.DISCARD)
-					.start();
-
-			try {
-				boolean finished = arProcess.waitFor(10, TimeUnit.MINUTES);
-				if (!finished) {
-					arProcess.destroyForcibly();
-					logger.warn("DEB extraction (ar) timed out after 10 minutes");
-					return null;
-				}
-				int exitCode = arProcess.exitValue();
-				if (exitCode != 0) {
-					logger.warn("DEB extraction (ar) failed with exit code: {}", exitCode);
-					return null;
-				}
-			} catch (InterruptedException e) {
-				arProcess.destroyForcibly();
-				logger.info("DEB extraction (ar) interrupted");
-				return null;
-			}
-
-			// Step 2: Find the data.tar.* file
-			Path dataArchive = null;
-			for (String name : new String[] {"data.tar.xz", "data.tar.gz", "data.tar.bz2", "data.tar"}) {
-				Path candidate = tempDir.resolve(name);
-				if (Files.exists(candidate)) {
-					dataArchive = candidate;
-					break;
-				}
-			}
-
-			if (dataArchive == null) {
-				logger.warn("No data.tar.* file found in DEB archive");
-				return null;
-			}
-
-			// Step 3: Extract the data archive
-			Path dataExtractDir = tempDir.resolve("data");
-			Files.createDirectories(dataExtractDir);
-
-			Process tarProcess = new ProcessBuilder(
-							"tar", "xf", dataArchive.toAbsolutePath().toString())
-					.directory(dataExtractDir.toFile())
-					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
-					.redirectError(ProcessBuilder.Redirect.DISCARD)
-					.start();
-
-			try {
-				boolean finished = tarProcess.waitFor(10, TimeUnit.MINUTES);
-				if (!finished) {
-					tarProcess.destroyForcibly();
-					logger.warn("DEB extraction (tar) timed out after 10 minutes");
-					return null;
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(debFile));
+				ArArchiveInputStream ais = new ArArchiveInputStream(in)) {
+			ArArchiveEntry entry;
+			while ((entry = ais.getNextEntry()) != null) {
+				String name = entry.getName();
+				if (!name.startsWith("data.tar")) {
+					continue;
 				}
-				int exitCode = tarProcess.exitValue();
-				if (exitCode != 0) {
-					logger.warn("DEB extraction (tar) failed with exit code: {}", exitCode);
-					return null;
+				InputStream dataStream = switch (name) {
+					case "data.tar" -> ais;
+					case "data.tar.gz" -> new GZIPInputStream(ais);
+					case "data.tar.xz" -> new XZCompressorInputStream(ais);
+					case "data.tar.bz2" -> new BZip2CompressorInputStream(ais);
+					case "data.tar.zst" -> new ZstdCompressorInputStream(ais);
+					case "data.tar.lzma" -> new LZMACompressorInputStream(ais);
+					default -> throw new IOException("Unsupported DEB data archive: " + name);
+				};
+				Map<String, String> releaseInfo = extractReleaseFromTar(dataStream);
+				if (releaseInfo == null) {
+					logger.warn("No release file found in DEB archive");
 				}
-			} catch (InterruptedException e) {
-				tarProcess.destroyForcibly();
-				logger.info("DEB extraction (tar) interrupted");
-				return null;
-			}
-
-			// Step 4: Search for release file in the extracted directory
-			Path releaseFile = findReleaseFile(dataExtractDir);
-			if (releaseFile == null) {
-				logger.warn("No release file found in DEB archive");
-				return null;
-			}
-
-			// Step 5: Parse the release file
-			try (InputStream is = Files.newInputStream(releaseFile)) {
-				return parseReleaseProperties(is);
-			}
-		} finally {
-			// Clean up temporary directory
-			if (tempDir != null) {
-				FileUtils.deleteDirectory(tempDir);
+				return releaseInfo;
 			}
+			logger.warn("No data.tar.* file found in DEB archive");
+			return null;
 		}
 	}
 
 	/**
-	 * Extract release file from MSI archive using msiextract command.
+	 * Extract release file from MSI archive. The MSI database is read to find the release file and
+	 * the embedded cabinet it is in, and only that file is decompressed.
 	 *
 	 * @param msiFile The MSI file
 	 * @return Map of release properties or null if not found
 	 * @throws IOException
 	 */
 	private static Map<String, String> extractReleaseFromMsi(Path msiFile) throws IOException {
-		Path tempDir = null;
-		try {
-			// Create temporary directory for extraction
-			tempDir = Files.createTempDirectory("jdk-msi-extract-");
-
-			// Step 1: Extract MSI archive using msiextract
-			Process process = new ProcessBuilder(
-							"msiextract",
-							"-C",
-							tempDir.toAbsolutePath().toString(),
-							msiFile.toAbsolutePath().toString())
-					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
-					.redirectError(ProcessBuilder.Redirect.DISCARD)
-					.start();
-
-			try {
-				boolean finished = process.waitFor(10, TimeUnit.MINUTES);
-				if (!finished) {
-					process.destroyForcibly();
-					logger.warn("MSI extraction timed out after 10 minutes");
-					return null;
-				}
-				int exitCode = process.exitValue();
-				if (exitCode != 0) {
-					logger.warn("MSI extraction failed with exit code: {}", exitCode);
-					return null;
-				}
-			} catch (InterruptedException e) {
-				process.destroyForcibly();
-				logger.info("MSI extraction interrupted");
-				return null;
-			}
-
-			// Step 2: Search for release file in the extracted directory
-			Path releaseFile = findReleaseFile(tempDir);
-			if (releaseFile == null) {
+		try (MsiPackage msi = MsiPackage.open(msiFile)) {
+			byte[] release = msi.readFile("release");
+			if (release == null) {
 				logger.warn("No release file found in MSI archive");
 				return null;
 			}
-
-			// Step 3: Parse the release file
-			try (InputStream is = Files.newInputStream(releaseFile)) {
-				return parseReleaseProperties(is);
-			}
-		} finally {
-			// Clean up temporary directory
-			if (tempDir != null) {
-				FileUtils.deleteDirectory(tempDir);
-			}
-		}
-	}
-
-	/**
-	 * Find the release file in an extracted directory.
-	 *
-	 * @param dir The directory to search
-	 * @return Path to the release file, or null if not found
-	 */
-	private static Path findReleaseFile(Path dir) throws IOException {
-		try (var stream = Files.walk(dir)) {
-			return stream.filter(Files::isRegularFile)
-					.filter(p -> {
-						String name = p.getFileName().toString();
-						return name.equals("release");
-					})
-					.findFirst()
-					.orElse(null);
+			return parseReleaseProperties(new ByteArrayInputStream(release));
 		}
 	}
 
@@ -0,0 +1,245 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of downloaded artifacts that is shared between download runs. The files
+ * themselves are stored by their SHA-256 checksum, so identical files downloaded from different
+ * URLs are only stored once. An index entry per URL records the validator (ETag or Last-Modified)
+ * and the size the server reported for it, a cached file is only used if the server still reports
+ * the same values. When the cache grows beyond its maximum size the least recently used entries
+ * are evicted, except for the files that are still in use after a {@link #lookup}.
+ */
+public class ArtifactCache {
+	private static final Logger logger = LoggerFactory.getLogger(ArtifactCache.class);
+
+	private final Path objectsDir;
+	private final Path indexDir;
+	private final long maxSize;
+	// The number of users of each object that was handed out by lookup and not released yet
+	private final Map<String, Integer> pinned = new HashMap<>();
+
+	/**
+	 * Information about a cached artifact
+	 *
+	 * @param url The URL the artifact was downloaded from
+	 * @param validator The strong ETag or Last-Modified value of the artifact, if any
+	 * @param size The size of the artifact in bytes
+	 * @param sha256 The SHA-256 checksum of the artifact
+	 */
+	record Entry(String url, String validator, long size, String sha256) {}
+
+	/**
+	 * Create a new artifact cache.
+	 *
+	 * @param cacheDir The directory to store the cache in
+	 * @param maxSize The maximum total size of the cached files in bytes
+	 */
+	public ArtifactCache(Path cacheDir, long maxSize) throws IOException {
+		this.objectsDir = cacheDir.resolve("objects");
+		this.indexDir = cacheDir.resolve("index");
+		this.maxSize = maxSize;
+		Files.createDirectories(objectsDir);
+		Files.createDirectories(indexDir);
+	}
+
+	/**
+	 * Look up the cached artifact for a URL.
+	 *
+	 * @param url The URL of the artifact
+	 * @param remote The current information about the artifact as reported by the server
+	 * @return The cached file, or null if the URL isn't cached or the server reports a different
+	 *     version of the file than the one in the cache. The file won't be evicted until it is
+	 *     passed to {@link #release(Path)}.
+	 */
+	public synchronized Path lookup(String url, HttpUtils.RemoteFile remote) throws IOException {
+		if (!cacheable(remote)) {
+			return null;
+		}
+		Path indexFile = indexFile(url);
+		Entry entry = readEntry(indexFile);
+		if (entry == null
+				|| !entry.url().equals(url)
+				|| !Objects.equals(entry.validator(), remote.validator())
+				|| (remote.size() >= 0 && entry.size() != remote.size())) {
+			return null;
+		}
+		Path object = objectsDir.resolve(entry.sha256());
+		try {
+			if (Files.size(object) != entry.size()) {
+				return null;
+			}
+			// Mark the entry as recently used
+			Files.setLastModifiedTime(indexFile, FileTime.from(Instant.now()));
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		pinned.merge(entry.sha256(), 1, Integer::sum);
+		return object;
+	}
+
+	/**
+	 * Tell the cache that a file returned by {@link #lookup} isn't used anymore, so it can be
+	 * evicted again.
+	 *
+	 * @param object The cached file
+	 */
+	public synchronized void release(Path object) {
+		pinned.computeIfPresent(object.getFileName().toString(), (sha256, count) -> count > 1 ? count - 1 : null);
+	}
+
+	/**
+	 * Add a downloaded artifact to the cache. The file is moved into the cache, so it won't exist
+	 * at its original location anymore afterwards (unless the same file was already cached).
+	 *
+	 * @param url The URL the artifact was downloaded from
+	 * @param remote The information about the artifact as reported by the server
+	 * @param file The downloaded file
+	 * @param sha256 The SHA-256 checksum of the file
+	 */
+	public synchronized void store(String url, HttpUtils.RemoteFile remote, Path file, String sha256)
+			throws IOException {
+		if (!cacheable(remote)) {
+			return;
+		}
+		long size = Files.size(file);
+		if (size > maxSize || (remote.size() >= 0 && remote.size() != size)) {
+			return;
+		}
+		Path object = objectsDir.resolve(sha256);
+		if (!Files.exists(object)) {
+			try {
+				Files.move(file, object, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// Different file system or already added by someone else, copy it instead
+				try {
+					Path tmp = Files.createTempFile(objectsDir, sha256, ".tmp");
+					Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+					Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+				} catch (FileAlreadyExistsException ex) {
+					// Fine, another download of the same file got there first
+				}
+			}
+		}
+		writeEntry(indexFile(url), new Entry(url, remote.validator(), size, sha256));
+		evict();
+	}
+
+	/** Remove the least recently used entries until the cache fits within its maximum size */
+	private void evict() throws IOException {
+		Map<String, Long> objectSizes = new HashMap<>();
+		try (Stream<Path> objects = Files.list(objectsDir)) {
+			for (Path object : (Iterable<Path>) objects::iterator) {
+				if (!object.getFileName().toString().endsWith(".tmp")) {
+					objectSizes.put(object.getFileName().toString(), Files.size(object));
+				}
+			}
+		}
+		long total = objectSizes.values().stream().mapToLong(Long::longValue).sum();
+		if (total <= maxSize) {
+			return;
+		}
+
+		// Collect all index entries, oldest first
+		List<Path> indexFiles;
+		try (Stream<Path> files = Files.list(indexDir)) {
+			indexFiles = new ArrayList<>(files.toList());
+		}
+		Map<Path, FileTime> lastUsed = new HashMap<>();
+		for (Path indexFile : indexFiles) {
+			lastUsed.put(indexFile, Files.getLastModifiedTime(indexFile));
+		}
+		indexFiles.sort(Comparator.comparing(lastUsed::get));
+		Map<String, Integer> references = new HashMap<>();
+		Map<Path, String> indexObjects = new HashMap<>();
+		for (Path indexFile : indexFiles) {
+			Entry entry = readEntry(indexFile);
+			if (entry != null) {
+				indexObjects.put(indexFile, entry.sha256());
+				references.merge(entry.sha256(), 1, Integer::sum);
+			}
+		}
+
+		// Objects that no entry refers to are removed first
+		for (Map.Entry<String, Long> object : new ArrayList<>(objectSizes.entrySet())) {
+			if (!references.containsKey(object.getKey()) && !pinned.containsKey(object.getKey())) {
+				Files.deleteIfExists(objectsDir.resolve(object.getKey()));
+				objectSizes.remove(object.getKey());
+				total -= object.getValue();
+			}
+		}
+		for (Path indexFile : indexFiles) {
+			if (total <= maxSize) {
+				break;
+			}
+			String sha256 = indexObjects.get(indexFile);
+			if (sha256 != null && pinned.containsKey(sha256)) {
+				// Still being read, the entry stays until the next eviction
+				continue;
+			}
+			Files.deleteIfExists(indexFile);
+			if (sha256 != null && references.merge(sha256, -1, Integer::sum) == 0) {
+				Files.deleteIfExists(objectsDir.resolve(sha256));
+				Long size = objectSizes.remove(sha256);
+				total -= size != null ? size : 0;
+				logger.debug("Evicted {} from the artifact cache", sha256);
+			}
+		}
+	}
+
+	private static boolean cacheable(HttpUtils.RemoteFile remote) {
+		return remote != null && (remote.validator() != null || remote.size() > 0);
+	}
+
+	private Path indexFile(String url) throws IOException {
+		return indexDir.resolve(HashUtils.computeHash(url, "SHA-256") + ".properties");
+	}
+
+	private static Entry readEntry(Path indexFile) {
+		Properties props = new Properties();
+		try (InputStream is = Files.newInputStream(indexFile)) {
+			props.load(is);
+			return new Entry(
+					props.getProperty("url"),
+					props.getProperty("validator"),
+					Long.parseLong(props.getProperty("size", "-1")),
+					props.getProperty("sha256"));
+		} catch (IOException | NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static void writeEntry(Path indexFile, Entry entry) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("url", entry.url());
+		if (entry.validator() != null) {
+			props.setProperty("validator", entry.validator());
+		}
+		props.setProperty("size", Long.toString(entry.size()));
+		props.setProperty("sha256", entry.sha256());
+		Path tmp = Files.createTempFile(indexFile.getParent(), "entry", ".tmp");
+		try (OutputStream os = Files.newOutputStream(tmp)) {
+			props.store(os, "Cached artifact");
+		}
+		Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
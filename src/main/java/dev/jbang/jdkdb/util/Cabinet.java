@@ -0,0 +1,336 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader for single files in a Microsoft Cabinet (CAB) archive. The files of a cabinet are stored
+ * in folders, each of which is compressed as a whole (uncompressed, MSZIP or LZX) and split into
+ * data blocks of up to 32 KB. To get a file, only its folder is decompressed, and only up to the
+ * end of the file. The archive is read front to back, so it can be a plain stream.
+ */
+class Cabinet {
+	private static final int SIGNATURE = 0x4643534D; // "MSCF"
+	private static final int FLAG_PREV_CABINET = 0x0001;
+	private static final int FLAG_NEXT_CABINET = 0x0002;
+	private static final int FLAG_RESERVE_PRESENT = 0x0004;
+	private static final int FOLDER_CONTINUED = 0xFFFD;
+	private static final int COMPRESS_NONE = 0;
+	private static final int COMPRESS_MSZIP = 1;
+	private static final int COMPRESS_LZX = 3;
+	private static final int MAX_BLOCK_SIZE = 32768;
+	private static final int MAX_FILE_SIZE = 64 * 1024 * 1024;
+
+	private record Folder(long dataOffset, int blockCount, int compression) {}
+
+	private Cabinet() {
+		// Utility class
+	}
+
+	/**
+	 * Read a file from a cabinet.
+	 *
+	 * @param cabinet The cabinet data, positioned at its start
+	 * @param name The name of the file in the cabinet
+	 * @return The contents of the file, or null if the cabinet doesn't contain the file
+	 */
+	static byte[] readFile(InputStream cabinet, String name) throws IOException {
+		Reader in = new Reader(cabinet);
+		if (in.readInt() != SIGNATURE) {
+			throw new IOException("Not a cabinet file");
+		}
+		in.skipTo(16);
+		long filesOffset = in.readInt() & 0xFFFFFFFFL;
+		in.skipTo(26);
+		int folderCount = in.readShort();
+		int fileCount = in.readShort();
+		int flags = in.readShort();
+		in.skipTo(36);
+		int folderReserve = 0;
+		int dataReserve = 0;
+		if ((flags & FLAG_RESERVE_PRESENT) != 0) {
+			int headerReserve = in.readShort();
+			folderReserve = in.readByte();
+			dataReserve = in.readByte();
+			in.skip(headerReserve);
+		}
+		if ((flags & FLAG_PREV_CABINET) != 0) {
+			in.readString(false);
+			in.readString(false);
+		}
+		if ((flags & FLAG_NEXT_CABINET) != 0) {
+			in.readString(false);
+			in.readString(false);
+		}
+
+		List<Folder> folders = new ArrayList<>();
+		for (int i = 0; i < folderCount; i++) {
+			long dataOffset = in.readInt() & 0xFFFFFFFFL;
+			int blockCount = in.readShort();
+			int compression = in.readShort();
+			in.skip(folderReserve);
+			folders.add(new Folder(dataOffset, blockCount, compression));
+		}
+
+		in.skipTo(filesOffset);
+		for (int i = 0; i < fileCount; i++) {
+			long size = in.readInt() & 0xFFFFFFFFL;
+			long folderOffset = in.readInt() & 0xFFFFFFFFL;
+			int folderIndex = in.readShort();
+			in.skip(4); // date and time
+			int attributes = in.readShort();
+			String fileName = in.readString((attributes & 0x80) != 0);
+			if (!fileName.equals(name)) {
+				continue;
+			}
+			if (folderIndex >= FOLDER_CONTINUED) {
+				throw new IOException("File " + name + " is split over multiple cabinets");
+			}
+			if (folderIndex >= folders.size() || size > MAX_FILE_SIZE) {
+				throw new IOException("Invalid cabinet entry for " + name);
+			}
+			// All the file entries come before the data, which we can't skip back to
+			Folder folder = folders.get(folderIndex);
+			in.skipTo(folder.dataOffset());
+			return extract(new DataBlocks(in, folder.blockCount(), dataReserve), folder, folderOffset, (int) size);
+		}
+		return null;
+	}
+
+	/** Decompress a folder up to the end of a file and return the bytes of the file */
+	private static byte[] extract(DataBlocks blocks, Folder folder, long start, int size) throws IOException {
+		byte[] file = new byte[size];
+		byte[] block = new byte[MAX_BLOCK_SIZE];
+		long position = 0;
+		int type = folder.compression() & 0x000F;
+		LzxDecoder lzx = type == COMPRESS_LZX ? new LzxDecoder(blocks, (folder.compression() >> 8) & 0x1F) : null;
+		Inflater inflater = type == COMPRESS_MSZIP ? new Inflater(true) : null;
+		try {
+			for (int index = 0; position < start + size; index++) {
+				int length = blocks.uncompressedSize(index);
+				if (length <= 0) {
+					throw new EOFException("Cabinet folder ends before the end of the file");
+				}
+				switch (type) {
+					case COMPRESS_NONE -> blocks.readPayload(block, length);
+					case COMPRESS_MSZIP -> inflateBlock(blocks, inflater, block, length, index > 0);
+					case COMPRESS_LZX -> lzx.decodeFrame(block, length);
+					default -> throw new IOException("Unsupported cabinet compression type: " + type);
+				}
+				// Copy the part of the block that overlaps with the file
+				long from = Math.max(start, position);
+				long to = Math.min(start + size, position + length);
+				if (from < to) {
+					System.arraycopy(block, (int) (from - position), file, (int) (from - start), (int) (to - from));
+				}
+				position += length;
+			}
+		} finally {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Inflate an MSZIP block. Each block is a separate deflate stream that uses the output of the
+	 * previous block as its dictionary.
+	 */
+	private static void inflateBlock(DataBlocks blocks, Inflater inflater, byte[] block, int length, boolean hasPrevious)
+			throws IOException {
+		byte[] data = blocks.readPayload();
+		if (data.length < 2 || data[0] != 'C' || data[1] != 'K') {
+			throw new IOException("Invalid MSZIP block");
+		}
+		try {
+			inflater.reset();
+			if (hasPrevious) {
+				inflater.setDictionary(block, 0, blocks.previousUncompressedSize());
+			}
+			inflater.setInput(data, 2, data.length - 2);
+			byte[] output = new byte[length];
+			int n = 0;
+			while (n < length) {
+				int inflated = inflater.inflate(output, n, length - n);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += inflated;
+			}
+			if (n != length) {
+				throw new IOException("MSZIP block decompressed to " + n + " bytes instead of " + length);
+			}
+			System.arraycopy(output, 0, block, 0, length);
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid MSZIP block", e);
+		}
+	}
+
+	/**
+	 * The data blocks of a folder. Reading from this stream returns the compressed data of the
+	 * blocks one after the other, as needed by the LZX decoder.
+	 */
+	private static class DataBlocks extends InputStream {
+		private final Reader in;
+		private final int reserve;
+		private int blocksLeft;
+		private int payloadLeft;
+		private final List<Integer> uncompressedSizes = new ArrayList<>();
+
+		DataBlocks(Reader in, int blockCount, int reserve) {
+			this.in = in;
+			this.blocksLeft = blockCount;
+			this.reserve = reserve;
+		}
+
+		/**
+		 * Get the uncompressed size of a block, reading its header if the data of all the blocks
+		 * before it has been read.
+		 *
+		 * @return The size, or -1 if there is no such block
+		 */
+		int uncompressedSize(int index) throws IOException {
+			while (uncompressedSizes.size() <= index) {
+				if (payloadLeft > 0 || !nextBlock()) {
+					return -1;
+				}
+			}
+			return uncompressedSizes.get(index);
+		}
+
+		int previousUncompressedSize() {
+			return uncompressedSizes.get(uncompressedSizes.size() - 2);
+		}
+
+		/** Read the (remaining) compressed data of the current block */
+		byte[] readPayload() throws IOException {
+			byte[] data = in.readBytes(payloadLeft);
+			payloadLeft = 0;
+			return data;
+		}
+
+		/** Read the data of an uncompressed block */
+		void readPayload(byte[] block, int length) throws IOException {
+			if (payloadLeft != length) {
+				throw new IOException("Invalid uncompressed cabinet block");
+			}
+			System.arraycopy(readPayload(), 0, block, 0, length);
+		}
+
+		private boolean nextBlock() throws IOException {
+			if (blocksLeft == 0) {
+				return false;
+			}
+			blocksLeft--;
+			in.skip(4); // checksum
+			payloadLeft = in.readShort();
+			int uncompressedSize = in.readShort();
+			in.skip(reserve);
+			if (uncompressedSize == 0 || uncompressedSize > MAX_BLOCK_SIZE) {
+				throw new IOException("Unsupported cabinet data block size: " + uncompressedSize);
+			}
+			uncompressedSizes.add(uncompressedSize);
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (payloadLeft == 0) {
+				if (!nextBlock()) {
+					return -1;
+				}
+			}
+			int n = in.read(b, off, Math.min(len, payloadLeft));
+			if (n > 0) {
+				payloadLeft -= n;
+			}
+			return n;
+		}
+	}
+
+	/** Little endian reader that keeps track of its position in the cabinet */
+	private static class Reader {
+		private final InputStream in;
+		private long position;
+
+		Reader(InputStream in) {
+			this.in = in;
+		}
+
+		int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n < 0) {
+				throw new EOFException("Unexpected end of cabinet file");
+			}
+			position += n;
+			return n;
+		}
+
+		int readByte() throws IOException {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Unexpected end of cabinet file");
+			}
+			position++;
+			return b;
+		}
+
+		int readShort() throws IOException {
+			return readByte() | readByte() << 8;
+		}
+
+		int readInt() throws IOException {
+			return readShort() | readShort() << 16;
+		}
+
+		byte[] readBytes(int length) throws IOException {
+			byte[] data = in.readNBytes(length);
+			position += data.length;
+			if (data.length != length) {
+				throw new EOFException("Unexpected end of cabinet file");
+			}
+			return data;
+		}
+
+		String readString(boolean utf8) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			int b;
+			while ((b = readByte()) != 0) {
+				if (bytes.size() > 1024) {
+					throw new IOException("Invalid cabinet file name");
+				}
+				bytes.write(b);
+			}
+			return bytes.toString(utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+		}
+
+		void skip(long n) throws IOException {
+			in.skipNBytes(n);
+			position += n;
+		}
+
+		void skipTo(long offset) throws IOException {
+			if (offset < position) {
+				throw new IOException("Unsupported cabinet layout");
+			}
+			skip(offset - position);
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only access to the streams in the root storage of an OLE2 compound file, the container
+ * format of MSI installers. The file is made up of fixed size sectors that are chained together
+ * by a file allocation table (FAT). Small streams are kept in a separate mini stream with its own
+ * allocation table. Streams are read directly from the file, nothing is unpacked to disk.
+ */
+class CompoundFile implements Closeable {
+	private static final long SIGNATURE = 0xE11AB1A1E011CFD0L;
+	private static final int HEADER_SIZE = 512;
+	private static final int DIRECTORY_ENTRY_SIZE = 128;
+	private static final int HEADER_DIFAT_ENTRIES = 109;
+	private static final int MAX_REG_SECTOR = 0xFFFFFFFA;
+	private static final int END_OF_CHAIN = 0xFFFFFFFE;
+	private static final int NO_STREAM = 0xFFFFFFFF;
+	private static final int TYPE_STREAM = 2;
+	private static final int TYPE_ROOT = 5;
+	// Contiguous sectors are read with a single read of at most this many bytes
+	private static final int MAX_READ_SIZE = 64 * 1024;
+
+	/** A stream in the compound file */
+	record Entry(String name, int startSector, long size) {}
+
+	private final FileChannel channel;
+	private final int sectorSize;
+	private final int miniSectorSize;
+	private final long miniStreamCutoff;
+	private final int[] fat;
+	private final int[] miniFat;
+	private final Entry root;
+	private final Map<String, Entry> streams = new HashMap<>();
+	private byte[] miniStream;
+
+	private CompoundFile(FileChannel channel) throws IOException {
+		this.channel = channel;
+		ByteBuffer header = read(0, HEADER_SIZE);
+		if (header.getLong(0) != SIGNATURE) {
+			throw new IOException("Not an OLE2 compound file");
+		}
+		int sectorShift = header.getShort(0x1E) & 0xFFFF;
+		int miniSectorShift = header.getShort(0x20) & 0xFFFF;
+		if (sectorShift != 9 && sectorShift != 12 || miniSectorShift != 6) {
+			throw new IOException("Unsupported compound file sector size");
+		}
+		sectorSize = 1 << sectorShift;
+		miniSectorSize = 1 << miniSectorShift;
+		miniStreamCutoff = header.getInt(0x38) & 0xFFFFFFFFL;
+		fat = readFat(header);
+		int directoryStart = header.getInt(0x30);
+		miniFat = toInts(readChain(header.getInt(0x3C), -1));
+
+		// The directory is a red-black tree, the entries of the root storage are the root's
+		// child and all the siblings reachable from it
+		ByteBuffer directory = ByteBuffer.wrap(readChain(directoryStart, -1)).order(ByteOrder.LITTLE_ENDIAN);
+		int entryCount = directory.capacity() / DIRECTORY_ENTRY_SIZE;
+		if (entryCount == 0 || directory.get(0x42) != TYPE_ROOT) {
+			throw new IOException("Compound file has no root storage");
+		}
+		root = entry(directory, 0, sectorSize);
+		Deque<Integer> todo = new ArrayDeque<>();
+		Set<Integer> seen = new HashSet<>();
+		todo.push(directory.getInt(0x4C));
+		while (!todo.isEmpty()) {
+			int id = todo.pop();
+			if (id == NO_STREAM || id <= 0 || id >= entryCount || !seen.add(id)) {
+				continue;
+			}
+			int offset = id * DIRECTORY_ENTRY_SIZE;
+			if (directory.get(offset + 0x42) == TYPE_STREAM) {
+				Entry entry = entry(directory, offset, sectorSize);
+				streams.put(entry.name(), entry);
+			}
+			todo.push(directory.getInt(offset + 0x44));
+			todo.push(directory.getInt(offset + 0x48));
+		}
+	}
+
+	/**
+	 * Open a compound file.
+	 *
+	 * @param file The file
+	 * @return The compound file, which must be closed after use
+	 */
+	static CompoundFile open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new CompoundFile(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get a stream of the root storage.
+	 *
+	 * @param name The (raw) name of the stream
+	 * @return The stream, or null if there is no stream with that name
+	 */
+	Entry stream(String name) {
+		return streams.get(name);
+	}
+
+	/**
+	 * Read a whole stream into memory.
+	 *
+	 * @param entry The stream
+	 * @return The contents of the stream
+	 */
+	byte[] read(Entry entry) throws IOException {
+		if (entry.size() > Integer.MAX_VALUE - 8) {
+			throw new IOException("Stream too large: " + entry.name());
+		}
+		if (entry.size() >= miniStreamCutoff) {
+			return readChain(entry.startSector(), (int) entry.size());
+		}
+		if (miniStream == null) {
+			miniStream = readChain(root.startSector(), (int) Math.min(root.size(), Integer.MAX_VALUE - 8));
+		}
+		byte[] data = new byte[(int) entry.size()];
+		int sector = entry.startSector();
+		for (int pos = 0; pos < data.length; pos += miniSectorSize) {
+			long offset = (long) sector * miniSectorSize;
+			if (sector < 0 || sector >= miniFat.length || offset >= miniStream.length) {
+				throw new IOException("Invalid mini sector chain for stream " + entry.name());
+			}
+			System.arraycopy(
+					miniStream, (int) offset, data, pos, Math.min(miniSectorSize, data.length - pos));
+			sector = miniFat[sector];
+		}
+		return data;
+	}
+
+	/**
+	 * Open a stream for reading, without loading all of it into memory.
+	 *
+	 * @param entry The stream
+	 * @return The contents of the stream
+	 */
+	InputStream open(Entry entry) throws IOException {
+		if (entry.size() < miniStreamCutoff) {
+			return new ByteArrayInputStream(read(entry));
+		}
+		return new ChainInputStream(entry.startSector(), entry.size());
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private int[] readFat(ByteBuffer header) throws IOException {
+		int fatSectors = header.getInt(0x2C);
+		int difatSector = header.getInt(0x44);
+		int entriesPerSector = sectorSize / 4;
+		if (fatSectors < 0 || (long) fatSectors * sectorSize > channel.size()) {
+			throw new IOException("Invalid compound file FAT size");
+		}
+		// The locations of the FAT sectors are in the header, followed by a chain of DIFAT sectors
+		int[] fatLocations = new int[fatSectors];
+		int count = 0;
+		for (int i = 0; i < HEADER_DIFAT_ENTRIES && count < fatSectors; i++) {
+			fatLocations[count++] = header.getInt(0x4C + i * 4);
+		}
+		Set<Integer> seen = new HashSet<>();
+		while (count < fatSectors) {
+			if (Integer.compareUnsigned(difatSector, MAX_REG_SECTOR) > 0 || !seen.add(difatSector)) {
+				throw new IOException("Invalid compound file DIFAT chain");
+			}
+			ByteBuffer difat = read(sectorOffset(difatSector), sectorSize);
+			for (int i = 0; i < entriesPerSector - 1 && count < fatSectors; i++) {
+				fatLocations[count++] = difat.getInt(i * 4);
+			}
+			difatSector = difat.getInt(sectorSize - 4);
+		}
+		int[] result = new int[fatSectors * entriesPerSector];
+		for (int i = 0; i < fatSectors; i++) {
+			ByteBuffer sector = read(sectorOffset(fatLocations[i]), sectorSize);
+			sector.asIntBuffer().get(result, i * entriesPerSector, entriesPerSector);
+		}
+		return result;
+	}
+
+	/** Read a chain of sectors, up to the given number of bytes or to the end of the chain (-1) */
+	private byte[] readChain(int sector, int size) throws IOException {
+		if (sector == END_OF_CHAIN || sector == NO_STREAM) {
+			return new byte[0];
+		}
+		try (InputStream in = new ChainInputStream(sector, size)) {
+			return in.readAllBytes();
+		}
+	}
+
+	private long sectorOffset(int sector) throws IOException {
+		if (Integer.compareUnsigned(sector, MAX_REG_SECTOR) > 0) {
+			throw new IOException("Invalid compound file sector: " + Integer.toUnsignedString(sector));
+		}
+		return (sector + 1L) * sectorSize;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of compound file");
+			}
+		}
+		return buffer.flip();
+	}
+
+	private static Entry entry(ByteBuffer directory, int offset, int sectorSize) {
+		int nameLength = Math.min(Math.max((directory.getShort(offset + 0x40) & 0xFFFF) / 2 - 1, 0), 31);
+		char[] name = new char[nameLength];
+		for (int i = 0; i < nameLength; i++) {
+			name[i] = directory.getChar(offset + i * 2);
+		}
+		long size = directory.getLong(offset + 0x78);
+		// Version 3 files (with 512 byte sectors) may have garbage in the high part of the size
+		if (sectorSize == 512) {
+			size &= 0xFFFFFFFFL;
+		}
+		return new Entry(new String(name), directory.getInt(offset + 0x74), size);
+	}
+
+	private static int[] toInts(byte[] bytes) {
+		int[] result = new int[bytes.length / 4];
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(result);
+		return result;
+	}
+
+	/** Reads a chain of regular sectors, combining runs of adjacent sectors into a single read */
+	private class ChainInputStream extends InputStream {
+		private final boolean sized;
+		private int sector;
+		private long remaining;
+		private int steps;
+		private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+		/** Read a chain up to the given size, or to its end if the size is -1 */
+		ChainInputStream(int sector, long size) {
+			this.sized = size >= 0;
+			this.sector = sector;
+			this.remaining = sized ? size : Long.MAX_VALUE;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return fill() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		private boolean fill() throws IOException {
+			if (buffer.hasRemaining()) {
+				return true;
+			}
+			if (remaining <= 0) {
+				return false;
+			}
+			if (sector == END_OF_CHAIN) {
+				if (sized) {
+					throw new EOFException("Compound file stream ends early");
+				}
+				return false;
+			}
+			int first = sector;
+			int count = 0;
+			do {
+				// A chain can't be longer than the FAT, anything else is a loop
+				if (sector < 0 || sector >= fat.length || ++steps > fat.length) {
+					throw new IOException("Invalid compound file sector chain");
+				}
+				count++;
+				sector = fat[sector];
+			} while (sector == first + count && (long) (count + 1) * sectorSize <= MAX_READ_SIZE
+					&& (long) count * sectorSize < remaining);
+			long length = Math.min((long) count * sectorSize, remaining);
+			buffer = CompoundFile.this.read(sectorOffset(first), (int) length);
+			remaining -= length;
+			return true;
+		}
+	}
+}
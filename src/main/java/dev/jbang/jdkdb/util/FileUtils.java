@@ -3,10 +3,31 @@ package dev.jbang.jdkdb.util;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Locale;
 
 /** Utility class for file operations */
 public class FileUtils {
 
+	/** System property with the directory to use for temporary files and directories */
+	public static final String SCRATCH_DIR_PROP = "jdkdb.scratch.dir";
+
+	/**
+	 * Get the directory to use for temporary files and directories. This is the directory set by
+	 * the {@value #SCRATCH_DIR_PROP} system property, or the system's temporary directory if the
+	 * property isn't set.
+	 */
+	public static Path getScratchDir() throws IOException {
+		String dir = System.getProperty(SCRATCH_DIR_PROP);
+		Path scratchDir = Path.of(dir != null && !dir.isBlank() ? dir : System.getProperty("java.io.tmpdir"));
+		ensureDirectory(scratchDir);
+		return scratchDir;
+	}
+
+	/** Create a temporary file in the scratch directory */
+	public static Path createTempFile(String prefix, String suffix) throws IOException {
+		return Files.createTempFile(getScratchDir(), prefix, suffix);
+	}
+
 	/** Ensure a directory exists, creating it if necessary */
 	public static void ensureDirectory(Path directory) throws IOException {
 		if (!Files.exists(directory)) {
@@ -19,6 +40,36 @@ public class FileUtils {
 		return Files.size(file);
 	}
 
+	/**
+	 * Parse a size like "500m" or "20g" into a number of bytes.
+	 *
+	 * @param size The size, a number optionally followed by k, m, g or t
+	 * @return The number of bytes, or -1 if the size can't be parsed
+	 */
+	public static long parseSize(String size) {
+		if (size == null || size.isBlank()) {
+			return -1;
+		}
+		String s = size.trim().toLowerCase(Locale.ROOT);
+		long multiplier = 1;
+		switch (s.charAt(s.length() - 1)) {
+			case 'k' -> multiplier = 1024L;
+			case 'm' -> multiplier = 1024L * 1024;
+			case 'g' -> multiplier = 1024L * 1024 * 1024;
+			case 't' -> multiplier = 1024L * 1024 * 1024 * 1024;
+			default -> {}
+		}
+		if (multiplier > 1) {
+			s = s.substring(0, s.length() - 1);
+		}
+		try {
+			long value = Long.parseLong(s);
+			return value < 0 ? -1 : value * multiplier;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
 	// Recursively delete a directory and all its contents
 	// ignoring any exceptions to ensure best effort cleanup
 	public static void deleteDirectory(Path directory) {
@@ -2,14 +2,21 @@ package dev.jbang.jdkdb.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /** Utility class for computing file hashes */
 public class HashUtils {
 
+	/** The hash algorithms we compute for every downloaded file */
+	public static final String[] DOWNLOAD_ALGORITHMS = {"MD5", "SHA-1", "SHA-256", "SHA-512"};
+
 	/**
 	 * Compute hash for a file
 	 *
@@ -36,6 +43,37 @@ public class HashUtils {
 		}
 	}
 
+	/**
+	 * Compute hash for a string, using its UTF-8 encoding
+	 *
+	 * @param text The text to hash
+	 * @param algorithm The hash algorithm (MD5, SHA-1, SHA-256, SHA-512)
+	 * @return The hex-encoded hash
+	 */
+	public static String computeHash(String text, String algorithm) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance(algorithm);
+			return bytesToHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Hash algorithm not supported: " + algorithm, e);
+		}
+	}
+
+	/**
+	 * Compute several hashes for a file while reading it only once
+	 *
+	 * @param file The file to hash
+	 * @param algorithms The hash algorithms (MD5, SHA-1, SHA-256, SHA-512)
+	 * @return The hasher holding the results for all requested algorithms
+	 */
+	public static MultiHasher computeHashes(Path file, String... algorithms) throws IOException {
+		MultiHasher hasher = new MultiHasher(algorithms);
+		try (InputStream is = Files.newInputStream(file)) {
+			is.transferTo(hasher);
+		}
+		return hasher;
+	}
+
 	/** Convert byte array to hex string */
 	private static String bytesToHex(byte[] bytes) {
 		StringBuilder result = new StringBuilder();
@@ -44,4 +82,84 @@ public class HashUtils {
 		}
 		return result.toString();
 	}
+
+	/**
+	 * Output stream that feeds every byte written to it into several message digests at once. This
+	 * allows all checksums of a file to be computed while it is being downloaded instead of reading
+	 * the file back from disk once per algorithm.
+	 */
+	public static class MultiHasher extends OutputStream {
+		private final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+		private final Map<String, String> results = new LinkedHashMap<>();
+		private long size;
+
+		/**
+		 * Create a new hasher for the given algorithms
+		 *
+		 * @param algorithms The hash algorithms (MD5, SHA-1, SHA-256, SHA-512)
+		 * @throws IOException if any of the algorithms is not supported
+		 */
+		public MultiHasher(String... algorithms) throws IOException {
+			for (String algorithm : algorithms) {
+				try {
+					digests.put(algorithm, MessageDigest.getInstance(algorithm));
+				} catch (NoSuchAlgorithmException e) {
+					throw new IOException("Hash algorithm not supported: " + algorithm, e);
+				}
+			}
+		}
+
+		@Override
+		public void write(int b) {
+			checkOpen();
+			for (MessageDigest digest : digests.values()) {
+				digest.update((byte) b);
+			}
+			size++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			checkOpen();
+			for (MessageDigest digest : digests.values()) {
+				digest.update(b, off, len);
+			}
+			size += len;
+		}
+
+		/**
+		 * Get the hex-encoded hash for one of the algorithms. Finalizes all digests on first call,
+		 * after which no more data can be written.
+		 *
+		 * @param algorithm The hash algorithm
+		 * @return The hex-encoded hash
+		 */
+		public String hash(String algorithm) {
+			if (results.isEmpty()) {
+				for (Map.Entry<String, MessageDigest> entry : digests.entrySet()) {
+					results.put(entry.getKey(), bytesToHex(entry.getValue().digest()));
+				}
+			}
+			String result = results.get(algorithm);
+			if (result == null) {
+				throw new IllegalArgumentException("Hash algorithm not computed: " + algorithm);
+			}
+			return result;
+		}
+
+		/**
+		 * Get the total number of bytes that were hashed.
+		 *
+		 * @return The number of bytes written to this hasher
+		 */
+		public long size() {
+			return size;
+		}
+
+		private void checkOpen() {
+			if (!results.isEmpty()) {
+				throw new IllegalStateException("Hashes have already been computed");
+			}
+		}
+	}
 }
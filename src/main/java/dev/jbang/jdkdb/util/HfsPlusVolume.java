@@ -0,0 +1,361 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only access to the files of an HFS+ (or HFSX) volume, the file system of most DMG images.
+ * All files and folders are records in the catalog file, a B-tree keyed by the id of the parent
+ * folder and the name. Only the nodes on the path to the records of a folder are read.
+ */
+class HfsPlusVolume {
+	private static final int VOLUME_HEADER_OFFSET = 1024;
+	private static final int VOLUME_HEADER_SIZE = 512;
+	private static final short SIGNATURE_HFS_PLUS = 0x482B; // "H+"
+	private static final short SIGNATURE_HFSX = 0x4858; // "HX"
+	private static final int CATALOG_FORK_OFFSET = 272;
+	private static final int ROOT_FOLDER_ID = 2;
+	private static final int NODE_DESCRIPTOR_SIZE = 14;
+	private static final int KIND_INDEX = 0;
+	private static final int KIND_LEAF = -1;
+	private static final int RECORD_FOLDER = 1;
+	private static final int RECORD_FILE = 2;
+	private static final int FILE_OWNER_FLAGS_OFFSET = 41;
+	private static final int FILE_DATA_FORK_OFFSET = 88;
+	private static final int UF_COMPRESSED = 0x20;
+	private static final int MAX_TREE_DEPTH = 16;
+	private static final int MAX_FILE_SIZE = 64 * 1024 * 1024;
+
+	/** The size of a file and the extents (start block and block count) it is stored in */
+	record Fork(long logicalSize, List<long[]> extents) {}
+
+	/**
+	 * A file or folder.
+	 *
+	 * @param name The name
+	 * @param id The catalog node id, which is the parent id of the entries of a folder
+	 * @param folder true for folders, false for files
+	 * @param compressed true for files that are stored compressed in their resource fork
+	 * @param dataFork The data fork of a file, null for folders
+	 */
+	record Entry(String name, int id, boolean folder, boolean compressed, Fork dataFork) {}
+
+	/** Reads bytes from the partition that holds the volume */
+	interface Device {
+		byte[] read(long position, int length) throws IOException;
+	}
+
+	private final Device device;
+	private final int blockSize;
+	private final Fork catalog;
+	private final int nodeSize;
+	private final int rootNode;
+
+	private HfsPlusVolume(Device device, ByteBuffer header) throws IOException {
+		this.device = device;
+		blockSize = header.getInt(40);
+		if (blockSize < 512 || Integer.bitCount(blockSize) != 1) {
+			throw new IOException("Invalid HFS+ block size: " + blockSize);
+		}
+		catalog = fork(header, CATALOG_FORK_OFFSET);
+		ByteBuffer headerNode = ByteBuffer.wrap(readFork(catalog, 0, 512));
+		rootNode = headerNode.getInt(NODE_DESCRIPTOR_SIZE + 2);
+		nodeSize = headerNode.getShort(NODE_DESCRIPTOR_SIZE + 18) & 0xFFFF;
+		if (nodeSize < 512 || Integer.bitCount(nodeSize) != 1) {
+			throw new IOException("Invalid HFS+ catalog node size: " + nodeSize);
+		}
+	}
+
+	/**
+	 * Open the HFS+ volume on a device.
+	 *
+	 * @param device The device
+	 * @return The volume, or null if the device doesn't hold an HFS+ volume
+	 */
+	static HfsPlusVolume open(Device device) throws IOException {
+		ByteBuffer header = ByteBuffer.wrap(device.read(VOLUME_HEADER_OFFSET, VOLUME_HEADER_SIZE));
+		short signature = header.getShort(0);
+		if (signature != SIGNATURE_HFS_PLUS && signature != SIGNATURE_HFSX) {
+			return null;
+		}
+		return new HfsPlusVolume(device, header);
+	}
+
+	/** Get the root folder of the volume */
+	Entry root() {
+		return new Entry("", ROOT_FOLDER_ID, true, false, null);
+	}
+
+	/**
+	 * Get the files and folders in a folder.
+	 *
+	 * @param folder The folder
+	 * @return The entries of the folder, in catalog order
+	 */
+	List<Entry> list(Entry folder) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		if (rootNode == 0) {
+			// Empty catalog
+			return entries;
+		}
+		// Go down the index to the first leaf that can hold records of the folder, then follow
+		// the leaves until the records of the next folder start
+		int node = rootNode;
+		ByteBuffer data = readNode(node);
+		for (int depth = 0; data.get(8) == KIND_INDEX; depth++) {
+			if (depth > MAX_TREE_DEPTH) {
+				throw new IOException("HFS+ catalog is too deep");
+			}
+			int child = -1;
+			for (int i = 0; i < recordCount(data); i++) {
+				int offset = recordOffset(data, i);
+				int parentId = data.getInt(offset + 2);
+				if (child >= 0 && parentId >= folder.id()) {
+					break;
+				}
+				child = data.getInt(offset + 2 + (data.getShort(offset) & 0xFFFF));
+			}
+			node = child;
+			data = readNode(node);
+		}
+		for (int leaves = 0; node != 0; leaves++) {
+			if (data.get(8) != KIND_LEAF || leaves > totalNodes()) {
+				throw new IOException("Invalid HFS+ catalog leaf node: " + node);
+			}
+			for (int i = 0; i < recordCount(data); i++) {
+				int offset = recordOffset(data, i);
+				int keyLength = data.getShort(offset) & 0xFFFF;
+				int parentId = data.getInt(offset + 2);
+				if (parentId > folder.id()) {
+					return entries;
+				} else if (parentId < folder.id()) {
+					continue;
+				}
+				int nameLength = data.getShort(offset + 6) & 0xFFFF;
+				String name = new String(data.array(), offset + 8, nameLength * 2, StandardCharsets.UTF_16BE);
+				int record = offset + 2 + keyLength;
+				int type = data.getShort(record);
+				if (type == RECORD_FOLDER) {
+					entries.add(new Entry(name, data.getInt(record + 8), true, false, null));
+				} else if (type == RECORD_FILE) {
+					entries.add(new Entry(
+							name,
+							data.getInt(record + 8),
+							false,
+							(data.get(record + FILE_OWNER_FLAGS_OFFSET) & UF_COMPRESSED) != 0,
+							fork(data, record + FILE_DATA_FORK_OFFSET)));
+				}
+			}
+			node = data.getInt(0);
+			if (node != 0) {
+				data = readNode(node);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Find a file or folder by its path.
+	 *
+	 * @param folder The folder to start from
+	 * @param path The names of the folders on the path and of the file or folder itself
+	 * @return The file or folder, or null if there is none with that path
+	 */
+	Entry find(Entry folder, String... path) throws IOException {
+		Entry entry = folder;
+		for (String name : path) {
+			if (!entry.folder()) {
+				return null;
+			}
+			entry = list(entry).stream()
+					.filter(e -> e.name().equals(name))
+					.findFirst()
+					.orElse(null);
+			if (entry == null) {
+				return null;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Read the contents of a file.
+	 *
+	 * @param file The file
+	 * @return The contents of the data fork of the file
+	 */
+	byte[] read(Entry file) throws IOException {
+		Fork fork = dataFork(file);
+		if (fork.logicalSize() > MAX_FILE_SIZE) {
+			throw new IOException("HFS+ file is too large: " + file.name());
+		}
+		return readFork(fork, 0, (int) fork.logicalSize());
+	}
+
+	/**
+	 * Open the contents of a file for random access, for files that are too large to read at once.
+	 *
+	 * @param file The file
+	 * @return A read-only channel on the data fork of the file
+	 */
+	SeekableByteChannel open(Entry file) throws IOException {
+		return new ForkChannel(dataFork(file));
+	}
+
+	private Fork dataFork(Entry file) throws IOException {
+		if (file.folder()) {
+			throw new IOException(file.name() + " is a folder");
+		}
+		if (file.compressed()) {
+			throw new UnsupportedFormatException("HFS+ file compression is not supported: " + file.name());
+		}
+		Fork fork = file.dataFork();
+		long extentsSize = 0;
+		for (long[] extent : fork.extents()) {
+			extentsSize += extent[1] * blockSize;
+		}
+		if (extentsSize < fork.logicalSize()) {
+			throw new UnsupportedFormatException(
+					"HFS+ fork uses the extents overflow file, which is not supported: " + file.name());
+		}
+		return fork;
+	}
+
+	private ByteBuffer readNode(int node) throws IOException {
+		if (node <= 0 || node >= totalNodes()) {
+			throw new IOException("Invalid HFS+ catalog node number: " + node);
+		}
+		return ByteBuffer.wrap(readFork(catalog, (long) node * nodeSize, nodeSize));
+	}
+
+	private long totalNodes() {
+		return catalog.logicalSize() / nodeSize;
+	}
+
+	private static int recordCount(ByteBuffer node) {
+		return node.getShort(10) & 0xFFFF;
+	}
+
+	/** The offsets of the records are stored backwards at the end of the node */
+	private static int recordOffset(ByteBuffer node, int index) throws IOException {
+		int offset = node.getShort(node.capacity() - 2 * (index + 1)) & 0xFFFF;
+		if (offset < NODE_DESCRIPTOR_SIZE || offset >= node.capacity() - 2 * recordCount(node)) {
+			throw new IOException("Invalid HFS+ catalog record offset: " + offset);
+		}
+		return offset;
+	}
+
+	/**
+	 * Read a fork descriptor. Only the eight extents in the descriptor itself are used, the
+	 * extents overflow file is not read, which is fine for the catalog and small files.
+	 */
+	private static Fork fork(ByteBuffer data, int offset) {
+		List<long[]> extents = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			long start = data.getInt(offset + 16 + i * 8) & 0xFFFFFFFFL;
+			long count = data.getInt(offset + 20 + i * 8) & 0xFFFFFFFFL;
+			if (count == 0) {
+				break;
+			}
+			extents.add(new long[] {start, count});
+		}
+		return new Fork(data.getLong(offset), extents);
+	}
+
+	private byte[] readFork(Fork fork, long position, int length) throws IOException {
+		if (position < 0 || position + length > fork.logicalSize()) {
+			throw new IOException("Read beyond the end of an HFS+ fork");
+		}
+		byte[] result = new byte[length];
+		int done = 0;
+		long extentStart = 0;
+		for (long[] extent : fork.extents()) {
+			long extentSize = extent[1] * blockSize;
+			while (done < length && position + done < extentStart + extentSize) {
+				long offset = position + done - extentStart;
+				int n = (int) Math.min(length - done, extentSize - offset);
+				byte[] data = device.read(extent[0] * blockSize + offset, n);
+				System.arraycopy(data, 0, result, done, n);
+				done += n;
+			}
+			extentStart += extentSize;
+		}
+		if (done < length) {
+			throw new UnsupportedFormatException(
+					"HFS+ fork uses the extents overflow file, which is not supported");
+		}
+		return result;
+	}
+
+	/** Read-only channel on a fork, which reads from the device on demand */
+	private class ForkChannel implements SeekableByteChannel {
+		private static final int MAX_READ_SIZE = 1024 * 1024;
+
+		private final Fork fork;
+		private long position;
+		private boolean open = true;
+
+		ForkChannel(Fork fork) {
+			this.fork = fork;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!open) {
+				throw new ClosedChannelException();
+			}
+			if (position >= fork.logicalSize()) {
+				return -1;
+			}
+			int n = (int) Math.min(Math.min(dst.remaining(), MAX_READ_SIZE), fork.logicalSize() - position);
+			dst.put(readFork(fork, position, n));
+			position += n;
+			return n;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public long position() {
+			return position;
+		}
+
+		@Override
+		public SeekableByteChannel position(long newPosition) {
+			if (newPosition < 0) {
+				throw new IllegalArgumentException("Negative position: " + newPosition);
+			}
+			position = newPosition;
+			return this;
+		}
+
+		@Override
+		public long size() {
+			return fork.logicalSize();
+		}
+
+		@Override
+		public SeekableByteChannel truncate(long size) {
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+}
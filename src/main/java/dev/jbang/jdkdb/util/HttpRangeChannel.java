@@ -0,0 +1,144 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only channel over a file on a web server, reading the parts of the file that are actually
+ * used with HTTP Range requests. The file is fetched in blocks and the most recently used blocks
+ * are kept, so the many small reads of an archive reader result in only a few requests.
+ */
+class HttpRangeChannel implements SeekableByteChannel {
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final int MAX_CACHED_BLOCKS = 16;
+
+	private final HttpUtils httpUtils;
+	private final String url;
+	private final HttpUtils.RemoteFile remote;
+	private final Map<Long, byte[]> blocks = new LinkedHashMap<>(MAX_CACHED_BLOCKS, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+			return size() > MAX_CACHED_BLOCKS;
+		}
+	};
+	private long position;
+	private long bytesRead;
+	private boolean open = true;
+
+	/**
+	 * Create a channel for a file.
+	 *
+	 * @param httpUtils The HTTP client to read the blocks with
+	 * @param url The URL of the file
+	 * @param remote The information about the file as returned by {@link HttpUtils#probe(String)},
+	 *     the server must support range requests for it
+	 */
+	HttpRangeChannel(HttpUtils httpUtils, String url, HttpUtils.RemoteFile remote) {
+		if (!remote.acceptsRanges() || remote.size() <= 0) {
+			throw new IllegalArgumentException("File can't be read in ranges: " + url);
+		}
+		this.httpUtils = httpUtils;
+		this.url = url;
+		this.remote = remote;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+		if (position >= remote.size()) {
+			return -1;
+		}
+		int total = 0;
+		while (dst.hasRemaining() && position < remote.size()) {
+			long index = position / BLOCK_SIZE;
+			byte[] block = block(index);
+			int offset = (int) (position - index * BLOCK_SIZE);
+			int n = Math.min(dst.remaining(), block.length - offset);
+			dst.put(block, offset, n);
+			position += n;
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Get the number of bytes that were fetched from the server so far.
+	 *
+	 * @return The number of bytes
+	 */
+	long bytesRead() {
+		return bytesRead;
+	}
+
+	private byte[] block(long index) throws IOException {
+		byte[] block = blocks.get(index);
+		if (block == null) {
+			long start = index * BLOCK_SIZE;
+			long end = Math.min(start + BLOCK_SIZE, remote.size()) - 1;
+			try {
+				block = httpUtils.readRange(url, start, end, remote.validator());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading " + url);
+			}
+			bytesRead += block.length;
+			blocks.put(index, block);
+		}
+		return block;
+	}
+
+	@Override
+	public int write(ByteBuffer src) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		ensureOpen();
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if (newPosition < 0) {
+			throw new IllegalArgumentException("Negative position: " + newPosition);
+		}
+		position = newPosition;
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		return remote.size();
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+		blocks.clear();
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.IOException;
+
+/** Thrown when a server responds with an HTTP status code that indicates an error */
+class HttpStatusException extends IOException {
+	private final int statusCode;
+
+	public HttpStatusException(int statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+}
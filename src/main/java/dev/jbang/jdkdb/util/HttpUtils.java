@@ -1,11 +1,18 @@
 package dev.jbang.jdkdb.util;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -13,6 +20,20 @@ import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,59 +44,468 @@ public class HttpUtils {
 
 	/** Functional interface for operations that can throw IOException and InterruptedException */
 	@FunctionalInterface
-	private interface IOSupplier<T> {
+	public interface IOSupplier<T> {
 		T get() throws IOException, InterruptedException;
 	}
 
+	/**
+	 * Information about a file on a web server
+	 *
+	 * @param size The size of the file in bytes, or -1 if unknown
+	 * @param acceptsRanges Whether the server supports downloading byte ranges of the file
+	 * @param validator The strong ETag or the Last-Modified value of the file, if available
+	 * @param lastModified The Last-Modified value of the file, if available
+	 */
+	public record RemoteFile(long size, boolean acceptsRanges, String validator, String lastModified) {}
+
+	/** Listener that gets notified of every response received, see {@link #setResponseListener} */
+	@FunctionalInterface
+	public interface ResponseListener {
+		/**
+		 * Called when a response has been received.
+		 *
+		 * @param url The URL that was requested
+		 * @param servedBy The host that sent the response, which differs from the host of the URL
+		 *     if the request was redirected
+		 * @param statusCode The HTTP status code of the response
+		 * @param latencyNanos The time it took to receive the response headers in nanoseconds
+		 */
+		void onResponse(String url, String servedBy, int statusCode, long latencyNanos);
+	}
+
 	private final HttpClient httpClient;
+	private volatile Consumer<String> retryListener;
+	private volatile ResponseListener responseListener;
+	private volatile long minBytesPerSecond;
+	private volatile Duration stallWindow;
+	private volatile Duration hedgeDelay;
 
 	public static final String GITHUB_TOKEN_PROP = "github.token";
+	/** System property with the default hedge delay in milliseconds, see {@link #setHedgeDelay} */
+	public static final String HEDGE_DELAY_PROP = "jdkdb.http.hedge-delay";
 	private static final int DEFAULT_MAX_RETRIES = 3;
 	private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(2);
 	private static final Duration MAX_REQUEST_TIMEOUT = Duration.ofMinutes(10);
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-\\d+/");
 
 	public HttpUtils() {
 		this.httpClient = HttpClient.newBuilder()
 				.followRedirects(HttpClient.Redirect.NORMAL)
 				.connectTimeout(Duration.ofSeconds(30))
 				.build();
+		String hedgeMillis = System.getProperty(HEDGE_DELAY_PROP);
+		if (hedgeMillis != null && !hedgeMillis.isEmpty()) {
+			this.hedgeDelay = Duration.ofMillis(Long.parseLong(hedgeMillis));
+		}
+	}
+
+	/**
+	 * Set a listener that gets called with the URL of a request each time the request is retried.
+	 *
+	 * @param retryListener The listener, or null to remove it
+	 * @return this instance
+	 */
+	public HttpUtils setRetryListener(Consumer<String> retryListener) {
+		this.retryListener = retryListener;
+		return this;
+	}
+
+	/**
+	 * Set a listener that gets called for each response that is received, after following
+	 * redirects.
+	 *
+	 * @param responseListener The listener, or null to remove it
+	 * @return this instance
+	 */
+	public HttpUtils setResponseListener(ResponseListener responseListener) {
+		this.responseListener = responseListener;
+		return this;
+	}
+
+	/**
+	 * Abort file downloads whose throughput stays below a minimum for a whole window. Such a
+	 * transfer fails with a {@link StalledTransferException}, which is retried like a dropped
+	 * connection, so the download continues from where it stopped on a new connection.
+	 *
+	 * @param minBytesPerSecond The lowest acceptable throughput, 0 to disable stall detection
+	 * @param window The period over which the throughput is measured
+	 * @return this instance
+	 */
+	public HttpUtils setStallDetection(long minBytesPerSecond, Duration window) {
+		if (minBytesPerSecond > 0 && (window == null || window.toMillis() <= 0)) {
+			throw new IllegalArgumentException("A stall detection window is required");
+		}
+		this.stallWindow = window;
+		this.minBytesPerSecond = minBytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Send a second, identical request when fetching a string takes longer than the given delay,
+	 * and use whichever response arrives first. This cuts off the long tail of the latency of
+	 * small requests, at the cost of an extra request for the slowest ones. The default is taken
+	 * from the {@link #HEDGE_DELAY_PROP} system property.
+	 *
+	 * @param hedgeDelay The delay after which to send the second request, null to not hedge
+	 * @return this instance
+	 */
+	public HttpUtils setHedgeDelay(Duration hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+		return this;
 	}
 
 	/** Download a file from a URL to a local path */
 	public Path downloadFile(String url, Path destination) throws IOException, InterruptedException {
-		return retry(() -> {
-			HttpRequest request = request(url).build();
-			HttpResponse<Path> response = httpClient.send(
-					request,
-					HttpResponse.BodyHandlers.ofFile(
-							destination,
-							StandardOpenOption.CREATE,
-							StandardOpenOption.WRITE,
-							StandardOpenOption.TRUNCATE_EXISTING));
+		downloadFile(url, destination, OutputStream::nullOutputStream);
+		return destination;
+	}
+
+	/**
+	 * Download a file from a URL to a local path, while at the same time copying all the bytes
+	 * that are written to the file to a sink (for example to compute hashes). A new sink is
+	 * obtained from the factory for each attempt, so a failed attempt never leaves partial data in
+	 * the sink that is returned. The sink gets closed once the whole body has been received.
+	 *
+	 * <p>Downloads are resumable: while the body is being received a journal is kept next to the
+	 * destination file, recording the URL, the server's validator (ETag or Last-Modified) and the
+	 * number of bytes received. When a download is retried, or when a later call downloads the same
+	 * URL to the same destination, the transfer continues from where it stopped using a Range
+	 * request. In that case the bytes that were already on disk are fed to the new sink first, so
+	 * it always sees the complete body. The journal is removed once the download completes, use
+	 * {@link #deletePartialDownload(Path)} to throw away an unfinished download.
+	 *
+	 * @param url The URL to download
+	 * @param destination The file to write the body to
+	 * @param sinkFactory Creates the sink that receives a copy of the body
+	 * @return The sink that received the complete body
+	 */
+	public <T extends OutputStream> T downloadFile(String url, Path destination, IOSupplier<T> sinkFactory)
+			throws IOException, InterruptedException {
+		return retry(
+				url, () -> downloadAttempt(url, destination, sinkFactory, PartialDownload.load(url, destination)));
+	}
+
+	/**
+	 * Delete a downloaded file together with the journal of its partial download, if any.
+	 *
+	 * @param destination The file that was downloaded to
+	 */
+	public static void deletePartialDownload(Path destination) throws IOException {
+		Files.deleteIfExists(destination);
+		PartialDownload.delete(destination);
+	}
+
+	private <T extends OutputStream> T downloadAttempt(
+			String url, Path destination, IOSupplier<T> sinkFactory, PartialDownload partial)
+			throws IOException, InterruptedException {
+		HttpRequest.Builder builder = request(url);
+		if (partial != null) {
+			// If-Range makes the server send the whole file again if it changed in the meantime
+			builder.header("Range", "bytes=" + partial.bytes() + "-").header("If-Range", partial.validator());
+		}
+		HttpResponse<InputStream> response = send(url, builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		int statusCode = response.statusCode();
+		if (statusCode == 416 && partial != null) {
+			// The partial file doesn't fit the resource anymore, start from scratch
+			response.body().close();
+			PartialDownload.delete(destination);
+			return downloadAttempt(url, destination, sinkFactory, null);
+		}
+		if (statusCode < 200 || statusCode >= 300) {
+			response.body().close();
+			throw new HttpStatusException(
+					statusCode, "Failed to download file: " + url + " - HTTP status: " + statusCode);
+		}
+
+		long offset = 0;
+		if (statusCode == 206) {
+			offset = contentRangeStart(response);
+			if (partial == null || offset != partial.bytes()) {
+				response.body().close();
+				PartialDownload.delete(destination);
+				throw new IOException("Unexpected partial content for " + url + " starting at byte " + offset);
+			}
+			logger.debug("Resuming download of {} at byte {}", url, offset);
+		}
+		String validator = validator(response);
+
+		T sink = sinkFactory.get();
+		long received = 0;
+		boolean complete = false;
+		try (InputStream in = monitor(url, response.body());
+				FileChannel channel = FileChannel.open(
+						destination, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				OutputStream s = sink) {
+			// Drop anything beyond the resume offset, including the whole file when not resuming
+			channel.truncate(offset);
+			if (offset > 0) {
+				// Feed the bytes we already have to the sink so its state matches a full download
+				channel.position(0);
+				Channels.newInputStream(channel).transferTo(s);
+			}
+			channel.position(offset);
+			if (validator != null) {
+				new PartialDownload(url, validator, offset).save(destination);
+			}
+			try (OutputStream out = Channels.newOutputStream(channel)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+					received += read;
+					s.write(buffer, 0, read);
+				}
+			}
+			complete = true;
+		} finally {
+			if (validator != null) {
+				if (complete) {
+					PartialDownload.delete(destination);
+				} else {
+					// Remember how far we got so the next attempt can continue from there
+					try {
+						new PartialDownload(url, validator, offset + received).save(destination);
+					} catch (IOException e) {
+						logger.debug("Failed to update partial download journal for {}: {}", url, e.getMessage());
+					}
+				}
+			}
+		}
+
+		// Preserve original file timestamp from Last-Modified header if available
+		setLastModified(destination, response.headers().firstValue("Last-Modified").orElse(null));
+		return sink;
+	}
+
+	/**
+	 * Get information about a remote file using a HEAD request.
+	 *
+	 * @param url The URL of the file
+	 * @return The size of the file and whether it can be downloaded in ranges
+	 */
+	public RemoteFile probe(String url) throws IOException, InterruptedException {
+		return retry(url, () -> {
+			HttpRequest request = request(url)
+					.method("HEAD", HttpRequest.BodyPublishers.noBody())
+					.build();
+			HttpResponse<Void> response = send(url, request, HttpResponse.BodyHandlers.discarding());
 			if (response.statusCode() < 200 || response.statusCode() >= 300) {
 				throw new HttpStatusException(
 						response.statusCode(),
-						"Failed to download file: " + url + " - HTTP status: " + response.statusCode());
+						"Failed to probe file: " + url + " - HTTP status: " + response.statusCode());
 			}
+			HttpHeaders headers = response.headers();
+			return new RemoteFile(
+					headers.firstValueAsLong("Content-Length").orElse(-1),
+					headers.allValues("Accept-Ranges").stream().anyMatch(v -> v.equalsIgnoreCase("bytes")),
+					validator(response),
+					headers.firstValue("Last-Modified").orElse(null));
+		});
+	}
 
-			// Preserve original file timestamp from Last-Modified header if available
-			response.headers().firstValue("Last-Modified").ifPresent(lastModified -> {
-				try {
-					Instant instant = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(lastModified));
-					Files.setLastModifiedTime(destination, FileTime.from(instant));
-				} catch (Exception e) {
-					// Silently ignore if we can't parse or set the timestamp
+	/**
+	 * Download a file from a URL to a local path over several connections at the same time, each
+	 * fetching its own byte range of the file and writing it at the right position in the file.
+	 * Each range is retried on its own, continuing where it stopped. The download fails if the
+	 * file changes on the server while its ranges are being fetched.
+	 *
+	 * @param url The URL to download
+	 * @param destination The file to write the body to
+	 * @param remote The information about the file as returned by {@link #probe(String)}
+	 * @param segments The number of ranges to fetch in parallel
+	 */
+	public void downloadFileSegmented(String url, Path destination, RemoteFile remote, int segments)
+			throws IOException, InterruptedException {
+		if (!remote.acceptsRanges() || remote.size() <= 0 || segments < 1) {
+			throw new IllegalArgumentException("File can't be downloaded in segments: " + url);
+		}
+		long segmentSize = (remote.size() + segments - 1) / segments;
+		try (FileChannel channel = FileChannel.open(
+						destination,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+				ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (long start = 0; start < remote.size(); start += segmentSize) {
+				long end = Math.min(start + segmentSize, remote.size()) - 1;
+				long first = start;
+				futures.add(executor.submit(() -> {
+					downloadRange(url, channel, first, end, remote.validator());
+					return null;
+				}));
+			}
+			try {
+				for (Future<Void> future : futures) {
+					future.get();
 				}
-			});
-			return response.body();
+			} catch (ExecutionException e) {
+				futures.forEach(f -> f.cancel(true));
+				if (e.getCause() instanceof IOException ioe) {
+					throw ioe;
+				}
+				throw new IOException("Failed to download file: " + url, e.getCause());
+			} catch (InterruptedException e) {
+				futures.forEach(f -> f.cancel(true));
+				throw e;
+			}
+		}
+		setLastModified(destination, remote.lastModified());
+	}
+
+	/** Download the given (inclusive) byte range of a file to the same position in the channel */
+	private void downloadRange(String url, FileChannel channel, long start, long end, String validator)
+			throws IOException, InterruptedException {
+		// Retries continue from the first byte that wasn't received yet
+		long[] position = {start};
+		retry(url, () -> {
+			HttpResponse<InputStream> response = sendRange(url, position[0], end, validator);
+			try (InputStream in = monitor(url, response.body())) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while (position[0] <= end && (read = in.read(buffer)) != -1) {
+					ByteBuffer data = ByteBuffer.wrap(buffer, 0, (int) Math.min(read, end - position[0] + 1));
+					while (data.hasRemaining()) {
+						position[0] += channel.write(data, position[0]);
+					}
+				}
+			}
+			if (position[0] <= end) {
+				throw new EOFException("Range of " + url + " ended at byte " + position[0] + " instead of " + end);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Read the given (inclusive) byte range of a file into memory.
+	 *
+	 * @param url The URL of the file
+	 * @param start The position of the first byte to read
+	 * @param end The position of the last byte to read
+	 * @param validator The validator of the file as returned by {@link #probe(String)}, the read
+	 *     fails if the file no longer matches it
+	 * @return The bytes of the range
+	 */
+	public byte[] readRange(String url, long start, long end, String validator)
+			throws IOException, InterruptedException {
+		return retry(url, () -> {
+			HttpResponse<InputStream> response = sendRange(url, start, end, validator);
+			try (InputStream in = monitor(url, response.body())) {
+				byte[] data = in.readNBytes(Math.toIntExact(end - start + 1));
+				if (data.length < end - start + 1) {
+					throw new EOFException("Range of " + url + " ended at byte " + (start + data.length)
+							+ " instead of " + end);
+				}
+				return data;
+			}
+		});
+	}
+
+	/**
+	 * Open the body of a file for reading. Closing the stream before the end of the body aborts
+	 * the transfer, so only the bytes that were actually needed get transferred.
+	 *
+	 * @param url The URL of the file
+	 * @return The body of the file
+	 */
+	public InputStream openStream(String url) throws IOException, InterruptedException {
+		return retry(url, () -> {
+			HttpResponse<InputStream> response =
+					send(url, request(url).build(), HttpResponse.BodyHandlers.ofInputStream());
+			if (response.statusCode() < 200 || response.statusCode() >= 300) {
+				response.body().close();
+				throw new HttpStatusException(
+						response.statusCode(),
+						"Failed to open file: " + url + " - HTTP status: " + response.statusCode());
+			}
+			return monitor(url, response.body());
 		});
 	}
 
+	/** Request a byte range of a file, failing if the server doesn't send exactly that range */
+	private HttpResponse<InputStream> sendRange(String url, long start, long end, String validator)
+			throws IOException, InterruptedException {
+		HttpRequest.Builder builder = request(url).header("Range", "bytes=" + start + "-" + end);
+		if (validator != null) {
+			builder.header("If-Range", validator);
+		}
+		HttpResponse<InputStream> response = send(url, builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		int statusCode = response.statusCode();
+		if (statusCode != 206) {
+			response.body().close();
+			if (statusCode >= 200 && statusCode < 300) {
+				throw new IOException("File changed or range not supported while downloading " + url);
+			}
+			throw new HttpStatusException(
+					statusCode, "Failed to download range of file: " + url + " - HTTP status: " + statusCode);
+		}
+		if (contentRangeStart(response) != start) {
+			response.body().close();
+			throw new IOException("Unexpected range received for " + url);
+		}
+		return response;
+	}
+
+	/** Set the modification time of a file from the value of a Last-Modified header */
+	private static void setLastModified(Path file, String lastModified) {
+		FileTime time = parseLastModified(lastModified);
+		if (time == null) {
+			return;
+		}
+		try {
+			Files.setLastModifiedTime(file, time);
+		} catch (Exception e) {
+			// Silently ignore if we can't set the timestamp
+		}
+	}
+
+	/**
+	 * Parse the value of a Last-Modified header.
+	 *
+	 * @param lastModified The header value, may be null
+	 * @return The time, or null if there was no value or it couldn't be parsed
+	 */
+	public static FileTime parseLastModified(String lastModified) {
+		if (lastModified == null) {
+			return null;
+		}
+		try {
+			return FileTime.from(Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(lastModified)));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/** Get the validator to use in an If-Range header, weak ETags can't be used for that */
+	private static String validator(HttpResponse<?> response) {
+		String etag = response.headers().firstValue("ETag").orElse(null);
+		if (etag != null && !etag.startsWith("W/")) {
+			return etag;
+		}
+		return response.headers().firstValue("Last-Modified").orElse(null);
+	}
+
+	/** Get the first byte position from the Content-Range header of a 206 response */
+	private static long contentRangeStart(HttpResponse<InputStream> response) throws IOException {
+		String contentRange = response.headers().firstValue("Content-Range").orElse("");
+		Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange);
+		if (!matcher.find()) {
+			response.body().close();
+			throw new IOException("Invalid Content-Range in partial response: " + contentRange);
+		}
+		return Long.parseLong(matcher.group(1));
+	}
+
 	/** Download content from a URL as a string */
 	public String downloadString(String url) throws IOException, InterruptedException {
-		return retry(() -> {
+		return retry(url, () -> {
 			HttpRequest request = request(url).build();
-			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+			Duration delay = hedgeDelay;
+			HttpResponse<String> response = delay != null
+					? sendHedged(url, request, HttpResponse.BodyHandlers.ofString(), delay)
+					: send(url, request, HttpResponse.BodyHandlers.ofString());
 			if (response.statusCode() < 200 || response.statusCode() >= 300) {
 				throw new HttpStatusException(
 						response.statusCode(),
@@ -91,7 +521,7 @@ public class HttpUtils {
 			HttpRequest request = request(url)
 					.method("HEAD", HttpRequest.BodyPublishers.noBody())
 					.build();
-			HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+			HttpResponse<Void> response = send(url, request, HttpResponse.BodyHandlers.discarding());
 			int statusCode = response.statusCode();
 			return statusCode >= 200 && statusCode < 300;
 		} catch (IOException | InterruptedException e) {
@@ -99,6 +529,78 @@ public class HttpUtils {
 		}
 	}
 
+	/** Send a request, notifying the response listener when the response headers have arrived */
+	private <T> HttpResponse<T> send(String url, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+			throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		HttpResponse<T> response = httpClient.send(request, bodyHandler);
+		ResponseListener listener = responseListener;
+		if (listener != null) {
+			listener.onResponse(url, response.uri().getHost(), response.statusCode(), System.nanoTime() - start);
+		}
+		return response;
+	}
+
+	/**
+	 * Send a request, and send it a second time if no complete response arrived within the delay.
+	 * The first successful response is used and the other request is cancelled. Only suitable for
+	 * body handlers that read the whole body, so the response is complete when it is returned.
+	 */
+	private <T> HttpResponse<T> sendHedged(
+			String url, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, Duration delay)
+			throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		List<CompletableFuture<HttpResponse<T>>> attempts = new ArrayList<>();
+		attempts.add(httpClient.sendAsync(request, bodyHandler));
+		try {
+			HttpResponse<T> response;
+			try {
+				response = attempts.get(0).get(delay.toNanos(), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				logger.debug("No response for {} after {}ms, sending a hedged request", url, delay.toMillis());
+				attempts.add(httpClient.sendAsync(request, bodyHandler));
+				response = firstSuccessful(attempts).get();
+			}
+			ResponseListener listener = responseListener;
+			if (listener != null) {
+				listener.onResponse(url, response.uri().getHost(), response.statusCode(), System.nanoTime() - start);
+			}
+			return response;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe) {
+				throw ioe;
+			}
+			throw new IOException("Request failed: " + url, e.getCause());
+		} finally {
+			attempts.forEach(attempt -> attempt.cancel(true));
+		}
+	}
+
+	/** Complete with the first of the futures that succeeds, or fail with the last failure */
+	private static <T> CompletableFuture<T> firstSuccessful(List<CompletableFuture<T>> futures) {
+		CompletableFuture<T> first = new CompletableFuture<>();
+		AtomicInteger failures = new AtomicInteger();
+		for (CompletableFuture<T> future : futures) {
+			future.whenComplete((result, error) -> {
+				if (error == null) {
+					first.complete(result);
+				} else if (failures.incrementAndGet() == futures.size()) {
+					first.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+				}
+			});
+		}
+		return first;
+	}
+
+	/** Wrap a response body to abort the transfer when it stalls, if stall detection is enabled */
+	private InputStream monitor(String url, InputStream body) {
+		long minimum = minBytesPerSecond;
+		if (minimum <= 0) {
+			return body;
+		}
+		return new StallDetectingInputStream(url, body, minimum, stallWindow);
+	}
+
 	private HttpRequest.Builder request(String url) {
 		URI uri = URI.create(url);
 		HttpRequest.Builder builder = HttpRequest.newBuilder().uri(uri).GET().timeout(MAX_REQUEST_TIMEOUT);
@@ -114,15 +616,33 @@ public class HttpUtils {
 		return builder;
 	}
 
+	/**
+	 * Check if a failure is permanent, meaning that trying again won't help. That is the case for
+	 * client errors like 404 Not Found, except for 408 Request Timeout and 429 Too Many Requests.
+	 *
+	 * @param failure The exception a request failed with
+	 * @return true if the failure is permanent
+	 */
+	public static boolean isPermanentFailure(Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof HttpStatusException e) {
+				int statusCode = e.getStatusCode();
+				return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Retry an operation with exponential backoff
 	 *
+	 * @param url The URL the operation is for, passed to the retry listener
 	 * @param operation The operation to retry
 	 * @return The result of the operation
 	 * @throws IOException If all retry attempts fail
 	 * @throws InterruptedException If the thread is interrupted during backoff
 	 */
-	private <T> T retry(IOSupplier<T> operation) throws IOException, InterruptedException {
+	private <T> T retry(String url, IOSupplier<T> operation) throws IOException, InterruptedException {
 		IOException lastException = null;
 		for (int attempt = 0; attempt < DEFAULT_MAX_RETRIES; attempt++) {
 			try {
@@ -133,14 +653,15 @@ public class HttpUtils {
 					// Don't retry on timeout — the request already took the maximum allowed time
 					throw e;
 				}
-				if (e instanceof HttpStatusException) {
-					int statusCode = ((HttpStatusException) e).getStatusCode();
-					// Don't retry for client errors (4xx) except 429 Too Many Requests
-					if (statusCode >= 400 && statusCode < 500 && statusCode != 429) {
-						throw e;
-					}
+				if (isPermanentFailure(e)) {
+					// Don't retry for client errors (4xx) except 408 Request Timeout and 429 Too Many Requests
+					throw e;
 				}
 				if (attempt < DEFAULT_MAX_RETRIES - 1) {
+					Consumer<String> listener = retryListener;
+					if (listener != null) {
+						listener.accept(url);
+					}
 					// Exponential backoff: 2s, 4s, 8s, ...
 					long backoffMillis = INITIAL_BACKOFF.toMillis() * (1L << attempt);
 					logger.info(
@@ -156,16 +677,3 @@ public class HttpUtils {
 		throw lastException;
 	}
 }
-
-class HttpStatusException extends IOException {
-	private final int statusCode;
-
-	public HttpStatusException(int statusCode, String message) {
-		super(message);
-		this.statusCode = statusCode;
-	}
-
-	public int getStatusCode() {
-		return statusCode;
-	}
-}
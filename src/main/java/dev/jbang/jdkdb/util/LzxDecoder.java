@@ -0,0 +1,490 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decoder for LZX compressed data as found in cabinet files. LZX is an LZ77 variant with a
+ * sliding window of 32 KB to 2 MB whose literals, match lengths and match offsets are Huffman
+ * coded. The data is decoded in frames of 32 KB (only the last frame can be smaller) which each
+ * correspond to one data block of the cabinet file. The compressed data of all the blocks forms a
+ * single bit stream, the decoder state carries over from one frame to the next.
+ */
+class LzxDecoder {
+	static final int FRAME_SIZE = 32768;
+
+	private static final int MIN_MATCH = 2;
+	private static final int NUM_CHARS = 256;
+	private static final int NUM_PRIMARY_LENGTHS = 7;
+	private static final int NUM_SECONDARY_LENGTHS = 249;
+	private static final int PRETREE_SIZE = 20;
+	private static final int ALIGNED_SIZE = 8;
+	private static final int MAX_POSITION_SLOTS = 50;
+	// Runs of code lengths may go a bit past the end of a table
+	private static final int LENGTH_TABLE_SAFETY = 64;
+
+	private static final int BLOCKTYPE_VERBATIM = 1;
+	private static final int BLOCKTYPE_ALIGNED = 2;
+	private static final int BLOCKTYPE_UNCOMPRESSED = 3;
+
+	private static final int[] EXTRA_BITS = new int[MAX_POSITION_SLOTS + 1];
+	private static final int[] POSITION_BASE = new int[MAX_POSITION_SLOTS + 1];
+
+	static {
+		for (int i = 0, bits = 0; i <= MAX_POSITION_SLOTS; i += 2) {
+			EXTRA_BITS[i] = bits;
+			if (i < MAX_POSITION_SLOTS) {
+				EXTRA_BITS[i + 1] = bits;
+			}
+			if (i != 0 && bits < 17) {
+				bits++;
+			}
+		}
+		for (int i = 0, base = 0; i <= MAX_POSITION_SLOTS; i++) {
+			POSITION_BASE[i] = base;
+			base += 1 << EXTRA_BITS[i];
+		}
+	}
+
+	private final InputStream in;
+	private final byte[] window;
+	private final int positionSlots;
+	private final byte[] mainLengths = new byte[NUM_CHARS + MAX_POSITION_SLOTS * 8 + LENGTH_TABLE_SAFETY];
+	private final byte[] lengthLengths = new byte[NUM_SECONDARY_LENGTHS + LENGTH_TABLE_SAFETY];
+	private HuffmanTree mainTree;
+	private HuffmanTree lengthTree;
+	private HuffmanTree alignedTree;
+	private int r0 = 1;
+	private int r1 = 1;
+	private int r2 = 1;
+	private int windowPosition;
+	private long offset;
+	private int frame;
+	private boolean headerRead;
+	private int intelFileSize;
+	private boolean intelStarted;
+	private int blockType;
+	private int blockLength;
+	private int blockRemaining;
+	private int bitBuffer;
+	private int bitsLeft;
+	private int paddingWords;
+
+	/**
+	 * Create a decoder.
+	 *
+	 * @param in The compressed data
+	 * @param windowBits The size of the sliding window as a power of 2 (15 to 21)
+	 */
+	LzxDecoder(InputStream in, int windowBits) throws IOException {
+		if (windowBits < 15 || windowBits > 21) {
+			throw new IOException("Unsupported LZX window size: " + windowBits);
+		}
+		this.in = in;
+		this.window = new byte[1 << windowBits];
+		this.positionSlots = windowBits == 20 ? 42 : windowBits == 21 ? 50 : windowBits * 2;
+	}
+
+	/**
+	 * Decode the next frame.
+	 *
+	 * @param out The buffer to write the uncompressed frame to
+	 * @param frameSize The uncompressed size of the frame, at most {@link #FRAME_SIZE}
+	 */
+	void decodeFrame(byte[] out, int frameSize) throws IOException {
+		if (frameSize <= 0 || frameSize > FRAME_SIZE) {
+			throw new IOException("Invalid LZX frame size: " + frameSize);
+		}
+		if (!headerRead) {
+			// The stream starts with the file size used for the E8 call translation, if any
+			if (readBits(1) == 1) {
+				int high = readBits(16);
+				intelFileSize = (high << 16) | readBits(16);
+			}
+			headerRead = true;
+		}
+		if (windowPosition == window.length) {
+			windowPosition = 0;
+		}
+		int framePosition = windowPosition;
+		int todo = frameSize;
+		while (todo > 0) {
+			if (blockRemaining == 0) {
+				readBlockHeader();
+			}
+			int run = Math.min(blockRemaining, todo);
+			todo -= run;
+			blockRemaining -= run;
+			if (blockType == BLOCKTYPE_UNCOMPRESSED) {
+				readFully(window, windowPosition, run);
+				windowPosition += run;
+			} else {
+				run = decodeSymbols(run, framePosition);
+				// The last match may have run past the part of the block we asked for
+				if (run < 0) {
+					if (-run > blockRemaining) {
+						throw new IOException("LZX match runs past the end of the block");
+					}
+					blockRemaining += run;
+				}
+			}
+		}
+		if (windowPosition - framePosition != frameSize) {
+			throw new IOException("LZX data runs past the end of the frame");
+		}
+
+		// Frames start at a 16 bit boundary of the input
+		if (bitsLeft > 0) {
+			ensureBits(16);
+		}
+		removeBits(bitsLeft & 15);
+
+		System.arraycopy(window, framePosition, out, 0, frameSize);
+		if (intelStarted && intelFileSize != 0 && frame < 32768 && frameSize > 10) {
+			undoE8Translation(out, frameSize, (int) offset);
+		}
+		offset += frameSize;
+		frame++;
+	}
+
+	private void readBlockHeader() throws IOException {
+		// Uncompressed blocks are padded to an even number of bytes
+		if (blockType == BLOCKTYPE_UNCOMPRESSED && (blockLength & 1) != 0) {
+			readByte();
+		}
+		blockType = readBits(3);
+		int high = readBits(16);
+		blockLength = (high << 8) | readBits(8);
+		blockRemaining = blockLength;
+		switch (blockType) {
+			case BLOCKTYPE_ALIGNED, BLOCKTYPE_VERBATIM -> {
+				if (blockType == BLOCKTYPE_ALIGNED) {
+					byte[] alignedLengths = new byte[ALIGNED_SIZE];
+					for (int i = 0; i < ALIGNED_SIZE; i++) {
+						alignedLengths[i] = (byte) readBits(3);
+					}
+					alignedTree = new HuffmanTree(alignedLengths, ALIGNED_SIZE, 7);
+				}
+				int mainSize = NUM_CHARS + positionSlots * 8;
+				readLengths(mainLengths, 0, NUM_CHARS);
+				readLengths(mainLengths, NUM_CHARS, mainSize);
+				mainTree = new HuffmanTree(mainLengths, mainSize, 12);
+				if (mainLengths[0xE8] != 0) {
+					intelStarted = true;
+				}
+				readLengths(lengthLengths, 0, NUM_SECONDARY_LENGTHS);
+				lengthTree = HuffmanTree.isEmpty(lengthLengths, NUM_SECONDARY_LENGTHS)
+						? null
+						: new HuffmanTree(lengthLengths, NUM_SECONDARY_LENGTHS, 12);
+			}
+			case BLOCKTYPE_UNCOMPRESSED -> {
+				intelStarted = true;
+				// Skip 1 to 16 bits to get to a byte boundary
+				if (bitsLeft == 0) {
+					ensureBits(16);
+				}
+				bitsLeft = 0;
+				bitBuffer = 0;
+				r0 = readIntLE();
+				r1 = readIntLE();
+				r2 = readIntLE();
+			}
+			default -> throw new IOException("Invalid LZX block type: " + blockType);
+		}
+	}
+
+	/** Read the code lengths of a part of a Huffman tree, as deltas of their previous values */
+	private void readLengths(byte[] lengths, int first, int last) throws IOException {
+		byte[] preLengths = new byte[PRETREE_SIZE];
+		for (int i = 0; i < PRETREE_SIZE; i++) {
+			preLengths[i] = (byte) readBits(4);
+		}
+		HuffmanTree preTree = new HuffmanTree(preLengths, PRETREE_SIZE, 6);
+		int x = first;
+		while (x < last) {
+			int z = preTree.decode(this);
+			if (z == 17 || z == 18) {
+				// A run of zeros
+				int run = z == 17 ? readBits(4) + 4 : readBits(5) + 20;
+				checkRun(lengths, x, run);
+				for (int i = 0; i < run; i++) {
+					lengths[x++] = 0;
+				}
+			} else if (z == 19) {
+				// A run of the same length
+				int run = readBits(1) + 4;
+				checkRun(lengths, x, run);
+				int length = delta(lengths[x], preTree.decode(this));
+				for (int i = 0; i < run; i++) {
+					lengths[x++] = (byte) length;
+				}
+			} else {
+				lengths[x] = (byte) delta(lengths[x], z);
+				x++;
+			}
+		}
+	}
+
+	private static void checkRun(byte[] lengths, int x, int run) throws IOException {
+		if (x + run > lengths.length) {
+			throw new IOException("Invalid LZX code lengths");
+		}
+	}
+
+	private static int delta(int previous, int z) throws IOException {
+		if (z > 16) {
+			throw new IOException("Invalid LZX code lengths");
+		}
+		int length = previous - z;
+		return length < 0 ? length + 17 : length;
+	}
+
+	/**
+	 * Decode literals and matches of a verbatim or aligned block into the window.
+	 *
+	 * @return The number of bytes still to decode, negative if the last match went past the run
+	 */
+	private int decodeSymbols(int run, int framePosition) throws IOException {
+		while (run > 0) {
+			int element = mainTree.decode(this);
+			if (element < NUM_CHARS) {
+				window[windowPosition++] = (byte) element;
+				run--;
+				continue;
+			}
+			element -= NUM_CHARS;
+			int matchLength = element & NUM_PRIMARY_LENGTHS;
+			if (matchLength == NUM_PRIMARY_LENGTHS) {
+				if (lengthTree == null) {
+					throw new IOException("LZX length tree is empty");
+				}
+				matchLength += lengthTree.decode(this);
+			}
+			matchLength += MIN_MATCH;
+
+			int slot = element >>> 3;
+			int matchOffset;
+			switch (slot) {
+				case 0 -> matchOffset = r0;
+				case 1 -> {
+					matchOffset = r1;
+					r1 = r0;
+					r0 = matchOffset;
+				}
+				case 2 -> {
+					matchOffset = r2;
+					r2 = r0;
+					r0 = matchOffset;
+				}
+				default -> {
+					int extra = slot >= 36 ? 17 : EXTRA_BITS[slot];
+					matchOffset = POSITION_BASE[slot] - 2;
+					if (blockType == BLOCKTYPE_ALIGNED && extra >= 3) {
+						// The lowest 3 bits come from the aligned offset tree
+						matchOffset += readBits(extra - 3) << 3;
+						matchOffset += alignedTree.decode(this);
+					} else {
+						matchOffset += readBits(extra);
+					}
+					r2 = r1;
+					r1 = r0;
+					r0 = matchOffset;
+				}
+			}
+
+			if (windowPosition + matchLength > window.length) {
+				throw new IOException("LZX match runs past the end of the window");
+			}
+			long produced = offset + windowPosition - framePosition;
+			if (matchOffset <= 0 || matchOffset > window.length || matchOffset > produced) {
+				throw new IOException("Invalid LZX match offset: " + matchOffset);
+			}
+			int source = windowPosition - matchOffset;
+			if (source < 0) {
+				source += window.length;
+			}
+			for (int i = 0; i < matchLength; i++) {
+				window[windowPosition++] = window[source++];
+				if (source == window.length) {
+					source = 0;
+				}
+			}
+			run -= matchLength;
+		}
+		return run;
+	}
+
+	/** Turn the absolute addresses of x86 CALL instructions back into relative ones */
+	private void undoE8Translation(byte[] data, int size, int position) {
+		int end = size - 10;
+		int i = 0;
+		while (i < end) {
+			if ((data[i++] & 0xFF) != 0xE8) {
+				position++;
+				continue;
+			}
+			int absolute = (data[i] & 0xFF)
+					| (data[i + 1] & 0xFF) << 8
+					| (data[i + 2] & 0xFF) << 16
+					| (data[i + 3] & 0xFF) << 24;
+			if (absolute >= -position && absolute < intelFileSize) {
+				int relative = absolute >= 0 ? absolute - position : absolute + intelFileSize;
+				data[i] = (byte) relative;
+				data[i + 1] = (byte) (relative >>> 8);
+				data[i + 2] = (byte) (relative >>> 16);
+				data[i + 3] = (byte) (relative >>> 24);
+			}
+			i += 4;
+			position += 5;
+		}
+	}
+
+	// The bit stream consists of 16 bit little endian words, read from the most significant bit
+
+	private void ensureBits(int n) throws IOException {
+		while (bitsLeft < n) {
+			int low = in.read();
+			int high = in.read();
+			if (low < 0 || high < 0) {
+				// The encoder may leave off the padding of the last word
+				if (low >= 0 || ++paddingWords > 2) {
+					throw new EOFException("Unexpected end of LZX data");
+				}
+				low = 0;
+				high = 0;
+			}
+			bitBuffer |= ((high << 8) | low) << (16 - bitsLeft);
+			bitsLeft += 16;
+		}
+	}
+
+	private int peekBits(int n) {
+		return bitBuffer >>> (32 - n);
+	}
+
+	private void removeBits(int n) {
+		bitBuffer <<= n;
+		bitsLeft -= n;
+	}
+
+	private int readBits(int n) throws IOException {
+		if (n == 0) {
+			return 0;
+		}
+		ensureBits(n);
+		int value = peekBits(n);
+		removeBits(n);
+		return value;
+	}
+
+	private int readByte() throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("Unexpected end of LZX data");
+		}
+		return b;
+	}
+
+	private int readIntLE() throws IOException {
+		return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		if (in.readNBytes(b, off, len) != len) {
+			throw new EOFException("Unexpected end of LZX data");
+		}
+	}
+
+	/** Canonical Huffman code, decoded with a lookup table for the short codes */
+	private static final class HuffmanTree {
+		private static final int MAX_CODE_LENGTH = 16;
+
+		private final int tableBits;
+		private final short[] table;
+		private final int[] counts = new int[MAX_CODE_LENGTH + 1];
+		private final int[] symbols;
+
+		HuffmanTree(byte[] lengths, int size, int tableBits) throws IOException {
+			this.tableBits = tableBits;
+			for (int i = 0; i < size; i++) {
+				if (lengths[i] < 0 || lengths[i] > MAX_CODE_LENGTH) {
+					throw new IOException("Invalid LZX code length");
+				}
+				counts[lengths[i]]++;
+			}
+			counts[0] = 0;
+			int left = 1;
+			for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+				left = (left << 1) - counts[length];
+				if (left < 0) {
+					throw new IOException("Invalid LZX Huffman code");
+				}
+			}
+
+			// Sort the symbols by code length, and by value within a length
+			int[] offsets = new int[MAX_CODE_LENGTH + 2];
+			for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+				offsets[length + 1] = offsets[length] + counts[length];
+			}
+			symbols = new int[offsets[MAX_CODE_LENGTH + 1]];
+			for (int i = 0; i < size; i++) {
+				if (lengths[i] != 0) {
+					symbols[offsets[lengths[i]]++] = i;
+				}
+			}
+
+			table = new short[1 << tableBits];
+			Arrays.fill(table, (short) -1);
+			int code = 0;
+			int previousLength = 0;
+			for (int symbol : symbols) {
+				int length = lengths[symbol];
+				code <<= length - previousLength;
+				previousLength = length;
+				if (length <= tableBits) {
+					int first = code << (tableBits - length);
+					int last = (code + 1) << (tableBits - length);
+					Arrays.fill(table, first, last, (short) (symbol << 5 | length));
+				}
+				code++;
+			}
+		}
+
+		static boolean isEmpty(byte[] lengths, int size) {
+			for (int i = 0; i < size; i++) {
+				if (lengths[i] != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		int decode(LzxDecoder decoder) throws IOException {
+			decoder.ensureBits(MAX_CODE_LENGTH);
+			int bits = decoder.peekBits(MAX_CODE_LENGTH);
+			int entry = table[bits >>> (MAX_CODE_LENGTH - tableBits)];
+			if (entry >= 0) {
+				decoder.removeBits(entry & 31);
+				return entry >>> 5;
+			}
+			// Codes longer than the table, one bit at a time
+			int code = 0;
+			int first = 0;
+			int index = 0;
+			for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+				code |= (bits >>> (MAX_CODE_LENGTH - length)) & 1;
+				int count = counts[length];
+				if (code - first < count) {
+					decoder.removeBits(length);
+					return symbols[index + code - first];
+				}
+				index += count;
+				first = (first + count) << 1;
+				code <<= 1;
+			}
+			throw new IOException("Invalid LZX Huffman code");
+		}
+	}
+}
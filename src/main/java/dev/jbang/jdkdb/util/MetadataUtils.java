@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -38,6 +39,7 @@ public class MetadataUtils {
 	public static final EnumSet<JdkMetadata.FileType> UNPACKABLE_FILE_TYPES = EnumSet.of(
 			JdkMetadata.FileType.apk,
 			JdkMetadata.FileType.deb,
+			JdkMetadata.FileType.dmg,
 			JdkMetadata.FileType.msi,
 			JdkMetadata.FileType.pkg,
 			JdkMetadata.FileType.rpm,
@@ -45,9 +47,6 @@ public class MetadataUtils {
 			JdkMetadata.FileType.tar_xz,
 			JdkMetadata.FileType.zip);
 
-	public static final EnumSet<JdkMetadata.FileType> MACOS_FILE_TYPES =
-			EnumSet.of(JdkMetadata.FileType.pkg, JdkMetadata.FileType.dmg);
-
 	private static ObjectMapper readMapper = new ObjectMapper();
 
 	private static final Pattern DURATION_PATTERN = Pattern.compile("^(\\d+)([dwmy])$");
@@ -617,7 +616,7 @@ public class MetadataUtils {
 	 * @param javaVersion The java_version string (e.g., "17", "11.0.1", "8u302", "1.8.0_302")
 	 * @return The major version as a string (e.g., "17", "11", "8", "8")
 	 */
-	private static String extractMajorVersion(String javaVersion) {
+	public static String extractMajorVersion(String javaVersion) {
 		if (javaVersion == null || javaVersion.isEmpty()) {
 			return "unknown";
 		}
@@ -686,7 +685,25 @@ public class MetadataUtils {
 	public static List<JdkMetadata> collectAllMetadata(
 			Path dir, int maxDepth, boolean includeComplete, boolean includeIncomplete) throws IOException {
 		List<JdkMetadata> allMetadata = new ArrayList<>();
+		forEachMetadata(dir, maxDepth, metadata -> {
+			boolean isIncomplete =
+					MetadataUtils.hasMissingChecksums(metadata) || MetadataUtils.hasMissingReleaseInfo(metadata);
+			if ((includeComplete && !isIncomplete) || (includeIncomplete && isIncomplete)) {
+				allMetadata.add(metadata);
+			}
+		});
+		return allMetadata;
+	}
 
+	/**
+	 * Read all metadata files in a directory one by one, excluding all.json and latest.json,
+	 * without keeping them in memory.
+	 *
+	 * @param dir The directory to search
+	 * @param maxDepth The maximum depth of subdirectories to search
+	 * @param consumer Receives the metadata of each file
+	 */
+	public static void forEachMetadata(Path dir, int maxDepth, Consumer<JdkMetadata> consumer) throws IOException {
 		try (Stream<Path> paths = Files.walk(dir, maxDepth)) {
 			paths.filter(Files::isRegularFile)
 					.filter(p -> p.getFileName().toString().endsWith(".json"))
@@ -694,19 +711,12 @@ public class MetadataUtils {
 					.filter(p -> !p.getFileName().toString().equals("latest.json"))
 					.forEach(metadataFile -> {
 						try {
-							JdkMetadata metadata = readMetadataFile(metadataFile);
-							boolean isIncomplete = MetadataUtils.hasMissingChecksums(metadata)
-									|| MetadataUtils.hasMissingReleaseInfo(metadata);
-							if ((includeComplete && !isIncomplete) || (includeIncomplete && isIncomplete)) {
-								allMetadata.add(metadata);
-							}
+							consumer.accept(readMetadataFile(metadataFile));
 						} catch (IOException e) {
 							logger.error("Failed to read metadata file: {} - {}", metadataFile, e.getMessage());
 						}
 					});
 		}
-
-		return allMetadata;
 	}
 
 	/**
@@ -0,0 +1,333 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reader for the files in an MSI installer. An MSI file is a database stored in an OLE2 compound
+ * file: every table is a stream, and the files to install are in cabinets that are either embedded
+ * as streams as well or shipped next to the installer. To read a single file the File, Component
+ * and Directory tables are used to find it, and the Media table to find the cabinet it is in.
+ */
+class MsiPackage implements Closeable {
+	private static final int TABLE_PREFIX = 0x4840;
+	private static final int TYPE_VALID = 0x0100;
+	private static final int TYPE_STRING = 0x0800;
+	private static final int TYPE_NULLABLE = 0x1000;
+	private static final int MAX_DIRECTORY_DEPTH = 256;
+
+	/** A column of a table */
+	private record Column(String name, int type) {
+		boolean isString() {
+			return (type & TYPE_STRING) != 0 && (type & ~TYPE_NULLABLE) != (TYPE_STRING | TYPE_VALID);
+		}
+
+		int width(int stringRefSize) {
+			if ((type & ~TYPE_NULLABLE) == (TYPE_STRING | TYPE_VALID)) {
+				// Binary data is stored in separate streams, the column only holds a reference
+				return 2;
+			}
+			if ((type & TYPE_STRING) != 0) {
+				return stringRefSize;
+			}
+			return (type & 0xFF) <= 2 ? 2 : 4;
+		}
+	}
+
+	private final CompoundFile file;
+	private final List<String> strings = new ArrayList<>();
+	private final int stringRefSize;
+	private final Map<String, List<Column>> tables = new HashMap<>();
+
+	private MsiPackage(CompoundFile file) throws IOException {
+		this.file = file;
+		stringRefSize = readStringPool();
+
+		// The columns of all tables, including of the _Columns table itself
+		List<Column> columnsColumns = List.of(
+				new Column("Table", TYPE_VALID | TYPE_STRING | 64),
+				new Column("Number", TYPE_VALID | 2),
+				new Column("Name", TYPE_VALID | TYPE_STRING | 64),
+				new Column("Type", TYPE_VALID | 2));
+		tables.put("_Columns", columnsColumns);
+		Map<String, Map<Integer, Column>> columns = new HashMap<>();
+		for (Map<String, Object> row : table("_Columns")) {
+			if (row.get("Table") instanceof String table
+					&& row.get("Number") instanceof Integer number
+					&& row.get("Name") instanceof String name
+					&& row.get("Type") instanceof Integer type) {
+				columns.computeIfAbsent(table, t -> new TreeMap<>()).put(number, new Column(name, type));
+			}
+		}
+		columns.forEach((table, byNumber) -> tables.put(table, new ArrayList<>(byNumber.values())));
+	}
+
+	/**
+	 * Open an MSI installer.
+	 *
+	 * @param msiFile The installer
+	 * @return The package, which must be closed after use
+	 */
+	static MsiPackage open(Path msiFile) throws IOException {
+		CompoundFile file = CompoundFile.open(msiFile);
+		try {
+			return new MsiPackage(file);
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read a file that would be installed by the package. If there are several files with the given
+	 * name, the one closest to the root of the installation directory is read.
+	 *
+	 * @param fileName The name of the file
+	 * @return The contents of the file, or null if the package doesn't install such a file
+	 */
+	byte[] readFile(String fileName) throws IOException {
+		Map<String, Object> match = null;
+		int matchDepth = Integer.MAX_VALUE;
+		Map<String, Map<String, Object>> components = index(table("Component"), "Component");
+		Map<String, Map<String, Object>> directories = index(table("Directory"), "Directory");
+		for (Map<String, Object> row : table("File")) {
+			if (!fileName.equals(longName(row.get("FileName")))) {
+				continue;
+			}
+			Map<String, Object> component = components.get(row.get("Component_"));
+			int depth = component != null ? depth(directories, component.get("Directory_")) : MAX_DIRECTORY_DEPTH;
+			if (depth < matchDepth) {
+				match = row;
+				matchDepth = depth;
+			}
+		}
+		if (match == null) {
+			return null;
+		}
+
+		// The media entries each hold the files up to their last sequence number
+		if (!(match.get("Sequence") instanceof Integer sequence)) {
+			throw new IOException("MSI file entry has no sequence number: " + fileName);
+		}
+		Map<String, Object> media = table("Media").stream()
+				.filter(row -> row.get("LastSequence") instanceof Integer last && last >= sequence)
+				.min(Comparator.comparingInt(row -> (Integer) row.get("LastSequence")))
+				.orElseThrow(() -> new IOException("No MSI media entry for " + fileName));
+		if (!(media.get("Cabinet") instanceof String cabinet) || !cabinet.startsWith("#")) {
+			throw new IOException("MSI file " + fileName + " is not in an embedded cabinet");
+		}
+		CompoundFile.Entry entry = file.stream(encodeStreamName(cabinet.substring(1), false));
+		if (entry == null) {
+			throw new IOException("MSI cabinet stream not found: " + cabinet);
+		}
+		// Files in MSI cabinets are named after their key in the File table
+		try (InputStream in = file.open(entry)) {
+			return Cabinet.readFile(in, (String) match.get("File"));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Read all the rows of a table. The values of a table are stored column by column, strings are
+	 * stored as references to the string pool and integers with their sign bit flipped (zero means
+	 * null).
+	 */
+	private List<Map<String, Object>> table(String name) throws IOException {
+		List<Column> columns = tables.get(name);
+		if (columns == null) {
+			throw new IOException("MSI has no " + name + " table");
+		}
+		CompoundFile.Entry entry = file.stream(encodeStreamName(name, true));
+		if (entry == null) {
+			// Empty tables have no stream
+			return List.of();
+		}
+		byte[] data = file.read(entry);
+		int rowSize = 0;
+		for (Column column : columns) {
+			rowSize += column.width(stringRefSize);
+		}
+		int rowCount = rowSize > 0 ? data.length / rowSize : 0;
+		List<Map<String, Object>> rows = new ArrayList<>(rowCount);
+		for (int i = 0; i < rowCount; i++) {
+			rows.add(new HashMap<>());
+		}
+		int offset = 0;
+		for (Column column : columns) {
+			int width = column.width(stringRefSize);
+			for (Map<String, Object> row : rows) {
+				int raw = 0;
+				for (int b = 0; b < width; b++) {
+					raw |= (data[offset + b] & 0xFF) << (8 * b);
+				}
+				offset += width;
+				row.put(column.name(), value(column, width, raw));
+			}
+		}
+		return rows;
+	}
+
+	private Object value(Column column, int width, int raw) throws IOException {
+		if (column.isString()) {
+			if (raw >= strings.size()) {
+				throw new IOException("Invalid MSI string reference: " + raw);
+			}
+			return strings.get(raw);
+		}
+		if (raw == 0) {
+			return null;
+		}
+		return width == 2 ? raw - 0x8000 : raw ^ 0x80000000;
+	}
+
+	/**
+	 * Load the string pool, which consists of a stream with the length of every string and a
+	 * stream with the string data.
+	 *
+	 * @return The number of bytes used by references to strings
+	 */
+	private int readStringPool() throws IOException {
+		CompoundFile.Entry poolEntry = file.stream(encodeStreamName("_StringPool", true));
+		CompoundFile.Entry dataEntry = file.stream(encodeStreamName("_StringData", true));
+		if (poolEntry == null || dataEntry == null) {
+			throw new IOException("MSI has no string pool");
+		}
+		ByteBuffer pool = ByteBuffer.wrap(file.read(poolEntry)).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] data = file.read(dataEntry);
+		int count = pool.capacity() / 4;
+		int codepage = count > 0 ? (pool.getShort(0) & 0xFFFF) | (pool.getShort(2) & 0x7FFF) << 16 : 0;
+		boolean longRefs = count > 0 && (pool.getShort(2) & 0x8000) != 0;
+		Charset charset = charset(codepage);
+
+		// String 0 is the null string
+		strings.add(null);
+		int offset = 0;
+		for (int i = 1; i < count; ) {
+			int length = pool.getShort(i * 4) & 0xFFFF;
+			int refs = pool.getShort(i * 4 + 2) & 0xFFFF;
+			if (length == 0 && refs == 0) {
+				strings.add(null);
+				i++;
+				continue;
+			}
+			if (length == 0) {
+				// Strings over 64 KB use the next entry for their length
+				if (i + 1 >= count) {
+					throw new IOException("Invalid MSI string pool");
+				}
+				length = (pool.getShort(i * 4 + 6) & 0xFFFF) << 16 | (pool.getShort(i * 4 + 4) & 0xFFFF);
+				i += 2;
+			} else {
+				i++;
+			}
+			if (length < 0 || offset + length > data.length) {
+				throw new IOException("Invalid MSI string pool");
+			}
+			strings.add(new String(data, offset, length, charset));
+			offset += length;
+		}
+		return longRefs ? 3 : 2;
+	}
+
+	private static Charset charset(int codepage) {
+		if (codepage == 65001) {
+			return StandardCharsets.UTF_8;
+		}
+		try {
+			return Charset.forName("windows-" + (codepage == 0 ? 1252 : codepage));
+		} catch (RuntimeException e) {
+			return StandardCharsets.ISO_8859_1;
+		}
+	}
+
+	/** File and directory names can have a short and a long form, separated by a '|' */
+	private static String longName(Object name) {
+		if (!(name instanceof String s)) {
+			return null;
+		}
+		int bar = s.indexOf('|');
+		return bar >= 0 ? s.substring(bar + 1) : s;
+	}
+
+	private static int depth(Map<String, Map<String, Object>> directories, Object directory) {
+		int depth = 0;
+		while (directory != null && depth < MAX_DIRECTORY_DEPTH) {
+			Map<String, Object> row = directories.get(directory);
+			if (row == null || directory.equals(row.get("Directory_Parent"))) {
+				break;
+			}
+			directory = row.get("Directory_Parent");
+			depth++;
+		}
+		return depth;
+	}
+
+	private static Map<String, Map<String, Object>> index(List<Map<String, Object>> rows, String key) {
+		Map<String, Map<String, Object>> result = new HashMap<>();
+		for (Map<String, Object> row : rows) {
+			if (row.get(key) instanceof String value) {
+				result.put(value, row);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the name under which a table or stream is stored in the compound file. To fit in the 31
+	 * characters the compound file allows, names are compressed by storing pairs of characters
+	 * from a 64 character alphabet as a single character. Tables are marked with a prefix.
+	 */
+	static String encodeStreamName(String name, boolean table) {
+		StringBuilder encoded = new StringBuilder();
+		if (table) {
+			encoded.append((char) TABLE_PREFIX);
+		}
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			int value = base64(c);
+			if (value < 0) {
+				encoded.append(c);
+				continue;
+			}
+			int next = i + 1 < name.length() ? base64(name.charAt(i + 1)) : -1;
+			if (next >= 0) {
+				encoded.append((char) (0x3800 + value + (next << 6)));
+				i++;
+			} else {
+				encoded.append((char) (0x4800 + value));
+			}
+		}
+		return encoded.toString();
+	}
+
+	private static int base64(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'A' && c <= 'Z') {
+			return c - 'A' + 10;
+		} else if (c >= 'a' && c <= 'z') {
+			return c - 'a' + 36;
+		} else if (c == '.') {
+			return 62;
+		} else if (c == '_') {
+			return 63;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,78 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Journal for a partially downloaded file, stored next to the file itself. It records where the
+ * data came from, the validator the server returned for it (ETag or Last-Modified) and how many
+ * bytes were received, which is everything needed to continue the download with a Range request.
+ *
+ * @param url The URL the file is being downloaded from
+ * @param validator The strong ETag or the Last-Modified value returned by the server
+ * @param bytes The number of bytes that were received
+ */
+record PartialDownload(String url, String validator, long bytes) {
+	private static final String JOURNAL_SUFFIX = ".journal";
+
+	/**
+	 * Load the journal for a partially downloaded file.
+	 *
+	 * @param url The URL that is going to be downloaded
+	 * @param file The file the URL is downloaded to
+	 * @return The journal, or null if there is no usable partial download of the URL in the file
+	 */
+	static PartialDownload load(String url, Path file) {
+		Path journalFile = journalFile(file);
+		if (!Files.isRegularFile(journalFile) || !Files.isRegularFile(file)) {
+			return null;
+		}
+		Properties props = new Properties();
+		try (InputStream is = Files.newInputStream(journalFile)) {
+			props.load(is);
+			String journalUrl = props.getProperty("url");
+			String validator = props.getProperty("validator");
+			long bytes = Long.parseLong(props.getProperty("bytes", "0"));
+			// Never trust the journal for more bytes than actually made it to disk
+			bytes = Math.min(bytes, Files.size(file));
+			if (!url.equals(journalUrl) || validator == null || validator.isEmpty() || bytes <= 0) {
+				return null;
+			}
+			return new PartialDownload(url, validator, bytes);
+		} catch (IOException | NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write the journal for a partially downloaded file.
+	 *
+	 * @param file The file the URL is downloaded to
+	 */
+	void save(Path file) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("url", url);
+		props.setProperty("validator", validator);
+		props.setProperty("bytes", Long.toString(bytes));
+		try (OutputStream os = Files.newOutputStream(journalFile(file))) {
+			props.store(os, "Partial download");
+		}
+	}
+
+	/**
+	 * Remove the journal of a downloaded file.
+	 *
+	 * @param file The file the URL was downloaded to
+	 */
+	static void delete(Path file) throws IOException {
+		Files.deleteIfExists(journalFile(file));
+	}
+
+	private static Path journalFile(Path file) {
+		return file.resolveSibling(file.getFileName() + JOURNAL_SUFFIX);
+	}
+}
@@ -0,0 +1,115 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+/**
+ * Reader for the payload of a macOS installer package. The Payload file of a component package is
+ * a CPIO archive that is compressed with gzip, or with pbzx in newer packages. A pbzx stream is a
+ * sequence of chunks that are each a separate xz stream, or stored as-is when they don't compress.
+ */
+class PkgPayload {
+	private static final int PBZX_MAGIC = 0x70627a78; // "pbzx"
+	private static final long PBZX_MORE_CHUNKS = 0x01000000;
+	private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+	private static final byte[] XZ_MAGIC = {(byte) 0xFD, '7', 'z', 'X', 'Z', 0};
+
+	private PkgPayload() {
+		// Utility class
+	}
+
+	/**
+	 * Open the payload of a package, detecting its compression from its first bytes.
+	 *
+	 * @param in The payload data
+	 * @return The stream of uncompressed CPIO data
+	 */
+	static InputStream open(InputStream in) throws IOException {
+		InputStream payload = new BufferedInputStream(in);
+		payload.mark(6);
+		byte[] magic = payload.readNBytes(6);
+		payload.reset();
+		if (magic.length < 6) {
+			throw new EOFException("Package payload is too short");
+		}
+		if ((magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+			return new GZIPInputStream(payload);
+		} else if (readInt(magic) == PBZX_MAGIC) {
+			return new PbzxInputStream(payload);
+		} else if (magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+			return new BZip2CompressorInputStream(payload);
+		} else if (isXz(magic)) {
+			return new XZCompressorInputStream(payload);
+		} else if (new String(magic, 0, 5, StandardCharsets.US_ASCII).equals("07070")) {
+			return payload;
+		}
+		throw new UnsupportedFormatException("Unsupported package payload format");
+	}
+
+	private static boolean isXz(byte[] data) {
+		return data.length >= XZ_MAGIC.length && Arrays.equals(data, 0, XZ_MAGIC.length, XZ_MAGIC, 0, XZ_MAGIC.length);
+	}
+
+	private static int readInt(byte[] bytes) {
+		return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+	}
+
+	/** Decompresses the chunks of a pbzx stream one after the other */
+	private static class PbzxInputStream extends InputStream {
+		private final DataInputStream in;
+		private InputStream chunk = InputStream.nullInputStream();
+		private boolean moreChunks;
+
+		PbzxInputStream(InputStream in) throws IOException {
+			this.in = new DataInputStream(in);
+			this.in.readInt(); // magic
+			moreChunks = (this.in.readLong() & PBZX_MORE_CHUNKS) != 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int n;
+			while ((n = chunk.read(b, off, len)) < 0) {
+				if (!nextChunk()) {
+					return -1;
+				}
+			}
+			return n;
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (!moreChunks) {
+				return false;
+			}
+			moreChunks = (in.readLong() & PBZX_MORE_CHUNKS) != 0;
+			long length = in.readLong();
+			if (length < 0 || length > MAX_CHUNK_SIZE) {
+				throw new IOException("Invalid pbzx chunk size: " + length);
+			}
+			byte[] data = new byte[(int) length];
+			in.readFully(data);
+			chunk = isXz(data)
+					? new XZCompressorInputStream(new ByteArrayInputStream(data))
+					: new ByteArrayInputStream(data);
+			return true;
+		}
+	}
+}
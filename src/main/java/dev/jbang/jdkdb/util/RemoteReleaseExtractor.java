@@ -0,0 +1,108 @@
+package dev.jbang.jdkdb.util;
+
+import dev.jbang.jdkdb.model.JdkMetadata;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * Extracts the release info from an archive on a web server without downloading all of it. For
+ * ZIP archives only the central directory and the release entry are fetched, using HTTP Range
+ * requests. Compressed TAR archives are streamed from the start and the transfer is aborted as soon
+ * as the release entry has been read.
+ */
+public class RemoteReleaseExtractor {
+	private static final EnumSet<JdkMetadata.FileType> SUPPORTED_FILE_TYPES = EnumSet.of(
+			JdkMetadata.FileType.apk,
+			JdkMetadata.FileType.tar_gz,
+			JdkMetadata.FileType.tar_xz,
+			JdkMetadata.FileType.zip);
+
+	/**
+	 * The release info read from a remote archive
+	 *
+	 * @param releaseInfo The release properties, or null if the archive has no release file
+	 * @param bytesRead The number of bytes of the archive that were transferred
+	 * @param lastModified The Last-Modified value of the archive, if available
+	 */
+	public record Result(Map<String, String> releaseInfo, long bytesRead, String lastModified) {}
+
+	private final HttpUtils httpUtils;
+
+	/**
+	 * Create a new extractor.
+	 *
+	 * @param httpUtils The HTTP client to read the archives with
+	 */
+	public RemoteReleaseExtractor(HttpUtils httpUtils) {
+		this.httpUtils = httpUtils;
+	}
+
+	/**
+	 * Check if the release info can be extracted from a remote archive of the given file type.
+	 *
+	 * @param type The file type
+	 * @return true if this extractor supports the file type
+	 */
+	public static boolean supports(JdkMetadata.FileType type) {
+		return type != null && SUPPORTED_FILE_TYPES.contains(type);
+	}
+
+	/**
+	 * Extract the release info from a remote archive.
+	 *
+	 * @param url The URL of the archive
+	 * @param type The type of the archive
+	 * @return The release info, or null if it can't be read without downloading the whole archive
+	 *     (for example when the server doesn't support range requests for a ZIP archive)
+	 */
+	public Result extract(String url, JdkMetadata.FileType type) throws IOException, InterruptedException {
+		if (!supports(type)) {
+			throw new IllegalArgumentException("File type not supported for remote extraction: " + type);
+		}
+		HttpUtils.RemoteFile remote = httpUtils.probe(url);
+		if (type == JdkMetadata.FileType.zip) {
+			if (!remote.acceptsRanges() || remote.size() <= 0) {
+				return null;
+			}
+			HttpRangeChannel channel = new HttpRangeChannel(httpUtils, url, remote);
+			Map<String, String> releaseInfo = ArchiveUtils.extractReleaseFromZip(channel);
+			return new Result(releaseInfo, channel.bytesRead(), remote.lastModified());
+		}
+		// Closing the stream before the end of the archive aborts the transfer
+		try (CountingInputStream in = new CountingInputStream(httpUtils.openStream(url));
+				InputStream tarStream = ArchiveUtils.openCompressedTar(in, type)) {
+			Map<String, String> releaseInfo = ArchiveUtils.extractReleaseFromTar(tarStream);
+			return new Result(releaseInfo, in.count, remote.lastModified());
+		}
+	}
+
+	/** Counts the bytes that are read from a stream */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.lzma.LZMACompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+/**
+ * Reader for the payload of an RPM package. An RPM file consists of a fixed size lead, a
+ * signature header, the main header and finally the payload, which is a compressed CPIO archive.
+ * The headers are only read to find out how the payload is compressed, which is all that's needed
+ * to stream the files of the package.
+ */
+class RpmPayload {
+	private static final int LEAD_SIZE = 96;
+	private static final int LEAD_MAGIC = 0xEDABEEDB;
+	private static final int HEADER_MAGIC = 0x8EADE801;
+	private static final int INDEX_ENTRY_SIZE = 16;
+	// The same limits rpm itself uses for a header
+	private static final int MAX_INDEX_ENTRIES = 0xFFFF;
+	private static final int MAX_STORE_SIZE = 256 * 1024 * 1024;
+
+	private static final int TAG_PAYLOADFORMAT = 1124;
+	private static final int TAG_PAYLOADCOMPRESSOR = 1125;
+	private static final int TYPE_STRING = 6;
+
+	private RpmPayload() {
+		// Utility class
+	}
+
+	/**
+	 * Skip the lead and headers of an RPM package and open its payload.
+	 *
+	 * @param in The RPM package, positioned at its start
+	 * @return The stream of uncompressed CPIO data
+	 */
+	static InputStream open(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		byte[] lead = new byte[LEAD_SIZE];
+		data.readFully(lead);
+		if (readInt(lead, 0) != LEAD_MAGIC) {
+			throw new IOException("Not an RPM package");
+		}
+
+		// The signature header is padded to a multiple of 8 bytes
+		int signatureSize = skipHeader(data);
+		data.skipNBytes((8 - signatureSize % 8) % 8);
+
+		Header header = Header.read(data);
+		String format = header.string(TAG_PAYLOADFORMAT);
+		if (format != null && !format.equals("cpio")) {
+			throw new IOException("Unsupported RPM payload format: " + format);
+		}
+		// Packages without a compressor tag predate the others and always use gzip
+		String compressor = header.string(TAG_PAYLOADCOMPRESSOR);
+		return switch (compressor != null ? compressor : "gzip") {
+			case "gzip" -> new GZIPInputStream(in);
+			case "bzip2" -> new BZip2CompressorInputStream(in);
+			case "xz" -> new XZCompressorInputStream(in);
+			case "lzma" -> new LZMACompressorInputStream(in);
+			case "zstd" -> new ZstdCompressorInputStream(in);
+			default -> throw new IOException("Unsupported RPM payload compression: " + compressor);
+		};
+	}
+
+	/** Skip a header without keeping its contents, returning the size of its index and store */
+	private static int skipHeader(DataInputStream data) throws IOException {
+		int[] sizes = readIntro(data);
+		int size = sizes[0] * INDEX_ENTRY_SIZE + sizes[1];
+		data.skipNBytes(size);
+		return size;
+	}
+
+	/** Read the intro of a header, returning the number of index entries and the store size */
+	private static int[] readIntro(DataInputStream data) throws IOException {
+		if (data.readInt() != HEADER_MAGIC) {
+			throw new IOException("Invalid RPM header");
+		}
+		data.readInt(); // reserved
+		int entries = data.readInt();
+		int storeSize = data.readInt();
+		if (entries < 0 || entries > MAX_INDEX_ENTRIES || storeSize < 0 || storeSize > MAX_STORE_SIZE) {
+			throw new IOException("Invalid RPM header size");
+		}
+		return new int[] {entries, storeSize};
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24)
+				| ((bytes[offset + 1] & 0xFF) << 16)
+				| ((bytes[offset + 2] & 0xFF) << 8)
+				| (bytes[offset + 3] & 0xFF);
+	}
+
+	/** The index entries and data store of an RPM header */
+	private record Header(byte[] index, byte[] store) {
+		static Header read(DataInputStream data) throws IOException {
+			int[] sizes = readIntro(data);
+			byte[] index = new byte[sizes[0] * INDEX_ENTRY_SIZE];
+			byte[] store = new byte[sizes[1]];
+			data.readFully(index);
+			data.readFully(store);
+			return new Header(index, store);
+		}
+
+		/** Get the value of a string tag, or null if the header doesn't have the tag */
+		String string(int tag) throws IOException {
+			for (int pos = 0; pos < index.length; pos += INDEX_ENTRY_SIZE) {
+				if (readInt(index, pos) != tag) {
+					continue;
+				}
+				int offset = readInt(index, pos + 8);
+				if (readInt(index, pos + 4) != TYPE_STRING || offset < 0 || offset >= store.length) {
+					throw new IOException("Invalid RPM header entry for tag " + tag);
+				}
+				int end = offset;
+				while (end < store.length && store[end] != 0) {
+					end++;
+				}
+				return new String(store, offset, end - offset, StandardCharsets.UTF_8);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input stream for a response body that aborts the transfer when its throughput stays below a
+ * minimum for a whole window. A watchdog thread checks the number of bytes received after each
+ * window and closes the underlying stream when too few arrived, which also unblocks a read that is
+ * waiting for data that never comes. Reads then fail with a {@link StalledTransferException}.
+ */
+class StallDetectingInputStream extends FilterInputStream {
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "stall-watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String url;
+	private final long minBytesPerWindow;
+	private final Duration window;
+	private final AtomicLong received = new AtomicLong();
+	private final ScheduledFuture<?> check;
+	private long receivedAtWindowStart;
+	private volatile boolean stalled;
+
+	/**
+	 * Start watching a response body.
+	 *
+	 * @param url The URL the body is for, used in the error message
+	 * @param in The response body
+	 * @param minBytesPerSecond The lowest acceptable throughput
+	 * @param window The period over which the throughput is measured
+	 */
+	StallDetectingInputStream(String url, InputStream in, long minBytesPerSecond, Duration window) {
+		super(in);
+		this.url = url;
+		this.window = window;
+		this.minBytesPerWindow = minBytesPerSecond * window.toMillis() / 1000;
+		long millis = window.toMillis();
+		this.check = watchdog.scheduleAtFixedRate(this::checkWindow, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b;
+		try {
+			b = super.read();
+		} catch (IOException e) {
+			throw stalled ? stalledException() : e;
+		}
+		if (stalled) {
+			throw stalledException();
+		}
+		if (b != -1) {
+			received.incrementAndGet();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read;
+		try {
+			read = super.read(b, off, len);
+		} catch (IOException e) {
+			throw stalled ? stalledException() : e;
+		}
+		// A body that was closed by the watchdog can look like it ended normally
+		if (stalled) {
+			throw stalledException();
+		}
+		if (read > 0) {
+			received.addAndGet(read);
+		}
+		return read;
+	}
+
+	@Override
+	public void close() throws IOException {
+		check.cancel(false);
+		super.close();
+	}
+
+	/** Runs on the watchdog thread at the end of each window */
+	private void checkWindow() {
+		if (stalled) {
+			return;
+		}
+		long total = received.get();
+		if (total - receivedAtWindowStart < minBytesPerWindow) {
+			stalled = true;
+			try {
+				in.close();
+			} catch (IOException e) {
+				// The reader fails with a StalledTransferException anyway
+			}
+		}
+		receivedAtWindowStart = total;
+	}
+
+	private StalledTransferException stalledException() {
+		return new StalledTransferException("Transfer of " + url + " stalled, received less than "
+				+ minBytesPerWindow + " bytes in " + window.toMillis() + "ms");
+	}
+}
@@ -0,0 +1,10 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.IOException;
+
+/** Thrown when a transfer is aborted because its throughput stayed below the minimum */
+class StalledTransferException extends IOException {
+	public StalledTransferException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,220 @@
+package dev.jbang.jdkdb.util;
+
+import dev.jbang.jdkdb.model.JdkMetadata;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Output stream that extracts the release info from a compressed TAR archive while its bytes are
+ * being written to it, for example while the archive is being downloaded. The data is decompressed
+ * on a separate thread, which records the release properties as the entry goes past and then keeps
+ * reading until the end of the compressed stream so its trailer gets verified. A truncated archive
+ * is reported by {@link #close()}.
+ *
+ * <p>The bytes are handed to the reader thread through a lock based pipe (instead of the
+ * {@code synchronized} based {@link java.io.PipedInputStream}) so writers running on virtual threads
+ * don't pin their carrier thread while waiting for the reader.
+ */
+public class StreamingReleaseExtractor extends OutputStream {
+	private static final EnumSet<JdkMetadata.FileType> STREAMABLE_FILE_TYPES =
+			EnumSet.of(JdkMetadata.FileType.apk, JdkMetadata.FileType.tar_gz, JdkMetadata.FileType.tar_xz);
+	private static final int PIPE_SIZE = 256 * 1024;
+
+	private final JdkMetadata.FileType type;
+	private final Pipe pipe;
+	private final Thread reader;
+	private volatile Map<String, String> releaseInfo;
+	private volatile Exception failure;
+	private volatile EOFException truncation;
+
+	/**
+	 * Check if the release info can be extracted from a stream of the given file type.
+	 *
+	 * @param type The file type
+	 * @return true if this extractor supports the file type
+	 */
+	public static boolean supports(JdkMetadata.FileType type) {
+		return type != null && STREAMABLE_FILE_TYPES.contains(type);
+	}
+
+	/**
+	 * Create a new extractor and start its reader thread.
+	 *
+	 * @param type The type of the archive (apk, tar_gz or tar_xz)
+	 */
+	public StreamingReleaseExtractor(JdkMetadata.FileType type) throws IOException {
+		if (!supports(type)) {
+			throw new IllegalArgumentException("File type not supported for streaming extraction: " + type);
+		}
+		this.type = type;
+		this.pipe = new Pipe(PIPE_SIZE);
+		this.reader =
+				Thread.ofPlatform().daemon().name("release-extractor").start(this::readArchive);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		pipe.write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		pipe.write(b, off, len);
+	}
+
+	/**
+	 * Signal the end of the archive data and wait for the reader to finish.
+	 *
+	 * @throws EOFException if the archive turned out to be truncated
+	 */
+	@Override
+	public void close() throws IOException {
+		pipe.closeWriter();
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for release extraction", e);
+		}
+		if (truncation != null) {
+			throw new EOFException("Truncated " + type + " archive: " + truncation.getMessage());
+		}
+	}
+
+	/**
+	 * Get the extracted release info. Only valid after {@link #close()} has been called.
+	 *
+	 * @return Map of release properties, or null if no release file was found
+	 */
+	public Map<String, String> releaseInfo() {
+		return releaseInfo;
+	}
+
+	/**
+	 * Get the error that prevented the release info from being extracted, if any. Only valid after
+	 * {@link #close()} has been called.
+	 *
+	 * @return The error or null if extraction didn't fail
+	 */
+	public Exception failure() {
+		return failure;
+	}
+
+	private void readArchive() {
+		InputStream compressedStream = null;
+		try {
+			compressedStream = ArchiveUtils.openCompressedTar(pipe, type);
+			releaseInfo = ArchiveUtils.extractReleaseFromTar(compressedStream);
+		} catch (EOFException e) {
+			truncation = e;
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+		}
+		try {
+			// Read the rest of the compressed stream so its trailer gets checked
+			if (compressedStream != null && truncation == null) {
+				compressedStream.transferTo(OutputStream.nullOutputStream());
+			}
+		} catch (EOFException e) {
+			truncation = e;
+		} catch (IOException | RuntimeException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		} finally {
+			// Always consume everything that gets written so the writer never blocks
+			try {
+				pipe.transferTo(OutputStream.nullOutputStream());
+			} catch (IOException e) {
+				// Ignore, the pipe is being torn down anyway
+			}
+		}
+	}
+
+	/** Bounded single-writer single-reader byte pipe, the reading side is the input stream itself */
+	private static class Pipe extends InputStream {
+		private final byte[] buffer;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+		private int readPos;
+		private int count;
+		private boolean writerClosed;
+
+		Pipe(int size) {
+			this.buffer = new byte[size];
+		}
+
+		void write(byte[] b, int off, int len) throws IOException {
+			lock.lock();
+			try {
+				while (len > 0) {
+					while (count == buffer.length) {
+						notFull.await();
+					}
+					int writePos = (readPos + count) % buffer.length;
+					int n = Math.min(len, Math.min(buffer.length - count, buffer.length - writePos));
+					System.arraycopy(b, off, buffer, writePos, n);
+					count += n;
+					off += n;
+					len -= n;
+					notEmpty.signal();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing to release extractor", e);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void closeWriter() {
+			lock.lock();
+			try {
+				writerClosed = true;
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			lock.lock();
+			try {
+				while (count == 0) {
+					if (writerClosed) {
+						return -1;
+					}
+					notEmpty.await();
+				}
+				int n = Math.min(len, Math.min(count, buffer.length - readPos));
+				System.arraycopy(buffer, readPos, b, off, n);
+				readPos = (readPos + n) % buffer.length;
+				count -= n;
+				notFull.signal();
+				return n;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading release extractor input", e);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,431 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Reader for UDIF disk images, the format of macOS DMG files. The image ends with a "koly" trailer
+ * that points to an XML property list, which has a "blkx" table for every partition. Such a table
+ * divides the partition into chunks of sectors that are each compressed on their own, so any part
+ * of a partition can be read by decompressing only the chunks it overlaps.
+ */
+class UdifImage implements Closeable {
+	private static final int TRAILER_SIZE = 512;
+	private static final int TRAILER_MAGIC = 0x6B6F6C79; // "koly"
+	private static final int BLKX_MAGIC = 0x6D697368; // "mish"
+	private static final int BLKX_HEADER_SIZE = 204;
+	private static final int CHUNK_SIZE = 40;
+	private static final int SECTOR_SIZE = 512;
+	private static final int MAX_PLIST_SIZE = 64 * 1024 * 1024;
+	// No real image has chunks this large, hdiutil uses at most 2048 sectors (1 MB)
+	private static final long MAX_CHUNK_SECTORS = 64 * 1024;
+	// The number of decompressed chunks that are kept for the next read
+	private static final int CACHED_CHUNKS = 4;
+
+	private static final int CHUNK_ZERO = 0x00000000;
+	private static final int CHUNK_RAW = 0x00000001;
+	private static final int CHUNK_IGNORE = 0x00000002;
+	private static final int CHUNK_ADC = 0x80000004;
+	private static final int CHUNK_ZLIB = 0x80000005;
+	private static final int CHUNK_BZIP2 = 0x80000006;
+	private static final int CHUNK_LZFSE = 0x80000007;
+	private static final int CHUNK_LZMA = 0x80000008;
+	private static final int CHUNK_COMMENT = 0x7FFFFFFE;
+	private static final int CHUNK_TERMINATOR = 0xFFFFFFFF;
+
+	/** A run of sectors of a partition and where its (compressed) data is stored in the image */
+	private record Chunk(int type, long sector, long sectorCount, long offset, long length) {}
+
+	/** The name and the (decoded) data of a blkx table in the property list */
+	private record BlkxTable(String name, byte[] data) {}
+
+	private final FileChannel channel;
+	private final List<Partition> partitions = new ArrayList<>();
+
+	private UdifImage(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long size = channel.size();
+		if (size < TRAILER_SIZE) {
+			throw new IOException("Not a UDIF disk image");
+		}
+		ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+		if (trailer.getInt(0) != TRAILER_MAGIC) {
+			throw new IOException("Not a UDIF disk image");
+		}
+		long dataForkOffset = trailer.getLong(24);
+		long plistOffset = trailer.getLong(216);
+		long plistLength = trailer.getLong(224);
+		if (plistLength <= 0 || plistLength > MAX_PLIST_SIZE || plistOffset < 0 || plistOffset + plistLength > size) {
+			throw new IOException("UDIF disk image has no partition table");
+		}
+		ByteBuffer plist = read(plistOffset, (int) plistLength);
+		for (BlkxTable blkx : readBlkxTables(parse(plist))) {
+			partitions.add(new Partition(blkx.name(), readChunks(blkx.data(), dataForkOffset)));
+		}
+	}
+
+	/**
+	 * Open a UDIF disk image and read its partition table.
+	 *
+	 * @param dmgFile The disk image
+	 * @return The image, which must be closed after use
+	 */
+	static UdifImage open(Path dmgFile) throws IOException {
+		FileChannel channel = FileChannel.open(dmgFile, StandardOpenOption.READ);
+		try {
+			return new UdifImage(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Get the partitions of the image, in the order of the partition table */
+	List<Partition> partitions() {
+		return partitions;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/** A partition of the image, which gets decompressed on demand */
+	class Partition {
+		private final String name;
+		private final List<Chunk> chunks;
+		private final Map<Chunk, byte[]> cache = new LinkedHashMap<>(CACHED_CHUNKS, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Chunk, byte[]> eldest) {
+				return size() > CACHED_CHUNKS;
+			}
+		};
+
+		private Partition(String name, List<Chunk> chunks) {
+			this.name = name;
+			this.chunks = chunks;
+		}
+
+		/** Get the name of the partition, which includes its type, like "Apple_HFS" */
+		String name() {
+			return name;
+		}
+
+		/** Get the size of the partition in bytes */
+		long size() {
+			Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+			return last != null ? (last.sector() + last.sectorCount()) * SECTOR_SIZE : 0;
+		}
+
+		/**
+		 * Read bytes from the partition.
+		 *
+		 * @param position The offset in the partition
+		 * @param length The number of bytes to read
+		 * @return The bytes
+		 */
+		byte[] read(long position, int length) throws IOException {
+			if (position < 0 || length < 0 || position + length > size()) {
+				throw new EOFException("Read beyond the end of the partition");
+			}
+			byte[] result = new byte[length];
+			int done = 0;
+			while (done < length) {
+				long offset = position + done;
+				Chunk chunk = find(offset / SECTOR_SIZE);
+				long chunkStart = chunk.sector() * SECTOR_SIZE;
+				int from = (int) (offset - chunkStart);
+				int n = (int) Math.min(length - done, chunk.sectorCount() * SECTOR_SIZE - from);
+				byte[] data = cache.get(chunk);
+				if (data == null) {
+					data = decompress(chunk);
+					cache.put(chunk, data);
+				}
+				System.arraycopy(data, from, result, done, n);
+				done += n;
+			}
+			return result;
+		}
+
+		private Chunk find(long sector) throws IOException {
+			int low = 0;
+			int high = chunks.size() - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				Chunk chunk = chunks.get(mid);
+				if (sector < chunk.sector()) {
+					high = mid - 1;
+				} else if (sector >= chunk.sector() + chunk.sectorCount()) {
+					low = mid + 1;
+				} else {
+					return chunk;
+				}
+			}
+			throw new IOException("No UDIF chunk for sector " + sector);
+		}
+	}
+
+	private byte[] decompress(Chunk chunk) throws IOException {
+		int size = (int) (chunk.sectorCount() * SECTOR_SIZE);
+		return switch (chunk.type()) {
+			case CHUNK_ZERO, CHUNK_IGNORE -> new byte[size];
+			case CHUNK_RAW -> {
+				byte[] data = compressed(chunk);
+				yield data.length == size ? data : Arrays.copyOf(data, size);
+			}
+			case CHUNK_ZLIB -> inflate(compressed(chunk), size);
+			case CHUNK_BZIP2 -> readFully(
+					new BZip2CompressorInputStream(new ByteArrayInputStream(compressed(chunk))), size);
+			case CHUNK_ADC -> adc(compressed(chunk), size);
+			// Despite its name this is an xz stream, like Apple's COMPRESSION_LZMA
+			case CHUNK_LZMA -> readFully(
+					new XZCompressorInputStream(new ByteArrayInputStream(compressed(chunk))), size);
+			case CHUNK_LZFSE ->
+				throw new UnsupportedFormatException(
+						String.format("Unsupported UDIF chunk compression: 0x%08X", chunk.type()));
+			default -> throw new IOException(String.format("Unknown UDIF chunk type: 0x%08X", chunk.type()));
+		};
+	}
+
+	/** Read the stored data of a chunk */
+	private byte[] compressed(Chunk chunk) throws IOException {
+		if (chunk.length() > MAX_CHUNK_SECTORS * SECTOR_SIZE) {
+			throw new IOException("Invalid UDIF chunk length: " + chunk.length());
+		}
+		ByteBuffer buffer = read(chunk.offset(), (int) chunk.length());
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		return data;
+	}
+
+	private static byte[] inflate(byte[] data, int size) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			byte[] result = new byte[size];
+			int n = 0;
+			while (n < size && !inflater.finished()) {
+				int inflated = inflater.inflate(result, n, size - n);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += inflated;
+			}
+			if (n != size) {
+				throw new IOException("UDIF chunk decompressed to " + n + " bytes instead of " + size);
+			}
+			return result;
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid zlib data in UDIF chunk", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Decompress Apple Data Compression, an LZ77 variant from the classic Mac OS. Every run starts
+	 * with a byte that says whether it holds literal bytes or a copy of earlier output, with the
+	 * length and the distance of the copy in the byte itself and in one or two bytes after it.
+	 */
+	static byte[] adc(byte[] data, int size) throws IOException {
+		byte[] result = new byte[size];
+		int in = 0;
+		int out = 0;
+		try {
+			while (in < data.length && out < size) {
+				int b = data[in++] & 0xFF;
+				if ((b & 0x80) != 0) {
+					int length = (b & 0x7F) + 1;
+					System.arraycopy(data, in, result, out, length);
+					in += length;
+					out += length;
+					continue;
+				}
+				int length;
+				int distance;
+				if ((b & 0x40) != 0) {
+					length = (b & 0x3F) + 4;
+					distance = ((data[in] & 0xFF) << 8 | (data[in + 1] & 0xFF)) + 1;
+					in += 2;
+				} else {
+					length = ((b >> 2) & 0x0F) + 3;
+					distance = ((b & 0x03) << 8 | (data[in] & 0xFF)) + 1;
+					in += 1;
+				}
+				if (distance > out || out + length > size) {
+					throw new IOException("Invalid ADC data in UDIF chunk");
+				}
+				// Byte by byte, the copy can overlap the bytes it produces
+				for (int i = 0; i < length; i++, out++) {
+					result[out] = result[out - distance];
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Invalid ADC data in UDIF chunk", e);
+		}
+		if (out != size) {
+			throw new EOFException("UDIF chunk decompressed to " + out + " bytes instead of " + size);
+		}
+		return result;
+	}
+
+	private static byte[] readFully(InputStream in, int size) throws IOException {
+		try (in) {
+			byte[] result = in.readNBytes(size);
+			if (result.length != size) {
+				throw new EOFException("UDIF chunk decompressed to " + result.length + " bytes instead of " + size);
+			}
+			return result;
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of UDIF disk image");
+			}
+		}
+		return buffer.flip();
+	}
+
+	/** Parse a blkx table, which has a header followed by the chunks of the partition */
+	private static List<Chunk> readChunks(byte[] blkx, long dataForkOffset) throws IOException {
+		ByteBuffer table = ByteBuffer.wrap(blkx);
+		if (blkx.length < BLKX_HEADER_SIZE || table.getInt(0) != BLKX_MAGIC) {
+			throw new IOException("Invalid UDIF blkx table");
+		}
+		long dataOffset = table.getLong(24);
+		int count = table.getInt(200);
+		if (count < 0 || BLKX_HEADER_SIZE + (long) count * CHUNK_SIZE > blkx.length) {
+			throw new IOException("Invalid UDIF blkx table");
+		}
+		List<Chunk> chunks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			int pos = BLKX_HEADER_SIZE + i * CHUNK_SIZE;
+			int type = table.getInt(pos);
+			if (type == CHUNK_COMMENT || type == CHUNK_TERMINATOR) {
+				continue;
+			}
+			Chunk chunk = new Chunk(
+					type,
+					table.getLong(pos + 8),
+					table.getLong(pos + 16),
+					dataForkOffset + dataOffset + table.getLong(pos + 24),
+					table.getLong(pos + 32));
+			if (chunk.sector() < 0
+					|| chunk.sectorCount() <= 0
+					|| chunk.sectorCount() > MAX_CHUNK_SECTORS
+					|| chunk.offset() < 0
+					|| chunk.length() < 0) {
+				throw new IOException("Invalid UDIF chunk");
+			}
+			if (!chunks.isEmpty()) {
+				Chunk previous = chunks.get(chunks.size() - 1);
+				if (chunk.sector() < previous.sector() + previous.sectorCount()) {
+					throw new IOException("Overlapping UDIF chunks");
+				}
+			}
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	private static Document parse(ByteBuffer plist) throws IOException {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			// Property lists have a DOCTYPE, but it must not be loaded
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+			factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+			factory.setExpandEntityReferences(false);
+			return factory.newDocumentBuilder()
+					.parse(new ByteArrayInputStream(plist.array(), plist.position(), plist.remaining()));
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Invalid UDIF property list", e);
+		}
+	}
+
+	/**
+	 * Get the blkx tables from the property list, which has a resource-fork dictionary with a blkx
+	 * array. Every entry of that array is a dictionary with the name and the (base64) data.
+	 */
+	private static List<BlkxTable> readBlkxTables(Document plist) throws IOException {
+		Element root = child(plist.getDocumentElement(), "dict");
+		Element resourceFork = root != null ? value(root, "resource-fork") : null;
+		Element blkx = resourceFork != null ? value(resourceFork, "blkx") : null;
+		if (blkx == null || !blkx.getTagName().equals("array")) {
+			throw new IOException("UDIF property list has no blkx table");
+		}
+		List<BlkxTable> tables = new ArrayList<>();
+		for (Node node = blkx.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (!(node instanceof Element entry) || !entry.getTagName().equals("dict")) {
+				continue;
+			}
+			Element name = value(entry, "Name");
+			Element data = value(entry, "Data");
+			if (data == null) {
+				continue;
+			}
+			try {
+				tables.add(new BlkxTable(
+						name != null ? name.getTextContent().trim() : "",
+						Base64.getMimeDecoder().decode(data.getTextContent().getBytes(StandardCharsets.US_ASCII))));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Invalid UDIF blkx data", e);
+			}
+		}
+		return tables;
+	}
+
+	/** Get the value for a key of a property list dictionary, which is the element after the key */
+	private static Element value(Element dict, String key) {
+		for (Node node = dict.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node instanceof Element element
+					&& element.getTagName().equals("key")
+					&& element.getTextContent().trim().equals(key)) {
+				for (Node next = node.getNextSibling(); next != null; next = next.getNextSibling()) {
+					if (next instanceof Element value) {
+						return value;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Element child(Element parent, String name) {
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node instanceof Element element && element.getTagName().equals(name)) {
+				return element;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,14 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a file is valid but uses a feature of its format that can't be read, so trying
+ * again won't help. This is different from a damaged file, which might be fine when downloaded
+ * again.
+ */
+class UnsupportedFormatException extends IOException {
+	public UnsupportedFormatException(String message) {
+		super(message);
+	}
+}
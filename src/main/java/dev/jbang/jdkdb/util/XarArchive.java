@@ -0,0 +1,231 @@
+package dev.jbang.jdkdb.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Reader for xar archives, the container format of macOS installer packages. A xar archive starts
+ * with a small binary header followed by a zlib compressed XML table of contents that describes
+ * every file and where its data is located in the heap that makes up the rest of the archive.
+ */
+class XarArchive implements Closeable {
+	private static final int MAGIC = 0x78617221; // "xar!"
+	private static final int MIN_HEADER_SIZE = 28;
+	private static final int MAX_TOC_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * A file in the archive.
+	 *
+	 * @param path The path of the file, with '/' as separator
+	 * @param offset The offset of the file data in the heap
+	 * @param length The length of the (encoded) file data
+	 * @param encoding The mime type of the encoding of the file data
+	 */
+	record Entry(String path, long offset, long length, String encoding) {}
+
+	private final SeekableByteChannel channel;
+	private final long heapStart;
+	private final List<Entry> entries = new ArrayList<>();
+
+	private XarArchive(SeekableByteChannel channel) throws IOException {
+		this.channel = channel;
+		DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a xar archive");
+		}
+		int headerSize = in.readUnsignedShort();
+		in.readUnsignedShort(); // version
+		long tocCompressedSize = in.readLong();
+		long tocSize = in.readLong();
+		if (headerSize < MIN_HEADER_SIZE
+				|| tocCompressedSize < 0
+				|| tocCompressedSize > MAX_TOC_SIZE
+				|| tocSize < 0
+				|| tocSize > MAX_TOC_SIZE) {
+			throw new IOException("Invalid xar header");
+		}
+		channel.position(headerSize);
+		byte[] toc = new byte[(int) tocCompressedSize];
+		in.readFully(toc);
+		heapStart = headerSize + tocCompressedSize;
+		try (InputStream tocStream = new InflaterInputStream(new ByteArrayInputStream(toc))) {
+			readEntries(parse(tocStream));
+		}
+	}
+
+	/**
+	 * Open a xar archive and read its table of contents.
+	 *
+	 * @param xarFile The archive
+	 * @return The archive, which must be closed after use
+	 */
+	static XarArchive open(Path xarFile) throws IOException {
+		return open(FileChannel.open(xarFile, StandardOpenOption.READ));
+	}
+
+	/**
+	 * Open a xar archive and read its table of contents.
+	 *
+	 * @param channel The channel to read the archive from, which gets closed with the archive
+	 * @return The archive, which must be closed after use
+	 */
+	static XarArchive open(SeekableByteChannel channel) throws IOException {
+		try {
+			return new XarArchive(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Get the regular files in the archive, in the order of the table of contents */
+	List<Entry> entries() {
+		return entries;
+	}
+
+	/**
+	 * Open the data of a file. Only one file can be read at a time.
+	 *
+	 * @param entry The file
+	 * @return The decoded data of the file
+	 */
+	InputStream open(Entry entry) throws IOException {
+		channel.position(heapStart + entry.offset());
+		InputStream data = new BoundedInputStream(Channels.newInputStream(channel), entry.length());
+		return switch (entry.encoding()) {
+			case "application/octet-stream" -> data;
+			// Despite its name this is zlib, not gzip
+			case "application/x-gzip" -> new InflaterInputStream(data);
+			case "application/x-bzip2" -> new BZip2CompressorInputStream(data);
+			default -> throw new UnsupportedFormatException("Unsupported xar encoding: " + entry.encoding());
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static Document parse(InputStream toc) throws IOException {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			return factory.newDocumentBuilder().parse(toc);
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Invalid xar table of contents", e);
+		}
+	}
+
+	private void readEntries(Document toc) throws IOException {
+		Element root = child(toc.getDocumentElement(), "toc");
+		if (root == null) {
+			throw new IOException("Invalid xar table of contents");
+		}
+		readEntries(root, "");
+	}
+
+	/** Collect the files below an element of the table of contents, which nests like the paths */
+	private void readEntries(Element parent, String prefix) throws IOException {
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (!(node instanceof Element file) || !file.getTagName().equals("file")) {
+				continue;
+			}
+			String path = prefix + text(child(file, "name"));
+			String type = text(child(file, "type"));
+			Element data = child(file, "data");
+			if (type.equals("directory")) {
+				readEntries(file, path + "/");
+			} else if (type.equals("file") && data != null) {
+				Element encoding = child(data, "encoding");
+				entries.add(new Entry(
+						path,
+						number(child(data, "offset")),
+						number(child(data, "length")),
+						encoding != null ? encoding.getAttribute("style") : "application/octet-stream"));
+			}
+		}
+	}
+
+	private static Element child(Element parent, String name) {
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node instanceof Element element && element.getTagName().equals(name)) {
+				return element;
+			}
+		}
+		return null;
+	}
+
+	private static String text(Element element) {
+		return element != null ? element.getTextContent().trim() : "";
+	}
+
+	private static long number(Element element) throws IOException {
+		try {
+			long value = Long.parseLong(text(element));
+			if (value < 0) {
+				throw new NumberFormatException();
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid xar table of contents", e);
+		}
+	}
+
+	/** Stream that ends after a fixed number of bytes, without closing the underlying stream */
+	private static class BoundedInputStream extends InputStream {
+		private final InputStream in;
+		private long remaining;
+
+		BoundedInputStream(InputStream in, long length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = in.read(b, off, (int) Math.min(len, remaining));
+			if (n > 0) {
+				remaining -= n;
+			}
+			return n;
+		}
+	}
+}
@@ -3,49 +3,99 @@ package dev.jbang.jdkdb;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import dev.jbang.jdkdb.model.JdkMetadata;
+import dev.jbang.jdkdb.model.MetadataRef;
+import dev.jbang.jdkdb.scraper.DefaultDownloadScorer;
 import dev.jbang.jdkdb.scraper.DownloadResult;
-import dev.jbang.jdkdb.util.MetadataUtils;
 import java.util.Collections;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 
 class DownloadCommandTest {
+	private final DefaultDownloadScorer scorer = new DefaultDownloadScorer();
 
 	@Test
-	void prioritizeMetadataKeepsMissingChecksumsFirstWithoutRandomization() {
-		JdkMetadata missingReleaseInfo1 = metadataMissingReleaseInfo("release-info-only-1.tar.gz");
-		JdkMetadata missingChecksum1 = metadataMissingChecksums("missing-checksum-1.tar.gz");
-		JdkMetadata missingReleaseInfo2 = metadataMissingReleaseInfo("release-info-only-2.tar.gz");
-		JdkMetadata missingChecksum2 = metadataMissingChecksums("missing-checksum-2.tar.gz");
+	void prioritizeRefsKeepsMissingChecksumsFirstWithoutRandomization() {
+		MetadataRef missingReleaseInfo1 = ref(metadataMissingReleaseInfo("release-info-only-1.tar.gz"));
+		MetadataRef missingChecksum1 = ref(metadataMissingChecksums("missing-checksum-1.tar.gz"));
+		MetadataRef missingReleaseInfo2 = ref(metadataMissingReleaseInfo("release-info-only-2.tar.gz"));
+		MetadataRef missingChecksum2 = ref(metadataMissingChecksums("missing-checksum-2.tar.gz"));
 
-		List<JdkMetadata> ordered = DownloadCommand.prioritizeMetadata(
-				List.of(missingReleaseInfo1, missingChecksum1, missingReleaseInfo2, missingChecksum2), false);
+		List<MetadataRef> ordered = DownloadCommand.prioritizeRefs(
+				List.of(missingReleaseInfo1, missingChecksum1, missingReleaseInfo2, missingChecksum2),
+				false,
+				DownloadCommand.DownloadOrder.listed);
 
 		assertThat(ordered).hasSize(4);
-		assertThat(ordered.subList(0, 2)).allMatch(MetadataUtils::hasMissingChecksums);
-		assertThat(ordered.subList(2, 4)).noneMatch(MetadataUtils::hasMissingChecksums);
+		assertThat(ordered.subList(0, 2)).allMatch(MetadataRef::missingChecksums);
+		assertThat(ordered.subList(2, 4)).noneMatch(MetadataRef::missingChecksums);
 	}
 
 	@Test
-	void prioritizeMetadataRandomizesWithinBucketsButKeepsChecksumPriority() {
-		List<JdkMetadata> input = List.of(
-				metadataMissingReleaseInfo("release-info-only-1.tar.gz"),
-				metadataMissingChecksums("missing-checksum-1.tar.gz"),
-				metadataMissingReleaseInfo("release-info-only-2.tar.gz"),
-				metadataMissingChecksums("missing-checksum-2.tar.gz"),
-				metadataMissingChecksums("missing-checksum-3.tar.gz"));
+	void prioritizeRefsRandomizesWithinBucketsButKeepsChecksumPriority() {
+		List<MetadataRef> input = List.of(
+				ref(metadataMissingReleaseInfo("release-info-only-1.tar.gz")),
+				ref(metadataMissingChecksums("missing-checksum-1.tar.gz")),
+				ref(metadataMissingReleaseInfo("release-info-only-2.tar.gz")),
+				ref(metadataMissingChecksums("missing-checksum-2.tar.gz")),
+				ref(metadataMissingChecksums("missing-checksum-3.tar.gz")));
 
 		for (int i = 0; i < 25; i++) {
-			List<JdkMetadata> ordered = DownloadCommand.prioritizeMetadata(input, true);
-			int missingChecksumCount = (int)
-					ordered.stream().filter(MetadataUtils::hasMissingChecksums).count();
+			List<MetadataRef> ordered =
+					DownloadCommand.prioritizeRefs(input, true, DownloadCommand.DownloadOrder.listed);
+			int missingChecksumCount =
+					(int) ordered.stream().filter(MetadataRef::missingChecksums).count();
 
-			assertThat(ordered.subList(0, missingChecksumCount)).allMatch(MetadataUtils::hasMissingChecksums);
+			assertThat(ordered.subList(0, missingChecksumCount)).allMatch(MetadataRef::missingChecksums);
 			assertThat(ordered.subList(missingChecksumCount, ordered.size()))
-					.noneMatch(MetadataUtils::hasMissingChecksums);
+					.noneMatch(MetadataRef::missingChecksums);
 		}
 	}
 
+	@Test
+	void prioritizeRefsOrdersBySizeWithinBuckets() {
+		MetadataRef large = ref(metadataMissingChecksums("large.tar.gz").setSize(300_000_000L));
+		MetadataRef unknown = ref(metadataMissingChecksums("unknown.tar.gz"));
+		MetadataRef small = ref(metadataMissingChecksums("small.tar.gz").setSize(40_000_000L));
+		MetadataRef releaseInfoOnly = ref(metadataMissingReleaseInfo("release-info-only.tar.gz"));
+		List<MetadataRef> input = List.of(releaseInfoOnly, large, unknown, small);
+
+		List<MetadataRef> smallestFirst =
+				DownloadCommand.prioritizeRefs(input, false, DownloadCommand.DownloadOrder.smallest_first);
+		List<MetadataRef> largestFirst =
+				DownloadCommand.prioritizeRefs(input, true, DownloadCommand.DownloadOrder.largest_first);
+
+		assertThat(smallestFirst).containsExactly(small, large, unknown, releaseInfoOnly);
+		assertThat(largestFirst).containsExactly(large, small, unknown, releaseInfoOnly);
+	}
+
+	@Test
+	void prioritizeRefsKeepsListedOrderInListedMode() {
+		MetadataRef large = ref(metadataMissingChecksums("large.tar.gz").setSize(300_000_000L));
+		MetadataRef small = ref(metadataMissingChecksums("small.tar.gz").setSize(40_000_000L));
+
+		List<MetadataRef> ordered =
+				DownloadCommand.prioritizeRefs(List.of(large, small), false, DownloadCommand.DownloadOrder.listed);
+
+		assertThat(ordered).containsExactly(large, small);
+	}
+
+	@Test
+	void prioritizeRefsOrdersByValueWithinBuckets() {
+		MetadataRef ea = ref(metadataMissingChecksums("ea.tar.gz").setReleaseType("ea"));
+		MetadataRef aix = ref(metadataMissingChecksums("aix.tar.gz").setOs("aix"));
+		MetadataRef popular = ref(metadataMissingChecksums("popular.tar.gz"));
+		MetadataRef releaseInfoOnly = ref(metadataMissingReleaseInfo("release-info-only.tar.gz"));
+
+		List<MetadataRef> ordered = DownloadCommand.prioritizeRefs(
+				List.of(releaseInfoOnly, ea, aix, popular), false, DownloadCommand.DownloadOrder.value);
+
+		assertThat(ordered).containsExactly(popular, aix, ea, releaseInfoOnly);
+	}
+
+	private MetadataRef ref(JdkMetadata metadata) {
+		return MetadataRef.of(metadata, scorer.score(metadata));
+	}
+
 	private JdkMetadata metadataMissingChecksums(String filename) {
 		return JdkMetadata.create()
 				.setDistro("test-distro")
@@ -0,0 +1,99 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveHostLimitsTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(50);
+
+	@Test
+	void testLimitGrowsWhileThroughputImproves() {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(2);
+		AdaptiveHostLimits limits = new AdaptiveHostLimits(scheduler, 2, 4);
+
+		// When - every connection gets the same speed, so more connections means more throughput
+		long now = 0;
+		for (int i = 0; i < 10; i++) {
+			now += SECOND;
+			for (int j = limits.getLimit("cdn.example.com"); j > 0; j--) {
+				limits.onTransfer("cdn.example.com", 10_000_000, SECOND, now);
+			}
+		}
+
+		// Then
+		assertThat(limits.getLimit("cdn.example.com")).isEqualTo(4);
+		assertThat(scheduler.getLimit("cdn.example.com")).isEqualTo(4);
+		assertThat(scheduler.getLimit("other.example.com")).isEqualTo(2);
+	}
+
+	@Test
+	void testLimitStopsGrowingWhenThroughputIsShared() {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(2);
+		AdaptiveHostLimits limits = new AdaptiveHostLimits(scheduler, 2, 8);
+
+		// When - the host has a fixed bandwidth that is split between all connections
+		long now = 0;
+		for (int i = 0; i < 20; i++) {
+			int limit = limits.getLimit("origin.example.com");
+			long duration = limit * SECOND / 3;
+			now += duration;
+			for (int j = 0; j < limit; j++) {
+				limits.onTransfer("origin.example.com", 10_000_000, duration, now);
+			}
+		}
+
+		// Then
+		assertThat(limits.getLimit("origin.example.com")).isLessThanOrEqualTo(3);
+	}
+
+	@Test
+	void testLimitStopsGrowingForTransfersOneAfterAnother() {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(2);
+		AdaptiveHostLimits limits = new AdaptiveHostLimits(scheduler, 2, 8);
+
+		// When - there is only ever one download for the host at a time
+		for (int i = 1; i <= 40; i++) {
+			limits.onTransfer("mirror.example.com", 30_000_000, SECOND, i * SECOND);
+		}
+
+		// Then - only the first window, which has nothing to compare with, tries one more
+		assertThat(limits.getLimit("mirror.example.com")).isEqualTo(3);
+	}
+
+	@Test
+	void testLimitIsHalvedOnOverload() {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(4);
+		AdaptiveHostLimits limits = new AdaptiveHostLimits(scheduler, 4, 8);
+
+		// When
+		limits.onResponse("api.example.com", 429, LATENCY);
+		limits.onResponse("api.example.com", 503, LATENCY);
+
+		// Then - a burst of errors only counts once
+		assertThat(limits.getLimit("api.example.com")).isEqualTo(2);
+		assertThat(scheduler.getLimit("api.example.com")).isEqualTo(2);
+	}
+
+	@Test
+	void testLimitIsHalvedWhenLatencyRises() {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(4);
+		AdaptiveHostLimits limits = new AdaptiveHostLimits(scheduler, 4, 8);
+		limits.onResponse("slow.example.com", 200, LATENCY);
+		limits.onResponse("slow.example.com", 200, 2 * LATENCY);
+
+		// When
+		limits.onResponse("slow.example.com", 200, 20 * LATENCY);
+
+		// Then
+		assertThat(limits.getLimit("slow.example.com")).isEqualTo(2);
+	}
+}
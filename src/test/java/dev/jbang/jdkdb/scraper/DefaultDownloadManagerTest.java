@@ -0,0 +1,259 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.jbang.jdkdb.model.JdkMetadata;
+import dev.jbang.jdkdb.model.MetadataRef;
+import dev.jbang.jdkdb.util.MetadataUtils;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class DefaultDownloadManagerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final byte[] content = "not really a JDK".getBytes(StandardCharsets.UTF_8);
+	private final Logger downloadLogger = LoggerFactory.getLogger("test");
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+				return;
+			}
+			requests.incrementAndGet();
+			exchange.sendResponseHeaders(200, content.length);
+			exchange.getResponseBody().write(content);
+			exchange.close();
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	void testDownloadsOfSameUrlAreMerged() throws Exception {
+		// Given
+		Path metadataDir = tempDir.resolve("metadata");
+		Path checksumDir = tempDir.resolve("checksums");
+		DefaultDownloadManager manager = new DefaultDownloadManager(2, metadataDir, checksumDir, 3, -1, null);
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/jdk-21.0.1.zip";
+
+		// When
+		manager.submit(createMetadata("oracle", url), "oracle", downloadLogger);
+		manager.submit(createMetadata("oracle-archive", url), "oracle-archive", downloadLogger);
+		manager.start();
+		manager.shutdown();
+		manager.awaitCompletion();
+
+		// Then
+		assertThat(requests.get()).isEqualTo(1);
+		assertThat(manager.getCompletedCount()).isEqualTo(2);
+		assertThat(manager.getFailedCount()).isEqualTo(0);
+		for (String distro : new String[] {"oracle", "oracle-archive"}) {
+			JdkMetadata saved = MetadataUtils.readMetadataFile(metadataDir.resolve(distro + "/jdk-21.0.1.zip.json"));
+			assertThat(saved.getSize()).isEqualTo(content.length);
+			assertThat(saved.getSha256()).isNotNull();
+			assertThat(checksumDir.resolve(distro + "/jdk-21.0.1.zip.sha256")).exists();
+			assertThat(manager.getDistroStats().get(distro).completed()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void testFollowersAreQueuedAgainWhenNothingWasDownloadedForTheirLeader() throws Exception {
+		// Given
+		DefaultDownloadManager manager =
+				new DefaultDownloadManager(2, tempDir.resolve("metadata"), tempDir.resolve("checksums"), 3, -1, null);
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/jdk-21.0.1.zip";
+
+		// When
+		CompletableFuture<DownloadResult> leader =
+				manager.submit(createMetadata("oracle", url).setVersion("latest"), "oracle", downloadLogger);
+		CompletableFuture<DownloadResult> first =
+				manager.submit(createMetadata("temurin", url), "temurin", downloadLogger);
+		CompletableFuture<DownloadResult> second = manager.submit(createMetadata("zulu", url), "zulu", downloadLogger);
+		manager.start();
+		manager.shutdown();
+		manager.awaitCompletion();
+
+		// Then
+		assertThat(leader.get()).isNull();
+		assertThat(first.get().size()).isEqualTo(content.length);
+		assertThat(second.get().size()).isEqualTo(content.length);
+		// The followers are merged again, into the first of them
+		assertThat(requests.get()).isEqualTo(1);
+		assertThat(manager.getCompletedCount()).isEqualTo(3);
+	}
+
+	@Test
+	void testDownloadsOfDifferentUrlsAreNotMerged() throws Exception {
+		// Given
+		Path metadataDir = tempDir.resolve("metadata");
+		DefaultDownloadManager manager =
+				new DefaultDownloadManager(2, metadataDir, tempDir.resolve("checksums"), 3, -1, null);
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+		// When
+		manager.submit(createMetadata("oracle", baseUrl + "/a/jdk-21.0.1.zip"), "oracle", downloadLogger);
+		manager.submit(createMetadata("oracle", baseUrl + "/b/jdk-21.0.1.zip"), "oracle", downloadLogger);
+		manager.start();
+		manager.shutdown();
+		manager.awaitCompletion();
+
+		// Then
+		assertThat(requests.get()).isEqualTo(2);
+		assertThat(manager.getCompletedCount()).isEqualTo(2);
+	}
+
+	@Test
+	void testSubmitReturnsFutureAndNotifiesDistroListeners() throws Exception {
+		// Given
+		DefaultDownloadManager manager =
+				new DefaultDownloadManager(2, tempDir.resolve("metadata"), tempDir.resolve("checksums"), 3, -1, null);
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		List<DownloadManager.DistroStats> finished = new CopyOnWriteArrayList<>();
+		manager.addDistroListener(finished::add);
+
+		// When
+		CompletableFuture<DownloadResult> ok =
+				manager.submit(createMetadata("oracle", baseUrl + "/jdk-21.0.1.zip"), "oracle", downloadLogger);
+		CompletableFuture<DownloadResult> invalid =
+				manager.submit(createMetadata("oracle", "not a url"), "oracle", downloadLogger);
+		manager.start();
+		DownloadResult result = ok.get(10, TimeUnit.SECONDS);
+		assertThat(finished).isEmpty();
+		manager.finishDistro("oracle");
+		manager.shutdown();
+		manager.awaitCompletion();
+
+		// Then
+		assertThat(result.size()).isEqualTo(content.length);
+		assertThat(result.sha256()).isNotNull();
+		assertThat(invalid.isCompletedExceptionally()).isTrue();
+		assertThat(finished).hasSize(1);
+		assertThat(finished.get(0).distro()).isEqualTo("oracle");
+		assertThat(finished.get(0).completed()).isEqualTo(1);
+		assertThat(finished.get(0).failed()).isEqualTo(1);
+	}
+
+	@Test
+	void testSegmentedDownloadIntoWorkDir() throws Exception {
+		// Given
+		Path metadataDir = tempDir.resolve("metadata");
+		Path workDir = Files.createDirectories(tempDir.resolve("work"));
+		DefaultDownloadManager manager = new DefaultDownloadManager(
+						4, metadataDir, tempDir.resolve("checksums"), 3, -1, null)
+				.setWorkDir(workDir)
+				.setMaxSegments(4);
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/jdk-21.0.1.zip";
+
+		// When
+		CompletableFuture<DownloadResult> future =
+				manager.submit(createMetadata("oracle", url), "oracle", downloadLogger);
+		manager.start();
+		manager.shutdown();
+		manager.awaitCompletion();
+
+		// Then
+		assertThat(future.get().size()).isEqualTo(content.length);
+		assertThat(manager.getCompletedCount()).isEqualTo(1);
+		assertThat(manager.getFailedCount()).isEqualTo(0);
+		try (var files = Files.list(workDir)) {
+			assertThat(files.count()).isEqualTo(0L);
+		}
+	}
+
+	@Test
+	void testDownloadsAreJournaled() throws Exception {
+		// Given
+		Path journalFile = tempDir.resolve("download-journal.log");
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		try (DownloadJournal journal = new DownloadJournal(journalFile, false)) {
+			DefaultDownloadManager manager = new DefaultDownloadManager(
+							2, tempDir.resolve("metadata"), tempDir.resolve("checksums"), 3, -1, null)
+					.setJournal(journal);
+
+			// When
+			manager.submit(createMetadata("oracle", baseUrl + "/jdk-21.0.1.zip"), "oracle", downloadLogger);
+			manager.submit(createMetadata("oracle-archive", "not a url"), "oracle-archive", downloadLogger);
+			manager.start();
+			manager.shutdown();
+			manager.awaitCompletion();
+		}
+
+		// Then
+		DownloadJournal.Replay replay = DownloadJournal.replay(journalFile);
+		assertThat(replay.canResume()).isTrue();
+		assertThat(replay.downloads().get("oracle/jdk-21.0.1.zip.json")).isEqualTo(DownloadJournal.Event.COMPLETED);
+		assertThat(replay.downloads().get("oracle-archive/jdk-21.0.1.zip.json"))
+				.isEqualTo(DownloadJournal.Event.FAILED_PERMANENTLY);
+		assertThat(replay.remaining()).isEmpty();
+	}
+
+	@Test
+	void testMetadataRefIsLoadedWhenDownloadStarts() throws Exception {
+		// Given
+		Path metadataDir = tempDir.resolve("metadata");
+		Path metadataFile = metadataDir.resolve("oracle/jdk-21.0.1.zip.json");
+		Files.createDirectories(metadataFile.getParent());
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/jdk-21.0.1.zip";
+		MetadataUtils.saveMetadataFile(metadataFile, createMetadata("oracle", url));
+		MetadataRef ref = MetadataRef.of(MetadataUtils.readMetadataFile(metadataFile), 0);
+		DefaultDownloadManager manager =
+				new DefaultDownloadManager(2, metadataDir, tempDir.resolve("checksums"), 3, -1, null);
+
+		// When
+		CompletableFuture<DownloadResult> future = manager.submit(ref, downloadLogger);
+		// Changed after submitting, the download must use what's on disk when it starts
+		MetadataUtils.saveMetadataFile(metadataFile, createMetadata("oracle", url).setVersion("21.0.1+12"));
+		manager.start();
+		manager.shutdown();
+		manager.awaitCompletion();
+
+		// Then
+		assertThat(future.get().size()).isEqualTo(content.length);
+		JdkMetadata saved = MetadataUtils.readMetadataFile(metadataFile);
+		assertThat(saved.getVersion()).isEqualTo("21.0.1+12");
+		assertThat(saved.getSha256()).isEqualTo(future.get().sha256());
+		assertThat(manager.getDistroStats().get("oracle").completed()).isEqualTo(1);
+	}
+
+	private JdkMetadata createMetadata(String distro, String url) {
+		return JdkMetadata.create()
+				.setDistro(distro)
+				.setVendor("oracle")
+				.setReleaseType("ga")
+				.setVersion("21.0.1")
+				.setJavaVersion("21.0.1")
+				.setOs("linux")
+				.setArchitecture("x86_64")
+				.setFileType("zip")
+				.setImageType("jdk")
+				.setUrl(url)
+				.setFilename("jdk-21.0.1.zip");
+	}
+}
@@ -0,0 +1,87 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import dev.jbang.jdkdb.model.JdkMetadata;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class DefaultDownloadScorerTest {
+	private final DefaultDownloadScorer scorer = new DefaultDownloadScorer();
+
+	@Test
+	void testScoresGaLtsAndPopularPlatformsHigher() {
+		// Given
+		JdkMetadata lts = createMetadata("21.0.1", "ga", "linux", "x86_64");
+		JdkMetadata nonLts = createMetadata("22.0.1", "ga", "linux", "x86_64");
+		JdkMetadata ea = createMetadata("21.0.1", "ea", "linux", "x86_64");
+		JdkMetadata rarePlatform = createMetadata("21.0.1", "ga", "aix", "ppc64");
+		JdkMetadata old = createMetadata("1.8.0_392", "ga", "linux", "x86_64");
+
+		// Then
+		assertThat(scorer.score(lts)).isGreaterThan(scorer.score(nonLts));
+		assertThat(scorer.score(nonLts)).isGreaterThan(scorer.score(ea));
+		assertThat(scorer.score(lts)).isGreaterThan(scorer.score(rarePlatform));
+		assertThat(scorer.score(lts)).isGreaterThan(scorer.score(old));
+		assertThat(scorer.score(old)).isGreaterThan(scorer.score(nonLts));
+	}
+
+	@Test
+	void testGaScoresHigherThanEaWhateverElseDiffers() {
+		// Given
+		JdkMetadata ga = createMetadata("9.0.4", "ga", "solaris", "sparcv9");
+		JdkMetadata ea = createMetadata("25", "ea", "linux", "x86_64");
+
+		// Then
+		assertThat(scorer.score(ga)).isGreaterThan(scorer.score(ea));
+	}
+
+	@Test
+	void testLtsScoresHigherThanPopularPlatforms() {
+		// Given
+		JdkMetadata lts = createMetadata("11.0.21", "ga", "aix", "ppc64");
+		JdkMetadata nonLts = createMetadata("24", "ga", "linux", "x86_64");
+
+		// Then
+		assertThat(scorer.score(lts)).isGreaterThan(scorer.score(nonLts));
+	}
+
+	@Test
+	void testMissingChecksumsScoreHighest() {
+		// Given
+		JdkMetadata missingChecksums = createMetadata("9.0.4", "ea", "solaris", "sparcv9");
+		JdkMetadata releaseInfoOnly = createMetadata("21.0.1", "ga", "linux", "x86_64")
+				.setMd5("md5")
+				.setSha1("sha1")
+				.setSha256("sha256")
+				.setSha512("sha512");
+
+		// Then
+		assertThat(scorer.score(missingChecksums)).isGreaterThan(scorer.score(releaseInfoOnly));
+	}
+
+	@Test
+	void testLtsVersions() {
+		assertThat(DefaultDownloadScorer.isLts(8)).isTrue();
+		assertThat(DefaultDownloadScorer.isLts(11)).isTrue();
+		assertThat(DefaultDownloadScorer.isLts(17)).isTrue();
+		assertThat(DefaultDownloadScorer.isLts(25)).isTrue();
+		assertThat(DefaultDownloadScorer.isLts(22)).isFalse();
+		assertThat(DefaultDownloadScorer.isLts(9)).isFalse();
+	}
+
+	private JdkMetadata createMetadata(String javaVersion, String releaseType, String os, String arch) {
+		return JdkMetadata.create()
+				.setDistro("temurin")
+				.setReleaseType(releaseType)
+				.setVersion(javaVersion)
+				.setJavaVersion(javaVersion)
+				.setOs(os)
+				.setArchitecture(arch)
+				.setFileType("tar.gz")
+				.setImageType("jdk")
+				.setUrl("https://example.com/jdk-" + javaVersion + ".tar.gz")
+				.setFilename("jdk-" + javaVersion + ".tar.gz")
+				.setReleaseInfo(Collections.emptyMap());
+	}
+}
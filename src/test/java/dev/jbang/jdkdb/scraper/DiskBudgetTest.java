@@ -0,0 +1,53 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+class DiskBudgetTest {
+
+	@Test
+	void testReserveWaitsUntilSpaceIsReleased() throws Exception {
+		// Given
+		DiskBudget budget = new DiskBudget(1000);
+		DiskBudget.Reservation first = budget.reserve(600);
+
+		// When
+		CompletableFuture<DiskBudget.Reservation> second = CompletableFuture.supplyAsync(() -> {
+			try {
+				return budget.reserve(600);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		});
+
+		// Then
+		assertThat(budget.wouldWait(600)).isTrue();
+		assertThatThrownBy(() -> second.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+		// When
+		first.close();
+		first.close();
+
+		// Then
+		second.get(5, TimeUnit.SECONDS).close();
+		assertThat(budget.reservedBytes()).isEqualTo(0);
+	}
+
+	@Test
+	void testOversizedReservationIsGrantedWhenNothingElseIsReserved() throws Exception {
+		// Given
+		DiskBudget budget = new DiskBudget(1000);
+
+		// When
+		try (DiskBudget.Reservation reservation = budget.reserve(5000)) {
+			// Then
+			assertThat(budget.reservedBytes()).isEqualTo(5000);
+			assertThat(budget.wouldWait(1)).isTrue();
+		}
+		assertThat(budget.wouldWait(1)).isFalse();
+	}
+}
@@ -0,0 +1,75 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DownloadJournalTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testReplayOfInterruptedRun() throws Exception {
+		// Given
+		Path file = tempDir.resolve("download-journal.log");
+		try (DownloadJournal journal = new DownloadJournal(file, false)) {
+			for (String key : new String[] {"zulu/a.json", "zulu/b.json", "zulu/c.json", "zulu/d.json"}) {
+				journal.record(DownloadJournal.Event.PLANNED, key, null);
+			}
+			journal.record(DownloadJournal.Event.STARTED, "zulu/a.json", null);
+			journal.record(DownloadJournal.Event.COMPLETED, "zulu/a.json", null);
+			journal.record(DownloadJournal.Event.STARTED, "zulu/b.json", null);
+			journal.record(DownloadJournal.Event.FAILED_PERMANENTLY, "zulu/b.json", "HTTP status: 404");
+			journal.record(DownloadJournal.Event.STARTED, "zulu/c.json", null);
+			journal.record(DownloadJournal.Event.FAILED, "zulu/c.json", "Connection reset\nby peer");
+		}
+
+		// When
+		DownloadJournal.Replay replay = DownloadJournal.replay(file);
+
+		// Then
+		assertThat(replay.canResume()).isTrue();
+		assertThat(replay.remaining()).containsExactly("zulu/c.json", "zulu/d.json");
+	}
+
+	@Test
+	void testFinishedRunIsNotResumed() throws Exception {
+		// Given
+		Path file = tempDir.resolve("download-journal.log");
+		try (DownloadJournal journal = new DownloadJournal(file, false)) {
+			journal.record(DownloadJournal.Event.PLANNED, "zulu/a.json", null);
+			journal.finish();
+		}
+
+		// When
+		DownloadJournal.Replay replay = DownloadJournal.replay(file);
+
+		// Then
+		assertThat(replay.canResume()).isFalse();
+		assertThat(DownloadJournal.replay(tempDir.resolve("missing.log")).canResume())
+				.isFalse();
+	}
+
+	@Test
+	void testLineCutOffByKilledRunIsIgnored() throws Exception {
+		// Given
+		Path file = tempDir.resolve("download-journal.log");
+		Files.writeString(file, "PLANNED\tzulu/a.json\nPLANNED\tzulu/b.json\nCOMPLE", StandardCharsets.UTF_8);
+
+		// When
+		try (DownloadJournal journal = new DownloadJournal(file, true)) {
+			journal.record(DownloadJournal.Event.COMPLETED, "zulu/b.json", null);
+		}
+		Files.writeString(file, "STARTED\tzulu/a", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+		// Then
+		DownloadJournal.Replay replay = DownloadJournal.replay(file);
+		assertThat(replay.remaining()).containsExactly("zulu/a.json");
+	}
+}
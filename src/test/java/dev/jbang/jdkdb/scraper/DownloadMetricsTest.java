@@ -0,0 +1,81 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DownloadMetricsTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testRecordsPerHostAndPerDistro() {
+		// Given
+		DownloadMetrics metrics = new DownloadMetrics();
+
+		// When
+		metrics.recordTransfer("github.com", "temurin", 100_000_000L, TimeUnit.SECONDS.toNanos(10));
+		metrics.recordTransfer("github.com", "zulu", 50_000_000L, TimeUnit.SECONDS.toNanos(10));
+		metrics.recordTransfer("cdn.azul.com", "zulu", 1_000_000L, TimeUnit.SECONDS.toNanos(1));
+		metrics.recordRetry("cdn.azul.com", "zulu");
+		metrics.recordRetry("cdn.azul.com", null);
+		metrics.recordFailure("cdn.azul.com", "zulu");
+
+		// Then
+		assertThat(metrics.getTotal().getTransfers()).isEqualTo(3);
+		assertThat(metrics.getTotal().getBytes()).isEqualTo(151_000_000L);
+		assertThat(metrics.getHosts().get("github.com").getBytes()).isEqualTo(150_000_000L);
+		assertThat(metrics.getHosts().get("cdn.azul.com").getRetries()).isEqualTo(2);
+		assertThat(metrics.getHosts().get("cdn.azul.com").getFailures()).isEqualTo(1);
+		assertThat(metrics.getDistros().get("zulu").getTransfers()).isEqualTo(2);
+		assertThat(metrics.getDistros().get("zulu").getRetries()).isEqualTo(1);
+		assertThat(metrics.getDistros().get("unknown").getRetries()).isEqualTo(1);
+	}
+
+	@Test
+	void testThroughputPercentiles() {
+		// Given
+		DownloadMetrics metrics = new DownloadMetrics();
+		for (int i = 0; i < 90; i++) {
+			metrics.recordTransfer("a", "d", 1_000_000L, TimeUnit.SECONDS.toNanos(1));
+		}
+		for (int i = 0; i < 10; i++) {
+			metrics.recordTransfer("a", "d", 100_000_000L, TimeUnit.SECONDS.toNanos(1));
+		}
+
+		// When
+		long p50 = metrics.getTotal().throughputPercentile(50);
+		long p99 = metrics.getTotal().throughputPercentile(99);
+
+		// Then (buckets are half powers of two wide)
+		assertThat(p50).isBetween(700_000L, 1_500_000L);
+		assertThat(p99).isBetween(70_000_000L, 150_000_000L);
+		assertThat(new DownloadMetrics().getTotal().throughputPercentile(50)).isEqualTo(0);
+	}
+
+	@Test
+	void testWriteJson() throws Exception {
+		// Given
+		DownloadMetrics metrics = new DownloadMetrics();
+		metrics.recordTransfer("github.com", "temurin", 2_000_000L, TimeUnit.SECONDS.toNanos(2));
+		metrics.recordCacheHit("github.com", "temurin");
+		Path file = tempDir.resolve("stats/download-stats.json");
+
+		// When
+		metrics.writeJson(file);
+
+		// Then
+		JsonNode json = new ObjectMapper().readTree(file.toFile());
+		assertThat(json.path("total").path("transfers").asLong()).isEqualTo(1);
+		assertThat(json.path("hosts").path("github.com").path("bytes").asLong()).isEqualTo(2_000_000L);
+		assertThat(json.path("distros").path("temurin").path("cache_hits").asLong()).isEqualTo(1);
+		assertThat(json.path("distros").path("temurin").path("bytes_per_second").asLong())
+				.isEqualTo(1_000_000L);
+	}
+}
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 
 /**
@@ -20,8 +21,9 @@ public class DummyDownloadManager implements DownloadManager {
 	public DummyDownloadManager() {}
 
 	@Override
-	public void submit(JdkMetadata metadata, String distro, Logger downloadLogger) {
+	public CompletableFuture<DownloadResult> submit(JdkMetadata metadata, String distro, Logger downloadLogger) {
 		submittedDownloads.add(new SubmittedDownload(metadata, distro, downloadLogger));
+		return CompletableFuture.completedFuture(null);
 	}
 
 	@Override
@@ -0,0 +1,293 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class HostSchedulerTest {
+
+	@Test
+	void testTakeSkipsHostsWithoutFreeSlots() throws Exception {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(2);
+		for (int i = 0; i < 10; i++) {
+			scheduler.put("github.com", "github-" + i);
+		}
+		scheduler.put("cdn.azul.com", "azul-0");
+		scheduler.put("download.java.net", "java-0");
+
+		// When
+		List<String> taken = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			taken.add(scheduler.poll(0, TimeUnit.MILLISECONDS));
+		}
+
+		// Then
+		assertThat(taken).containsExactlyInAnyOrder("github-0", "github-1", "azul-0", "java-0");
+		assertThat(scheduler.poll(50, TimeUnit.MILLISECONDS)).isNull();
+		assertThat(scheduler.activeCount()).isEqualTo(4);
+		assertThat(scheduler.pendingCount()).isEqualTo(8);
+
+		// When
+		scheduler.release("github.com");
+
+		// Then
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isEqualTo("github-2");
+	}
+
+	@Test
+	void testTryAcquireOnlyUsesSlotsNotNeededByPendingWork() throws Exception {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(3);
+		scheduler.put("github.com", "github-0");
+		scheduler.put("github.com", "github-1");
+		scheduler.take();
+
+		// When / Then
+		assertThat(scheduler.tryAcquire("cdn.azul.com")).isFalse();
+		assertThat(scheduler.tryAcquire("github.com")).isFalse();
+
+		// When
+		scheduler.take();
+
+		// Then
+		assertThat(scheduler.tryAcquire("github.com")).isTrue();
+		assertThat(scheduler.tryAcquire("github.com")).isFalse();
+		assertThat(scheduler.activeCount()).isEqualTo(3);
+
+		// When
+		scheduler.release("github.com");
+		scheduler.put("github.com", "github-2");
+
+		// Then
+		assertThat(scheduler.tryAcquire("github.com")).isFalse();
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isEqualTo("github-2");
+	}
+
+	@Test
+	void testAliasMovesWorkToServingHost() throws Exception {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(2);
+		scheduler.put("github.com", "github-0");
+		scheduler.put("github.com", "github-1");
+		scheduler.put("github.com", "github-2");
+		scheduler.put("objects.githubusercontent.com", "cdn-0");
+		scheduler.take();
+
+		// When
+		assertThat(scheduler.alias("github.com", "objects.githubusercontent.com")).isTrue();
+
+		// Then
+		assertThat(scheduler.alias("github.com", "example.com")).isFalse();
+		assertThat(scheduler.resolveHost("github.com")).isEqualTo("objects.githubusercontent.com");
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isEqualTo("cdn-0");
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isNull();
+		assertThat(scheduler.pendingCount()).isEqualTo(2);
+
+		// When
+		scheduler.release("github.com");
+		scheduler.put("github.com", "github-3");
+
+		// Then
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isEqualTo("github-1");
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isNull();
+		assertThat(scheduler.pendingCount()).isEqualTo(2);
+	}
+
+	@Test
+	void testSetLimitChangesSlotsOfHost() throws Exception {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(1);
+		for (int i = 0; i < 5; i++) {
+			scheduler.put("cdn.azul.com", "azul-" + i);
+		}
+		scheduler.take();
+
+		// When
+		scheduler.setLimit("cdn.azul.com", 3);
+
+		// Then
+		assertThat(scheduler.getLimit("cdn.azul.com")).isEqualTo(3);
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isEqualTo("azul-1");
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isEqualTo("azul-2");
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isNull();
+
+		// When
+		scheduler.setLimit("cdn.azul.com", 1);
+		scheduler.release("cdn.azul.com");
+
+		// Then
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isNull();
+		assertThat(scheduler.activeCount()).isEqualTo(2);
+	}
+
+	@Test
+	void testOrderedSchedulerHandsOutHighestPriorityFirst() throws Exception {
+		// Given
+		HostScheduler<String> scheduler =
+				new HostScheduler<>(1, Comparator.comparing((String item) -> item.charAt(0)).reversed());
+		scheduler.put("github.com", "a-first");
+		scheduler.put("github.com", "c-first");
+		scheduler.put("github.com", "b");
+		scheduler.put("github.com", "c-second");
+		scheduler.close();
+
+		// When
+		List<String> taken = new ArrayList<>();
+		String item;
+		while ((item = scheduler.take()) != null) {
+			taken.add(item);
+			scheduler.release("github.com");
+		}
+
+		// Then
+		assertThat(taken).containsExactly("c-first", "c-second", "b", "a-first");
+	}
+
+	@Test
+	void testRoundRobinAcrossHosts() throws Exception {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(10);
+		scheduler.put("a", "a-0");
+		scheduler.put("a", "a-1");
+		scheduler.put("a", "a-2");
+		scheduler.put("b", "b-0");
+		scheduler.put("b", "b-1");
+		scheduler.put("c", "c-0");
+
+		// When
+		List<String> taken = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			taken.add(scheduler.take());
+		}
+
+		// Then
+		assertThat(taken).containsExactly("a-0", "b-0", "c-0", "a-1", "b-1", "a-2");
+	}
+
+	@Test
+	void testGroupsTakeTurnsByWeight() throws Exception {
+		// Given: a large group queued before two small ones
+		HostScheduler<String> scheduler = new HostScheduler<>(100);
+		for (int i = 0; i < 10; i++) {
+			scheduler.put("zulu", "cdn.azul.com", "zulu-" + i);
+		}
+		for (int i = 0; i < 3; i++) {
+			scheduler.put("temurin", "github.com", "temurin-" + i);
+		}
+		scheduler.put("jetbrains", "cache-redirector.jetbrains.com", "jetbrains-0");
+		scheduler.setGroupWeight("temurin", 2);
+
+		// When
+		List<String> taken = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			taken.add(scheduler.take());
+		}
+
+		// Then
+		assertThat(taken)
+				.containsExactly("temurin-0", "zulu-0", "jetbrains-0", "temurin-1", "temurin-2", "zulu-1");
+	}
+
+	@Test
+	void testGroupLimitAndHostLimitBothApply() throws Exception {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(2);
+		for (int i = 0; i < 5; i++) {
+			scheduler.put("zulu", "cdn.azul.com", "zulu-" + i);
+			scheduler.put("temurin", "github.com", "temurin-" + i);
+			scheduler.put("microsoft", "github.com", "microsoft-" + i);
+		}
+		scheduler.setGroupLimit("zulu", 1);
+
+		// When
+		List<String> taken = new ArrayList<>();
+		String item;
+		while ((item = scheduler.poll(0, TimeUnit.MILLISECONDS)) != null) {
+			taken.add(item);
+		}
+
+		// Then: one zulu download, and github.com is shared by the other two groups
+		assertThat(taken).containsExactly("zulu-0", "temurin-0", "microsoft-0");
+
+		// When
+		scheduler.release("zulu", "cdn.azul.com");
+		scheduler.release("temurin", "github.com");
+
+		// Then
+		assertThat(List.of(scheduler.poll(0, TimeUnit.MILLISECONDS), scheduler.poll(0, TimeUnit.MILLISECONDS)))
+				.containsExactlyInAnyOrder("zulu-1", "temurin-1");
+		assertThat(scheduler.poll(0, TimeUnit.MILLISECONDS)).isNull();
+		assertThat(scheduler.activeCount()).isEqualTo(3);
+	}
+
+	@Test
+	void testTakeReturnsNullWhenClosedAndDrained() throws Exception {
+		// Given
+		HostScheduler<String> scheduler = new HostScheduler<>(1);
+		scheduler.put("a", "a-0");
+		scheduler.close();
+
+		// When / Then
+		assertThat(scheduler.take()).isEqualTo("a-0");
+		assertThat(scheduler.take()).isNull();
+		assertThatThrownBy(() -> scheduler.put("a", "a-1")).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void testAllWorkersBusyOnMixedHostQueue() throws Exception {
+		// Given: a queue dominated by one host, followed by work for other hosts
+		int workers = 4;
+		HostScheduler<String> scheduler = new HostScheduler<>(2);
+		for (int i = 0; i < 20; i++) {
+			scheduler.put("github.com", "github.com");
+		}
+		for (int i = 0; i < 20; i++) {
+			String host = "mirror" + (i % 4) + ".example.com";
+			scheduler.put(host, host);
+		}
+		scheduler.close();
+
+		// When
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(workers);
+		for (int w = 0; w < workers; w++) {
+			Thread.ofPlatform().start(() -> {
+				try {
+					String host;
+					while ((host = scheduler.take()) != null) {
+						order.add(host);
+						peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+						Thread.sleep(10);
+						running.decrementAndGet();
+						scheduler.release(host);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		// Then
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		assertThat(peak.get()).isEqualTo(workers);
+		// Work for other hosts didn't have to wait behind the github.com backlog
+		assertThat(order.subList(0, workers).stream()
+						.filter(h -> !h.equals("github.com"))
+						.count())
+				.isGreaterThanOrEqualTo(workers - 2);
+		assertThat(scheduler.pendingCount()).isEqualTo(0);
+		assertThat(scheduler.activeCount()).isEqualTo(0);
+	}
+}
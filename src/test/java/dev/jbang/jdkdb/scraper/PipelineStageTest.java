@@ -0,0 +1,66 @@
+package dev.jbang.jdkdb.scraper;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+class PipelineStageTest {
+
+	@Test
+	void testSubmitWaitsWhileQueueIsFull() throws Exception {
+		// Given
+		PipelineStage stage = new PipelineStage("test", 1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<String> running = stage.submit(() -> {
+			release.await();
+			return "running";
+		});
+		CompletableFuture<String> queued = stage.submit(() -> "queued");
+
+		// When
+		CompletableFuture<CompletableFuture<String>> blocked =
+				CompletableFuture.supplyAsync(() -> stage.submit(() -> "blocked"));
+
+		// Then
+		assertThatThrownBy(() -> blocked.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+		assertThat(stage.queueDepth()).isEqualTo(1);
+		assertThat(stage.activeCount()).isEqualTo(1);
+
+		// When
+		release.countDown();
+
+		// Then
+		assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("running");
+		assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("queued");
+		assertThat(blocked.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS)).isEqualTo("blocked");
+		stage.shutdown();
+		assertThat(stage.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void testSubmitFromOwnThreadRunsInlineWhenQueueIsFull() throws Exception {
+		// Given
+		PipelineStage stage = new PipelineStage("test", 1, 1);
+		CountDownLatch queueFilled = new CountDownLatch(1);
+
+		// When
+		CompletableFuture<String[]> threads = stage.submit(() -> {
+			queueFilled.await();
+			String nested = stage.submit(() -> Thread.currentThread().getName())
+					.get(5, TimeUnit.SECONDS);
+			return new String[] {Thread.currentThread().getName(), nested};
+		});
+		CompletableFuture<String> queued = stage.submit(() -> "queued");
+		queueFilled.countDown();
+
+		// Then
+		String[] names = threads.get(5, TimeUnit.SECONDS);
+		assertThat(names[1]).isEqualTo(names[0]).startsWith("test-");
+		assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("queued");
+		stage.shutdown();
+	}
+}
@@ -2,12 +2,25 @@ package dev.jbang.jdkdb.util;
 
 import static org.assertj.core.api.Assertions.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
+import org.apache.commons.compress.archivers.cpio.CpioArchiveEntry;
+import org.apache.commons.compress.archivers.cpio.CpioArchiveOutputStream;
+import org.apache.commons.compress.archivers.cpio.CpioConstants;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.condition.EnabledOnOs;
-import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.api.io.TempDir;
 
 public class ArchiveUtilsTest {
@@ -16,7 +29,6 @@ public class ArchiveUtilsTest {
 	Path tempDir;
 
 	@Test
-	@EnabledOnOs({OS.MAC})
 	@Disabled("Large file download and extraction - only run manually when needed")
 	public void testMacOsPkg() throws IOException, InterruptedException {
 		Path pkgFile = tempDir.resolve("test-macosx.pkg");
@@ -54,4 +66,260 @@ public class ArchiveUtilsTest {
 		assertThat(releaseInfo).isNotNull();
 		assertThat(MetadataUtils.isValidReleaseInfo(releaseInfo)).isTrue();
 	}
+
+	@Test
+	public void testRpm() throws IOException {
+		Path rpmFile = tempDir.resolve("test.rpm");
+		Files.write(rpmFile, createRpm());
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(rpmFile, rpmFile.getFileName().toString());
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	public void testRpmWithoutLead() throws IOException {
+		Path rpmFile = tempDir.resolve("test.rpm");
+		Files.write(rpmFile, "this is not an rpm file".getBytes(StandardCharsets.UTF_8));
+		assertThatThrownBy(() -> ArchiveUtils.extractReleaseInfo(rpmFile, rpmFile.getFileName().toString()))
+				.isInstanceOf(IOException.class);
+	}
+
+	@Test
+	public void testDeb() throws IOException {
+		Path debFile = tempDir.resolve("test.deb");
+		Files.write(debFile, createDeb());
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(debFile, debFile.getFileName().toString());
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	public void testTarSkipsLinkedReleaseFile() throws IOException {
+		Path tarFile = tempDir.resolve("test.tar.gz");
+		try (TarArchiveOutputStream tar =
+				new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(tarFile)))) {
+			TarArchiveEntry link = new TarArchiveEntry("release", TarConstants.LF_SYMLINK);
+			link.setLinkName("jdk-21/release");
+			tar.putArchiveEntry(link);
+			tar.closeArchiveEntry();
+			writeTarEntry(tar, "jdk-21/release", ReleaseFixtures.release());
+		}
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(tarFile, tarFile.getFileName().toString());
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	public void testPkg() throws IOException {
+		Path pkgFile = tempDir.resolve("test.pkg");
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(payload)) {
+			gzip.write(createPkgCpio());
+		}
+		Files.write(pkgFile, createPkg(payload.toByteArray()));
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(pkgFile, pkgFile.getFileName().toString());
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	public void testPkgWithPbzxPayload() throws IOException {
+		Path pkgFile = tempDir.resolve("test.pkg");
+		byte[] cpio = createPkgCpio();
+		int split = cpio.length / 2;
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeBytes("pbzx");
+		out.writeLong(0x01000000);
+		// An xz compressed chunk followed by a stored one
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		try (XZCompressorOutputStream xz = new XZCompressorOutputStream(chunk)) {
+			xz.write(cpio, 0, split);
+		}
+		out.writeLong(0x01000000);
+		out.writeLong(chunk.size());
+		chunk.writeTo(out);
+		out.writeLong(0);
+		out.writeLong(cpio.length - split);
+		out.write(cpio, split, cpio.length - split);
+		Files.write(pkgFile, createPkg(payload.toByteArray()));
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(pkgFile, pkgFile.getFileName().toString());
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	public void testPkgWithUnsupportedPayload() throws IOException {
+		Path pkgFile = tempDir.resolve("test.pkg");
+		Files.write(pkgFile, createPkg("not a known payload".getBytes(StandardCharsets.UTF_8)));
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(pkgFile, pkgFile.getFileName().toString());
+		assertThat(releaseInfo).isNull();
+	}
+
+	/**
+	 * Create a minimal product archive: a xar archive with a distribution file and a single
+	 * component package with the given payload
+	 */
+	static byte[] createPkg(byte[] payload) throws IOException {
+		byte[] bom = new byte[512];
+		ByteArrayOutputStream distribution = new ByteArrayOutputStream();
+		try (DeflaterOutputStream zlib = new DeflaterOutputStream(distribution)) {
+			zlib.write("<installer-gui-script/>".getBytes(StandardCharsets.UTF_8));
+		}
+		int checksumSize = 20;
+		String toc = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<xar><toc>"
+				+ "<checksum style=\"sha1\"><offset>0</offset><size>" + checksumSize + "</size></checksum>"
+				+ "<file id=\"1\"><name>jdk-21.pkg</name><type>directory</type>"
+				+ xarFile(2, "Bom", checksumSize, bom.length, "application/octet-stream")
+				+ xarFile(3, "Payload", checksumSize + bom.length, payload.length, "application/octet-stream")
+				+ "</file>"
+				+ xarFile(
+						4,
+						"Distribution",
+						checksumSize + bom.length + payload.length,
+						distribution.size(),
+						"application/x-gzip")
+				+ "</toc></xar>";
+		ByteArrayOutputStream compressedToc = new ByteArrayOutputStream();
+		try (DeflaterOutputStream zlib = new DeflaterOutputStream(compressedToc)) {
+			zlib.write(toc.getBytes(StandardCharsets.UTF_8));
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeBytes("xar!");
+		out.writeShort(28);
+		out.writeShort(1);
+		out.writeLong(compressedToc.size());
+		out.writeLong(toc.length());
+		out.writeInt(1);
+		compressedToc.writeTo(out);
+		out.write(new byte[checksumSize]);
+		out.write(bom);
+		out.write(payload);
+		distribution.writeTo(out);
+		return bytes.toByteArray();
+	}
+
+	private static String xarFile(int id, String name, long offset, long length, String encoding) {
+		return "<file id=\"" + id + "\"><name>" + name + "</name><type>file</type>"
+				+ "<data><length>" + length + "</length><offset>" + offset + "</offset><size>" + length
+				+ "</size><encoding style=\"" + encoding + "\"/></data></file>";
+	}
+
+	/** Create the uncompressed payload of a package, which is an old format (odc) CPIO archive */
+	static byte[] createPkgCpio() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (CpioArchiveOutputStream cpio = new CpioArchiveOutputStream(bytes, CpioConstants.FORMAT_OLD_ASCII)) {
+			byte[] lib = ReleaseFixtures.randomBytes(100_000);
+			String home = "./Library/Java/JavaVirtualMachines/jdk-21.jdk/Contents/Home/";
+			writeCpioEntry(cpio, CpioConstants.FORMAT_OLD_ASCII, home + "lib/modules", lib);
+			writeCpioEntry(cpio, CpioConstants.FORMAT_OLD_ASCII, home + "release", ReleaseFixtures.release());
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Create a minimal Debian package with an xz compressed data archive */
+	private static byte[] createDeb() throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new XZCompressorOutputStream(data))) {
+			byte[] lib = ReleaseFixtures.randomBytes(100_000);
+			writeTarEntry(tar, "./usr/lib/jvm/jdk-21/lib/modules", lib);
+			writeTarEntry(tar, "./usr/lib/jvm/jdk-21/release", ReleaseFixtures.release());
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ArArchiveOutputStream ar = new ArArchiveOutputStream(bytes)) {
+			writeArEntry(ar, "debian-binary", "2.0\n".getBytes(StandardCharsets.US_ASCII));
+			writeArEntry(ar, "control.tar.gz", new byte[20]);
+			writeArEntry(ar, "data.tar.xz", data.toByteArray());
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeTarEntry(TarArchiveOutputStream tar, String name, byte[] data) throws IOException {
+		TarArchiveEntry entry = new TarArchiveEntry(name);
+		entry.setSize(data.length);
+		tar.putArchiveEntry(entry);
+		tar.write(data);
+		tar.closeArchiveEntry();
+	}
+
+	private static void writeArEntry(ArArchiveOutputStream ar, String name, byte[] data) throws IOException {
+		ar.putArchiveEntry(new ArArchiveEntry(name, data.length));
+		ar.write(data);
+		ar.closeArchiveEntry();
+	}
+
+	/** Create a minimal RPM package with an xz compressed payload */
+	private static byte[] createRpm() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		// Lead
+		byte[] lead = new byte[96];
+		lead[0] = (byte) 0xED;
+		lead[1] = (byte) 0xAB;
+		lead[2] = (byte) 0xEE;
+		lead[3] = (byte) 0xDB;
+		out.write(lead);
+
+		// Signature header with a single entry, so it needs padding
+		byte[] signatureStore = new byte[] {1, 2, 3, 4, 5};
+		writeHeaderIntro(out, 1, signatureStore.length);
+		writeIndexEntry(out, 1000, 4, 0, 1);
+		out.write(signatureStore);
+		out.write(new byte[(8 - (16 + signatureStore.length) % 8) % 8]);
+
+		// Main header with the payload format and compressor
+		byte[] format = "cpio\0".getBytes(StandardCharsets.US_ASCII);
+		byte[] compressor = "xz\0".getBytes(StandardCharsets.US_ASCII);
+		writeHeaderIntro(out, 2, format.length + compressor.length);
+		writeIndexEntry(out, 1124, 6, 0, 1);
+		writeIndexEntry(out, 1125, 6, format.length, 1);
+		out.write(format);
+		out.write(compressor);
+
+		// Payload
+		try (CpioArchiveOutputStream cpio = new CpioArchiveOutputStream(new XZCompressorOutputStream(out))) {
+			byte[] lib = ReleaseFixtures.randomBytes(100_000);
+			writeCpioEntry(cpio, "./usr/lib/jvm/jdk-21/lib/modules", lib);
+			writeCpioEntry(cpio, "./usr/lib/jvm/jdk-21/release", ReleaseFixtures.release());
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeHeaderIntro(DataOutputStream out, int entries, int storeSize) throws IOException {
+		out.writeInt(0x8EADE801);
+		out.writeInt(0);
+		out.writeInt(entries);
+		out.writeInt(storeSize);
+	}
+
+	private static void writeIndexEntry(DataOutputStream out, int tag, int type, int offset, int count)
+			throws IOException {
+		out.writeInt(tag);
+		out.writeInt(type);
+		out.writeInt(offset);
+		out.writeInt(count);
+	}
+
+	private static void writeCpioEntry(CpioArchiveOutputStream cpio, String name, byte[] data) throws IOException {
+		writeCpioEntry(cpio, CpioConstants.FORMAT_NEW, name, data);
+	}
+
+	private static void writeCpioEntry(CpioArchiveOutputStream cpio, short format, String name, byte[] data)
+			throws IOException {
+		CpioArchiveEntry entry = new CpioArchiveEntry(format, name, data.length);
+		entry.setMode(CpioArchiveEntry.C_ISREG | 0644);
+		cpio.putArchiveEntry(entry);
+		cpio.write(data);
+		cpio.closeArchiveEntry();
+	}
 }
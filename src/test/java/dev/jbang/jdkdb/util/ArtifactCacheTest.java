@@ -0,0 +1,119 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArtifactCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testStoreAndLookup() throws Exception {
+		// Given
+		ArtifactCache cache = new ArtifactCache(tempDir.resolve("cache"), 1024 * 1024);
+		Path file = createFile("jdk.tar.gz", 1000);
+		String sha256 = HashUtils.computeHash(file, "SHA-256");
+		HttpUtils.RemoteFile remote = new HttpUtils.RemoteFile(1000, true, "\"v1\"", null);
+
+		// When
+		cache.store("https://example.com/jdk.tar.gz", remote, file, sha256);
+		Path cached = cache.lookup("https://example.com/jdk.tar.gz", remote);
+
+		// Then
+		assertThat(cached).isNotNull();
+		assertThat(HashUtils.computeHash(cached, "SHA-256")).isEqualTo(sha256);
+		assertThat(cache.lookup("https://example.com/other.tar.gz", remote)).isNull();
+	}
+
+	@Test
+	void testLookupMissesWhenFileChangedOnServer() throws Exception {
+		// Given
+		ArtifactCache cache = new ArtifactCache(tempDir.resolve("cache"), 1024 * 1024);
+		Path file = createFile("jdk.tar.gz", 1000);
+		cache.store(
+				"https://example.com/jdk.tar.gz",
+				new HttpUtils.RemoteFile(1000, true, "\"v1\"", null),
+				file,
+				HashUtils.computeHash(file, "SHA-256"));
+
+		// When / Then
+		assertThat(cache.lookup("https://example.com/jdk.tar.gz", new HttpUtils.RemoteFile(1000, true, "\"v2\"", null)))
+				.isNull();
+		assertThat(cache.lookup("https://example.com/jdk.tar.gz", new HttpUtils.RemoteFile(1001, true, "\"v1\"", null)))
+				.isNull();
+		assertThat(cache.lookup("https://example.com/jdk.tar.gz", new HttpUtils.RemoteFile(1000, true, "\"v1\"", null)))
+				.isNotNull();
+	}
+
+	@Test
+	void testEvictsLeastRecentlyUsedEntries() throws Exception {
+		// Given
+		ArtifactCache cache = new ArtifactCache(tempDir.resolve("cache"), 2500);
+		HttpUtils.RemoteFile remote = new HttpUtils.RemoteFile(1000, true, "\"v1\"", null);
+		for (int i = 0; i < 2; i++) {
+			Path file = createFile("jdk-" + i, 1000);
+			cache.store("https://example.com/jdk-" + i, remote, file, HashUtils.computeHash(file, "SHA-256"));
+		}
+		// Make the first entry the oldest, and then use it so the second one becomes the oldest
+		try (var files = Files.list(tempDir.resolve("cache/index"))) {
+			for (Path indexFile : files.toList()) {
+				Files.setLastModifiedTime(indexFile, FileTime.from(Instant.now().minusSeconds(60)));
+			}
+		}
+		assertThat(cache.lookup("https://example.com/jdk-0", remote)).isNotNull();
+
+		// When
+		Path file = createFile("jdk-2", 1000);
+		cache.store("https://example.com/jdk-2", remote, file, HashUtils.computeHash(file, "SHA-256"));
+
+		// Then
+		assertThat(cache.lookup("https://example.com/jdk-0", remote)).isNotNull();
+		assertThat(cache.lookup("https://example.com/jdk-1", remote)).isNull();
+		assertThat(cache.lookup("https://example.com/jdk-2", remote)).isNotNull();
+		try (var objects = Files.list(tempDir.resolve("cache/objects"))) {
+			assertThat(objects.count()).isEqualTo(2);
+		}
+	}
+
+	@Test
+	void testFilesInUseAreNotEvicted() throws Exception {
+		// Given
+		ArtifactCache cache = new ArtifactCache(tempDir.resolve("cache"), 1500);
+		HttpUtils.RemoteFile remote = new HttpUtils.RemoteFile(1000, true, "\"v1\"", null);
+		Path file = createFile("jdk-0", 1000);
+		cache.store("https://example.com/jdk-0", remote, file, HashUtils.computeHash(file, "SHA-256"));
+		Path inUse = cache.lookup("https://example.com/jdk-0", remote);
+
+		// When
+		file = createFile("jdk-1", 1000);
+		cache.store("https://example.com/jdk-1", remote, file, HashUtils.computeHash(file, "SHA-256"));
+
+		// Then
+		assertThat(inUse).exists();
+		cache.release(inUse);
+		try (var files = Files.list(tempDir.resolve("cache/index"))) {
+			for (Path indexFile : files.toList()) {
+				Files.setLastModifiedTime(indexFile, FileTime.from(Instant.now().minusSeconds(60)));
+			}
+		}
+		file = createFile("jdk-2", 1000);
+		cache.store("https://example.com/jdk-2", remote, file, HashUtils.computeHash(file, "SHA-256"));
+		assertThat(inUse).doesNotExist();
+	}
+
+	private Path createFile(String name, int size) throws Exception {
+		byte[] data = new byte[size];
+		new Random(name.hashCode()).nextBytes(data);
+		Path file = tempDir.resolve(name);
+		Files.write(file, data);
+		return file;
+	}
+}
@@ -0,0 +1,374 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.Test;
+
+class CabinetTest {
+	static final int COMPRESS_NONE = 0;
+	static final int COMPRESS_MSZIP = 1;
+	static final int COMPRESS_LZX_15 = 3 | 15 << 8;
+
+	private static final byte[] RELEASE = ReleaseFixtures.release();
+
+	/** The compressed data blocks of a cabinet folder */
+	record Blocks(List<byte[]> payloads, List<Integer> sizes) {}
+
+	@Test
+	void testReadsStoredFile() throws Exception {
+		// Given
+		Map<String, byte[]> files = files();
+		byte[] cabinet = createCabinet(COMPRESS_NONE, storedBlocks(folderData(files)), files);
+
+		// When
+		byte[] release = Cabinet.readFile(new ByteArrayInputStream(cabinet), "release");
+
+		// Then
+		assertThat(release).isEqualTo(RELEASE);
+	}
+
+	@Test
+	void testReadsMsZipFileAfterSeveralBlocks() throws Exception {
+		// Given
+		Map<String, byte[]> files = files();
+		byte[] cabinet = createCabinet(COMPRESS_MSZIP, msZipBlocks(folderData(files)), files);
+
+		// When
+		byte[] release = Cabinet.readFile(new ByteArrayInputStream(cabinet), "release");
+		byte[] modules = Cabinet.readFile(new ByteArrayInputStream(cabinet), "modules");
+
+		// Then
+		assertThat(release).isEqualTo(RELEASE);
+		assertThat(modules).isEqualTo(files.get("modules"));
+	}
+
+	@Test
+	void testReadsLzxVerbatimFile() throws Exception {
+		// Given
+		Map<String, byte[]> files = files();
+		byte[] cabinet = createCabinet(COMPRESS_LZX_15, lzxBlocks(folderData(files), false), files);
+
+		// When
+		byte[] release = Cabinet.readFile(new ByteArrayInputStream(cabinet), "release");
+		byte[] modules = Cabinet.readFile(new ByteArrayInputStream(cabinet), "modules");
+
+		// Then
+		assertThat(release).isEqualTo(RELEASE);
+		assertThat(modules).isEqualTo(files.get("modules"));
+	}
+
+	@Test
+	void testReadsLzxUncompressedFile() throws Exception {
+		// Given
+		Map<String, byte[]> files = files();
+		byte[] cabinet = createCabinet(COMPRESS_LZX_15, lzxBlocks(folderData(files), true), files);
+
+		// When
+		byte[] release = Cabinet.readFile(new ByteArrayInputStream(cabinet), "release");
+
+		// Then
+		assertThat(release).isEqualTo(RELEASE);
+	}
+
+	@Test
+	void testMissingFileIsNull() throws Exception {
+		// Given
+		Map<String, byte[]> files = files();
+		byte[] cabinet = createCabinet(COMPRESS_MSZIP, msZipBlocks(folderData(files)), files);
+
+		// When
+		byte[] missing = Cabinet.readFile(new ByteArrayInputStream(cabinet), "missing");
+
+		// Then
+		assertThat(missing).isNull();
+	}
+
+	/** A large, compressible file followed by the release file */
+	private static Map<String, byte[]> files() {
+		StringBuilder text = new StringBuilder();
+		Random random = new Random(42);
+		while (text.length() < 100_000) {
+			text.append("module java.base ").append(random.nextInt(50)).append('\n');
+		}
+		Map<String, byte[]> files = new LinkedHashMap<>();
+		files.put("modules", text.toString().getBytes(StandardCharsets.US_ASCII));
+		files.put("release", RELEASE);
+		return files;
+	}
+
+	private static byte[] folderData(Map<String, byte[]> files) {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		files.values().forEach(data::writeBytes);
+		return data.toByteArray();
+	}
+
+	/** Create a cabinet with a single folder holding the given files */
+	static byte[] createCabinet(int compression, Blocks blocks, Map<String, byte[]> files) {
+		ByteArrayOutputStream fileEntries = new ByteArrayOutputStream();
+		int offset = 0;
+		for (Map.Entry<String, byte[]> file : files.entrySet()) {
+			writeInt(fileEntries, file.getValue().length);
+			writeInt(fileEntries, offset);
+			writeShort(fileEntries, 0); // folder
+			writeShort(fileEntries, 0); // date
+			writeShort(fileEntries, 0); // time
+			writeShort(fileEntries, 0x20); // attributes
+			fileEntries.writeBytes(file.getKey().getBytes(StandardCharsets.US_ASCII));
+			fileEntries.write(0);
+			offset += file.getValue().length;
+		}
+
+		int filesOffset = 36 + 8;
+		int dataOffset = filesOffset + fileEntries.size();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		for (int i = 0; i < blocks.payloads().size(); i++) {
+			writeInt(data, 0); // checksum
+			writeShort(data, blocks.payloads().get(i).length);
+			writeShort(data, blocks.sizes().get(i));
+			data.writeBytes(blocks.payloads().get(i));
+		}
+
+		ByteArrayOutputStream cabinet = new ByteArrayOutputStream();
+		cabinet.writeBytes("MSCF".getBytes(StandardCharsets.US_ASCII));
+		writeInt(cabinet, 0);
+		writeInt(cabinet, dataOffset + data.size());
+		writeInt(cabinet, 0);
+		writeInt(cabinet, filesOffset);
+		writeInt(cabinet, 0);
+		cabinet.write(3); // version
+		cabinet.write(1);
+		writeShort(cabinet, 1); // folders
+		writeShort(cabinet, files.size());
+		writeShort(cabinet, 0); // flags
+		writeShort(cabinet, 0); // set id
+		writeShort(cabinet, 0); // cabinet number
+		writeInt(cabinet, dataOffset);
+		writeShort(cabinet, blocks.payloads().size());
+		writeShort(cabinet, compression);
+		cabinet.writeBytes(fileEntries.toByteArray());
+		cabinet.writeBytes(data.toByteArray());
+		return cabinet.toByteArray();
+	}
+
+	static Blocks storedBlocks(byte[] data) {
+		Blocks blocks = new Blocks(new ArrayList<>(), new ArrayList<>());
+		for (int start = 0; start < data.length; start += LzxDecoder.FRAME_SIZE) {
+			byte[] block = Arrays.copyOfRange(data, start, Math.min(data.length, start + LzxDecoder.FRAME_SIZE));
+			blocks.payloads().add(block);
+			blocks.sizes().add(block.length);
+		}
+		return blocks;
+	}
+
+	/** Each MSZIP block is a deflate stream with the previous block as its dictionary */
+	static Blocks msZipBlocks(byte[] data) {
+		Blocks blocks = new Blocks(new ArrayList<>(), new ArrayList<>());
+		byte[] previous = null;
+		for (byte[] block : storedBlocks(data).payloads()) {
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+			if (previous != null) {
+				deflater.setDictionary(previous);
+			}
+			deflater.setInput(block);
+			deflater.finish();
+			ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			payload.write('C');
+			payload.write('K');
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				payload.write(buffer, 0, deflater.deflate(buffer));
+			}
+			deflater.end();
+			blocks.payloads().add(payload.toByteArray());
+			blocks.sizes().add(block.length);
+			previous = block;
+		}
+		return blocks;
+	}
+
+	/**
+	 * Compress data as a single LZX block with a window of 32 KB. Verbatim blocks use a fixed
+	 * Huffman code and only short matches, with the distance of the previous match where possible.
+	 */
+	static Blocks lzxBlocks(byte[] data, boolean uncompressed) {
+		BitWriter out = new BitWriter();
+		out.write(0, 1); // no E8 translation
+		out.write(uncompressed ? 3 : 1, 3);
+		out.write(data.length >>> 8, 16);
+		out.write(data.length & 0xFF, 8);
+		if (uncompressed) {
+			out.alignUncompressed();
+			for (int i = 0; i < 3; i++) {
+				out.writeBytes(new byte[] {1, 0, 0, 0}, 0, 4); // R0, R1 and R2
+			}
+		} else {
+			// Literals 0-15 get 8 bit codes, all other symbols 9 bit codes
+			int[] mainLengths = new int[256 + 30 * 8];
+			Arrays.fill(mainLengths, 9);
+			Arrays.fill(mainLengths, 0, 16, 8);
+			writeLengths(out, Arrays.copyOfRange(mainLengths, 0, 256));
+			writeLengths(out, Arrays.copyOfRange(mainLengths, 256, mainLengths.length));
+			writeLengths(out, new int[249]);
+		}
+
+		Blocks blocks = new Blocks(new ArrayList<>(), new ArrayList<>());
+		int r0 = 1;
+		for (int frameStart = 0; frameStart < data.length; frameStart += LzxDecoder.FRAME_SIZE) {
+			int frameEnd = Math.min(data.length, frameStart + LzxDecoder.FRAME_SIZE);
+			if (uncompressed) {
+				out.writeBytes(data, frameStart, frameEnd - frameStart);
+			} else {
+				int pos = frameStart;
+				while (pos < frameEnd) {
+					int distance = findMatch(data, pos, frameEnd, r0);
+					int length = distance > 0 ? matchLength(data, pos, frameEnd, distance) : 0;
+					if (length == 0) {
+						writeMainSymbol(out, data[pos] & 0xFF);
+						pos++;
+					} else if (distance == r0) {
+						writeMainSymbol(out, 256 + (length - 2));
+						pos += length;
+					} else {
+						int slot = positionSlot(distance);
+						writeMainSymbol(out, 256 + slot * 8 + (length - 2));
+						out.write(distance - (positionBase(slot) - 2), extraBits(slot));
+						r0 = distance;
+						pos += length;
+					}
+				}
+				out.align();
+			}
+			blocks.payloads().add(out.take());
+			blocks.sizes().add(frameEnd - frameStart);
+		}
+		return blocks;
+	}
+
+	/** Find the distance of a match of at least 2 bytes, preferring the previous distance */
+	private static int findMatch(byte[] data, int pos, int end, int r0) {
+		if (matchLength(data, pos, end, r0) > 0) {
+			return r0;
+		}
+		for (int distance = 1; distance <= Math.min(pos, 4096); distance++) {
+			if (matchLength(data, pos, end, distance) > 0) {
+				return distance;
+			}
+		}
+		return 0;
+	}
+
+	private static int matchLength(byte[] data, int pos, int end, int distance) {
+		if (distance > pos) {
+			return 0;
+		}
+		int length = 0;
+		while (length < 8 && pos + length < end && data[pos + length] == data[pos + length - distance]) {
+			length++;
+		}
+		return length >= 2 ? length : 0;
+	}
+
+	private static void writeMainSymbol(BitWriter out, int symbol) {
+		if (symbol < 16) {
+			out.write(symbol, 8);
+		} else {
+			out.write(symbol + 16, 9);
+		}
+	}
+
+	/** Write code lengths (all previously 0) with a pretree that only has the codes needed */
+	private static void writeLengths(BitWriter out, int[] lengths) {
+		// Symbol 0 (length unchanged) gets code 0, 8 (length 9) gets 10 and 9 (length 8) gets 11
+		for (int i = 0; i < 20; i++) {
+			out.write(i == 0 ? 1 : i == 8 || i == 9 ? 2 : 0, 4);
+		}
+		for (int length : lengths) {
+			switch (length) {
+				case 0 -> out.write(0, 1);
+				case 9 -> out.write(0b10, 2);
+				case 8 -> out.write(0b11, 2);
+				default -> throw new IllegalArgumentException("Unsupported code length " + length);
+			}
+		}
+	}
+
+	private static int extraBits(int slot) {
+		return slot < 4 ? 0 : Math.min((slot - 2) / 2, 17);
+	}
+
+	private static int positionBase(int slot) {
+		int base = 0;
+		for (int i = 0; i < slot; i++) {
+			base += 1 << extraBits(i);
+		}
+		return base;
+	}
+
+	private static int positionSlot(int distance) {
+		int slot = 3;
+		while (positionBase(slot + 1) - 2 <= distance) {
+			slot++;
+		}
+		return slot;
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		writeShort(out, value);
+		writeShort(out, value >>> 16);
+	}
+
+	/** Writes bits into 16 bit little endian words, starting at the most significant bit */
+	private static final class BitWriter {
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private int word;
+		private int bits;
+
+		void write(int value, int n) {
+			for (int i = n - 1; i >= 0; i--) {
+				word = (word << 1) | ((value >>> i) & 1);
+				if (++bits == 16) {
+					bytes.write(word & 0xFF);
+					bytes.write(word >>> 8);
+					word = 0;
+					bits = 0;
+				}
+			}
+		}
+
+		void align() {
+			if (bits > 0) {
+				write(0, 16 - bits);
+			}
+		}
+
+		/** Uncompressed blocks always skip 1 to 16 bits */
+		void alignUncompressed() {
+			write(0, 16 - bits);
+		}
+
+		void writeBytes(byte[] b, int off, int len) {
+			bytes.write(b, off, len);
+		}
+
+		byte[] take() {
+			byte[] result = bytes.toByteArray();
+			bytes = new ByteArrayOutputStream();
+			return result;
+		}
+	}
+}
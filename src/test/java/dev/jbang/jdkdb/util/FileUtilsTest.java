@@ -0,0 +1,17 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class FileUtilsTest {
+
+	@Test
+	void testParseSize() {
+		assertThat(FileUtils.parseSize("1024")).isEqualTo(1024);
+		assertThat(FileUtils.parseSize("500m")).isEqualTo(500L * 1024 * 1024);
+		assertThat(FileUtils.parseSize("20G")).isEqualTo(20L * 1024 * 1024 * 1024);
+		assertThat(FileUtils.parseSize("lots")).isEqualTo(-1);
+		assertThat(FileUtils.parseSize("")).isEqualTo(-1);
+	}
+}
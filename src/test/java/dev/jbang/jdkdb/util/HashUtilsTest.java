@@ -0,0 +1,55 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HashUtilsTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testMultiHasherMatchesSingleHashes() throws Exception {
+		// Given
+		Path file = tempDir.resolve("data.bin");
+		byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31);
+		}
+		Files.write(file, data);
+
+		// When
+		HashUtils.MultiHasher hasher = new HashUtils.MultiHasher(HashUtils.DOWNLOAD_ALGORITHMS);
+		hasher.write(data, 0, 1000);
+		hasher.write(data[1000]);
+		hasher.write(data, 1001, data.length - 1001);
+
+		// Then
+		assertThat(hasher.size()).isEqualTo(data.length);
+		for (String algorithm : HashUtils.DOWNLOAD_ALGORITHMS) {
+			assertThat(hasher.hash(algorithm)).isEqualTo(HashUtils.computeHash(file, algorithm));
+		}
+	}
+
+	@Test
+	void testComputeHashes() throws Exception {
+		// Given
+		Path file = tempDir.resolve("hello.txt");
+		Files.writeString(file, "hello", StandardCharsets.UTF_8);
+
+		// When
+		HashUtils.MultiHasher hasher = HashUtils.computeHashes(file, "MD5", "SHA-1");
+
+		// Then
+		assertThat(hasher.size()).isEqualTo(5);
+		assertThat(hasher.hash("MD5")).isEqualTo("5d41402abc4b2a76b9719d911017c592");
+		assertThat(hasher.hash("SHA-1")).isEqualTo("aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d");
+		assertThatThrownBy(() -> hasher.hash("SHA-256")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> hasher.write(1)).isInstanceOf(IllegalStateException.class);
+	}
+}
@@ -0,0 +1,256 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HttpUtilsTest {
+	private static final String ETAG = "\"v1\"";
+
+	@TempDir
+	Path tempDir;
+
+	private HttpServer server;
+	private byte[] content;
+	private final List<String> ranges = new CopyOnWriteArrayList<>();
+	private final AtomicBoolean dropFirstRequest = new AtomicBoolean();
+	private final AtomicBoolean stallFirstRequest = new AtomicBoolean();
+	private final AtomicBoolean timeOutFirstRequest = new AtomicBoolean();
+	private final CountDownLatch stalled = new CountDownLatch(1);
+	private final AtomicInteger pageRequests = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		content = new byte[1024 * 1024];
+		new Random(42).nextBytes(content);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/file.bin", this::serveFile);
+		server.createContext("/page.html", this::servePage);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		stalled.countDown();
+		server.stop(0);
+	}
+
+	@Test
+	void testDownloadFileResumesAfterConnectionDrop() throws Exception {
+		// Given
+		dropFirstRequest.set(true);
+		Path destination = tempDir.resolve("file.bin");
+
+		// When
+		HashUtils.MultiHasher hasher = new HttpUtils()
+				.downloadFile(url(), destination, () -> new HashUtils.MultiHasher(HashUtils.DOWNLOAD_ALGORITHMS));
+
+		// Then
+		assertThat(ranges).hasSize(2);
+		assertThat(ranges.get(0)).isNull();
+		assertThat(ranges.get(1)).isEqualTo("bytes=" + content.length / 2 + "-");
+		assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+		assertThat(hasher.size()).isEqualTo(content.length);
+		assertThat(hasher.hash("SHA-256")).isEqualTo(HashUtils.computeHash(destination, "SHA-256"));
+		assertThat(tempDir.resolve("file.bin.journal")).doesNotExist();
+	}
+
+	@Test
+	void testDownloadFileResumesPartialDownloadFromJournal() throws Exception {
+		// Given
+		Path destination = tempDir.resolve("file.bin");
+		Files.write(destination, Arrays.copyOf(content, 1000));
+		new PartialDownload(url(), ETAG, 1000).save(destination);
+
+		// When
+		HashUtils.MultiHasher hasher = new HttpUtils()
+				.downloadFile(url(), destination, () -> new HashUtils.MultiHasher(HashUtils.DOWNLOAD_ALGORITHMS));
+
+		// Then
+		assertThat(ranges).containsExactly("bytes=1000-");
+		assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+		assertThat(hasher.size()).isEqualTo(content.length);
+		assertThat(hasher.hash("MD5")).isEqualTo(HashUtils.computeHash(destination, "MD5"));
+	}
+
+	@Test
+	void testDownloadFileRestartsWhenResourceChanged() throws Exception {
+		// Given
+		Path destination = tempDir.resolve("file.bin");
+		Files.write(destination, new byte[2000]);
+		new PartialDownload(url(), "\"v0\"", 2000).save(destination);
+
+		// When
+		HashUtils.MultiHasher hasher = new HttpUtils()
+				.downloadFile(url(), destination, () -> new HashUtils.MultiHasher(HashUtils.DOWNLOAD_ALGORITHMS));
+
+		// Then
+		assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+		assertThat(hasher.size()).isEqualTo(content.length);
+	}
+
+	@Test
+	void testDownloadFileResumesAfterStall() throws Exception {
+		// Given
+		stallFirstRequest.set(true);
+		Path destination = tempDir.resolve("file.bin");
+		HttpUtils httpUtils = new HttpUtils().setStallDetection(100 * 1024, Duration.ofMillis(500));
+
+		// When
+		HashUtils.MultiHasher hasher = httpUtils.downloadFile(
+				url(), destination, () -> new HashUtils.MultiHasher(HashUtils.DOWNLOAD_ALGORITHMS));
+
+		// Then
+		assertThat(ranges).hasSize(2);
+		assertThat(ranges.get(0)).isNull();
+		assertThat(ranges.get(1)).startsWith("bytes=");
+		assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+		assertThat(hasher.size()).isEqualTo(content.length);
+	}
+
+	@Test
+	void testDownloadFileRetriesAfterRequestTimeout() throws Exception {
+		// Given
+		timeOutFirstRequest.set(true);
+		Path destination = tempDir.resolve("file.bin");
+		List<String> retries = new CopyOnWriteArrayList<>();
+		HttpUtils httpUtils = new HttpUtils().setRetryListener(retries::add);
+
+		// When
+		httpUtils.downloadFile(url(), destination, () -> new HashUtils.MultiHasher(HashUtils.DOWNLOAD_ALGORITHMS));
+
+		// Then
+		assertThat(retries).containsExactly(url());
+		assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+	}
+
+	@Test
+	void testDownloadStringHedgesSlowRequest() throws Exception {
+		// Given
+		HttpUtils httpUtils = new HttpUtils().setHedgeDelay(Duration.ofMillis(100));
+		String pageUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/page.html";
+
+		// When
+		long start = System.nanoTime();
+		String page = httpUtils.downloadString(pageUrl);
+
+		// Then
+		assertThat(page).isEqualTo("fast");
+		assertThat(pageRequests.get()).isEqualTo(2);
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+	}
+
+	@Test
+	void testDownloadFileSegmented() throws Exception {
+		// Given
+		HttpUtils httpUtils = new HttpUtils();
+		Path destination = tempDir.resolve("file.bin");
+
+		// When
+		HttpUtils.RemoteFile remote = httpUtils.probe(url());
+		httpUtils.downloadFileSegmented(url(), destination, remote, 3);
+
+		// Then
+		assertThat(remote.size()).isEqualTo(content.length);
+		assertThat(remote.acceptsRanges()).isTrue();
+		assertThat(remote.validator()).isEqualTo(ETAG);
+		assertThat(ranges)
+				.containsExactlyInAnyOrder(
+						"bytes=0-349525", "bytes=349526-699051", "bytes=699052-" + (content.length - 1));
+		assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+	}
+
+	private String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/file.bin";
+	}
+
+	private void serveFile(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("ETag", ETAG);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		if (timeOutFirstRequest.getAndSet(false)) {
+			exchange.sendResponseHeaders(408, -1);
+			exchange.close();
+			return;
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		ranges.add(range);
+		int start = 0;
+		int end = content.length - 1;
+		if (range != null && ETAG.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+			String[] bounds = range.substring("bytes=".length()).split("-", -1);
+			start = Integer.parseInt(bounds[0]);
+			if (!bounds[1].isEmpty()) {
+				end = Integer.parseInt(bounds[1]);
+			}
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+			exchange.sendResponseHeaders(206, end - start + 1);
+		} else {
+			exchange.sendResponseHeaders(200, content.length);
+		}
+		OutputStream out = exchange.getResponseBody();
+		if (stallFirstRequest.getAndSet(false)) {
+			// Send half of the file and then stop sending anything
+			out.write(content, 0, content.length / 2);
+			out.flush();
+			awaitStalled();
+			exchange.close();
+			return;
+		}
+		if (dropFirstRequest.getAndSet(false)) {
+			// Send half of the file and then break the connection
+			out.write(content, 0, content.length / 2);
+			out.flush();
+			throw new IOException("Dropping connection");
+		}
+		out.write(content, start, end - start + 1);
+		exchange.close();
+	}
+
+	private void servePage(HttpExchange exchange) throws IOException {
+		// The first request takes much longer than any of the others
+		boolean first = pageRequests.incrementAndGet() == 1;
+		if (first) {
+			awaitStalled();
+		}
+		byte[] body = (first ? "slow" : "fast").getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, body.length);
+		exchange.getResponseBody().write(body);
+		exchange.close();
+	}
+
+	private void awaitStalled() {
+		try {
+			stalled.await(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MsiPackageTest {
+	private static final int STRING = 0x0100 | 0x0800 | 72;
+	private static final int INT2 = 0x0100 | 2;
+	private static final int INT4 = 0x0100 | 4;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testExtractsReleaseFromMsi() throws Exception {
+		// Given
+		Path msiFile = tempDir.resolve("jdk.msi");
+		Files.write(msiFile, createMsi());
+
+		// When
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(msiFile, msiFile.getFileName().toString());
+
+		// Then
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	void testMsiWithoutReleaseFile() throws Exception {
+		// Given
+		Path msiFile = tempDir.resolve("jdk.msi");
+		Files.write(msiFile, createMsi());
+
+		// When
+		byte[] missing;
+		try (MsiPackage msi = MsiPackage.open(msiFile)) {
+			missing = msi.readFile("missing");
+		}
+
+		// Then
+		assertThat(missing).isNull();
+	}
+
+	@Test
+	void testEncodesStreamNames() {
+		assertThat(MsiPackage.encodeStreamName("File", true)).isEqualTo("\u4840\u430F\u422F");
+		assertThat(MsiPackage.encodeStreamName("a.cab", false)).isEqualTo("\u47A4\u4126\u4825");
+	}
+
+	/**
+	 * Create an MSI with a release file in the installation directory and one in a subdirectory,
+	 * in an MSZIP compressed cabinet after a larger file.
+	 */
+	private static byte[] createMsi() throws IOException {
+		byte[] modules = ReleaseFixtures.randomBytes(200_000);
+		Map<String, byte[]> files = new LinkedHashMap<>();
+		files.put("modules", modules);
+		files.put("lib_release", "JAVA_VERSION=\"1.0\"\n".getBytes(StandardCharsets.UTF_8));
+		files.put("release", ReleaseFixtures.release());
+		ByteArrayOutputStream folder = new ByteArrayOutputStream();
+		files.values().forEach(folder::writeBytes);
+		byte[] cabinet = CabinetTest.createCabinet(
+				CabinetTest.COMPRESS_MSZIP, CabinetTest.msZipBlocks(folder.toByteArray()), files);
+
+		MsiBuilder msi = new MsiBuilder();
+		msi.table(
+				"Directory",
+				List.of("Directory", "Directory_Parent", "DefaultDir"),
+				List.of(STRING, STRING | 0x1000, STRING),
+				List.of(
+						new Object[] {"TARGETDIR", null, "SourceDir"},
+						new Object[] {"ProgramFilesFolder", "TARGETDIR", "."},
+						new Object[] {"INSTALLDIR", "ProgramFilesFolder", "jdk-21|jdk-21.0.1"},
+						new Object[] {"LIBDIR", "INSTALLDIR", "lib"}));
+		msi.table(
+				"Component",
+				List.of("Component", "Directory_"),
+				List.of(STRING, STRING),
+				List.of(new Object[] {"LibFiles", "LIBDIR"}, new Object[] {"RootFiles", "INSTALLDIR"}));
+		msi.table(
+				"File",
+				List.of("File", "Component_", "FileName", "Sequence"),
+				List.of(STRING, STRING, STRING, INT4),
+				List.of(
+						new Object[] {"modules", "LibFiles", "modules", 1},
+						new Object[] {"lib_release", "LibFiles", "release", 2},
+						new Object[] {"release", "RootFiles", "release", 3}));
+		msi.table(
+				"Media",
+				List.of("DiskId", "LastSequence", "Cabinet"),
+				List.of(INT2, INT4, STRING),
+				List.<Object[]>of(new Object[] {1, 3, "#product.cab"}));
+		msi.stream(MsiPackage.encodeStreamName("product.cab", false), cabinet);
+		return msi.build();
+	}
+
+	/** Builds the tables and streams of an MSI database */
+	private static class MsiBuilder {
+		private final List<String> strings = new ArrayList<>();
+		private final Map<String, byte[]> streams = new LinkedHashMap<>();
+		private final List<Object[]> columns = new ArrayList<>();
+
+		void table(String name, List<String> names, List<Integer> types, List<Object[]> rows) {
+			for (int i = 0; i < names.size(); i++) {
+				columns.add(new Object[] {name, i + 1, names.get(i), types.get(i)});
+			}
+			stream(MsiPackage.encodeStreamName(name, true), tableData(types, rows));
+		}
+
+		void stream(String name, byte[] data) {
+			streams.put(name, data);
+		}
+
+		byte[] build() throws IOException {
+			stream(
+					MsiPackage.encodeStreamName("_Columns", true),
+					tableData(List.of(STRING, INT2, STRING, INT2), columns));
+			ByteArrayOutputStream pool = new ByteArrayOutputStream();
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			writeShort(pool, 1252);
+			writeShort(pool, 0);
+			for (String s : strings) {
+				byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+				writeShort(pool, bytes.length);
+				writeShort(pool, 1);
+				data.writeBytes(bytes);
+			}
+			stream(MsiPackage.encodeStreamName("_StringPool", true), pool.toByteArray());
+			stream(MsiPackage.encodeStreamName("_StringData", true), data.toByteArray());
+			return CompoundFileWriter.write(streams);
+		}
+
+		private byte[] tableData(List<Integer> types, List<Object[]> rows) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			for (int column = 0; column < types.size(); column++) {
+				for (Object[] row : rows) {
+					Object value = row[column];
+					int type = types.get(column);
+					if ((type & 0x0800) != 0) {
+						writeShort(out, value == null ? 0 : stringId((String) value));
+					} else if ((type & 0xFF) == 2) {
+						writeShort(out, value == null ? 0 : (Integer) value + 0x8000);
+					} else {
+						int raw = value == null ? 0 : (Integer) value ^ 0x80000000;
+						writeShort(out, raw);
+						writeShort(out, raw >>> 16);
+					}
+				}
+			}
+			return out.toByteArray();
+		}
+
+		private int stringId(String value) {
+			int index = strings.indexOf(value);
+			if (index < 0) {
+				strings.add(value);
+				index = strings.size() - 1;
+			}
+			return index + 1;
+		}
+	}
+
+	/**
+	 * Writes a version 3 compound file with all streams in the root storage. Streams smaller than
+	 * 4096 bytes go into the mini stream.
+	 */
+	private static class CompoundFileWriter {
+		private static final int SECTOR_SIZE = 512;
+		private static final int MINI_SECTOR_SIZE = 64;
+		private static final int END_OF_CHAIN = 0xFFFFFFFE;
+		private static final int FREE = 0xFFFFFFFF;
+		private static final int FAT_SECTOR = 0xFFFFFFFD;
+
+		private final ByteArrayOutputStream sectors = new ByteArrayOutputStream();
+		private final List<Integer> fat = new ArrayList<>();
+
+		static byte[] write(Map<String, byte[]> streams) {
+			return new CompoundFileWriter().build(streams);
+		}
+
+		private byte[] build(Map<String, byte[]> streams) {
+			ByteArrayOutputStream miniStream = new ByteArrayOutputStream();
+			List<Integer> miniFat = new ArrayList<>();
+			List<int[]> locations = new ArrayList<>();
+			for (byte[] data : streams.values()) {
+				if (data.length < 4096) {
+					int start = miniFat.size();
+					int count = (data.length + MINI_SECTOR_SIZE - 1) / MINI_SECTOR_SIZE;
+					for (int i = 0; i < count; i++) {
+						miniFat.add(i == count - 1 ? END_OF_CHAIN : start + i + 1);
+					}
+					miniStream.writeBytes(data);
+					miniStream.writeBytes(new byte[count * MINI_SECTOR_SIZE - data.length]);
+					locations.add(new int[] {count > 0 ? start : END_OF_CHAIN, data.length});
+				} else {
+					locations.add(new int[] {allocate(data), data.length});
+				}
+			}
+			int miniStreamStart = allocate(miniStream.toByteArray());
+			ByteBuffer miniFatData = ByteBuffer.allocate(miniFat.size() * 4).order(ByteOrder.LITTLE_ENDIAN);
+			miniFat.forEach(miniFatData::putInt);
+			int miniFatStart = allocate(miniFatData.array());
+
+			ByteBuffer directory = ByteBuffer.allocate((streams.size() + 1) * 128).order(ByteOrder.LITTLE_ENDIAN);
+			writeEntry(directory, 0, "Root Entry", 5, streams.isEmpty() ? -1 : 1, -1, miniStreamStart, miniStream.size());
+			int id = 1;
+			for (String name : streams.keySet()) {
+				int[] location = locations.get(id - 1);
+				int right = id < streams.size() ? id + 1 : -1;
+				writeEntry(directory, id, name, 2, -1, right, location[0], location[1]);
+				id++;
+			}
+			int directoryStart = allocate(directory.array());
+
+			// The FAT needs to describe its own sectors too
+			int fatSectors = 1;
+			while ((fat.size() + fatSectors) > fatSectors * (SECTOR_SIZE / 4)) {
+				fatSectors++;
+			}
+			int fatStart = fat.size();
+			for (int i = 0; i < fatSectors; i++) {
+				fat.add(FAT_SECTOR);
+			}
+			ByteBuffer fatData = ByteBuffer.allocate(fatSectors * SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < fatSectors * (SECTOR_SIZE / 4); i++) {
+				fatData.putInt(i < fat.size() ? fat.get(i) : FREE);
+			}
+			sectors.writeBytes(fatData.array());
+
+			ByteBuffer header = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(0xE11AB1A1E011CFD0L);
+			header.putShort(0x18, (short) 0x3E);
+			header.putShort(0x1A, (short) 3);
+			header.putShort(0x1C, (short) 0xFFFE);
+			header.putShort(0x1E, (short) 9);
+			header.putShort(0x20, (short) 6);
+			header.putInt(0x2C, fatSectors);
+			header.putInt(0x30, directoryStart);
+			header.putInt(0x38, 4096);
+			header.putInt(0x3C, miniFat.isEmpty() ? END_OF_CHAIN : miniFatStart);
+			header.putInt(0x40, (miniFat.size() * 4 + SECTOR_SIZE - 1) / SECTOR_SIZE);
+			header.putInt(0x44, END_OF_CHAIN);
+			for (int i = 0; i < 109; i++) {
+				header.putInt(0x4C + i * 4, i < fatSectors ? fatStart + i : FREE);
+			}
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			file.writeBytes(header.array());
+			file.writeBytes(sectors.toByteArray());
+			return file.toByteArray();
+		}
+
+		/** Write data to consecutive sectors and chain them in the FAT */
+		private int allocate(byte[] data) {
+			if (data.length == 0) {
+				return END_OF_CHAIN;
+			}
+			int start = fat.size();
+			int count = (data.length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+			for (int i = 0; i < count; i++) {
+				fat.add(i == count - 1 ? END_OF_CHAIN : start + i + 1);
+			}
+			sectors.writeBytes(data);
+			sectors.writeBytes(new byte[count * SECTOR_SIZE - data.length]);
+			return start;
+		}
+
+		private static void writeEntry(
+				ByteBuffer directory, int id, String name, int type, int child, int right, int start, int size) {
+			int offset = id * 128;
+			for (int i = 0; i < name.length(); i++) {
+				directory.putChar(offset + i * 2, name.charAt(i));
+			}
+			directory.putShort(offset + 0x40, (short) ((name.length() + 1) * 2));
+			directory.put(offset + 0x42, (byte) type);
+			directory.put(offset + 0x43, (byte) 1);
+			directory.putInt(offset + 0x44, -1);
+			directory.putInt(offset + 0x48, right);
+			directory.putInt(offset + 0x4C, child);
+			directory.putInt(offset + 0x74, start);
+			directory.putInt(offset + 0x78, size);
+		}
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+	}
+}
@@ -0,0 +1,30 @@
+package dev.jbang.jdkdb.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/** Content for the JDK archives that the tests build */
+class ReleaseFixtures {
+
+	private ReleaseFixtures() {
+		// Utility class
+	}
+
+	/** The content of the release file of a JDK */
+	static byte[] release() {
+		return "JAVA_VERSION=\"21.0.1\"\nIMPLEMENTOR=\"Test Vendor\"\n".getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create incompressible content, like the rest of a JDK. The content is the same on every
+	 * call.
+	 *
+	 * @param size The number of bytes
+	 * @return The content
+	 */
+	static byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		new Random(42).nextBytes(bytes);
+		return bytes;
+	}
+}
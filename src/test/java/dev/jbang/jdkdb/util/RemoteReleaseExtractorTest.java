@@ -0,0 +1,163 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.jbang.jdkdb.model.JdkMetadata;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RemoteReleaseExtractorTest {
+	private static final byte[] RELEASE = ReleaseFixtures.release();
+
+	private HttpServer server;
+	private byte[] content;
+	private boolean acceptRanges = true;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/archive", this::serveFile);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	void testExtractsReleaseFromZipWithRangeRequests() throws Exception {
+		// Given
+		content = createZip();
+
+		// When
+		RemoteReleaseExtractor.Result result =
+				new RemoteReleaseExtractor(new HttpUtils()).extract(url(), JdkMetadata.FileType.zip);
+
+		// Then
+		assertThat(result).isNotNull();
+		assertThat(result.releaseInfo())
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+		assertThat(result.bytesRead()).isLessThan(content.length / 4);
+	}
+
+	@Test
+	void testZipWithoutRangeSupportIsNotExtracted() throws Exception {
+		// Given
+		content = createZip();
+		acceptRanges = false;
+
+		// When
+		RemoteReleaseExtractor.Result result =
+				new RemoteReleaseExtractor(new HttpUtils()).extract(url(), JdkMetadata.FileType.zip);
+
+		// Then
+		assertThat(result).isNull();
+	}
+
+	@Test
+	void testExtractsReleaseFromStartOfTarGz() throws Exception {
+		// Given
+		content = createTarGz();
+
+		// When
+		RemoteReleaseExtractor.Result result =
+				new RemoteReleaseExtractor(new HttpUtils()).extract(url(), JdkMetadata.FileType.tar_gz);
+
+		// Then
+		assertThat(result).isNotNull();
+		assertThat(result.releaseInfo()).containsEntry("JAVA_VERSION", "21.0.1");
+		assertThat(result.bytesRead()).isLessThan(content.length);
+	}
+
+	private String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/archive";
+	}
+
+	private void serveFile(HttpExchange exchange) throws IOException {
+		if (acceptRanges) {
+			exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		}
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		int start = 0;
+		int end = content.length - 1;
+		if (range != null && acceptRanges) {
+			String[] bounds = range.substring("bytes=".length()).split("-", -1);
+			start = Integer.parseInt(bounds[0]);
+			end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+			exchange.sendResponseHeaders(206, end - start + 1);
+		} else {
+			exchange.sendResponseHeaders(200, content.length);
+		}
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(content, start, end - start + 1);
+		} catch (IOException e) {
+			// The client stopped reading
+		}
+		exchange.close();
+	}
+
+	private static byte[] createZip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(bytes)) {
+			// Large stored content before the release file, like the rest of a JDK
+			byte[] lib = ReleaseFixtures.randomBytes(2_000_000);
+			CRC32 crc = new CRC32();
+			crc.update(lib);
+			ZipArchiveEntry libEntry = new ZipArchiveEntry("jdk-21.0.1/lib/modules");
+			libEntry.setMethod(ZipArchiveEntry.STORED);
+			libEntry.setSize(lib.length);
+			libEntry.setCrc(crc.getValue());
+			zos.putArchiveEntry(libEntry);
+			zos.write(lib);
+			zos.closeArchiveEntry();
+
+			zos.putArchiveEntry(new ZipArchiveEntry("jdk-21.0.1/release"));
+			zos.write(RELEASE);
+			zos.closeArchiveEntry();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] createTarGz() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tos = new TarArchiveOutputStream(new GZIPOutputStream(bytes))) {
+			TarArchiveEntry releaseEntry = new TarArchiveEntry("jdk-21.0.1/release");
+			releaseEntry.setSize(RELEASE.length);
+			tos.putArchiveEntry(releaseEntry);
+			tos.write(RELEASE);
+			tos.closeArchiveEntry();
+
+			byte[] lib = ReleaseFixtures.randomBytes(2_000_000);
+			TarArchiveEntry libEntry = new TarArchiveEntry("jdk-21.0.1/lib/modules");
+			libEntry.setSize(lib.length);
+			tos.putArchiveEntry(libEntry);
+			tos.write(lib);
+			tos.closeArchiveEntry();
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,84 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import dev.jbang.jdkdb.model.JdkMetadata;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+
+class StreamingReleaseExtractorTest {
+
+	@Test
+	void testExtractsReleaseFromTarGz() throws Exception {
+		// Given
+		byte[] archive = createTarGz();
+
+		// When
+		StreamingReleaseExtractor extractor = new StreamingReleaseExtractor(JdkMetadata.FileType.tar_gz);
+		for (int off = 0; off < archive.length; off += 1000) {
+			extractor.write(archive, off, Math.min(1000, archive.length - off));
+		}
+		extractor.close();
+
+		// Then
+		assertThat(extractor.failure()).isNull();
+		assertThat(extractor.releaseInfo())
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	void testDetectsTruncatedTarGz() throws Exception {
+		// Given
+		byte[] archive = createTarGz();
+
+		// When
+		StreamingReleaseExtractor extractor = new StreamingReleaseExtractor(JdkMetadata.FileType.tar_gz);
+		extractor.write(archive, 0, archive.length - 100);
+
+		// Then
+		assertThatThrownBy(extractor::close).isInstanceOf(EOFException.class);
+	}
+
+	@Test
+	void testNonGzipDataIsNotFatal() throws Exception {
+		// Given
+		byte[] data = "this is not a gzip file".getBytes(StandardCharsets.UTF_8);
+
+		// When
+		StreamingReleaseExtractor extractor = new StreamingReleaseExtractor(JdkMetadata.FileType.tar_gz);
+		extractor.write(data);
+		extractor.close();
+
+		// Then
+		assertThat(extractor.releaseInfo()).isNull();
+		assertThat(extractor.failure()).isNotNull();
+	}
+
+	private static byte[] createTarGz() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tos = new TarArchiveOutputStream(new GZIPOutputStream(bytes))) {
+			byte[] release = ReleaseFixtures.release();
+			TarArchiveEntry releaseEntry = new TarArchiveEntry("jdk-21.0.1/release");
+			releaseEntry.setSize(release.length);
+			tos.putArchiveEntry(releaseEntry);
+			tos.write(release);
+			tos.closeArchiveEntry();
+
+			// Incompressible content after the release file, like the rest of a JDK
+			byte[] lib = ReleaseFixtures.randomBytes(500_000);
+			TarArchiveEntry libEntry = new TarArchiveEntry("jdk-21.0.1/lib/modules");
+			libEntry.setSize(lib.length);
+			tos.putArchiveEntry(libEntry);
+			tos.write(lib);
+			tos.closeArchiveEntry();
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,480 @@
+package dev.jbang.jdkdb.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UdifImageTest {
+	private static final int BLOCK_SIZE = 4096;
+	private static final int SECTOR_SIZE = 512;
+	private static final int CHUNK_SECTORS = 8;
+	private static final int CHUNK_ZERO = 0x00000000;
+	private static final int CHUNK_RAW = 0x00000001;
+	private static final int CHUNK_ZLIB = 0x80000005;
+	private static final int CHUNK_BZIP2 = 0x80000006;
+	private static final int CHUNK_LZFSE = 0x80000007;
+	private static final int CHUNK_COMMENT = 0x7FFFFFFE;
+	private static final int CHUNK_TERMINATOR = 0xFFFFFFFF;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testExtractsReleaseFromDmg() throws Exception {
+		// Given
+		Path dmgFile = tempDir.resolve("jdk.dmg");
+		Files.write(dmgFile, createDmg());
+
+		// When
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(dmgFile, dmgFile.getFileName().toString());
+
+		// Then
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	void testExtractsReleaseFromPkgInDmg() throws Exception {
+		// Given
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(payload)) {
+			gzip.write(ArchiveUtilsTest.createPkgCpio());
+		}
+		HfsBuilder hfs = new HfsBuilder();
+		hfs.folder(2, ".background");
+		hfs.file(2, "JDK 21.0.1.pkg", ArchiveUtilsTest.createPkg(payload.toByteArray()));
+		Path dmgFile = tempDir.resolve("jdk.dmg");
+		Files.write(dmgFile, createUdif(List.of(new Partition("Apple_HFS : 1", hfs.build(), 0, 0))));
+
+		// When
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(dmgFile, dmgFile.getFileName().toString());
+
+		// Then
+		assertThat(releaseInfo)
+				.containsEntry("JAVA_VERSION", "21.0.1")
+				.containsEntry("IMPLEMENTOR", "Test Vendor");
+	}
+
+	@Test
+	void testDmgWithoutHfsPlusVolume() throws Exception {
+		// Given
+		Path dmgFile = tempDir.resolve("jdk.dmg");
+		byte[] apfs = new byte[8 * BLOCK_SIZE];
+		Files.write(dmgFile, createUdif(List.of(new Partition("Apple_APFS : 1", apfs, 0, 0))));
+
+		// When
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(dmgFile, dmgFile.getFileName().toString());
+
+		// Then
+		assertThat(releaseInfo).isNull();
+	}
+
+	@Test
+	void testDmgWithUnsupportedCompressionOfReleaseFile() throws Exception {
+		// Given
+		HfsBuilder hfs = new HfsBuilder();
+		int home = hfs.folder(hfs.folder(hfs.folder(2, "zulu-21.jdk"), "Contents"), "Home");
+		int release = hfs.file(
+				home, "release", "JAVA_VERSION=\"21.0.1\"\n".getBytes(StandardCharsets.UTF_8));
+		byte[] volume = hfs.build();
+		Path dmgFile = tempDir.resolve("jdk.dmg");
+		Files.write(
+				dmgFile,
+				createUdif(List.of(new Partition(
+						"disk image (Apple_HFSX : 1)",
+						volume,
+						hfs.dataStart + release,
+						hfs.dataStart + release + 1))));
+
+		// When
+		var releaseInfo = ArchiveUtils.extractReleaseInfo(dmgFile, dmgFile.getFileName().toString());
+
+		// Then
+		assertThat(releaseInfo).isNull();
+	}
+
+	@Test
+	void testDecompressesAdc() throws Exception {
+		// Given
+		byte[] adc = {
+			// 3 literal bytes
+			(byte) 0x82, 'a', 'b', 'c',
+			// Copy 6 bytes from 3 bytes back, overlapping the bytes it produces
+			0x0C, 0x02,
+			// Copy 5 bytes from 9 bytes back, with a 16-bit distance
+			0x41, 0x00, 0x08
+		};
+
+		// When
+		byte[] data = UdifImage.adc(adc, 14);
+
+		// Then
+		assertThat(new String(data, StandardCharsets.US_ASCII)).isEqualTo("abcabcabcabcab");
+	}
+
+	@Test
+	void testReadsPartitionAcrossChunks() throws Exception {
+		// Given
+		byte[] data = ReleaseFixtures.randomBytes(20 * CHUNK_SECTORS * SECTOR_SIZE);
+		Path dmgFile = tempDir.resolve("data.dmg");
+		Files.write(dmgFile, createUdif(List.of(new Partition("Apple_HFS : 1", data, 0, 0))));
+
+		// When
+		byte[] read;
+		try (UdifImage image = UdifImage.open(dmgFile)) {
+			read = image.partitions().get(0).read(3000, 10_000);
+		}
+
+		// Then
+		byte[] expected = new byte[10_000];
+		System.arraycopy(data, 3000, expected, 0, expected.length);
+		assertThat(read).isEqualTo(expected);
+	}
+
+	/**
+	 * Create a DMG with a partition map partition and an HFS+ volume with a JDK bundle. The chunks
+	 * that hold the modules file use a compression that isn't supported, so the release info can
+	 * only be read if those chunks are never decompressed.
+	 */
+	private static byte[] createDmg() throws IOException {
+		HfsBuilder hfs = new HfsBuilder();
+		int jdk = hfs.folder(2, "zulu-21.jdk");
+		hfs.folder(2, ".background");
+		hfs.file(2, "Applications", "/Applications".getBytes(StandardCharsets.UTF_8));
+		int contents = hfs.folder(jdk, "Contents");
+		hfs.file(contents, "Info.plist", "<plist/>".getBytes(StandardCharsets.UTF_8));
+		int home = hfs.folder(contents, "Home");
+		hfs.folder(home, "bin");
+		int lib = hfs.folder(home, "lib");
+		byte[] modules = ReleaseFixtures.randomBytes(100_000);
+		int modulesBlock = hfs.file(lib, "modules", modules);
+		int modulesBlocks = (modules.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		hfs.file(home, "release", ReleaseFixtures.release());
+		hfs.file(lib, "release", "JAVA_VERSION=\"1.0\"\n".getBytes(StandardCharsets.UTF_8));
+		byte[] volume = hfs.build();
+
+		return createUdif(List.of(
+				new Partition("Driver Descriptor Map (DDM : 0)", new byte[SECTOR_SIZE], 0, 0),
+				new Partition(
+						"disk image (Apple_HFSX : 1)",
+						volume,
+						hfs.dataStart + modulesBlock,
+						hfs.dataStart + modulesBlock + modulesBlocks)));
+	}
+
+	/**
+	 * A partition to put in a disk image
+	 *
+	 * @param name The name in the partition table
+	 * @param data The contents of the partition
+	 * @param unsupportedFrom The first block of the range that gets an unsupported compression
+	 * @param unsupportedTo The end (exclusive) of the range that gets an unsupported compression
+	 */
+	private record Partition(String name, byte[] data, int unsupportedFrom, int unsupportedTo) {}
+
+	/** Create a UDIF image with chunks of 8 sectors, using a mix of chunk types */
+	private static byte[] createUdif(List<Partition> partitions) throws IOException {
+		ByteArrayOutputStream dataFork = new ByteArrayOutputStream();
+		List<byte[]> tables = new ArrayList<>();
+		for (Partition partition : partitions) {
+			byte[] data = partition.data();
+			int sectors = (data.length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+			List<long[]> chunks = new ArrayList<>();
+			for (int sector = 0, index = 0; sector < sectors; sector += CHUNK_SECTORS, index++) {
+				int count = Math.min(CHUNK_SECTORS, sectors - sector);
+				byte[] chunk = new byte[count * SECTOR_SIZE];
+				int offset = sector * SECTOR_SIZE;
+				System.arraycopy(data, offset, chunk, 0, Math.min(chunk.length, data.length - offset));
+				int type;
+				byte[] stored;
+				int block = offset / BLOCK_SIZE;
+				if (block >= partition.unsupportedFrom() && block < partition.unsupportedTo()) {
+					type = CHUNK_LZFSE;
+					stored = "bvx2 not really".getBytes(StandardCharsets.US_ASCII);
+				} else if (isZero(chunk)) {
+					type = CHUNK_ZERO;
+					stored = new byte[0];
+				} else if (index % 3 == 0) {
+					type = CHUNK_ZLIB;
+					ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+					try (DeflaterOutputStream zlib = new DeflaterOutputStream(compressed)) {
+						zlib.write(chunk);
+					}
+					stored = compressed.toByteArray();
+				} else if (index % 3 == 1) {
+					type = CHUNK_BZIP2;
+					ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+					try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(compressed)) {
+						bzip2.write(chunk);
+					}
+					stored = compressed.toByteArray();
+				} else {
+					type = CHUNK_RAW;
+					stored = chunk;
+				}
+				chunks.add(new long[] {type, sector, count, dataFork.size(), stored.length});
+				dataFork.writeBytes(stored);
+			}
+			chunks.add(new long[] {CHUNK_COMMENT, sectors, 0, dataFork.size(), 0});
+			chunks.add(new long[] {CHUNK_TERMINATOR, sectors, 0, dataFork.size(), 0});
+
+			ByteBuffer table = ByteBuffer.allocate(204 + chunks.size() * 40);
+			table.putInt(0, 0x6D697368);
+			table.putInt(4, 1);
+			table.putLong(16, sectors);
+			table.putInt(200, chunks.size());
+			for (int i = 0; i < chunks.size(); i++) {
+				long[] chunk = chunks.get(i);
+				int pos = 204 + i * 40;
+				table.putInt(pos, (int) chunk[0]);
+				table.putLong(pos + 8, chunk[1]);
+				table.putLong(pos + 16, chunk[2]);
+				table.putLong(pos + 24, chunk[3]);
+				table.putLong(pos + 32, chunk[4]);
+			}
+			tables.add(table.array());
+		}
+
+		StringBuilder plist = new StringBuilder();
+		plist.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\"")
+				.append(" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n")
+				.append("<plist version=\"1.0\">\n<dict>\n\t<key>resource-fork</key>\n\t<dict>\n")
+				.append("\t\t<key>blkx</key>\n\t\t<array>\n");
+		for (int i = 0; i < tables.size(); i++) {
+			String data = Base64.getMimeEncoder(52, "\n".getBytes(StandardCharsets.US_ASCII))
+					.encodeToString(tables.get(i));
+			plist.append("\t\t\t<dict>\n")
+					.append("\t\t\t\t<key>Attributes</key>\n\t\t\t\t<string>0x0050</string>\n")
+					.append("\t\t\t\t<key>Data</key>\n\t\t\t\t<data>\n")
+					.append(data)
+					.append("\n\t\t\t\t</data>\n")
+					.append("\t\t\t\t<key>ID</key>\n\t\t\t\t<string>")
+					.append(i - 1)
+					.append("</string>\n")
+					.append("\t\t\t\t<key>Name</key>\n\t\t\t\t<string>")
+					.append(partitions.get(i).name())
+					.append("</string>\n\t\t\t</dict>\n");
+		}
+		plist.append("\t\t</array>\n\t</dict>\n</dict>\n</plist>\n");
+		byte[] xml = plist.toString().getBytes(StandardCharsets.UTF_8);
+
+		ByteBuffer trailer = ByteBuffer.allocate(512);
+		trailer.putInt(0, 0x6B6F6C79);
+		trailer.putInt(4, 4);
+		trailer.putInt(8, 512);
+		trailer.putLong(24, 0);
+		trailer.putLong(32, dataFork.size());
+		trailer.putLong(216, dataFork.size());
+		trailer.putLong(224, xml.length);
+		ByteArrayOutputStream image = new ByteArrayOutputStream();
+		dataFork.writeTo(image);
+		image.writeBytes(xml);
+		image.writeBytes(trailer.array());
+		return image.toByteArray();
+	}
+
+	private static boolean isZero(byte[] data) {
+		for (byte b : data) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds an HFSX volume with 4 KB blocks. The catalog is a B-tree of two levels with only a
+	 * few records per leaf, so the records of a folder are spread over several leaves.
+	 */
+	private static class HfsBuilder {
+		private static final int NODE_SIZE = 4096;
+		private static final int RECORDS_PER_LEAF = 3;
+
+		private record CatalogRecord(int parentId, String name, byte[] data) {}
+
+		private final List<CatalogRecord> records = new ArrayList<>();
+		private final ByteArrayOutputStream fileData = new ByteArrayOutputStream();
+		private int nextId = 16;
+		// The block the file data starts at, known once the volume has been built
+		int dataStart;
+
+		HfsBuilder() {
+			records.add(new CatalogRecord(1, "JDK", folderRecord(2)));
+			records.add(new CatalogRecord(2, "", threadRecord(1, "JDK")));
+		}
+
+		/** Add a folder and return its id */
+		int folder(int parentId, String name) {
+			int id = nextId++;
+			records.add(new CatalogRecord(parentId, name, folderRecord(id)));
+			records.add(new CatalogRecord(id, "", threadRecord(parentId, name)));
+			return id;
+		}
+
+		/** Add a file and return the (relative) block its data starts at */
+		int file(int parentId, String name, byte[] data) {
+			int block = fileData.size() / BLOCK_SIZE;
+			int blocks = (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			fileData.writeBytes(data);
+			fileData.writeBytes(new byte[blocks * BLOCK_SIZE - data.length]);
+			ByteBuffer record = ByteBuffer.allocate(248);
+			record.putShort(0, (short) 2);
+			record.putInt(8, nextId++);
+			record.putLong(88, data.length);
+			record.putInt(88 + 12, blocks);
+			// The start block is filled in when the location of the file data is known
+			record.putInt(88 + 16, block);
+			record.putInt(88 + 20, blocks);
+			records.add(new CatalogRecord(parentId, name, record.array()));
+			return block;
+		}
+
+		/**
+		 * Build the volume. The first block holds the volume header, the catalog comes next and
+		 * the file data last.
+		 */
+		byte[] build() {
+			records.sort(Comparator.comparingInt(CatalogRecord::parentId).thenComparing(CatalogRecord::name));
+			List<List<CatalogRecord>> leaves = new ArrayList<>();
+			for (int i = 0; i < records.size(); i += RECORDS_PER_LEAF) {
+				leaves.add(records.subList(i, Math.min(i + RECORDS_PER_LEAF, records.size())));
+			}
+			// Node 0 is the header node, node 1 the index node and the leaves follow
+			int totalNodes = 2 + leaves.size();
+			int catalogBlocks = totalNodes * NODE_SIZE / BLOCK_SIZE;
+			dataStart = 1 + catalogBlocks;
+			for (CatalogRecord record : records) {
+				ByteBuffer data = ByteBuffer.wrap(record.data());
+				if (data.getShort(0) == 2) {
+					data.putInt(88 + 16, data.getInt(88 + 16) + dataStart);
+				}
+			}
+
+			ByteArrayOutputStream catalog = new ByteArrayOutputStream();
+			ByteBuffer header = node(0, 1, 0, 3);
+			header.putShort(14, (short) 2);
+			header.putInt(16, 1);
+			header.putInt(20, records.size());
+			header.putInt(24, 2);
+			header.putInt(28, 1 + leaves.size());
+			header.putShort(32, (short) NODE_SIZE);
+			header.putShort(34, (short) 516);
+			header.putInt(36, totalNodes);
+			header.put(14 + 37, (byte) 0xBC);
+			setOffsets(header, List.of(14, 14 + 106, 14 + 106 + 128, NODE_SIZE - 256));
+			catalog.writeBytes(header.array());
+
+			List<byte[]> indexRecords = new ArrayList<>();
+			for (int i = 0; i < leaves.size(); i++) {
+				CatalogRecord first = leaves.get(i).get(0);
+				ByteArrayOutputStream record = new ByteArrayOutputStream();
+				record.writeBytes(key(first.parentId(), first.name()));
+				record.writeBytes(ByteBuffer.allocate(4).putInt(2 + i).array());
+				indexRecords.add(record.toByteArray());
+			}
+			catalog.writeBytes(fillNode(node(0, 0, 2, indexRecords.size()), indexRecords).array());
+
+			for (int i = 0; i < leaves.size(); i++) {
+				List<byte[]> leafRecords = new ArrayList<>();
+				for (CatalogRecord record : leaves.get(i)) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					bytes.writeBytes(key(record.parentId(), record.name()));
+					bytes.writeBytes(record.data());
+					leafRecords.add(bytes.toByteArray());
+				}
+				int next = i + 1 < leaves.size() ? 3 + i : 0;
+				catalog.writeBytes(fillNode(node(next, -1, 1, leafRecords.size()), leafRecords)
+						.array());
+			}
+
+			ByteBuffer volumeHeader = ByteBuffer.allocate(BLOCK_SIZE);
+			volumeHeader.putShort(1024, (short) 0x4858);
+			volumeHeader.putShort(1024 + 2, (short) 5);
+			volumeHeader.putInt(1024 + 40, BLOCK_SIZE);
+			volumeHeader.putInt(1024 + 44, dataStart + fileData.size() / BLOCK_SIZE);
+			volumeHeader.putLong(1024 + 272, catalog.size());
+			volumeHeader.putInt(1024 + 272 + 12, catalogBlocks);
+			volumeHeader.putInt(1024 + 272 + 16, 1);
+			volumeHeader.putInt(1024 + 272 + 20, catalogBlocks);
+
+			ByteArrayOutputStream volume = new ByteArrayOutputStream();
+			volume.writeBytes(volumeHeader.array());
+			volume.writeBytes(catalog.toByteArray());
+			volume.writeBytes(fileData.toByteArray());
+			// Some free space at the end
+			volume.writeBytes(new byte[2 * BLOCK_SIZE]);
+			return volume.toByteArray();
+		}
+
+		private static byte[] key(int parentId, String name) {
+			ByteBuffer key = ByteBuffer.allocate(8 + name.length() * 2);
+			key.putShort((short) (6 + name.length() * 2));
+			key.putInt(parentId);
+			key.putShort((short) name.length());
+			key.put(name.getBytes(StandardCharsets.UTF_16BE));
+			return key.array();
+		}
+
+		private static byte[] folderRecord(int id) {
+			ByteBuffer record = ByteBuffer.allocate(88);
+			record.putShort(0, (short) 1);
+			record.putInt(8, id);
+			return record.array();
+		}
+
+		private static byte[] threadRecord(int parentId, String name) {
+			ByteBuffer record = ByteBuffer.allocate(10 + name.length() * 2);
+			record.putShort((short) 3);
+			record.putShort((short) 0);
+			record.putInt(parentId);
+			record.putShort((short) name.length());
+			record.put(name.getBytes(StandardCharsets.UTF_16BE));
+			return record.array();
+		}
+
+		private static ByteBuffer node(int next, int kind, int height, int recordCount) {
+			ByteBuffer node = ByteBuffer.allocate(NODE_SIZE);
+			node.putInt(0, next);
+			node.put(8, (byte) kind);
+			node.put(9, (byte) height);
+			node.putShort(10, (short) recordCount);
+			return node;
+		}
+
+		private static ByteBuffer fillNode(ByteBuffer node, List<byte[]> records) {
+			List<Integer> offsets = new ArrayList<>();
+			int offset = 14;
+			for (byte[] record : records) {
+				offsets.add(offset);
+				node.put(offset, record);
+				offset += record.length;
+			}
+			offsets.add(offset);
+			setOffsets(node, offsets);
+			return node;
+		}
+
+		/** Write the record offsets (and the offset of the free space) backwards from the end */
+		private static void setOffsets(ByteBuffer node, List<Integer> offsets) {
+			for (int i = 0; i < offsets.size(); i++) {
+				node.putShort(NODE_SIZE - 2 * (i + 1), offsets.get(i).shortValue());
+			}
+		}
+	}
+}